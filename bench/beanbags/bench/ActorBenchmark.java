@@ -0,0 +1,138 @@
+package beanbags.bench;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import beanbags.ActorStore;
+import beanbags.BlockingStore;
+import beanbags.ConcurrentCDStore;
+import beanbags.CutDownStore;
+import beanbags.ShardedStore;
+
+/**
+ * Compares the single-writer {@link ActorStore} with the lock-based stores,
+ * 4 threads selling from one store. <code>sellBeanBags</code> blocks on
+ * every sale, through a {@link BlockingStore} for the actor; <code>pipelined</code>
+ * has each thread make {@value #PIPELINE} sales before waiting, which only
+ * the actor can overlap. Add <code>-t 1000</code> to see how each copes
+ * with many more callers than cores.
+ *
+ * @author George Rogers
+ * @version 1.0
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@Threads(4)
+@State(Scope.Benchmark)
+public class ActorBenchmark {
+
+    /** Stock given to each ID; large enough that sells never run out. */
+    private static final int STOCK = 1 << 30;
+
+    /** Sales each thread makes before waiting in the pipelined benchmark. */
+    private static final int PIPELINE = 16;
+
+    @Param({"actor", "concurrent", "sharded"})
+    public String store;
+
+    private ActorStore actor;
+    private CutDownStore s;
+
+    /**
+     * Per-thread position in the catalogue, so threads do not share a cursor.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        Catalogue catalogue;
+
+        @Setup(Level.Trial)
+        public void create() {
+            catalogue = new Catalogue(10_000, "uniform");
+        }
+    }
+
+    /**
+     * Creates a store holding the catalogue, priced and in stock.
+     *
+     * @throws Exception if the store rejects the fixture data
+     */
+    @Setup(Level.Trial)
+    public void fill() throws Exception {
+        switch (store) {
+            case "actor":
+                actor = new ActorStore();
+                s = new BlockingStore(actor);
+                break;
+            case "concurrent":
+                s = new ConcurrentCDStore();
+                break;
+            case "sharded":
+                s = new ShardedStore(16);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown store " + store);
+        }
+        for (String id : new Catalogue(10_000, "uniform").ids) {
+            s.addBeanBags(STOCK, "Manufacturer", "Name", id, (short)2020, (byte)1);
+            s.setBeanBagPrice(id, 1);
+        }
+    }
+
+    /**
+     * Clears sales between iterations so sales tracking does not grow without bound.
+     */
+    @Setup(Level.Iteration)
+    public void resetSales() {
+        s.resetSaleAndCostTracking();
+    }
+
+    /**
+     * Stops the actor's writer thread.
+     */
+    @TearDown(Level.Trial)
+    public void close() {
+        if (actor != null) {
+            actor.close();
+        }
+    }
+
+    @Benchmark
+    public void sellBeanBags(Cursor cursor) throws Exception {
+        s.sellBeanBags(1, cursor.catalogue.nextId());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PIPELINE)
+    public void pipelined(Cursor cursor) throws Exception {
+        if (actor == null) {
+            for (int i = 0; i < PIPELINE; i++) {
+                s.sellBeanBags(1, cursor.catalogue.nextId());
+            }
+            return;
+        }
+        CompletableFuture<Void> last = null;
+        for (int i = 0; i < PIPELINE; i++) {
+            last = actor.sellBeanBags(1, cursor.catalogue.nextId());
+        }
+        last.join(); //sales from one thread complete in order
+    }
+}
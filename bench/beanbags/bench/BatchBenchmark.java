@@ -0,0 +1,106 @@
+package beanbags.bench;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import beanbags.CDStore;
+
+/**
+ * Compares applying 100,000 lines through the batch methods of
+ * {@link CDStore} with making the same 100,000 single calls. Each
+ * operation is the whole 100,000 lines.
+ *
+ * @author George Rogers
+ * @version 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Thread)
+public class BatchBenchmark {
+
+    /** Lines in each batch. */
+    private static final int LINES = 100_000;
+
+    /** Stock given to each ID; large enough that sells never run out. */
+    private static final int STOCK = 1 << 30;
+
+    private CDStore s;
+    private final int[] nums = new int[LINES];
+    private final String[] manufacturers = new String[LINES];
+    private final String[] names = new String[LINES];
+    private final String[] ids = new String[LINES];
+    private final short[] years = new short[LINES];
+    private final byte[] months = new byte[LINES];
+    private final int[] statuses = new int[LINES];
+
+    /**
+     * Creates a store holding the catalogue, priced and in stock, and the
+     * lines of the batch: one bean bag each of IDs picked from the catalogue.
+     *
+     * @throws Exception if the store rejects the fixture data
+     */
+    @Setup(Level.Trial)
+    public void fill() throws Exception {
+        s = new CDStore();
+        Catalogue catalogue = new Catalogue(10_000, "uniform");
+        for (String id : catalogue.ids) {
+            s.addBeanBags(STOCK, "Manufacturer", "Name", id, (short)2020, (byte)1);
+            s.setBeanBagPrice(id, 1);
+        }
+        Arrays.fill(nums, 1);
+        Arrays.fill(manufacturers, "Manufacturer");
+        Arrays.fill(names, "Name");
+        Arrays.fill(years, (short)2020);
+        Arrays.fill(months, (byte)1);
+        for (int i = 0; i < LINES; i++) {
+            ids[i] = catalogue.nextId();
+        }
+    }
+
+    /**
+     * Clears sales between iterations so sales tracking does not grow without bound.
+     */
+    @Setup(Level.Iteration)
+    public void resetSales() {
+        s.resetSaleAndCostTracking();
+    }
+
+    @Benchmark
+    public int sellBatch() {
+        return s.sellBeanBagsBatch(nums, ids, statuses);
+    }
+
+    @Benchmark
+    public void sellPerLine() throws Exception {
+        for (int i = 0; i < LINES; i++) {
+            s.sellBeanBags(nums[i], ids[i]);
+        }
+    }
+
+    @Benchmark
+    public int addBatch() {
+        return s.addBeanBagsBatch(nums, manufacturers, names, ids, years, months, null, statuses);
+    }
+
+    @Benchmark
+    public void addPerLine() throws Exception {
+        for (int i = 0; i < LINES; i++) {
+            s.addBeanBags(nums[i], manufacturers[i], names[i], ids[i], years[i], months[i]);
+        }
+    }
+}
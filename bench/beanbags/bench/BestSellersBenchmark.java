@@ -0,0 +1,87 @@
+package beanbags.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import beanbags.BestSellers;
+
+/**
+ * Measures the cost per sale of keeping a top 100 ranking, exact (fed
+ * running totals kept here in an array, as a store's sold records would be)
+ * and approximate (Space-Saving over 10,000 counters), and the cost of
+ * reading the ranking.
+ *
+ * @author George Rogers
+ * @version 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BestSellersBenchmark {
+
+    private static final int K = 100;
+
+    @Param({"1000", "10000000"})
+    public int size;
+
+    @Param({"uniform", "skewed"})
+    public String distribution;
+
+    private Catalogue catalogue;
+    private long[] totals;
+    private BestSellers exact;
+    private BestSellers approximate;
+    private final int[] topIds = new int[K];
+    private final long[] topTotals = new long[K];
+
+    /**
+     * Creates empty rankings and warms them with a million sales.
+     */
+    @Setup(Level.Trial)
+    public void fill() {
+        catalogue = new Catalogue(size, distribution);
+        totals = new long[size];
+        exact = BestSellers.exact(K);
+        approximate = BestSellers.approximate(K, 10_000);
+        for (int i = 0; i < 1_000_000; i++) {
+            recordExact();
+            recordApproximate();
+        }
+    }
+
+    @Benchmark
+    public void recordExact() {
+        int i = catalogue.nextIndex();
+        exact.record(i * 0x9E3779B1, 1, ++totals[i]);
+    }
+
+    @Benchmark
+    public void recordApproximate() {
+        approximate.record(catalogue.nextIndex() * 0x9E3779B1, 1, 0);
+    }
+
+    @Benchmark
+    public int topExact() {
+        return exact.top(topIds, topTotals, null);
+    }
+
+    @Benchmark
+    public int topApproximate() {
+        return approximate.top(topIds, topTotals, null);
+    }
+}
@@ -0,0 +1,61 @@
+package beanbags.bench;
+
+import java.util.SplittableRandom;
+
+import beanbags.BeanBagID;
+
+/**
+ * Shared fixture data for the benchmarks: a catalogue of IDs and a
+ * precomputed sequence of picks into it, so that choosing the next ID
+ * costs the same (an array read) whatever the distribution.
+ *
+ * @author George Rogers
+ * @version 1.0
+ */
+final class Catalogue {
+
+    /** Length of the pick sequence; a power of two so wrapping is a mask. */
+    static final int PICKS = 1 << 16;
+
+    final String[] ids;
+    final int[] picks = new int[PICKS];
+    private int next;
+
+    /**
+     * Creates a catalogue of the given size.
+     *
+     * @param size          number of distinct IDs
+     * @param distribution  <code>uniform</code>, or <code>skewed</code> for a
+     *                      power law where a few IDs get most of the picks
+     */
+    Catalogue(int size, String distribution) {
+        ids = new String[size];
+        for (int i = 0; i < size; i++) {
+            ids[i] = BeanBagID.toString(i * 0x9E3779B1); //scatter IDs over the key space
+        }
+        SplittableRandom random = new SplittableRandom(42);
+        boolean skewed = distribution.equals("skewed");
+        for (int i = 0; i < PICKS; i++) {
+            double u = random.nextDouble();
+            picks[i] = (int)(size * (skewed ? Math.pow(u, 4) : u));
+        }
+    }
+
+    /**
+     * Method returns the next ID in the pick sequence.
+     *
+     * @return ID to operate on
+     */
+    String nextId() {
+        return ids[picks[next++ & (PICKS - 1)]];
+    }
+
+    /**
+     * Method returns the next index in the pick sequence.
+     *
+     * @return index into {@link #ids}
+     */
+    int nextIndex() {
+        return picks[next++ & (PICKS - 1)];
+    }
+}
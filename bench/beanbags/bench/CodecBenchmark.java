@@ -0,0 +1,190 @@
+package beanbags.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import beanbags.BeanBag;
+import beanbags.BeanBagCodec;
+import beanbags.BeanBagID;
+import beanbags.ObjectArrayList;
+
+/**
+ * Compares {@link BeanBagCodec} with Java serialization for encoding and
+ * decoding a list of bean bags. BeanBag itself is not serializable, so the
+ * serialization baseline writes an ObjectArrayList of a serializable row
+ * class with the same fields. Both write to and read from memory so the
+ * numbers measure the encoding, not the disk. Encoded sizes are printed at
+ * the end of each trial.
+ *
+ * @author George Rogers
+ * @version 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CodecBenchmark {
+
+    @Param({"1000", "100000"})
+    public int size;
+
+    private ObjectArrayList bags;
+    private ObjectArrayList rows;
+    private final Sink sink = new Sink();
+    private ByteBuffer encoded;
+    private byte[] serialized;
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+    /** Serializable stand-in for a BeanBag, used by the serialization baseline. */
+    static final class Row implements Serializable {
+        private static final long serialVersionUID = 1L;
+        int num, price, id;
+        long value;
+        String manufacturer, name, information;
+    }
+
+    /** Channel that keeps only the last encoding, growing as needed. */
+    static final class Sink implements WritableByteChannel {
+        ByteBuffer buf = ByteBuffer.allocate(1 << 20);
+
+        @Override
+        public int write(ByteBuffer src) {
+            if (buf.remaining() < src.remaining()) {
+                ByteBuffer bigger = ByteBuffer.allocate(Math.max(buf.capacity() * 2, buf.position() + src.remaining()));
+                buf.flip();
+                buf = bigger.put(buf);
+            }
+            int n = src.remaining();
+            buf.put(src);
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() { }
+    }
+
+    /** Channel reading from a buffer, rewound for each decode. */
+    static final class Source implements ReadableByteChannel {
+        final ByteBuffer buf;
+
+        Source(ByteBuffer buf) {
+            this.buf = buf;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) {
+            if (!buf.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(dst.remaining(), buf.remaining());
+            ByteBuffer slice = buf.slice().limit(n);
+            dst.put(slice);
+            buf.position(buf.position() + n);
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() { }
+    }
+
+    /**
+     * Builds both lists and their encodings.
+     *
+     * @throws IOException if encoding fails
+     */
+    @Setup(Level.Trial)
+    public void fill() throws IOException {
+        bags = new ObjectArrayList();
+        rows = new ObjectArrayList();
+        for (int i = 0; i < size; i++) {
+            int id = i * 0x9E3779B1;
+            BeanBag b = new BeanBag(1 + i % 50, "Manufacturer" + (i % 20), "Name" + (i % 500), id,
+                    i % 4 == 0 ? "" : "Information about " + BeanBagID.toString(id));
+            b.setPrice(100 + i % 10000);
+            bags.add(b);
+            Row r = new Row();
+            r.num = b.getNum();
+            r.price = b.getPrice();
+            r.id = id;
+            r.manufacturer = b.getManufacturer();
+            r.name = b.getName();
+            r.information = b.getInfo();
+            rows.add(r);
+        }
+        encodeCodec();
+        ByteBuffer last = sink.buf.duplicate().flip();
+        encoded = ByteBuffer.allocate(last.remaining()).put(last).flip();
+        serialized = encodeSerialization().toByteArray();
+    }
+
+    /**
+     * Prints the encoded sizes.
+     */
+    @TearDown(Level.Trial)
+    public void sizes() {
+        System.out.printf("%n%d records: codec %d bytes, serialization %d bytes%n", size, encoded.remaining(),
+                serialized.length);
+    }
+
+    @Benchmark
+    public int encodeCodec() throws IOException {
+        sink.buf.clear();
+        BeanBagCodec.writeList(bags, sink);
+        return sink.buf.position();
+    }
+
+    @Benchmark
+    public ByteArrayOutputStream encodeSerialization() throws IOException {
+        bytes.reset();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(rows);
+        }
+        return bytes;
+    }
+
+    @Benchmark
+    public ObjectArrayList decodeCodec() throws IOException {
+        return BeanBagCodec.readList(new Source(encoded.duplicate()));
+    }
+
+    @Benchmark
+    public Object decodeSerialization() throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialized))) {
+            return in.readObject();
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package beanbags.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import beanbags.CDStore;
+import beanbags.ConcurrentCDStore;
+import beanbags.CutDownStore;
+
+/**
+ * Measures how sales scale with the number of threads sharing one store:
+ * a {@link ConcurrentCDStore} against a {@link CDStore} behind one global
+ * lock. The same workload runs at 1, 2, 4 and 8 threads; for other counts
+ * run <code>sell</code> with <code>-t</code>.
+ *
+ * @author George Rogers
+ * @version 1.0
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class ConcurrencyBenchmark {
+
+    /** Stock given to each ID; large enough that sells never run out. */
+    private static final int STOCK = 1 << 30;
+
+    @Param({"ConcurrentCDStore", "locked"})
+    public String store;
+
+    private CutDownStore s;
+    private Object lock; //null if the store is thread-safe by itself
+
+    /**
+     * Per-thread position in the catalogue, so threads do not share a cursor.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        Catalogue catalogue;
+
+        @Setup(Level.Trial)
+        public void create() {
+            catalogue = new Catalogue(10_000, "uniform");
+        }
+    }
+
+    /**
+     * Creates a store holding the catalogue, priced and in stock.
+     *
+     * @throws Exception if the store rejects the fixture data
+     */
+    @Setup(Level.Trial)
+    public void fill() throws Exception {
+        if (store.equals("locked")) {
+            s = new CDStore();
+            lock = new Object();
+        } else {
+            s = new ConcurrentCDStore();
+        }
+        for (String id : new Catalogue(10_000, "uniform").ids) {
+            s.addBeanBags(STOCK, "Manufacturer", "Name", id, (short)2020, (byte)1);
+            s.setBeanBagPrice(id, 1);
+        }
+    }
+
+    /**
+     * Clears sales between iterations so sales tracking does not grow without bound.
+     */
+    @Setup(Level.Iteration)
+    public void resetSales() {
+        s.resetSaleAndCostTracking();
+    }
+
+    /*
+     * Sells one bean bag of the next ID, under the global lock if there is one
+     */
+    private void sellNext(Cursor cursor) throws Exception {
+        String id = cursor.catalogue.nextId();
+        if (lock == null) {
+            s.sellBeanBags(1, id);
+        } else {
+            synchronized (lock) {
+                s.sellBeanBags(1, id);
+            }
+        }
+    }
+
+    @Benchmark
+    public void sell(Cursor cursor) throws Exception {
+        sellNext(cursor);
+    }
+
+    @Benchmark
+    @Threads(2)
+    public void sell2Threads(Cursor cursor) throws Exception {
+        sellNext(cursor);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void sell4Threads(Cursor cursor) throws Exception {
+        sellNext(cursor);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void sell8Threads(Cursor cursor) throws Exception {
+        sellNext(cursor);
+    }
+}
@@ -0,0 +1,144 @@
+package beanbags.bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import beanbags.CDStore;
+import beanbags.MutationEvent;
+import beanbags.MutationFeed;
+import beanbags.StoreMutations;
+
+/**
+ * Measures sales per second with every sale published to a
+ * {@link MutationFeed} while 0, 1, 4 or 16 consumer threads drain it, to
+ * show that consumers do not slow the store down. {@link FeedThroughput}
+ * reports the rate the consumers keep up with.
+ *
+ * @author George Rogers
+ * @version 1.0
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Thread)
+public class FeedBenchmark {
+
+    /** Stock given to each ID; large enough that sells never run out. */
+    private static final int STOCK = 1 << 30;
+
+    @Param({"0", "1", "4", "16"})
+    public int consumers;
+
+    @Param({"65536"})
+    public int capacity;
+
+    private CDStore s;
+    private Catalogue catalogue;
+    private Drain[] drains;
+
+    /**
+     * Consumer thread that sums the sales it sees, waiting progressively
+     * longer while the feed is empty.
+     */
+    static final class Drain extends Thread implements MutationFeed.Handler {
+
+        final MutationFeed.Consumer consumer;
+        volatile boolean running = true;
+        volatile long consumed;
+        long units;
+
+        Drain(MutationFeed.Consumer consumer) {
+            this.consumer = consumer;
+            setDaemon(true);
+        }
+
+        @Override
+        public void onEvent(MutationEvent event, long sequence, boolean endOfBatch) {
+            if (event.getType() == StoreMutations.SELL) {
+                units += event.getNum();
+            }
+        }
+
+        @Override
+        public void run() {
+            int idle = 0;
+            while (running) {
+                int n = consumer.poll(this, 1024);
+                if (n > 0) {
+                    consumed += n;
+                    idle = 0;
+                } else if (++idle < 100) {
+                    Thread.onSpinWait();
+                } else if (idle < 200) {
+                    Thread.yield();
+                } else {
+                    LockSupport.parkNanos(50_000);
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates a store with a feed attached and starts the consumers.
+     *
+     * @throws Exception if the store rejects the fixture data
+     */
+    @Setup(Level.Trial)
+    public void fill() throws Exception {
+        s = new CDStore();
+        catalogue = new Catalogue(10_000, "uniform");
+        for (String id : catalogue.ids) {
+            s.addBeanBags(STOCK, "Manufacturer", "Name", id, (short)2020, (byte)1);
+            s.setBeanBagPrice(id, 1);
+        }
+        MutationFeed feed = new MutationFeed(capacity);
+        s.setMutationFeed(feed);
+        drains = new Drain[consumers];
+        for (int i = 0; i < consumers; i++) {
+            drains[i] = new Drain(feed.consumer());
+            drains[i].start();
+        }
+    }
+
+    /**
+     * Clears sales between iterations so sales tracking does not grow without bound.
+     */
+    @Setup(Level.Iteration)
+    public void resetSales() {
+        s.resetSaleAndCostTracking();
+    }
+
+    /**
+     * Stops the consumers.
+     *
+     * @throws InterruptedException if interrupted waiting for them
+     */
+    @TearDown(Level.Trial)
+    public void stop() throws InterruptedException {
+        for (Drain d : drains) {
+            d.running = false;
+            d.join();
+        }
+    }
+
+    @Benchmark
+    public void sellBeanBags() throws Exception {
+        s.sellBeanBags(1, catalogue.nextId());
+    }
+}
@@ -0,0 +1,76 @@
+package beanbags.bench;
+
+import beanbags.CDStore;
+import beanbags.MutationFeed;
+
+/**
+ * Reports the events per second a {@link MutationFeed} delivers to 1, 4
+ * and 16 consumers while a store sells as fast as it can. Not a JMH
+ * benchmark, because the consumers run on their own threads: run with
+ * <code>java -cp target/benchmarks.jar beanbags.bench.FeedThroughput [seconds [capacity]]</code>.
+ * <p>
+ * For each number of consumers it prints the events published per second,
+ * the events per second taken by the slowest and the average consumer, and
+ * the share of events the consumers lost by being lapped. Consumers only
+ * keep up when each has a core of its own.
+ *
+ * @author George Rogers
+ * @version 1.0
+ */
+public final class FeedThroughput {
+
+    private static final int[] CONSUMERS = {1, 4, 16};
+
+    private FeedThroughput() { }
+
+    /**
+     * Runs the store with each number of consumers in turn and prints the rates.
+     *
+     * @param args optional seconds per run (default 5), then ring capacity (default 65536)
+     * @throws Exception if the store rejects the fixture data
+     */
+    public static void main(String[] args) throws Exception {
+        double seconds = args.length > 0 ? Double.parseDouble(args[0]) : 5;
+        int capacity = args.length > 1 ? Integer.parseInt(args[1]) : 65536;
+        System.out.printf("%-10s %14s %14s %14s %8s%n", "consumers", "published/s", "slowest/s", "average/s",
+                "lost %");
+        for (int consumers : CONSUMERS) {
+            CDStore s = new CDStore();
+            Catalogue catalogue = new Catalogue(10_000, "uniform");
+            for (String id : catalogue.ids) {
+                s.addBeanBags(1 << 30, "Manufacturer", "Name", id, (short)2020, (byte)1);
+                s.setBeanBagPrice(id, 1);
+            }
+            MutationFeed feed = new MutationFeed(capacity);
+            s.setMutationFeed(feed);
+            FeedBenchmark.Drain[] drains = new FeedBenchmark.Drain[consumers];
+            for (int i = 0; i < consumers; i++) {
+                drains[i] = new FeedBenchmark.Drain(feed.consumer());
+                drains[i].start();
+            }
+            long start = System.nanoTime();
+            long end = start + (long)(seconds * 1e9);
+            long published = 0;
+            while (System.nanoTime() < end) {
+                for (int i = 0; i < 10_000; i++) {
+                    s.sellBeanBags(1, catalogue.nextId());
+                }
+                published += 10_000;
+                if (published % 10_000_000 == 0) {
+                    s.resetSaleAndCostTracking(); //keep sales tracking from growing without bound
+                }
+            }
+            double elapsed = (System.nanoTime() - start) / 1e9;
+            long slowest = Long.MAX_VALUE, total = 0, lost = 0;
+            for (FeedBenchmark.Drain d : drains) {
+                d.running = false;
+                d.join();
+                slowest = Math.min(slowest, d.consumed);
+                total += d.consumed;
+                lost += d.consumer.getLost();
+            }
+            System.out.printf("%-10d %14.0f %14.0f %14.0f %8.2f%n", consumers, published / elapsed, slowest / elapsed,
+                    total / elapsed / consumers, 100.0 * lost / ((double)published * consumers));
+        }
+    }
+}
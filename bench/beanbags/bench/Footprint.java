@@ -0,0 +1,107 @@
+package beanbags.bench;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+import beanbags.CutDownStore;
+
+/**
+ * Reports the memory used per SKU by each store implementation, and the
+ * cost of garbage collection while it holds a full catalogue. Not a JMH
+ * benchmark: run with
+ * <code>java -Xmx8g -cp target/benchmarks.jar beanbags.bench.Footprint [skus [store...]]</code>.
+ * Every SKU shares its manufacturer and name with many others and has been
+ * sold once, so the figures include the sales records.
+ * <p>
+ * For each store it prints the heap and direct (off-heap) memory retained
+ * per SKU, the collector time spent while filling the store, and the time
+ * taken by a full collection with the store live. Strings in the global
+ * dictionary are charged to the first store that adds them, so compare
+ * stores that use it by measuring one per run.
+ *
+ * @author George Rogers
+ * @version 1.0
+ */
+public final class Footprint {
+
+    private static final String[] STORES = {"CDStore", "ConcurrentCDStore", "ColumnarStore", "OffHeapStore"};
+
+    private Footprint() { }
+
+    /**
+     * Fills each store in turn and prints its footprint and collection costs.
+     *
+     * @param args optional number of SKUs (default 1000000), then the stores to measure (default all)
+     * @throws Exception if a store rejects the fixture data
+     */
+    public static void main(String[] args) throws Exception {
+        int skus = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        String[] ids = new Catalogue(skus, "uniform").ids;
+        String[] manufacturers = new String[100];
+        String[] names = new String[1000];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = "Name " + i;
+            manufacturers[i % manufacturers.length] = "Manufacturer " + i;
+        }
+        System.out.printf("%-18s %10s %10s %12s %12s%n", "store", "heap B/SKU", "direct B/SKU", "fill GC ms",
+                "full GC ms");
+        String[] stores = args.length > 1 ? Arrays.copyOfRange(args, 1, args.length) : STORES;
+        for (String store : stores) {
+            long heapBefore = used();
+            long directBefore = direct();
+            long gcBefore = gcMillis();
+            CutDownStore s = StoreBenchmark.create(store);
+            for (int i = 0; i < skus; i++) {
+                //fresh copies, as if each SKU were parsed from its own input line
+                s.addBeanBags(2, new String(manufacturers[i % manufacturers.length]), new String(names[i % names.length]),
+                        ids[i], (short)2020, (byte)1, "Information " + i);
+                s.setBeanBagPrice(ids[i], 100);
+                s.sellBeanBags(1, ids[i]);
+            }
+            long fillGc = gcMillis() - gcBefore;
+            long start = System.nanoTime();
+            long heap = used() - heapBefore;
+            long fullGc = (System.nanoTime() - start) / 3_000_000; //used() runs three collections
+            long offHeap = direct() - directBefore;
+            System.out.printf("%-18s %10.1f %12.1f %12d %12d%n", store, (double)heap / skus, (double)offHeap / skus,
+                    fillGc, fullGc);
+            s.empty(); //keep s reachable until measured
+        }
+    }
+
+    /*
+     * Returns the heap in use after full collections
+     */
+    private static long used() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    /*
+     * Returns the direct buffer memory in use
+     */
+    private static long direct() {
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if (pool.getName().equals("direct")) {
+                return pool.getMemoryUsed();
+            }
+        }
+        return 0;
+    }
+
+    /*
+     * Returns the total time all collectors have spent collecting
+     */
+    private static long gcMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(gc.getCollectionTime(), 0);
+        }
+        return total;
+    }
+}
@@ -0,0 +1,92 @@
+package beanbags.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import beanbags.CDStore;
+import beanbags.ConcurrentCDStore;
+import beanbags.CutDownStore;
+
+/**
+ * A flash sale: 64 threads all selling the same ID. Compares the
+ * compare-and-set sell of {@link ConcurrentCDStore}, which never blocks,
+ * with a {@link CDStore} behind one lock, where every sale queues for it.
+ *
+ * @author George Rogers
+ * @version 1.0
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@Threads(64)
+@State(Scope.Benchmark)
+public class HotSellBenchmark {
+
+    /** Stock of the hot ID; large enough that it never sells out. */
+    private static final int STOCK = Integer.MAX_VALUE;
+
+    private static final String HOT_ID = "0000BEEF";
+
+    @Param({"cas", "locked"})
+    public String sell;
+
+    private CutDownStore s;
+    private Object lock; //null for the compare-and-set store
+
+    /**
+     * Creates a store holding the hot ID, priced and in stock.
+     *
+     * @throws Exception if the store rejects the fixture data
+     */
+    @Setup(Level.Trial)
+    public void fill() throws Exception {
+        if (sell.equals("locked")) {
+            s = new CDStore();
+            lock = new Object();
+        } else {
+            s = new ConcurrentCDStore();
+        }
+        s.addBeanBags(STOCK, "Manufacturer", "Name", HOT_ID, (short)2020, (byte)1);
+        s.setBeanBagPrice(HOT_ID, 1);
+    }
+
+    /**
+     * Restocks the hot ID and clears sales between iterations.
+     *
+     * @throws Exception if the store rejects the restock
+     */
+    @Setup(Level.Iteration)
+    public void restock() throws Exception {
+        int sold = s.getNumberOfSoldBeanBags();
+        if (sold > 0) {
+            s.addBeanBags(sold, "Manufacturer", "Name", HOT_ID, (short)2020, (byte)1);
+        }
+        s.resetSaleAndCostTracking();
+    }
+
+    @Benchmark
+    public void sellHotId() throws Exception {
+        if (lock == null) {
+            s.sellBeanBags(1, HOT_ID);
+        } else {
+            synchronized (lock) {
+                s.sellBeanBags(1, HOT_ID);
+            }
+        }
+    }
+}
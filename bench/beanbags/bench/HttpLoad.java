@@ -0,0 +1,329 @@
+package beanbags.bench;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+
+import beanbags.ConcurrentCDStore;
+import beanbags.LatencyHistogram;
+import beanbags.StoreServer;
+
+/**
+ * Drives a {@link StoreServer} from many keep-alive connections at once and
+ * reports throughput and latency. Each connection sends a sale request,
+ * waits for the response and sends the next, all from one selector thread.
+ * Not a JMH benchmark, because the interesting load is the number of open
+ * connections rather than of threads: run with
+ * <pre>
+ * java -cp target/benchmarks.jar beanbags.bench.HttpLoad local [connections [seconds [batch]]]
+ * </pre>
+ * to serve a {@link ConcurrentCDStore} in the same process and check that
+ * it counts every sale acknowledged, or run the two sides by hand with
+ * <code>server port</code> and <code>client host port [connections [seconds [batch]]]</code>.
+ * <code>batch</code> is the number of sales in each request body. The
+ * defaults are 10,000 connections for 10 seconds, one sale per request;
+ * the process needs a file descriptor for each connection, two in local
+ * mode (see <code>ulimit -n</code>). The server roles lift the JDK server's
+ * cap on idle keep-alive connections and turn on TCP_NODELAY, unless the
+ * properties are given on the command line (see {@link StoreServer}).
+ *
+ * @author George Rogers
+ * @version 1.0
+ */
+public final class HttpLoad {
+
+    /** Stock given to each ID; large enough that sells never run out. */
+    private static final int STOCK = 1 << 30;
+
+    /** Distinct request bodies, cycled through. */
+    private static final int REQUESTS = 1024;
+
+    private HttpLoad() { }
+
+    /**
+     * Per-connection state, only used by the selector thread.
+     */
+    private static final class Connection {
+        final ByteBuffer in = ByteBuffer.allocate(1024);
+        ByteBuffer out;
+        int next; //index of the next request to send
+        long sentAt;
+    }
+
+    /**
+     * Result of a client run.
+     */
+    private static final class Totals {
+        long requests;
+        long sales; //lines acknowledged with status 0
+        long errors; //responses other than 200
+    }
+
+    /**
+     * Runs one side.
+     *
+     * @param args <code>local [connections [seconds [batch]]]</code>, <code>server port</code>
+     *             or <code>client host port [connections [seconds [batch]]]</code>
+     * @throws Exception if the server or client fails
+     */
+    public static void main(String[] args) throws Exception {
+        String role = args.length > 0 ? args[0] : "local";
+        if (!role.equals("client")) { //read once, when the first server starts
+            defaultProperty("sun.net.httpserver.maxIdleConnections", String.valueOf(Integer.MAX_VALUE));
+            defaultProperty("sun.net.httpserver.nodelay", "true");
+        }
+        switch (role) {
+            case "local":
+                local(arg(args, 1, 10_000), arg(args, 2, 10), arg(args, 3, 1));
+                break;
+            case "server":
+                server(Integer.parseInt(args[1]));
+                break;
+            case "client": {
+                InetSocketAddress address = new InetSocketAddress(args[1], Integer.parseInt(args[2]));
+                client(address, arg(args, 3, 10_000), arg(args, 4, 10), arg(args, 5, 1));
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown role " + role);
+        }
+    }
+
+    /*
+     * Sets a system property unless it was set on the command line
+     */
+    private static void defaultProperty(String key, String value) {
+        if (System.getProperty(key) == null) {
+            System.setProperty(key, value);
+        }
+    }
+
+    /*
+     * Returns an optional int argument
+     */
+    private static int arg(String[] args, int i, int otherwise) {
+        return args.length > i ? Integer.parseInt(args[i]) : otherwise;
+    }
+
+    /*
+     * Server and client in this process; checks the store sold what the client was told it sold
+     */
+    private static void local(int connections, int seconds, int batch) throws Exception {
+        ConcurrentCDStore store = new ConcurrentCDStore();
+        Catalogue catalogue = fill(store);
+        try (StoreServer server = new StoreServer(store, 0)) {
+            System.out.println("server on port " + server.getPort()
+                    + (server.usesVirtualThreads() ? ", virtual threads" : ", thread pool"));
+            Totals totals = client(new InetSocketAddress("localhost", server.getPort()), connections, seconds, batch,
+                    catalogue);
+            long sold = store.getNumberOfSoldBeanBags();
+            System.out.println("store sold " + sold + ", client counted " + totals.sales
+                    + (sold == totals.sales ? " (match)" : " (MISMATCH)"));
+        }
+    }
+
+    /*
+     * Server on a fixed port, until killed
+     */
+    private static void server(int port) throws Exception {
+        ConcurrentCDStore store = new ConcurrentCDStore();
+        fill(store);
+        try (StoreServer server = new StoreServer(store, port)) {
+            System.out.println("server on port " + server.getPort()
+                    + (server.usesVirtualThreads() ? ", virtual threads" : ", thread pool"));
+            Thread.sleep(Long.MAX_VALUE);
+        }
+    }
+
+    /*
+     * Puts the catalogue in stock, priced
+     */
+    private static Catalogue fill(ConcurrentCDStore store) throws Exception {
+        Catalogue catalogue = new Catalogue(10_000, "uniform");
+        for (String id : catalogue.ids) {
+            store.addBeanBags(STOCK, "Manufacturer", "Name", id, (short)2020, (byte)1);
+            store.setBeanBagPrice(id, 1);
+        }
+        return catalogue;
+    }
+
+    /*
+     * Client against a server filled by another process
+     */
+    private static Totals client(InetSocketAddress address, int connections, int seconds, int batch)
+            throws IOException {
+        return client(address, connections, seconds, batch, new Catalogue(10_000, "uniform"));
+    }
+
+    /*
+     * Opens the connections, runs requests on all of them for a while, printing statistics each second,
+     * then lets the requests in flight finish
+     */
+    private static Totals client(InetSocketAddress address, int connections, int seconds, int batch,
+            Catalogue catalogue) throws IOException {
+        byte[][] requests = new byte[REQUESTS][];
+        for (int i = 0; i < REQUESTS; i++) {
+            StringBuilder body = new StringBuilder();
+            for (int j = 0; j < batch; j++) {
+                body.append("1\t").append(catalogue.nextId()).append('\n');
+            }
+            requests[i] = ("POST /sell HTTP/1.1\r\nHost: " + address.getHostString() + "\r\nContent-Length: "
+                    + body.length() + "\r\n\r\n" + body).getBytes(StandardCharsets.US_ASCII);
+        }
+        LatencyHistogram latency = new LatencyHistogram();
+        Totals totals = new Totals();
+        try (Selector selector = Selector.open()) {
+            int connected = 0;
+            int open = 0;
+            long start = System.nanoTime();
+            System.out.printf("opening %d connections%n", connections);
+            for (int i = 0; i < connections; i++) {
+                SocketChannel channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                Connection c = new Connection();
+                c.next = i % REQUESTS;
+                if (channel.connect(address)) {
+                    send(channel.register(selector, 0, c), c, requests);
+                    connected++;
+                } else {
+                    channel.register(selector, SelectionKey.OP_CONNECT, c);
+                }
+                open++;
+            }
+            long measureFrom = 0; //when every connection was open, then when measuring started
+            long end = Long.MAX_VALUE;
+            long nextReport = 0;
+            long lastRequests = 0;
+            int second = 0;
+            while (open > 0) {
+                selector.select(100);
+                long now = System.nanoTime();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    SocketChannel channel = (SocketChannel)key.channel();
+                    Connection c = (Connection)key.attachment();
+                    try {
+                        if (key.isConnectable()) {
+                            channel.finishConnect();
+                            connected++;
+                            send(key, c, requests);
+                        } else if (key.isWritable()) {
+                            write(key, c);
+                        } else if (key.isReadable()) {
+                            if (channel.read(c.in) < 0) {
+                                throw new IOException("Server closed the connection");
+                            }
+                            if (receive(c, totals, latency, now, measureFrom > 0)) {
+                                if (now < end) {
+                                    send(key, c, requests);
+                                } else {
+                                    channel.close();
+                                    open--;
+                                }
+                            }
+                        }
+                    } catch (IOException e) {
+                        totals.errors++;
+                        channel.close();
+                        open--;
+                    }
+                }
+                if (measureFrom == 0 && (connected == connections || now - start > 30_000_000_000L)) {
+                    System.out.printf("%d connections open after %.1f s%n", connected, (now - start) / 1e9);
+                    System.out.printf("%8s %12s %12s %10s %10s %10s %8s%n", "second", "requests/s", "sales/s",
+                            "p50 us", "p99 us", "max us", "errors");
+                    measureFrom = now;
+                    end = now + seconds * 1_000_000_000L;
+                    nextReport = now + 1_000_000_000L;
+                    totals.requests = 0; //sales are counted throughout, to compare with the store
+                    totals.errors = 0;
+                    latency.reset();
+                }
+                if (measureFrom > 0 && now >= nextReport && now < end + 1_000_000_000L) {
+                    long requestsThisSecond = totals.requests - lastRequests;
+                    System.out.printf("%8d %12d %12d %10.0f %10.0f %10.0f %8d%n", ++second, requestsThisSecond,
+                            requestsThisSecond * batch, latency.getValueAtPercentile(50) / 1e3,
+                            latency.getValueAtPercentile(99) / 1e3, latency.getMax() / 1e3, totals.errors);
+                    lastRequests = totals.requests;
+                    latency.reset();
+                    nextReport += 1_000_000_000L;
+                }
+            }
+            if (measureFrom > 0) {
+                System.out.printf("%d requests, %.0f requests/s, %d errors%n", totals.requests,
+                        totals.requests / (double)seconds, totals.errors);
+            }
+        }
+        return totals;
+    }
+
+    /*
+     * Starts sending the connection's next request
+     */
+    private static void send(SelectionKey key, Connection c, byte[][] requests) throws IOException {
+        c.out = ByteBuffer.wrap(requests[c.next]);
+        c.next = (c.next + 1) % REQUESTS;
+        c.sentAt = System.nanoTime();
+        write(key, c);
+    }
+
+    /*
+     * Writes what it can of the request, then waits to write the rest or for the response
+     */
+    private static void write(SelectionKey key, Connection c) throws IOException {
+        ((SocketChannel)key.channel()).write(c.out);
+        key.interestOps(c.out.hasRemaining() ? SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+    }
+
+    /*
+     * Consumes a complete response if one has arrived, counting it; returns false if more is to come
+     */
+    private static boolean receive(Connection c, Totals totals, LatencyHistogram latency, long now, boolean measure)
+            throws IOException {
+        ByteBuffer in = c.in;
+        String head = new String(in.array(), 0, in.position(), StandardCharsets.US_ASCII);
+        int headEnd = head.indexOf("\r\n\r\n");
+        if (headEnd < 0) {
+            if (!in.hasRemaining()) {
+                throw new IOException("Response header too long");
+            }
+            return false;
+        }
+        int length = 0;
+        int at = head.indexOf("ength:"); //Content-Length, in any case
+        if (at >= 0 && at < headEnd) {
+            length = Integer.parseInt(head.substring(at + 6, head.indexOf('\r', at)).trim());
+        }
+        int total = headEnd + 4 + length;
+        if (in.position() < total) {
+            if (total > in.capacity()) {
+                throw new IOException("Response too long");
+            }
+            return false;
+        }
+        int status = Integer.parseInt(head.substring(9, 12));
+        if (measure) {
+            totals.requests++;
+            latency.record(now - c.sentAt);
+            if (status != 200) {
+                totals.errors++;
+            }
+        }
+        for (int i = headEnd + 4; i < total; i++) {
+            if (head.charAt(i) == '0' && (i == headEnd + 4 || head.charAt(i - 1) == '\n')) {
+                totals.sales++;
+            }
+        }
+        in.clear();
+        return true;
+    }
+}
@@ -0,0 +1,106 @@
+package beanbags.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import beanbags.CDStore;
+import beanbags.CutDownStore;
+import beanbags.InstrumentedStore;
+import beanbags.LatencyHistogram;
+
+/**
+ * Measures the overhead of {@link InstrumentedStore} by running the same
+ * calls against a plain {@link CDStore} and instrumented ones timing every
+ * call or one in 16; the difference is the cost of recording. Run with <code>-prof gc</code> to confirm that
+ * recording does not allocate: the instrumented rows should allocate no more
+ * per operation than the plain ones.
+ *
+ * @author George Rogers
+ * @version 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Thread)
+public class InstrumentationBenchmark {
+
+    /** Stock given to each ID; large enough that sells never run out. */
+    private static final int STOCK = 1 << 30;
+
+    /** Calls per call timed; 0 runs the plain store. */
+    @Param({"0", "1", "16"})
+    public int sampleEvery;
+
+    private CutDownStore s;
+    private Catalogue catalogue;
+    private LatencyHistogram histogram;
+
+    /**
+     * Creates a store holding the catalogue, priced and in stock.
+     *
+     * @throws Exception if the store rejects the fixture data
+     */
+    @Setup(Level.Trial)
+    public void fill() throws Exception {
+        CDStore store = new CDStore();
+        catalogue = new Catalogue(10_000, "uniform");
+        for (String id : catalogue.ids) {
+            store.addBeanBags(STOCK, "Manufacturer", "Name", id, (short)2020, (byte)1);
+            store.setBeanBagPrice(id, 1);
+        }
+        s = sampleEvery == 0 ? store : new InstrumentedStore(store, sampleEvery);
+        histogram = new LatencyHistogram();
+    }
+
+    /**
+     * Clears sales between iterations so sales tracking does not grow without bound.
+     */
+    @Setup(Level.Iteration)
+    public void resetSales() {
+        s.resetSaleAndCostTracking();
+    }
+
+    @Benchmark
+    public int beanBagsInStock() {
+        return s.beanBagsInStock();
+    }
+
+    @Benchmark
+    public int beanBagsInStockById() throws Exception {
+        return s.beanBagsInStock(catalogue.nextId());
+    }
+
+    @Benchmark
+    public void sellBeanBags() throws Exception {
+        s.sellBeanBags(1, catalogue.nextId());
+    }
+
+    @Benchmark
+    public Exception sellBeanBagsRejected() {
+        try {
+            s.sellBeanBags(STOCK, catalogue.nextId()); //always more than is in stock
+            return null;
+        } catch (Exception e) {
+            return e;
+        }
+    }
+
+    @Benchmark
+    public void histogramRecord() {
+        histogram.record(System.nanoTime() & 0xFFFFF);
+    }
+}
@@ -0,0 +1,171 @@
+package beanbags.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import beanbags.CDStore;
+import beanbags.ConcurrentCDStore;
+import beanbags.CutDownStore;
+import beanbags.JournaledStore;
+
+/**
+ * Measures the cost the journal adds to each mutation, alone and with
+ * concurrent callers sharing fsyncs, and the speed of replay.
+ *
+ * @author George Rogers
+ * @version 1.0
+ */
+@Fork(1)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class JournalBenchmark {
+
+    private static final int CATALOGUE = 10000;
+
+    /**
+     * A concurrent store, with or without a journal in front of it.
+     */
+    @State(Scope.Benchmark)
+    public static class Stores {
+
+        @Param({"false", "true"})
+        public boolean journaled;
+
+        CutDownStore store;
+        Catalogue catalogue;
+        private Path file;
+
+        /**
+         * Opens a store holding a priced catalogue with plenty of stock.
+         *
+         * @throws Exception if the store rejects the fixture data
+         */
+        @Setup(Level.Trial)
+        public void open() throws Exception {
+            store = new ConcurrentCDStore();
+            if (journaled) {
+                file = Files.createTempFile("journal", ".bin");
+                store = new JournaledStore(store, file);
+            }
+            catalogue = new Catalogue(CATALOGUE, "uniform");
+            for (String id : catalogue.ids) {
+                store.addBeanBags(1 << 30, "Manufacturer", "Name", id, (short)2020, (byte)1);
+                store.setBeanBagPrice(id, 1);
+            }
+        }
+
+        /**
+         * Closes the store and deletes its journal.
+         *
+         * @throws IOException if the journal cannot be closed or deleted
+         */
+        @TearDown(Level.Trial)
+        public void close() throws IOException {
+            if (journaled) {
+                ((JournaledStore)store).close();
+                Files.delete(file);
+            }
+        }
+    }
+
+    /**
+     * Each thread picks its own IDs.
+     */
+    @State(Scope.Thread)
+    public static class Picks {
+
+        Catalogue catalogue = new Catalogue(CATALOGUE, "uniform");
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Threads(1)
+    public void sell(Stores s, Picks p) throws Exception {
+        s.store.sellBeanBags(1, s.catalogue.ids[p.catalogue.nextIndex()]);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Threads(16)
+    public void sellGroupCommit(Stores s, Picks p) throws Exception {
+        s.store.sellBeanBags(1, s.catalogue.ids[p.catalogue.nextIndex()]);
+    }
+
+    /**
+     * A journal of {@link #RECORDS} records to replay.
+     */
+    @State(Scope.Benchmark)
+    public static class Journal {
+
+        static final int RECORDS = 200_000;
+
+        Path file;
+
+        /**
+         * Writes the journal: one add and price per ID, then sells.
+         *
+         * @throws Exception if the store rejects the fixture data
+         */
+        @Setup(Level.Trial)
+        public void write() throws Exception {
+            file = Files.createTempFile("replay", ".bin");
+            Catalogue catalogue = new Catalogue(CATALOGUE, "uniform");
+            try (JournaledStore store = new JournaledStore(new CDStore(), file)) {
+                for (String id : catalogue.ids) {
+                    store.addBeanBags(1 << 30, "Manufacturer", "Name", id, (short)2020, (byte)1);
+                    store.setBeanBagPrice(id, 1);
+                }
+                for (int i = 2 * CATALOGUE; i < RECORDS; i++) {
+                    store.sellBeanBags(1, catalogue.nextId());
+                }
+            }
+        }
+
+        /**
+         * Deletes the journal.
+         *
+         * @throws IOException if the journal cannot be deleted
+         */
+        @TearDown(Level.Trial)
+        public void delete() throws IOException {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Replays the whole journal into a fresh store; the score is time per record.
+     *
+     * @param j journal to replay
+     * @return number of records replayed
+     * @throws IOException if the journal cannot be replayed
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @OperationsPerInvocation(Journal.RECORDS)
+    public long replay(Journal j) throws IOException {
+        try (JournaledStore store = new JournaledStore(new CDStore(), j.file)) {
+            return store.getReplayedRecords();
+        }
+    }
+}
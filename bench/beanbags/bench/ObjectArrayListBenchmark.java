@@ -0,0 +1,90 @@
+package beanbags.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import beanbags.ObjectArrayList;
+
+/**
+ * Benchmarks the raw {@link ObjectArrayList} operations.
+ *
+ * @author George Rogers
+ * @version 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ObjectArrayListBenchmark {
+
+    @Param({"1000", "100000", "10000000"})
+    public int size;
+
+    @Param({"uniform", "skewed"})
+    public String distribution;
+
+    private ObjectArrayList list;
+    private Catalogue catalogue;
+    private final Object element = new Object();
+
+    /**
+     * Fills a list to the parameterised size.
+     */
+    @Setup(Level.Iteration)
+    public void fill() {
+        list = new ObjectArrayList();
+        for (int i = 0; i < size; i++) {
+            list.add(element);
+        }
+        catalogue = new Catalogue(size, distribution);
+    }
+
+    @Benchmark
+    public Object get() {
+        return list.get(catalogue.nextIndex());
+    }
+
+    @Benchmark
+    public boolean replace() {
+        return list.replace(element, catalogue.nextIndex());
+    }
+
+    /**
+     * Appends then removes from the end, so the list size stays fixed and
+     * the add occasionally pays for a resize just as in real use.
+     *
+     * @return the removed element
+     */
+    @Benchmark
+    public Object addRemoveLast() {
+        list.add(element);
+        return list.remove(list.size() - 1);
+    }
+
+    /**
+     * Removes an element from the middle (shifting the rest down) then
+     * appends it again to keep the size fixed.
+     *
+     * @return the removed element
+     */
+    @Benchmark
+    public Object removeAtIndex() {
+        Object o = list.remove(catalogue.nextIndex());
+        list.add(o);
+        return o;
+    }
+}
@@ -0,0 +1,107 @@
+package beanbags.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import beanbags.BeanBagID;
+import beanbags.CDStore;
+import beanbags.InsufficientStockException;
+
+/**
+ * Measures sales the store rejects for insufficient stock, through the
+ * throwing API and through {@link CDStore#trySell}, against accepted sales
+ * and against building a new exception with a stack trace, which is what
+ * every rejection cost before the stores threw shared stackless ones. Run
+ * with <code>-prof gc</code>: rejections should allocate nothing.
+ *
+ * @author George Rogers
+ * @version 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Thread)
+public class RejectionBenchmark {
+
+    /** Stock given to each ID; large enough that accepted sells never run out. */
+    private static final int STOCK = 1 << 30;
+
+    private CDStore s;
+    private Catalogue catalogue;
+    private int[] keys;
+    private int next;
+
+    /**
+     * Creates a store holding the catalogue, priced and in stock.
+     *
+     * @throws Exception if the store rejects the fixture data
+     */
+    @Setup(Level.Trial)
+    public void fill() throws Exception {
+        s = new CDStore();
+        catalogue = new Catalogue(10_000, "uniform");
+        keys = new int[catalogue.ids.length];
+        for (int i = 0; i < keys.length; i++) {
+            String id = catalogue.ids[i];
+            s.addBeanBags(STOCK, "Manufacturer", "Name", id, (short)2020, (byte)1);
+            s.setBeanBagPrice(id, 1);
+            keys[i] = (int)BeanBagID.parse(id);
+        }
+    }
+
+    /**
+     * Clears sales between iterations so sales tracking does not grow without bound.
+     */
+    @Setup(Level.Iteration)
+    public void resetSales() {
+        s.resetSaleAndCostTracking();
+    }
+
+    private int nextKey() {
+        next = next + 1 == keys.length ? 0 : next + 1;
+        return keys[next];
+    }
+
+    @Benchmark
+    public Exception sellBeanBagsRejected() {
+        try {
+            s.sellBeanBags(STOCK + 1, catalogue.nextId()); //always more than is in stock
+            return null;
+        } catch (Exception e) {
+            return e;
+        }
+    }
+
+    @Benchmark
+    public int trySellRejected() {
+        return s.trySell(STOCK + 1, catalogue.nextId());
+    }
+
+    @Benchmark
+    public int trySellRejectedById() {
+        return s.trySell(STOCK + 1, nextKey());
+    }
+
+    @Benchmark
+    public int trySell() {
+        return s.trySell(1, catalogue.nextId());
+    }
+
+    @Benchmark
+    public Exception newException() {
+        return new InsufficientStockException();
+    }
+}
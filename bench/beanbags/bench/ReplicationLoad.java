@@ -0,0 +1,180 @@
+package beanbags.bench;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import beanbags.CDStore;
+import beanbags.CutDownStore;
+import beanbags.ReplicationFollower;
+import beanbags.ReplicationLeader;
+import beanbags.ReplicationStatsMXBean;
+
+/**
+ * Drives a {@link ReplicationLeader} with sales as fast as it can and
+ * reports replication throughput, batch size and follower lag, with
+ * followers running as separate processes. Not a JMH benchmark, because
+ * the work spans processes: run with
+ * <pre>
+ * java -cp target/benchmarks.jar beanbags.bench.ReplicationLoad local [followers [seconds]]
+ * </pre>
+ * to start the followers on localhost and check that each ends with the
+ * leader's totals, or run the two roles by hand with
+ * <code>leader port [seconds]</code> and <code>follower host port</code>.
+ *
+ * @author George Rogers
+ * @version 1.0
+ */
+public final class ReplicationLoad {
+
+    /** Stock given to each ID; large enough that sells never run out. */
+    private static final int STOCK = 1 << 30;
+
+    private ReplicationLoad() { }
+
+    /**
+     * Runs one role.
+     *
+     * @param args <code>local [followers [seconds]]</code>, <code>leader port [seconds]</code>
+     *             or <code>follower host port</code>
+     * @throws Exception if a process fails
+     */
+    public static void main(String[] args) throws Exception {
+        String role = args.length > 0 ? args[0] : "local";
+        switch (role) {
+            case "local": {
+                int followers = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+                double seconds = args.length > 2 ? Double.parseDouble(args[2]) : 5;
+                local(followers, seconds);
+                break;
+            }
+            case "leader":
+                leader(Integer.parseInt(args[1]), args.length > 2 ? Double.parseDouble(args[2]) : 5, 0);
+                break;
+            case "follower":
+                follower(args[1], Integer.parseInt(args[2]));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown role " + role);
+        }
+    }
+
+    /*
+     * Leader in this process, followers as child processes; compares the totals they end with
+     */
+    private static void local(int followers, double seconds) throws Exception {
+        ReplicationLeader leader = new ReplicationLeader(new CDStore(), 0);
+        List<Process> children = new ArrayList<>();
+        String expected;
+        try {
+            String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+            for (int i = 0; i < followers; i++) {
+                children.add(new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                        ReplicationLoad.class.getName(), "follower", "localhost", String.valueOf(leader.getPort()))
+                        .redirectErrorStream(true).start());
+            }
+            expected = run(leader, seconds, followers);
+        } finally {
+            leader.close(); //followers report their totals once the leader has gone
+        }
+        boolean same = true;
+        for (int i = 0; i < followers; i++) {
+            String last = null;
+            try (BufferedReader r = new BufferedReader(new InputStreamReader(children.get(i).getInputStream()))) {
+                for (String line; (line = r.readLine()) != null; ) {
+                    last = line;
+                }
+            }
+            children.get(i).waitFor();
+            System.out.println("follower " + i + ": " + last);
+            same &= expected.equals(last);
+        }
+        System.out.println(same ? "followers match the leader" : "FOLLOWERS DIFFER FROM THE LEADER");
+    }
+
+    /*
+     * Leader on a fixed port
+     */
+    private static void leader(int port, double seconds, int followers) throws Exception {
+        try (ReplicationLeader leader = new ReplicationLeader(new CDStore(), port)) {
+            System.out.println("leader on port " + leader.getPort());
+            run(leader, seconds, followers);
+        }
+    }
+
+    /*
+     * Sells through the leader for a while, printing the statistics each second, then waits for the
+     * followers to catch up; returns the final totals
+     */
+    private static String run(ReplicationLeader leader, double seconds, int followers) throws Exception {
+        ReplicationStatsMXBean stats = leader.getStats();
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (stats.getFollowers() < followers && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        Catalogue catalogue = new Catalogue(10_000, "uniform");
+        for (String id : catalogue.ids) {
+            leader.addBeanBags(STOCK, "Manufacturer", "Name", id, (short)2020, (byte)1);
+            leader.setBeanBagPrice(id, 1);
+        }
+        System.out.printf("%8s %14s %12s %10s %12s %12s%n", "second", "mutations/s", "batch size", "lag", "p99 lag us",
+                "max lag us");
+        long start = System.nanoTime();
+        long end = start + (long)(seconds * 1e9);
+        long nextReport = start + 1_000_000_000L;
+        int second = 0;
+        while (System.nanoTime() < end) {
+            for (int i = 0; i < 1_000; i++) {
+                leader.sellBeanBags(1, catalogue.nextId());
+            }
+            leader.setBeanBagPrice(catalogue.nextId(), 2);
+            if (System.nanoTime() >= nextReport) {
+                System.out.printf("%8d %14.0f %12.1f %10d %12.1f %12.1f%n", ++second, stats.getMutationsPerSecond(),
+                        stats.getMeanBatchSize(), stats.getLagMutations(), stats.getLagP99Nanos() / 1e3,
+                        stats.getLagMaxNanos() / 1e3);
+                stats.reset();
+                nextReport += 1_000_000_000L;
+            }
+        }
+        deadline = System.nanoTime() + 10_000_000_000L;
+        while (stats.getLagMutations() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        String totals = totals(leader, leader.getSequence());
+        System.out.println("leader: " + totals);
+        return totals;
+    }
+
+    /*
+     * Follower that prints its progress each second and its totals once the leader has gone
+     */
+    private static void follower(String host, int port) throws Exception {
+        try (ReplicationFollower follower = new ReplicationFollower(new CDStore(), host, port)) {
+            ReplicationStatsMXBean stats = follower.getStats();
+            boolean connected = false;
+            long lastSeen = System.nanoTime();
+            while (true) {
+                Thread.sleep(100);
+                if (follower.isConnected()) {
+                    connected = true;
+                    lastSeen = System.nanoTime();
+                } else if (connected && System.nanoTime() - lastSeen > 2_000_000_000L) {
+                    break; //the leader has gone
+                }
+            }
+            System.out.printf("applied %d mutations in %d batches%n", stats.getMutations(), stats.getBatches());
+            System.out.println(totals(follower, follower.getAppliedSequence()));
+        }
+    }
+
+    /*
+     * Describes the state of a store, to compare leader and followers
+     */
+    private static String totals(CutDownStore s, long sequence) {
+        return "sequence " + sequence + ", in stock " + s.beanBagsInStock() + ", different "
+                + s.getNumberOfDifferentBeanBagsInStock() + ", sold " + s.getNumberOfSoldBeanBags() + ", value "
+                + s.getTotalPriceOfSoldBeanBags();
+    }
+}
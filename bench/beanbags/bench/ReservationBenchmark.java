@@ -0,0 +1,85 @@
+package beanbags.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import beanbags.CDStore;
+
+/**
+ * Measures reservations against a store already holding many pending
+ * reservations, on a simulated clock that moves forward one tick of expiry
+ * per operation, so every call also pays for advancing the timing wheel.
+ *
+ * @author George Rogers
+ * @version 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Thread)
+public class ReservationBenchmark {
+
+    /** Stock given to each ID; large enough that reservations never run out. */
+    private static final int STOCK = 1 << 30;
+
+    /** Longest hold of the pending reservations (one day). */
+    private static final long MAX_HOLD = 86_400_000L;
+
+    @Param({"1000", "1000000"})
+    public int pending;
+
+    private CDStore s;
+    private Catalogue catalogue;
+    private long now;
+
+    /**
+     * Creates a store with the given number of reservations pending.
+     *
+     * @throws Exception if the store rejects the fixture data
+     */
+    @Setup(Level.Iteration)
+    public void fill() throws Exception {
+        now = 0;
+        s = new CDStore(MAX_HOLD, () -> now);
+        catalogue = new Catalogue(10_000, "uniform");
+        for (String id : catalogue.ids) {
+            s.addBeanBags(STOCK, "Manufacturer", "Name", id, (short)2020, (byte)1);
+            s.setBeanBagPrice(id, 1);
+        }
+        for (int i = 0; i < pending; i++) {
+            s.reserveBeanBags(1, catalogue.nextId(), MAX_HOLD + (i % 1000) * 1000L); //outlive the iteration
+        }
+    }
+
+    @Benchmark
+    public void reserveAndUnreserve() throws Exception {
+        now += 100;
+        s.unreserveBeanBags(s.reserveBeanBags(1, catalogue.nextId(), 60_000));
+    }
+
+    @Benchmark
+    public void reserveAndSell() throws Exception {
+        now += 100;
+        s.sellBeanBags(s.reserveBeanBags(1, catalogue.nextId(), 60_000));
+    }
+
+    @Benchmark
+    public void sellUnreserved() throws Exception {
+        now += 100;
+        s.sellBeanBags(1, catalogue.nextId());
+    }
+}
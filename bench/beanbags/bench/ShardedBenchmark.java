@@ -0,0 +1,93 @@
+package beanbags.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import beanbags.ShardedStore;
+
+/**
+ * Measures {@link ShardedStore} with 4 threads selling from, and querying,
+ * one store. With one shard every call serialises on one lock; with more
+ * shards than threads, sales of different IDs rarely contend and scale
+ * with cores. The store-wide query shows the cost of the fork-join fan-out.
+ *
+ * @author George Rogers
+ * @version 1.0
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@Threads(4)
+@State(Scope.Benchmark)
+public class ShardedBenchmark {
+
+    /** Stock given to each ID; large enough that sells never run out. */
+    private static final int STOCK = 1 << 30;
+
+    @Param({"1", "16"})
+    public int shards;
+
+    private ShardedStore s;
+    private Catalogue catalogue;
+
+    /**
+     * Per-thread position in the catalogue, so threads do not share a cursor.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        Catalogue catalogue;
+
+        @Setup(Level.Trial)
+        public void create() {
+            catalogue = new Catalogue(10_000, "uniform");
+        }
+    }
+
+    /**
+     * Creates a store holding the catalogue, priced and in stock.
+     *
+     * @throws Exception if the store rejects the fixture data
+     */
+    @Setup(Level.Trial)
+    public void fill() throws Exception {
+        s = new ShardedStore(shards);
+        catalogue = new Catalogue(10_000, "uniform");
+        for (String id : catalogue.ids) {
+            s.addBeanBags(STOCK, "Manufacturer", "Name", id, (short)2020, (byte)1);
+            s.setBeanBagPrice(id, 1);
+        }
+    }
+
+    /**
+     * Clears sales between iterations so sales tracking does not grow without bound.
+     */
+    @Setup(Level.Iteration)
+    public void resetSales() {
+        s.resetSaleAndCostTracking();
+    }
+
+    @Benchmark
+    public void sellBeanBags(Cursor cursor) throws Exception {
+        s.sellBeanBags(1, cursor.catalogue.nextId());
+    }
+
+    @Benchmark
+    public int beanBagsInStock() {
+        return s.beanBagsInStock();
+    }
+}
@@ -0,0 +1,91 @@
+package beanbags.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import beanbags.CDStore;
+import beanbags.MappedStore;
+import beanbags.StoreSnapshot;
+
+/**
+ * Measures cold start from a snapshot: the time from opening the file to
+ * answering the first per-ID read, and (for comparison) a full load into a
+ * heap store.
+ *
+ * @author George Rogers
+ * @version 1.0
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms6g", "-Xmx6g"})
+@State(Scope.Benchmark)
+public class SnapshotBenchmark {
+
+    @Param({"1000000", "10000000"})
+    public int size;
+
+    private Path file;
+    private String probe;
+
+    /**
+     * Writes a snapshot of a store holding the catalogue.
+     *
+     * @throws Exception if the store rejects the fixture data
+     */
+    @Setup(Level.Trial)
+    public void write() throws Exception {
+        Catalogue catalogue = new Catalogue(size, "uniform");
+        CDStore store = new CDStore();
+        for (String id : catalogue.ids) {
+            store.addBeanBags(10, "Manufacturer", "Name", id, (short)2020, (byte)1, "Information");
+            store.setBeanBagPrice(id, 1);
+        }
+        file = Files.createTempFile("snapshot", ".bin");
+        StoreSnapshot.write(store, file);
+        probe = catalogue.ids[size / 2];
+    }
+
+    /**
+     * Deletes the snapshot.
+     *
+     * @throws IOException if the file cannot be deleted
+     */
+    @TearDown(Level.Trial)
+    public void delete() throws IOException {
+        Files.delete(file);
+    }
+
+    @Benchmark
+    public int openAndRead() throws Exception {
+        try (MappedStore store = StoreSnapshot.open(file)) {
+            return store.beanBagsInStock(probe);
+        }
+    }
+
+    @Benchmark
+    public int loadIntoHeap() throws Exception {
+        try (MappedStore snapshot = StoreSnapshot.open(file)) {
+            CDStore store = new CDStore();
+            snapshot.loadInto(store);
+            return store.beanBagsInStock(probe);
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package beanbags.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import beanbags.CDStore;
+import beanbags.ColumnarStore;
+import beanbags.ConcurrentCDStore;
+import beanbags.CutDownStore;
+import beanbags.OffHeapStore;
+
+/**
+ * Benchmarks every {@link CutDownStore} operation over a pre-filled store.
+ * Run with <code>-prof gc</code> to report allocation per operation.
+ *
+ * @author George Rogers
+ * @version 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms6g", "-Xmx6g"})
+@State(Scope.Thread)
+public class StoreBenchmark {
+
+    /** Stock given to each ID; large enough that sells never run out. */
+    private static final int STOCK = 1 << 30;
+
+    @Param({"CDStore", "ConcurrentCDStore", "ColumnarStore", "OffHeapStore"})
+    public String store;
+
+    @Param({"1000", "100000", "10000000"})
+    public int size;
+
+    @Param({"uniform", "skewed"})
+    public String distribution;
+
+    private CutDownStore s;
+    private Catalogue catalogue;
+    private String spareId;
+    private String replacedId;
+
+    /**
+     * Creates a store holding the whole catalogue, priced and in stock.
+     *
+     * @throws Exception if the store rejects the fixture data
+     */
+    @Setup(Level.Trial)
+    public void fill() throws Exception {
+        s = create(store);
+        catalogue = new Catalogue(size, distribution);
+        for (String id : catalogue.ids) {
+            s.addBeanBags(STOCK, "Manufacturer", "Name", id, (short)2020, (byte)1, "Information");
+            s.setBeanBagPrice(id, 1);
+        }
+        replacedId = catalogue.ids[0];
+        spareId = "FFFFFFFF".equals(replacedId) ? "FFFFFFFE" : "FFFFFFFF";
+    }
+
+    /*
+     * Creates an empty store of the named class
+     */
+    static CutDownStore create(String store) {
+        switch (store) {
+            case "CDStore":
+                return new CDStore();
+            case "ConcurrentCDStore":
+                return new ConcurrentCDStore();
+            case "ColumnarStore":
+                return new ColumnarStore();
+            case "OffHeapStore":
+                return new OffHeapStore();
+            default:
+                throw new IllegalArgumentException(store);
+        }
+    }
+
+    /**
+     * Clears sales between iterations so sales tracking does not grow without bound.
+     */
+    @Setup(Level.Iteration)
+    public void resetSales() {
+        s.resetSaleAndCostTracking();
+    }
+
+    @Benchmark
+    public void addBeanBags() throws Exception {
+        s.addBeanBags(1, "Manufacturer", "Name", catalogue.nextId(), (short)2020, (byte)1, "Information");
+    }
+
+    @Benchmark
+    public void setBeanBagPrice() throws Exception {
+        s.setBeanBagPrice(catalogue.nextId(), 1);
+    }
+
+    @Benchmark
+    public void sellBeanBags() throws Exception {
+        s.sellBeanBags(1, catalogue.nextId());
+    }
+
+    @Benchmark
+    public int beanBagsInStock() {
+        return s.beanBagsInStock();
+    }
+
+    @Benchmark
+    public int beanBagsInStockById() throws Exception {
+        return s.beanBagsInStock(catalogue.nextId());
+    }
+
+    @Benchmark
+    public int getNumberOfDifferentBeanBagsInStock() {
+        return s.getNumberOfDifferentBeanBagsInStock();
+    }
+
+    @Benchmark
+    public int getNumberOfSoldBeanBags() {
+        return s.getNumberOfSoldBeanBags();
+    }
+
+    @Benchmark
+    public int getTotalPriceOfSoldBeanBags() {
+        return s.getTotalPriceOfSoldBeanBags();
+    }
+
+    @Benchmark
+    public String getBeanBagDetails() throws Exception {
+        return s.getBeanBagDetails(catalogue.nextId());
+    }
+
+    @Benchmark
+    public void replace() throws Exception {
+        //swap one ID back and forth so the catalogue is unchanged between calls
+        s.replace(replacedId, spareId);
+        String t = replacedId;
+        replacedId = spareId;
+        spareId = t;
+    }
+
+    /**
+     * Per-ID sales getters need an ID that has been sold since the last
+     * reset, so they run against a store with one sale per ID.
+     */
+    @State(Scope.Thread)
+    public static class SoldState {
+
+        @Param({"1000", "100000"})
+        public int size;
+
+        CutDownStore s;
+        Catalogue catalogue;
+
+        /**
+         * Creates a store of the benchmark's class in which every ID has been sold once.
+         *
+         * @param benchmark state naming the store class
+         * @throws Exception if the store rejects the fixture data
+         */
+        @Setup(Level.Trial)
+        public void fill(StoreBenchmark benchmark) throws Exception {
+            s = create(benchmark.store);
+            catalogue = new Catalogue(size, "uniform");
+            for (String id : catalogue.ids) {
+                s.addBeanBags(2, "Manufacturer", "Name", id, (short)2020, (byte)1);
+                s.setBeanBagPrice(id, 1);
+                s.sellBeanBags(1, id);
+            }
+        }
+    }
+
+    @Benchmark
+    public int getNumberOfSoldBeanBagsById(SoldState sold) throws Exception {
+        return sold.s.getNumberOfSoldBeanBags(sold.catalogue.nextId());
+    }
+
+    @Benchmark
+    public int getTotalPriceOfSoldBeanBagsById(SoldState sold) throws Exception {
+        return sold.s.getTotalPriceOfSoldBeanBags(sold.catalogue.nextId());
+    }
+
+    /**
+     * Clearing operations destroy the fixture, so they run against a small
+     * store refilled before every call.
+     */
+    @State(Scope.Thread)
+    public static class ClearState {
+
+        CutDownStore s;
+
+        /**
+         * Refills a store of the benchmark's class with a few sold IDs.
+         *
+         * @param benchmark state naming the store class
+         * @throws Exception if the store rejects the fixture data
+         */
+        @Setup(Level.Invocation)
+        public void fill(StoreBenchmark benchmark) throws Exception {
+            s = create(benchmark.store);
+            for (int i = 0; i < 16; i++) {
+                String id = String.format("%08X", i);
+                s.addBeanBags(2, "Manufacturer", "Name", id, (short)2020, (byte)1);
+                s.setBeanBagPrice(id, 1);
+                s.sellBeanBags(1, id);
+            }
+        }
+    }
+
+    @Benchmark
+    public void empty(ClearState clear) {
+        clear.s.empty();
+    }
+
+    @Benchmark
+    public void resetSaleAndCostTracking(ClearState clear) {
+        clear.s.resetSaleAndCostTracking();
+    }
+}
@@ -0,0 +1,109 @@
+package beanbags.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import beanbags.CDStore;
+import beanbags.StoreView;
+
+/**
+ * Measures {@link CDStore#snapshot()} views: taking one, which should cost
+ * the same at any catalogue size, and selling while views are open, which
+ * copies a record the first time it changes after each view is taken.
+ *
+ * @author George Rogers
+ * @version 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Thread)
+public class StoreViewBenchmark {
+
+    /** Stock given to each ID; large enough that sells never run out. */
+    private static final int STOCK = 1 << 30;
+
+    @Param({"1000", "1000000"})
+    public int size;
+
+    /** Sales between views; 0 sells with no view open. */
+    @Param({"0", "1000", "1000000"})
+    public int salesPerView;
+
+    private CDStore s;
+    private Catalogue catalogue;
+    private StoreView view;
+    private int sales;
+
+    /**
+     * Creates a store holding the whole catalogue, priced and in stock.
+     *
+     * @throws Exception if the store rejects the fixture data
+     */
+    @Setup(Level.Trial)
+    public void fill() throws Exception {
+        s = new CDStore();
+        catalogue = new Catalogue(size, "uniform");
+        for (String id : catalogue.ids) {
+            s.addBeanBags(STOCK, "Manufacturer", "Name", id, (short)2020, (byte)1);
+            s.setBeanBagPrice(id, 1);
+        }
+    }
+
+    /**
+     * Clears sales between iterations so sales tracking does not grow without bound.
+     */
+    @Setup(Level.Iteration)
+    public void resetSales() {
+        s.resetSaleAndCostTracking();
+    }
+
+    /**
+     * Closes the view left open by the last iteration.
+     */
+    @TearDown(Level.Iteration)
+    public void closeView() {
+        if (view != null) {
+            view.close();
+            view = null;
+        }
+    }
+
+    @Benchmark
+    public void snapshot() {
+        s.snapshot().close();
+    }
+
+    @Benchmark
+    public void sellBeanBags() throws Exception {
+        if (salesPerView > 0 && sales++ % salesPerView == 0) {
+            closeView();
+            view = s.snapshot();
+        }
+        s.sellBeanBags(1, catalogue.nextId());
+    }
+
+    @Benchmark
+    public int beanBagsInStockById() throws Exception {
+        if (view == null) {
+            view = s.snapshot();
+        }
+        s.sellBeanBags(1, catalogue.nextId()); //keep the store changing under the view
+        return view.beanBagsInStock(catalogue.nextId());
+    }
+}
@@ -0,0 +1,383 @@
+package beanbags;
+import java.io.Closeable;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Implementation of AsyncCutDownStore in which one writer thread owns a
+ * store and runs every call on it, so the store needs no locking at all.
+ * <p>
+ * Each call is a command that is also the future returned for it. Callers
+ * append commands to a lock-free multi-producer, single-consumer queue (an
+ * intrusive linked list in the style of Vyukov's), which costs one atomic
+ * swap; commands from one thread run in the order it appended them. The
+ * writer drains up to {@value #MAX_BATCH} commands at a time and runs them
+ * back to back while the store's data is in its cache, then completes
+ * their futures. When the queue is empty it spins briefly and then parks,
+ * and the next caller wakes it.
+ * <p>
+ * Futures are completed on the writer thread, so stages chained with the
+ * non-async methods of {@link CompletableFuture} (e.g. <code>thenApply</code>)
+ * may run there and delay every other caller; chain anything slow with the
+ * async variants. Use a {@link BlockingStore} for callers that want to
+ * block, e.g. one virtual thread per request.
+ *
+ * @author George Rogers
+ * @version 1.0
+ */
+public class ActorStore implements AsyncCutDownStore, Closeable {
+
+	/** Largest number of commands run between completions. */
+	public static final int MAX_BATCH = 256;
+	private static final int SPINS = 100; //empty polls before parking
+
+	//command types, one per CutDownStore method
+	private static final byte NONE = 0, ADD = 1, PRICE = 2, SELL = 3, STOCK = 4, STOCK_BY_ID = 5, DIFFERENT = 6,
+			SOLD = 7, SOLD_BY_ID = 8, VALUE = 9, VALUE_BY_ID = 10, DETAILS = 11, EMPTY = 12, RESET = 13, REPLACE = 14;
+
+	/*
+	 * A call waiting to run, and the future of its result. Fields are written by the caller before it is
+	 * queued and read by the writer after.
+	 */
+	private static final class Command<T> extends CompletableFuture<T> {
+		final byte type;
+		int num;
+		String id, replacementId, manufacturer, name, information;
+		short year;
+		byte month;
+		boolean withInformation; //add called with information, which may be null
+		Object result;
+		Throwable failure;
+		volatile Command<?> next; //next command in the queue
+
+		Command(byte type) {
+			this.type = type;
+		}
+
+		Command(byte type, String id) {
+			this.type = type;
+			this.id = id;
+		}
+
+		@SuppressWarnings("unchecked")
+		void finish() {
+			if (failure != null) {
+				completeExceptionally(failure);
+			} else {
+				complete((T)result);
+			}
+		}
+	}
+
+	private static final VarHandle TAIL;
+	static {
+		try {
+			TAIL = MethodHandles.lookup().findVarHandle(ActorStore.class, "tail", Command.class);
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	private final CutDownStore store; //only used by the writer
+	private Command<?> head = new Command<>(NONE); //last command taken, only used by the writer
+	private volatile Command<?> tail = head; //last command queued
+	private final Thread writer;
+	private volatile boolean parked; //writer is parked or about to park
+	private volatile boolean closed;
+	private volatile boolean finished; //writer has stopped
+
+	/**
+	 * Creates an actor owning a new, empty {@link CDStore}.
+	 */
+	public ActorStore() {
+		this(new CDStore());
+	}
+
+	/**
+	 * Creates an actor owning a store. Nothing else may use the store while the actor is open.
+	 * @param store store to own
+	 */
+	public ActorStore(CutDownStore store) {
+		this.store = store;
+		writer = new Thread(this::run, "beanbags-actor");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/*
+	 * Queues a command for the writer, waking it if it is parked
+	 */
+	private <T> CompletableFuture<T> submit(Command<T> c) {
+		if (closed) {
+			c.completeExceptionally(new IllegalStateException("Store is closed"));
+			return c;
+		}
+		Command<?> prev = (Command<?>)TAIL.getAndSet(this, c);
+		prev.next = c;
+		if (parked) {
+			LockSupport.unpark(writer);
+		}
+		if (finished) { //queued after the writer's last look at the queue
+			failRemaining();
+		}
+		return c;
+	}
+
+	/*
+	 * Takes the next command, or returns null if there is none yet. Only called by one thread at a time.
+	 */
+	private Command<?> poll() {
+		Command<?> n = head.next;
+		if (n != null) {
+			head = n; //the command taken becomes the queue's placeholder
+		}
+		return n;
+	}
+
+	/*
+	 * Returns true if no command is queued or being queued
+	 */
+	private boolean isEmpty() {
+		return head == tail;
+	}
+
+	/*
+	 * Writer loop: runs commands in batches until closed and drained
+	 */
+	private void run() {
+		Command<?>[] batch = new Command<?>[MAX_BATCH];
+		try {
+			while (true) {
+				int n = 0;
+				Command<?> c;
+				while (n < MAX_BATCH && (c = poll()) != null) {
+					batch[n++] = c;
+				}
+				if (n == 0) {
+					if (closed && isEmpty()) {
+						break;
+					}
+					idle();
+					continue;
+				}
+				for (int i = 0; i < n; i++) {
+					execute(batch[i]);
+				}
+				for (int i = 0; i < n; i++) { //complete after running, so callbacks do not evict the store
+					batch[i].finish();
+					batch[i] = null;
+				}
+			}
+		} finally {
+			finished = true;
+			failRemaining();
+		}
+	}
+
+	/*
+	 * Waits for a command: spins briefly, then parks until a caller unparks the writer
+	 */
+	private void idle() {
+		for (int i = 0; i < SPINS; i++) {
+			if (!isEmpty()) {
+				return; //also covers a command linked in between the swap and setting next
+			}
+			Thread.onSpinWait();
+		}
+		parked = true;
+		if (isEmpty() && !closed) {
+			LockSupport.park(this);
+		}
+		parked = false;
+	}
+
+	/*
+	 * Runs a command on the store, keeping its result or exception
+	 */
+	private void execute(Command<?> c) {
+		try {
+			switch (c.type) {
+				case ADD:
+					if (!c.withInformation) {
+						store.addBeanBags(c.num, c.manufacturer, c.name, c.id, c.year, c.month);
+					} else {
+						store.addBeanBags(c.num, c.manufacturer, c.name, c.id, c.year, c.month, c.information);
+					}
+					break;
+				case PRICE:
+					store.setBeanBagPrice(c.id, c.num);
+					break;
+				case SELL:
+					store.sellBeanBags(c.num, c.id);
+					break;
+				case STOCK:
+					c.result = store.beanBagsInStock();
+					break;
+				case STOCK_BY_ID:
+					c.result = store.beanBagsInStock(c.id);
+					break;
+				case DIFFERENT:
+					c.result = store.getNumberOfDifferentBeanBagsInStock();
+					break;
+				case SOLD:
+					c.result = store.getNumberOfSoldBeanBags();
+					break;
+				case SOLD_BY_ID:
+					c.result = store.getNumberOfSoldBeanBags(c.id);
+					break;
+				case VALUE:
+					c.result = store.getTotalPriceOfSoldBeanBags();
+					break;
+				case VALUE_BY_ID:
+					c.result = store.getTotalPriceOfSoldBeanBags(c.id);
+					break;
+				case DETAILS:
+					c.result = store.getBeanBagDetails(c.id);
+					break;
+				case EMPTY:
+					store.empty();
+					break;
+				case RESET:
+					store.resetSaleAndCostTracking();
+					break;
+				case REPLACE:
+					store.replace(c.id, c.replacementId);
+					break;
+				default:
+					throw new IllegalStateException("Unknown command " + c.type);
+			}
+		} catch (Throwable e) {
+			c.failure = e; //the writer carries on with the next command
+		}
+	}
+
+	/*
+	 * Fails the commands left once the writer has stopped
+	 */
+	private synchronized void failRemaining() {
+		Command<?> c;
+		while ((c = poll()) != null || !isEmpty()) {
+			if (c != null) {
+				c.completeExceptionally(new IllegalStateException("Store is closed"));
+			} else {
+				Thread.onSpinWait(); //a caller is between queueing and linking its command
+			}
+		}
+	}
+
+	@Override
+	public CompletableFuture<Void> addBeanBags(int num, String manufacturer, String name, String id, short year,
+			byte month) {
+		return submit(add(num, manufacturer, name, id, year, month)); //no information given
+	}
+
+	@Override
+	public CompletableFuture<Void> addBeanBags(int num, String manufacturer, String name, String id, short year,
+			byte month, String information) {
+		Command<Void> c = add(num, manufacturer, name, id, year, month);
+		c.information = information;
+		c.withInformation = true;
+		return submit(c);
+	}
+
+	/*
+	 * Builds an add command without information
+	 */
+	private static Command<Void> add(int num, String manufacturer, String name, String id, short year, byte month) {
+		Command<Void> c = new Command<>(ADD, id);
+		c.num = num;
+		c.manufacturer = manufacturer;
+		c.name = name;
+		c.year = year;
+		c.month = month;
+		return c;
+	}
+
+	@Override
+	public CompletableFuture<Void> setBeanBagPrice(String id, int priceInPence) {
+		Command<Void> c = new Command<>(PRICE, id);
+		c.num = priceInPence;
+		return submit(c);
+	}
+
+	@Override
+	public CompletableFuture<Void> sellBeanBags(int num, String id) {
+		Command<Void> c = new Command<>(SELL, id);
+		c.num = num;
+		return submit(c);
+	}
+
+	@Override
+	public CompletableFuture<Integer> beanBagsInStock() {
+		return submit(new Command<>(STOCK));
+	}
+
+	@Override
+	public CompletableFuture<Integer> beanBagsInStock(String id) {
+		return submit(new Command<>(STOCK_BY_ID, id));
+	}
+
+	@Override
+	public CompletableFuture<Integer> getNumberOfDifferentBeanBagsInStock() {
+		return submit(new Command<>(DIFFERENT));
+	}
+
+	@Override
+	public CompletableFuture<Integer> getNumberOfSoldBeanBags() {
+		return submit(new Command<>(SOLD));
+	}
+
+	@Override
+	public CompletableFuture<Integer> getNumberOfSoldBeanBags(String id) {
+		return submit(new Command<>(SOLD_BY_ID, id));
+	}
+
+	@Override
+	public CompletableFuture<Integer> getTotalPriceOfSoldBeanBags() {
+		return submit(new Command<>(VALUE));
+	}
+
+	@Override
+	public CompletableFuture<Integer> getTotalPriceOfSoldBeanBags(String id) {
+		return submit(new Command<>(VALUE_BY_ID, id));
+	}
+
+	@Override
+	public CompletableFuture<String> getBeanBagDetails(String id) {
+		return submit(new Command<>(DETAILS, id));
+	}
+
+	@Override
+	public CompletableFuture<Void> empty() {
+		return submit(new Command<>(EMPTY));
+	}
+
+	@Override
+	public CompletableFuture<Void> resetSaleAndCostTracking() {
+		return submit(new Command<>(RESET));
+	}
+
+	@Override
+	public CompletableFuture<Void> replace(String oldId, String replacementId) {
+		Command<Void> c = new Command<>(REPLACE, oldId);
+		c.replacementId = replacementId;
+		return submit(c);
+	}
+
+	/**
+	 * Method stops the writer once it has run every call already made;
+	 * calls made after this fail with an {@link IllegalStateException}.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		LockSupport.unpark(writer);
+		try {
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,162 @@
+package beanbags;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Asynchronous form of the CutDownStore interface: every method of
+ * {@link CutDownStore} returns at once with a {@link CompletableFuture} of
+ * its result. A call that would have thrown completes its future
+ * exceptionally with the same exception, e.g. a sale of more bean bags
+ * than are in stock with an {@link InsufficientStockException}.
+ * <p>
+ * Calls made by one thread take effect in the order they were made, even
+ * when the thread does not wait for each future before the next call.
+ * {@link BlockingStore} adapts an implementation back to CutDownStore.
+ *
+ * @author George Rogers
+ * @version 1.0
+ */
+public interface AsyncCutDownStore
+{
+
+    /**
+     * Method adds bean bags to the store; see
+     * {@link CutDownStore#addBeanBags(int, String, String, String, short, byte)}.
+     *
+     * @param num               number of bean bags added
+     * @param manufacturer      bean bag manufacturer
+     * @param name              bean bag name
+     * @param id                ID of bean bag
+     * @param year              year of manufacture
+     * @param month             month of manufacture
+     * @return                  future completed when the bean bags are added
+     */
+    CompletableFuture<Void> addBeanBags(int num, String manufacturer, String name,
+    String id, short year, byte month);
+
+    /**
+     * Method adds bean bags to the store; see
+     * {@link CutDownStore#addBeanBags(int, String, String, String, short, byte, String)}.
+     *
+     * @param num               number of bean bags added
+     * @param manufacturer      bean bag manufacturer
+     * @param name              bean bag name
+     * @param id                ID of bean bag
+     * @param year              year of manufacture
+     * @param month             month of manufacture
+     * @param information       free text detailing bean bag information
+     * @return                  future completed when the bean bags are added
+     */
+    CompletableFuture<Void> addBeanBags(int num, String manufacturer, String name,
+    String id, short year, byte month, String information);
+
+    /**
+     * Method sets the price of bean bags; see
+     * {@link CutDownStore#setBeanBagPrice(String, int)}.
+     *
+     * @param id                ID of bean bags
+     * @param priceInPence      bean bag price in pence
+     * @return                  future completed when the price is set
+     */
+    CompletableFuture<Void> setBeanBagPrice(String id, int priceInPence);
+
+    /**
+     * Method sells bean bags; see {@link CutDownStore#sellBeanBags(int, String)}.
+     *
+     * @param num               number of bean bags to be sold
+     * @param id                ID of bean bags to be sold
+     * @return                  future completed when the bean bags are sold
+     */
+    CompletableFuture<Void> sellBeanBags(int num, String id);
+
+    /**
+     * Method returns the number of bean bags in stock; see
+     * {@link CutDownStore#beanBagsInStock()}.
+     *
+     * @return                  future of the number of bean bags in stock
+     */
+    CompletableFuture<Integer> beanBagsInStock();
+
+    /**
+     * Method returns the number of bean bags in stock with an ID; see
+     * {@link CutDownStore#beanBagsInStock(String)}.
+     *
+     * @param id                ID of bean bags
+     * @return                  future of the number of bean bags in stock
+     */
+    CompletableFuture<Integer> beanBagsInStock(String id);
+
+    /**
+     * Method returns the number of different bean bags in stock; see
+     * {@link CutDownStore#getNumberOfDifferentBeanBagsInStock()}.
+     *
+     * @return                  future of the number of different bean bags in stock
+     */
+    CompletableFuture<Integer> getNumberOfDifferentBeanBagsInStock();
+
+    /**
+     * Method returns the number of bean bags sold; see
+     * {@link CutDownStore#getNumberOfSoldBeanBags()}.
+     *
+     * @return                  future of the number of bean bags sold
+     */
+    CompletableFuture<Integer> getNumberOfSoldBeanBags();
+
+    /**
+     * Method returns the number of bean bags sold with an ID; see
+     * {@link CutDownStore#getNumberOfSoldBeanBags(String)}.
+     *
+     * @param id                ID of bean bags
+     * @return                  future of the number of bean bags sold
+     */
+    CompletableFuture<Integer> getNumberOfSoldBeanBags(String id);
+
+    /**
+     * Method returns the total price of bean bags sold; see
+     * {@link CutDownStore#getTotalPriceOfSoldBeanBags()}.
+     *
+     * @return                  future of the total price in pence
+     */
+    CompletableFuture<Integer> getTotalPriceOfSoldBeanBags();
+
+    /**
+     * Method returns the total price of bean bags sold with an ID; see
+     * {@link CutDownStore#getTotalPriceOfSoldBeanBags(String)}.
+     *
+     * @param id                ID of bean bags
+     * @return                  future of the total price in pence
+     */
+    CompletableFuture<Integer> getTotalPriceOfSoldBeanBags(String id);
+
+    /**
+     * Method returns the free text details of a bean bag; see
+     * {@link CutDownStore#getBeanBagDetails(String)}.
+     *
+     * @param id                ID of bean bag
+     * @return                  future of the free text details
+     */
+    CompletableFuture<String> getBeanBagDetails(String id);
+
+    /**
+     * Method empties the store; see {@link CutDownStore#empty()}.
+     *
+     * @return                  future completed when the store is empty
+     */
+    CompletableFuture<Void> empty();
+
+    /**
+     * Method resets the tracking of sales; see
+     * {@link CutDownStore#resetSaleAndCostTracking()}.
+     *
+     * @return                  future completed when sales tracking is reset
+     */
+    CompletableFuture<Void> resetSaleAndCostTracking();
+
+    /**
+     * Method replaces an ID; see {@link CutDownStore#replace(String, String)}.
+     *
+     * @param oldId             old ID of bean bags
+     * @param replacementId     replacement ID of bean bags
+     * @return                  future completed when the ID is replaced
+     */
+    CompletableFuture<Void> replace(String oldId, String replacementId);
+}
@@ -0,0 +1,59 @@
+package beanbags;
+
+/**
+ * Extension of the CutDownStore interface for applying many additions or
+ * sales at once, e.g. a warehouse delivery or a till batch.
+ * <p>
+ * A batch is all-or-nothing: every line is validated first, and the batch
+ * is only applied if every line is valid, otherwise the state of the store
+ * is unchanged. Rather than throwing, each line's outcome is written as a
+ * {@link StoreStatus} code to the <code>statuses</code> array supplied by
+ * the caller, so a failing batch costs no exceptions. Lines are validated
+ * in order against the store as the earlier lines of the batch would leave
+ * it, so e.g. two sales of the same ID in one batch must together fit the
+ * stock.
+ *
+ * @author George Rogers
+ * @version 1.0
+ */
+public interface BatchCutDownStore extends CutDownStore
+{
+
+    /**
+     * Method adds a batch of bean bags to the store. Line <code>i</code> of
+     * the batch has the same meaning as a call to
+     * {@link CutDownStore#addBeanBags(int, String, String, String, short, byte, String)}
+     * with element <code>i</code> of each array.
+     *
+     * @param nums              number of bean bags added
+     * @param manufacturers     bean bag manufacturers
+     * @param names             bean bag names
+     * @param ids               IDs of bean bags
+     * @param years             years of manufacture
+     * @param months            months of manufacture
+     * @param informations      free text detailing bean bag information, or
+     *                          <code>null</code> if no line has any
+     * @param statuses          array filled with the {@link StoreStatus} of each line
+     * @return                  number of lines that failed; the batch was applied 
+     *                          if and only if this is 0
+     * @throws IllegalArgumentException if the arrays are not all the same length
+     */
+    int addBeanBagsBatch(int[] nums, String[] manufacturers, String[] names,
+    String[] ids, short[] years, byte[] months, String[] informations,
+    int[] statuses);
+
+    /**
+     * Method sells a batch of bean bags from the store. Line <code>i</code>
+     * of the batch has the same meaning as a call to
+     * {@link CutDownStore#sellBeanBags(int, String)} with element 
+     * <code>i</code> of each array.
+     *
+     * @param nums              number of bean bags to be sold
+     * @param ids               IDs of bean bags to be sold
+     * @param statuses          array filled with the {@link StoreStatus} of each line
+     * @return                  number of lines that failed; the batch was applied 
+     *                          if and only if this is 0
+     * @throws IllegalArgumentException if the arrays are not all the same length
+     */
+    int sellBeanBagsBatch(int[] nums, String[] ids, int[] statuses);
+}
@@ -1,17 +1,25 @@
 package beanbags;
 import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.util.Objects;
 
 public class BeanBag {
 	
 	//init BeanBag attributes
 	private int num, price;
-	private String manufacturer, name, id, information;
+	private int reserved; //number of the num held by reservations
+	private int id; //8 digit hexadecimal ID held as its 32 bits
+	private int manufacturer, name; //codes in StringDictionary.GLOBAL
+	private String information; //free text rarely repeats, so it is kept out of the dictionary
+	private long value; //total value in pence, accumulated by sold records
+	private volatile long version; //store version of the last change, see StoreView
+	private volatile BeanBag older; //state before that change, kept while a StoreView may need it
 	
 	/**
 	 * Creates default instance of BeanBag.
 	 */
 	public BeanBag() {
-		num=0;price=-1;manufacturer="Default";name="Default";id="00000000";information="";
+		num=0;price=-1;manufacturer=code("Default");name=code("Default");id=0;information="";
 	}
 
 	/**
@@ -20,12 +28,12 @@ public class BeanBag {
 	 * @param num Number of beanbags
 	 * @param manufacturer Manufacturer of beanbag
 	 * @param name Name of beanbag
-	 * @param id Beanbag ID (hexadecimal)
+	 * @param id Beanbag ID (see {@link BeanBagID})
 	 */
-	public BeanBag(int num, String manufacturer, String name, String id) {
+	public BeanBag(int num, String manufacturer, String name, int id) {
 		this.num = num;
-		this.manufacturer = manufacturer;
-		this.name = name;
+		this.manufacturer = code(manufacturer);
+		this.name = code(name);
 		this.id = id;
 		this.information = "";
 		this.price = -1; //price not set
@@ -38,17 +46,41 @@ public class BeanBag {
 	 * @param num Number of beanbags
 	 * @param manufacturer Manufacturer of beanbag
 	 * @param name Name of beanbag
-	 * @param id Beanbag ID (hexadecimal)
+	 * @param id Beanbag ID (see {@link BeanBagID})
 	 * @param information Additional (free-text) information of beanbag object
 	 */
-	public BeanBag(int num, String manufacturer, String name, String id, String information) {
+	public BeanBag(int num, String manufacturer, String name, int id, String information) {
 		this.num = num;
-		this.manufacturer = manufacturer;
-		this.name = name;
+		this.manufacturer = code(manufacturer);
+		this.name = code(name);
 		this.id = id;
 		this.information = information;
 		this.price = -1; //price not set
 	}
+	
+	/*
+	 * Copies the state of a beanbag, codes and version included
+	 */
+	private BeanBag(BeanBag b) {
+		num = b.num;
+		price = b.price;
+		reserved = b.reserved;
+		id = b.id;
+		manufacturer = b.manufacturer;
+		name = b.name;
+		information = b.information;
+		value = b.value;
+		version = b.version;
+		older = b.older;
+	}
+	
+	/*
+	 * Returns the global dictionary code of a string, adding it if new
+	 */
+	private static int code(String s) {
+		return StringDictionary.GLOBAL.encode(s);
+	}
+
 	/**
 	 * Getter method for price of beanbag.
 	 * @return Price of beanbag
@@ -64,6 +96,22 @@ public class BeanBag {
 		this.price = p;
 	}
 	
+	/**
+	 * Getter method for total value of beanbags (used for sales records).
+	 * @return Total value in pence
+	 */
+	public long getValue() {
+		return this.value;
+	}
+	
+	/**
+	 * Setter method for total value of beanbags (used for sales records).
+	 * @param v Total value in pence
+	 */
+	public void setValue(long v) {
+		this.value = v;
+	}
+	
 	/**
 	 * Getter method for number of beanbags.
 	 * @return Number of beanbags
@@ -80,11 +128,27 @@ public class BeanBag {
 		this.num = n;
 	}
 	
+	/**
+	 * Getter method for number of reserved beanbags.
+	 * @return Number of beanbags held by reservations (included in the number of beanbags)
+	 */
+	public int getReserved() {
+		return this.reserved;
+	}
+	
+	/**
+	 * Setter method for number of reserved beanbags.
+	 * @param r Number of beanbags held by reservations
+	 */
+	public void setReserved(int r) {
+		this.reserved = r;
+	}
+	
 	/**
 	 * Getter method for ID of beanbag.
 	 * @return ID of beanbag
 	 */
-	public String getID() {
+	public int getID() {
 		return this.id;
 	}
 	
@@ -92,7 +156,7 @@ public class BeanBag {
 	 * Setter method for ID if beanbag.
 	 * @param id Hexadecimal value to set ID of beanbag to
 	 */
-	public void setID(String id) {
+	public void setID(int id) {
 		this.id = id;
 	}
 	
@@ -101,7 +165,7 @@ public class BeanBag {
 	 * @return Manufacturer of beanbag
 	 */
 	public String getManufacturer() {
-		return this.manufacturer;
+		return StringDictionary.GLOBAL.get(this.manufacturer);
 	}
 	
 	/**
@@ -109,7 +173,7 @@ public class BeanBag {
 	 * @return Name of beanbag
 	 */
 	public String getName() {
-		return this.name;
+		return StringDictionary.GLOBAL.get(this.name);
 	}
 	
 	/**
@@ -120,6 +184,22 @@ public class BeanBag {
 		return this.information;
 	}
 	
+	/**
+	 * Getter method for the dictionary code of the manufacturer.
+	 * @return Code of the manufacturer in {@link StringDictionary#GLOBAL}
+	 */
+	public int getManufacturerCode() {
+		return this.manufacturer;
+	}
+	
+	/**
+	 * Getter method for the dictionary code of the name.
+	 * @return Code of the name in {@link StringDictionary#GLOBAL}
+	 */
+	public int getNameCode() {
+		return this.name;
+	}
+	
 	/**
 	 * Method checks if beanbags have different values for
 	 * manufacturer, name and information.
@@ -130,7 +210,103 @@ public class BeanBag {
 	 */
 	public boolean isMismatched(BeanBag b) {
 		//boolean expression comparing beanbag attributes
-		return !((this.information == b.information) && (this.manufacturer == b.manufacturer) && (this.name == b.name));
+		return isMismatched(b.manufacturer, b.name, b.information); //compare codes, and information as text
+	}
+	
+	/**
+	 * Method checks if the given values for manufacturer, name and
+	 * information differ from those of this beanbag.
+	 * 
+	 * @param manufacturer Manufacturer to compare to
+	 * @param name Name to compare to
+	 * @param information Information to compare to
+	 * 
+	 * @return <code>true</code> if a mismatch has occurred
+	 */
+	public boolean isMismatched(String manufacturer, String name, String information) {
+		//strings with no code cannot match, so the lookups never grow the dictionary
+		StringDictionary d = StringDictionary.GLOBAL;
+		return isMismatched(d.find(manufacturer), d.find(name), information);
+	}
+	
+	/**
+	 * Method checks if the given dictionary codes for manufacturer and name,
+	 * and the given information, differ from those of this beanbag.
+	 * 
+	 * @param manufacturer Code of manufacturer to compare to
+	 * @param name Code of name to compare to
+	 * @param information Information to compare to
+	 * 
+	 * @return <code>true</code> if a mismatch has occurred
+	 */
+	public boolean isMismatched(int manufacturer, int name, String information) {
+		//equal strings have equal codes, so two int comparisons decide all but the free text
+		return this.manufacturer != manufacturer || this.name != name || !Objects.equals(this.information, information);
+	}
+
+	/*
+	 * Returns the store version of the last change to this beanbag
+	 */
+	long getVersion() {
+		return version;
+	}
+	
+	/*
+	 * Stamps a new beanbag with the store version that created it
+	 */
+	void setVersion(long v) {
+		version = v;
+	}
+	
+	/*
+	 * Keeps a copy of the current state as the older version, before the
+	 * store changes this beanbag at version v. The fence stops the change
+	 * becoming visible before the new version, so a racing reader sees it move.
+	 */
+	void preserve(long v) {
+		older = new BeanBag(this);
+		version = v;
+		VarHandle.releaseFence();
+	}
+	
+	/*
+	 * Drops the older versions that no view at or after version oldest can see
+	 */
+	void prune(long oldest) {
+		for (BeanBag b = this; b != null; b = b.older) {
+			if (b.version <= oldest) {
+				b.older = null; //b is visible to every open view, so nothing needs the states before it
+				return;
+			}
+		}
+	}
+	
+	/*
+	 * Returns true if older versions are being kept
+	 */
+	boolean hasOlder() {
+		return older != null;
+	}
+	
+	/*
+	 * Returns an immutable copy of this beanbag as it was at store version v,
+	 * or null if it did not exist then. Safe to call while the store changes it.
+	 */
+	BeanBag asOf(long v) {
+		long m = version;
+		if (m <= v) {
+			BeanBag copy = new BeanBag(this);
+			VarHandle.acquireFence(); //read the fields before checking they were not changed meanwhile
+			if (version == m) {
+				return copy;
+			}
+		}
+		for (BeanBag b = older; b != null; b = b.older) { //older versions are never changed, only unlinked
+			if (b.version <= v) {
+				return b;
+			}
+		}
+		return null;
 	}
 
 }
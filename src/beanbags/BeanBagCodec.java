@@ -0,0 +1,343 @@
+package beanbags;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Versioned binary encoder/decoder for lists of {@link BeanBag} and for
+ * whole stores, used in place of Java serialization (which cannot write a
+ * BeanBag at all, and writes class descriptors and boxed fields for
+ * everything else).
+ * <p>
+ * A stream starts with the bytes <code>BBC</code>, a version byte and a
+ * kind byte (list or store). Counts, IDs and numbers are varints (signed
+ * values zig-zag encoded, so the usual small values take one or two bytes)
+ * and strings are a signed varint UTF-8 length followed by the bytes, with
+ * length -1 and no bytes for a null string. Encoding goes
+ * through a single reusable buffer and encodes strings in place, so it
+ * allocates nothing per record.
+ * <p>
+ * A list is a count followed by records of num, price, ID, value,
+ * manufacturer, name and information. A store is a count of IDs followed by
+ * each ID's stock record and then its sales: 0 if it has not been sold
+ * since the last reset, otherwise one more than the number sold, followed
+ * by the value sold.
+ *
+ * @author George Rogers
+ * @version 1.0
+ */
+public final class BeanBagCodec {
+
+	private static final byte[] MAGIC = {'B', 'B', 'C'};
+	private static final byte VERSION = 2; //2: string lengths are signed, -1 for null
+	private static final byte LIST = 1;
+	private static final byte STORE = 2;
+	private static final int BUFFER = 1 << 16;
+
+	private BeanBagCodec() { }
+
+	/**
+	 * Method writes a list of BeanBag objects to a channel.
+	 * @param list list holding only BeanBag objects
+	 * @param channel channel to write to
+	 * @throws IOException if the channel cannot be written
+	 */
+	public static void writeList(ObjectArrayList list, WritableByteChannel channel) throws IOException {
+		Encoder out = new Encoder(channel, LIST);
+		out.putVarint(list.size());
+		for (int i = 0; i < list.size(); i++) {
+			BeanBag b = (BeanBag)list.get(i);
+			out.putBeanBag(b);
+		}
+		out.flush();
+	}
+
+	/**
+	 * Method reads a list written by {@link #writeList}.
+	 * @param channel channel to read from
+	 * @return list of BeanBag objects
+	 * @throws IOException if the channel cannot be read or does not hold a list
+	 */
+	public static ObjectArrayList readList(ReadableByteChannel channel) throws IOException {
+		Decoder in = new Decoder(channel, LIST);
+		int count = in.getCount();
+		ObjectArrayList list = new ObjectArrayList();
+		for (int i = 0; i < count; i++) {
+			int num = in.getSigned();
+			int price = in.getSigned();
+			int id = in.getUnsigned();
+			long value = in.getSignedLong();
+			BeanBag b = new BeanBag(num, in.getString(), in.getString(), id, in.getString());
+			b.setPrice(price);
+			b.setValue(value);
+			list.add(b);
+		}
+		return list;
+	}
+
+	/**
+	 * Method writes the stock and sales state of a store to a channel.
+	 * @param store store to write
+	 * @param channel channel to write to
+	 * @throws IOException if the channel cannot be written
+	 */
+	public static void writeStore(CDStore store, WritableByteChannel channel) throws IOException {
+		Encoder out = new Encoder(channel, STORE);
+		int rows = store.stockRecordCount();
+		out.putVarint(rows);
+		for (int row = 0; row < rows; row++) {
+			BeanBag b = store.stockRecord(row);
+			out.putBeanBag(b);
+			BeanBag sold = store.soldRecord(b.getID());
+			if (sold == null) {
+				out.putVarint(0);
+			} else {
+				out.putVarint(sold.getNum() + 1L);
+				out.putVarint(zigZag(sold.getValue()));
+			}
+		}
+		out.flush();
+	}
+
+	/**
+	 * Method reads a store written by {@link #writeStore} into an empty store.
+	 * @param channel channel to read from
+	 * @param store empty store to load into
+	 * @throws IOException if the channel cannot be read or does not hold a store
+	 */
+	public static void readStore(ReadableByteChannel channel, CDStore store) throws IOException {
+		Decoder in = new Decoder(channel, STORE);
+		int rows = in.getCount();
+		for (int row = 0; row < rows; row++) {
+			int num = in.getSigned();
+			int price = in.getSigned();
+			int id = in.getUnsigned();
+			in.getSignedLong(); //stock records carry no value
+			String manufacturer = in.getString();
+			String name = in.getString();
+			String information = in.getString();
+			int sold = in.getUnsigned() - 1;
+			long value = sold < 0 ? 0 : in.getSignedLong();
+			store.restore(id, num, price, manufacturer, name, information, sold, value);
+		}
+	}
+
+	/*
+	 * Maps signed values to unsigned so small magnitudes encode short
+	 */
+	private static long zigZag(long v) {
+		return (v << 1) ^ (v >> 63);
+	}
+
+	/*
+	 * Buffered varint writer over a channel
+	 */
+	private static final class Encoder {
+		private final WritableByteChannel channel;
+		private final ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER);
+
+		Encoder(WritableByteChannel channel, byte kind) {
+			this.channel = channel;
+			buf.put(MAGIC).put(VERSION).put(kind);
+		}
+
+		void ensure(int bytes) throws IOException {
+			if (buf.remaining() < bytes) {
+				flush();
+			}
+		}
+
+		void flush() throws IOException {
+			buf.flip();
+			while (buf.hasRemaining()) {
+				channel.write(buf);
+			}
+			buf.clear();
+		}
+
+		void putVarint(long v) throws IOException {
+			ensure(10);
+			while ((v & ~0x7FL) != 0) {
+				buf.put((byte)((v & 0x7F) | 0x80));
+				v >>>= 7;
+			}
+			buf.put((byte)v);
+		}
+
+		void putBeanBag(BeanBag b) throws IOException {
+			putVarint(zigZag(b.getNum()));
+			putVarint(zigZag(b.getPrice()));
+			putVarint(b.getID() & 0xFFFFFFFFL);
+			putVarint(zigZag(b.getValue()));
+			putString(b.getManufacturer());
+			putString(b.getName());
+			putString(b.getInfo());
+		}
+
+		/*
+		 * Writes the UTF-8 length (-1 for null) then encodes the chars straight into the buffer
+		 */
+		void putString(String s) throws IOException {
+			if (s == null) {
+				putVarint(zigZag(-1)); //kept apart from "", which a re-add must match exactly
+				return;
+			}
+			int length = s.length();
+			long bytes = 0;
+			for (int i = 0; i < length; i++) {
+				char c = s.charAt(i);
+				if (c < 0x80) {
+					bytes += 1;
+				} else if (c < 0x800) {
+					bytes += 2;
+				} else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+					bytes += 4;
+					i++;
+				} else {
+					bytes += 3;
+				}
+			}
+			putVarint(zigZag(bytes));
+			for (int i = 0; i < length; i++) {
+				ensure(4);
+				char c = s.charAt(i);
+				if (c < 0x80) {
+					buf.put((byte)c);
+				} else if (c < 0x800) {
+					buf.put((byte)(0xC0 | (c >> 6)));
+					buf.put((byte)(0x80 | (c & 0x3F)));
+				} else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+					int cp = Character.toCodePoint(c, s.charAt(++i));
+					buf.put((byte)(0xF0 | (cp >> 18)));
+					buf.put((byte)(0x80 | ((cp >> 12) & 0x3F)));
+					buf.put((byte)(0x80 | ((cp >> 6) & 0x3F)));
+					buf.put((byte)(0x80 | (cp & 0x3F)));
+				} else {
+					buf.put((byte)(0xE0 | (c >> 12)));
+					buf.put((byte)(0x80 | ((c >> 6) & 0x3F)));
+					buf.put((byte)(0x80 | (c & 0x3F)));
+				}
+			}
+		}
+	}
+
+	/*
+	 * Buffered varint reader over a channel
+	 */
+	private static final class Decoder {
+		private final ReadableByteChannel channel;
+		private final ByteBuffer buf = ByteBuffer.allocate(BUFFER);
+		private char[] chars = new char[256]; //reused to decode strings
+
+		Decoder(ReadableByteChannel channel, byte kind) throws IOException {
+			this.channel = channel;
+			buf.flip(); //start empty
+			ensure(MAGIC.length + 2);
+			for (byte m : MAGIC) {
+				if (buf.get() != m) {
+					throw new IOException("Not a bean bag stream");
+				}
+			}
+			byte version = buf.get();
+			if (version != VERSION) {
+				throw new IOException("Unsupported bean bag stream version " + version);
+			}
+			if (buf.get() != kind) {
+				throw new IOException("Bean bag stream holds the wrong kind of data");
+			}
+		}
+
+		/*
+		 * Makes at least the given number of bytes available, reading more if needed
+		 */
+		void ensure(int bytes) throws IOException {
+			if (buf.remaining() >= bytes) {
+				return;
+			}
+			buf.compact();
+			while (buf.position() < bytes) {
+				if (channel.read(buf) < 0) {
+					buf.flip();
+					throw new EOFException("Truncated bean bag stream");
+				}
+			}
+			buf.flip();
+		}
+
+		long getVarint() throws IOException {
+			long v = 0;
+			for (int shift = 0; shift < 64; shift += 7) {
+				ensure(1);
+				byte b = buf.get();
+				v |= (long)(b & 0x7F) << shift;
+				if (b >= 0) {
+					return v;
+				}
+			}
+			throw new IOException("Malformed varint");
+		}
+
+		int getCount() throws IOException {
+			long v = getVarint();
+			if (v > Integer.MAX_VALUE) {
+				throw new IOException("Count out of range");
+			}
+			return (int)v;
+		}
+
+		int getUnsigned() throws IOException {
+			return (int)getVarint();
+		}
+
+		long getSignedLong() throws IOException {
+			long v = getVarint();
+			return (v >>> 1) ^ -(v & 1);
+		}
+
+		int getSigned() throws IOException {
+			return (int)getSignedLong();
+		}
+
+		String getString() throws IOException {
+			long length = getSignedLong();
+			if (length == -1) {
+				return null;
+			}
+			if (length < 0 || length > Integer.MAX_VALUE) {
+				throw new IOException("String length out of range");
+			}
+			int bytes = (int)length;
+			if (chars.length < bytes) {
+				chars = new char[Math.max(bytes, chars.length * 2)];
+			}
+			int n = 0;
+			int end = bytes;
+			while (end > 0) {
+				ensure(1);
+				int b = buf.get() & 0xFF;
+				end--;
+				if (b < 0x80) {
+					chars[n++] = (char)b;
+				} else if (b < 0xE0) {
+					ensure(1);
+					end--;
+					chars[n++] = (char)(((b & 0x1F) << 6) | (buf.get() & 0x3F));
+				} else if (b < 0xF0) {
+					ensure(2);
+					end -= 2;
+					chars[n++] = (char)(((b & 0x0F) << 12) | ((buf.get() & 0x3F) << 6) | (buf.get() & 0x3F));
+				} else {
+					ensure(3);
+					end -= 3;
+					int cp = ((b & 0x07) << 18) | ((buf.get() & 0x3F) << 12) | ((buf.get() & 0x3F) << 6)
+							| (buf.get() & 0x3F);
+					chars[n++] = Character.highSurrogate(cp);
+					chars[n++] = Character.lowSurrogate(cp);
+				}
+			}
+			return new String(chars, 0, n);
+		}
+	}
+}
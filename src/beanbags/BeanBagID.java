@@ -0,0 +1,81 @@
+package beanbags;
+
+/**
+ * Static helpers for bean bag IDs. An ID is an eight character hexadecimal
+ * number, held internally as the primitive <code>int</code> with the same
+ * 32 bits, so IDs compare by value and never by <code>String</code> identity.
+ * Parsing is a single pass over the characters and does not allocate.
+ *
+ * @author George Rogers
+ * @version 1.0
+ */
+public final class BeanBagID {
+
+	/** Value returned by {@link #parse(String)} for an illegal ID. */
+	public static final long INVALID = -1L;
+
+	private static final int LENGTH = 8;
+	private static final char[] DIGITS = "0123456789ABCDEF".toCharArray();
+
+	private BeanBagID() { }
+
+	/**
+	 * Method to validate and parse an ID in a single pass.
+	 * @param id ID to parse
+	 * @return ID as an unsigned value in the range 0 to 0xFFFFFFFF, or {@link #INVALID}
+	 *         if the ID is not an 8 char hexadecimal number
+	 */
+	public static long parse(String id) {
+		if (id == null || id.length() != LENGTH) {
+			return INVALID;
+		}
+		int value = 0;
+		for (int i = 0; i < LENGTH; i++) {
+			int digit = digit(id.charAt(i));
+			if (digit < 0) {
+				return INVALID;
+			}
+			value = (value << 4) | digit;
+		}
+		return value & 0xFFFFFFFFL; //widen without sign extension
+	}
+
+	/*
+	 * Returns the value of a hexadecimal character, or -1 if it is not one
+	 */
+	private static int digit(char c) {
+		if (c >= '0' && c <= '9') {
+			return c - '0';
+		}
+		if (c >= 'a' && c <= 'f') {
+			return c - 'a' + 10;
+		}
+		if (c >= 'A' && c <= 'F') {
+			return c - 'A' + 10;
+		}
+		return -1;
+	}
+
+	/**
+	 * Method to check that an ID is a positive, 8 char hexadecimal number.
+	 * @param id ID to validate
+	 * @return <code>true</code> if ID is valid, <code>false</code> if ID is not valid
+	 */
+	public static boolean isValid(String id) {
+		return parse(id) != INVALID;
+	}
+
+	/**
+	 * Method to format an int ID as its 8 char (upper case) hexadecimal string.
+	 * @param id ID to format
+	 * @return hexadecimal representation of the ID
+	 */
+	public static String toString(int id) {
+		char[] chars = new char[LENGTH];
+		for (int i = LENGTH - 1; i >= 0; i--) {
+			chars[i] = DIGITS[id & 0xF];
+			id >>>= 4;
+		}
+		return new String(chars);
+	}
+}
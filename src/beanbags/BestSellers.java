@@ -0,0 +1,246 @@
+package beanbags;
+
+/**
+ * Live ranking of the IDs with the highest totals (e.g. units sold or
+ * revenue), maintained as sales happen rather than by sorting every record
+ * on request. Entries are kept in a min-heap keyed by total, with a hash
+ * index from ID to heap position, so an update costs O(1) when the ID is
+ * not ranked and cannot enter, and O(log k) otherwise. Memory is bounded by
+ * the size of the heap, however many IDs sell.
+ * <p>
+ * An {@link #exact(int) exact} ranking is fed the running total of each ID
+ * as it changes, so it needs the caller to keep every total (as the sold
+ * records of {@link CDStore} do) but is always exact. An
+ * {@link #approximate(int, int) approximate} ranking is fed only the
+ * increments and keeps its own counters for a bounded number of IDs, using
+ * the Space-Saving algorithm (Metwally, Agrawal and El Abbadi): an ID that
+ * is not counted takes over the smallest counter. Reported totals are then
+ * upper bounds, over by at most the error reported with them, and any ID
+ * whose true total exceeds (sum of all increments) / counters is ranked.
+ *
+ * @author George Rogers
+ * @version 1.0
+ */
+public class BestSellers {
+
+	private final int k; //number of IDs reported
+	private final boolean exact;
+	private final int[] ids;
+	private final long[] totals;
+	private final long[] errors; //approximate only: amount a total may be over by
+	private final IDIndex positions; //ID -> position in the heap
+	private int size;
+
+	private BestSellers(int k, int capacity, boolean exact) {
+		if (k < 1 || capacity < k) {
+			throw new IllegalArgumentException("Need 1 <= k <= counters");
+		}
+		this.k = k;
+		this.exact = exact;
+		this.ids = new int[capacity];
+		this.totals = new long[capacity];
+		this.errors = new long[capacity];
+		this.positions = new IDIndex(capacity);
+	}
+
+	/**
+	 * Creates an exact ranking of the top k IDs, to be fed running totals.
+	 * @param k number of IDs to rank
+	 * @return empty ranking
+	 */
+	public static BestSellers exact(int k) {
+		return new BestSellers(k, k, true);
+	}
+
+	/**
+	 * Creates an approximate ranking of the top k IDs that counts at most the
+	 * given number of IDs, to be fed increments.
+	 * @param k number of IDs to rank
+	 * @param counters number of IDs counted (at least k; more gives smaller errors)
+	 * @return empty ranking
+	 */
+	public static BestSellers approximate(int k, int counters) {
+		return new BestSellers(k, counters, false);
+	}
+
+	/**
+	 * Method records that an ID's total has grown.
+	 * @param id ID whose total has grown
+	 * @param increment amount the total grew by (used by an approximate ranking)
+	 * @param total new running total (used by an exact ranking)
+	 */
+	public void record(int id, long increment, long total) {
+		int p = positions.get(id);
+		if (p != IDIndex.ABSENT) {
+			totals[p] = exact ? total : totals[p] + increment;
+			siftDown(p);
+		} else if (size < ids.length) {
+			p = size++;
+			ids[p] = id;
+			totals[p] = exact ? total : increment;
+			errors[p] = 0;
+			positions.put(id, p);
+			siftUp(p);
+		} else if (!exact) {
+			//Space-Saving: the new ID takes over the smallest counter, inheriting its count as error
+			positions.remove(ids[0]);
+			ids[0] = id;
+			errors[0] = totals[0];
+			totals[0] += increment;
+			positions.put(id, 0);
+			siftDown(0);
+		} else if (total > totals[0]) {
+			positions.remove(ids[0]); //every unranked ID is at most the smallest ranked total
+			ids[0] = id;
+			totals[0] = total;
+			positions.put(id, 0);
+			siftDown(0);
+		}
+	}
+
+	/*
+	 * Moves the entry at p towards the root while it is smaller than its parent
+	 */
+	private void siftUp(int p) {
+		while (p > 0) {
+			int parent = (p - 1) >>> 1;
+			if (totals[parent] <= totals[p]) {
+				break;
+			}
+			swap(p, parent);
+			p = parent;
+		}
+	}
+
+	/*
+	 * Moves the entry at p towards the leaves while it is larger than a child
+	 */
+	private void siftDown(int p) {
+		while (true) {
+			int child = 2 * p + 1;
+			if (child >= size) {
+				break;
+			}
+			if (child + 1 < size && totals[child + 1] < totals[child]) {
+				child++;
+			}
+			if (totals[p] <= totals[child]) {
+				break;
+			}
+			swap(p, child);
+			p = child;
+		}
+	}
+
+	private void swap(int a, int b) {
+		int id = ids[a];
+		long total = totals[a];
+		long error = errors[a];
+		ids[a] = ids[b];
+		totals[a] = totals[b];
+		errors[a] = errors[b];
+		ids[b] = id;
+		totals[b] = total;
+		errors[b] = error;
+		positions.put(ids[a], a);
+		positions.put(ids[b], b);
+	}
+
+	/**
+	 * Method changes the ID of a ranked entry, e.g. when the ID is replaced.
+	 * @param oldId ID to rename
+	 * @param newId new ID
+	 */
+	public void rename(int oldId, int newId) {
+		int p = positions.remove(oldId);
+		if (p != IDIndex.ABSENT) {
+			ids[p] = newId;
+			positions.put(newId, p);
+		}
+	}
+
+	/**
+	 * Method removes an ID's entry, e.g. when the ID leaves the store. An
+	 * exact ranking then has a free place, which the IDs it does not rank
+	 * only take as their totals next change, so a caller keeping every
+	 * total should feed them again.
+	 * @param id ID to remove
+	 * @return <code>true</code> if the ID was ranked
+	 */
+	public boolean remove(int id) {
+		int p = positions.remove(id);
+		if (p == IDIndex.ABSENT) {
+			return false;
+		}
+		int last = --size;
+		if (p != last) {
+			ids[p] = ids[last];
+			totals[p] = totals[last];
+			errors[p] = errors[last];
+			positions.put(ids[p], p);
+			siftDown(p);
+			siftUp(p);
+		}
+		return true;
+	}
+
+	/**
+	 * Method removes every entry.
+	 */
+	public void clear() {
+		positions.clear();
+		size = 0;
+	}
+
+	/**
+	 * Method writes the top IDs, highest total first, into the given arrays,
+	 * which should have room for k entries. Does not allocate.
+	 * @param topIds array to fill with IDs (see {@link BeanBagID})
+	 * @param topTotals array to fill with their totals
+	 * @param topErrors array to fill with the amount each total may be over
+	 *        by (always 0 for an exact ranking), or <code>null</code>
+	 * @return number of entries written, at most k
+	 */
+	public int top(int[] topIds, long[] topTotals, long[] topErrors) {
+		int n = 0;
+		int limit = Math.min(k, Math.min(topIds.length, topTotals.length));
+		if (limit == 0) {
+			return 0; //no room, and no last entry to compare with
+		}
+		for (int p = 0; p < size; p++) { //insertion into the sorted output: O(size * k), fine for small k
+			long total = totals[p];
+			if (n == limit && total <= topTotals[n - 1]) {
+				continue;
+			}
+			int i = n < limit ? n++ : n - 1;
+			while (i > 0 && topTotals[i - 1] < total) {
+				topIds[i] = topIds[i - 1];
+				topTotals[i] = topTotals[i - 1];
+				if (topErrors != null) {
+					topErrors[i] = topErrors[i - 1];
+				}
+				i--;
+			}
+			topIds[i] = ids[p];
+			topTotals[i] = total;
+			if (topErrors != null) {
+				topErrors[i] = errors[p];
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * Method returns the top IDs, highest total first.
+	 * @return up to k IDs as 8 char hexadecimal strings
+	 */
+	public String[] top() {
+		int[] topIds = new int[k];
+		int n = top(topIds, new long[k], null);
+		String[] result = new String[n];
+		for (int i = 0; i < n; i++) {
+			result[i] = BeanBagID.toString(topIds[i]);
+		}
+		return result;
+	}
+}
@@ -0,0 +1,129 @@
+package beanbags;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Adapter presenting an AsyncCutDownStore as a CutDownStore: each method
+ * makes the asynchronous call and waits for its future, rethrowing the
+ * exception the store failed it with. Waiting parks the calling thread, so
+ * on a JDK with virtual threads thousands of callers, each on its own
+ * virtual thread, can block on one {@link ActorStore} while holding only
+ * the carrier threads that are running.
+ *
+ * @author George Rogers
+ * @version 1.0
+ */
+public class BlockingStore implements CutDownStore {
+
+	private final AsyncCutDownStore store;
+
+	/**
+	 * Creates an adapter for an asynchronous store.
+	 * @param store store to call
+	 */
+	public BlockingStore(AsyncCutDownStore store) {
+		this.store = store;
+	}
+
+	/*
+	 * Waits for a future and returns its result, rethrowing the exception it failed with. The store fails a
+	 * future only with an exception the matching CutDownStore method declares, or an unchecked one.
+	 */
+	private static <T> T await(CompletableFuture<T> f) {
+		try {
+			return f.join();
+		} catch (CompletionException e) {
+			throw BlockingStore.<RuntimeException>rethrow(e.getCause());
+		}
+	}
+
+	/*
+	 * Throws any exception without wrapping it, the compiler treating it as unchecked
+	 */
+	@SuppressWarnings("unchecked")
+	private static <E extends Throwable> E rethrow(Throwable e) throws E {
+		throw (E)e;
+	}
+
+	@Override
+	public void addBeanBags(int num, String manufacturer, String name, String id, short year, byte month)
+			throws IllegalNumberOfBeanBagsAddedException, BeanBagMismatchException, IllegalIDException,
+			InvalidMonthException {
+		await(store.addBeanBags(num, manufacturer, name, id, year, month));
+	}
+
+	@Override
+	public void addBeanBags(int num, String manufacturer, String name, String id, short year, byte month,
+			String information) throws IllegalNumberOfBeanBagsAddedException, BeanBagMismatchException,
+			IllegalIDException, InvalidMonthException {
+		await(store.addBeanBags(num, manufacturer, name, id, year, month, information));
+	}
+
+	@Override
+	public void setBeanBagPrice(String id, int priceInPence)
+			throws InvalidPriceException, BeanBagIDNotRecognisedException, IllegalIDException {
+		await(store.setBeanBagPrice(id, priceInPence));
+	}
+
+	@Override
+	public void sellBeanBags(int num, String id)
+			throws BeanBagNotInStockException, InsufficientStockException, IllegalNumberOfBeanBagsSoldException,
+			PriceNotSetException, BeanBagIDNotRecognisedException, IllegalIDException {
+		await(store.sellBeanBags(num, id));
+	}
+
+	@Override
+	public int beanBagsInStock() {
+		return await(store.beanBagsInStock());
+	}
+
+	@Override
+	public int beanBagsInStock(String id) throws BeanBagIDNotRecognisedException, IllegalIDException {
+		return await(store.beanBagsInStock(id));
+	}
+
+	@Override
+	public int getNumberOfDifferentBeanBagsInStock() {
+		return await(store.getNumberOfDifferentBeanBagsInStock());
+	}
+
+	@Override
+	public int getNumberOfSoldBeanBags() {
+		return await(store.getNumberOfSoldBeanBags());
+	}
+
+	@Override
+	public int getNumberOfSoldBeanBags(String id) throws BeanBagIDNotRecognisedException, IllegalIDException {
+		return await(store.getNumberOfSoldBeanBags(id));
+	}
+
+	@Override
+	public int getTotalPriceOfSoldBeanBags() {
+		return await(store.getTotalPriceOfSoldBeanBags());
+	}
+
+	@Override
+	public int getTotalPriceOfSoldBeanBags(String id) throws BeanBagIDNotRecognisedException, IllegalIDException {
+		return await(store.getTotalPriceOfSoldBeanBags(id));
+	}
+
+	@Override
+	public String getBeanBagDetails(String id) throws BeanBagIDNotRecognisedException, IllegalIDException {
+		return await(store.getBeanBagDetails(id));
+	}
+
+	@Override
+	public void empty() {
+		await(store.empty());
+	}
+
+	@Override
+	public void resetSaleAndCostTracking() {
+		await(store.resetSaleAndCostTracking());
+	}
+
+	@Override
+	public void replace(String oldId, String replacementId) throws BeanBagIDNotRecognisedException, IllegalIDException {
+		await(store.replace(oldId, replacementId));
+	}
+}
@@ -1,31 +1,330 @@
 package beanbags;
 import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+import java.util.function.LongSupplier;
 
 /**
- * Implementation of CutDownStore interface.
+ * Implementation of CutDownStore interface, including the batch
+ * operations of BatchCutDownStore and the reservations of
+ * ReservingCutDownStore. Reservations expire through a hierarchical timing
+ * wheel, which is advanced by the operations that depend on what is
+ * reserved rather than by a background thread. Every sale is also recorded
+ * in a {@link SalesLedger} by month of sale and month of manufacture, and
+ * ranks the best sellers since the last reset in {@link BestSellers}.
+ * <p>
+ * {@link #snapshot()} takes a read-only {@link StoreView} of the store in
+ * O(1). Records are versioned: while a view is open, the first change to a
+ * record it can see keeps a copy of the record's old state, and views read
+ * the version they were taken at, so the store never waits for them.
+ * <p>
+ * Every mutation that succeeds is also published to the attached
+ * {@link MutationFeed}, if there is one. Sales, additions, price changes,
+ * replaces and the aggregate queries emit {@link StoreEvents} to JDK
+ * Flight Recorder.
+ * <p>
+ * Rejected calls throw a shared, stackless instance of their exception, so
+ * a rejection costs little more than the checks. Where rejections are
+ * common, {@link #trySell(int, String)} returns a {@link StoreStatus} code
+ * instead of throwing at all.
  *
  * @author George Rogers
  * @version 1.0
  */
-public class CDStore implements CutDownStore {
+public class CDStore implements BatchCutDownStore, ReservingCutDownStore {
+	
+	/** Hold time of a reservation made without one (15 minutes). */
+	public static final long DEFAULT_HOLD_MILLIS = 15 * 60 * 1000;
+	private static final long TICK_MILLIS = 100; //granularity of reservation expiry
+	
+	/** Number of best sellers ranked. */
+	public static final int BEST_SELLERS = 100;
 	
 	private ObjectArrayList storeList = new ObjectArrayList();
 	private ObjectArrayList soldList = new ObjectArrayList();
+	private IDIndex storeIndex = new IDIndex(); //ID -> row in storeList
+	private IDIndex soldIndex = new IDIndex(); //ID -> row in soldList
+	
+	//running store-wide totals, kept up to date by every mutation so reads are O(1)
+	private long stockTotal; //bean bags in stock
+	private int differentInStock; //IDs with at least one bean bag in stock
+	private long soldTotal; //bean bags sold
+	private long soldValue; //value of bean bags sold (in pence)
+	
+	private int[] batchScratch = new int[0]; //per-line rows or keys, reused across batches
+	private int[] batchRows = new int[0]; //distinct rows a batch touches, reused across batches
+	private int[] batchUnits = new int[0]; //units a batch adds to or takes from each row; all 0 between batches
+	
+	private final Reservations reservations;
+	private final long holdMillis;
+	private final IntConsumer release = this::release; //expiry callback, created once
+	private final SalesLedger ledger;
+	private final BestSellers byUnits = BestSellers.exact(BEST_SELLERS); //fed by the sold records
+	private final BestSellers byRevenue = BestSellers.exact(BEST_SELLERS);
+	
+	//record versions for StoreView; the version only advances when a view is taken
+	private long version = 1; //stamped on records changed now; a view sees the versions up to its own
+	private final Object viewLock = new Object(); //views may be closed from any thread
+	private long[] openViews = new long[4]; //versions of the open views, ascending
+	private int openViewCount;
+	private volatile long newestView = -1; //version of the newest open view, -1 if none
+	private volatile long oldestView = Long.MAX_VALUE; //version of the oldest open view
+	private volatile long changes; //odd while lists or indexes an open view may read are changing
+	private volatile Rekey rekeys; //IDs replaced while views were open, newest first
+	
+	private MutationFeed feed; //null unless a feed is attached
+	
+	/*
+	 * Entry of the log of replaced IDs, so views can still find a record by the ID it had
+	 */
+	private static final class Rekey {
+		final long version;
+		final int key;
+		final int row;
+		final boolean sold;
+		Rekey next;
+		
+		Rekey(long version, int key, int row, boolean sold, Rekey next) {
+			this.version = version;
+			this.key = key;
+			this.row = row;
+			this.sold = sold;
+			this.next = next;
+		}
+	}
+	
+	/**
+	 * Creates an empty store whose reservations are held for
+	 * {@link #DEFAULT_HOLD_MILLIS} by the system clock.
+	 */
+	public CDStore() {
+		this(DEFAULT_HOLD_MILLIS, System::currentTimeMillis);
+	}
+	
+	/**
+	 * Creates an empty store with the given reservation hold time and clock.
+	 * @param holdMillis milliseconds before a reservation made without a hold time expires
+	 * @param clock source of the current time in milliseconds
+	 */
+	public CDStore(long holdMillis, LongSupplier clock) {
+		if (holdMillis < 0) {
+			throw new IllegalArgumentException("Hold time must not be negative");
+		}
+		this.holdMillis = holdMillis;
+		this.reservations = new Reservations(clock, TICK_MILLIS);
+		this.ledger = new SalesLedger(clock, key -> storeIndex.get(key)); //follows storeIndex when it is replaced
+	}
+	
+	/**
+	 * Method returns the ledger of this store's sales by month. Unlike the
+	 * sales counters it is not cleared by {@link #resetSaleAndCostTracking()},
+	 * only by {@link #empty()}.
+	 * @return sales ledger
+	 */
+	public SalesLedger getSalesLedger() {
+		return ledger;
+	}
+	
+	/**
+	 * Method returns the exact ranking of the {@link #BEST_SELLERS} IDs that
+	 * have sold the most bean bags since the last reset.
+	 * @return ranking by number sold
+	 */
+	public BestSellers getBestSellersByUnits() {
+		return byUnits;
+	}
+	
+	/**
+	 * Method returns the exact ranking of the {@link #BEST_SELLERS} IDs whose
+	 * sales have been worth the most since the last reset.
+	 * @return ranking by value sold (in pence)
+	 */
+	public BestSellers getBestSellersByRevenue() {
+		return byRevenue;
+	}
+	
+	/**
+	 * Method attaches a feed that every successful add, price change, sale,
+	 * replace, reset and empty is published to from then on. The store is
+	 * the feed's only producer, so a feed must not be attached to two stores.
+	 * @param feed feed to publish to, or <code>null</code> to detach the current one
+	 */
+	public void setMutationFeed(MutationFeed feed) {
+		this.feed = feed;
+	}
+	
+	/**
+	 * Method returns the attached feed.
+	 * @return feed mutations are published to, or <code>null</code> if none is attached
+	 */
+	public MutationFeed getMutationFeed() {
+		return feed;
+	}
+	
+	/*
+	 * Publishes a completed add to the feed, if one is attached
+	 */
+	private void publishAdd(BeanBag b, int num, short year, byte month) {
+		if (feed != null) {
+			feed.publishAdd(b.getID(), num, year, month, b.getManufacturerCode(), b.getNameCode(), b.getInfo());
+		}
+	}
 	
 	/**
 	 * Method to search ObjectArrayLists for a BeanBag object with the given ID.
+	 * The search goes through the hash index kept alongside the list, so it does not scan.
 	 * @param id ID of beanbag to search for
 	 * @param list BeanBag object array to search
+	 * @param index hash index of the rows of <code>list</code>
 	 * @return <code>null</code> if beanbag does not exist, casted BeanBag object if beanbag does exist
 	 */
-	public BeanBag getBeanBagByID(String id, ObjectArrayList list) {
-		for (int i=0; i<list.size(); i++) { //loop over ObjectArrayList
-			BeanBag b = (BeanBag)list.get(i); //cast Object to BeanBag instance
-			if (b.getID()==id) {
-				return b;
+	public BeanBag getBeanBagByID(int id, ObjectArrayList list, IDIndex index) {
+		int row = index.get(id); //O(1) lookup of row in list
+		if (row == IDIndex.ABSENT) {
+			return null; //return null if no ID match found
+		}
+		return (BeanBag)list.get(row);
+	}
+	
+	/*
+	 * Appends a BeanBag to a list and records its row in the matching index
+	 */
+	private void addToList(BeanBag b, ObjectArrayList list, IDIndex index) {
+		b.setVersion(version); //invisible to the views already taken
+		beginChange();
+		index.put(b.getID(), list.size());
+		list.add(b);
+		endChange();
+	}
+	
+	/**
+	 * Method takes a read-only view of the store as it is now. The view
+	 * stays consistent while the store carries on changing, and reading it
+	 * never blocks the store. Taking a view is O(1) and its memory cost is
+	 * proportional to the changes made while it is open. Take views on the
+	 * thread that uses the store; a view may then be read from any thread.
+	 * Close views when done with them so old versions can be dropped.
+	 * @return view of the store at this point
+	 */
+	public StoreView snapshot() {
+		long v = version++; //changes from now on are newer than the view
+		synchronized (viewLock) {
+			if (openViewCount == openViews.length) {
+				openViews = Arrays.copyOf(openViews, openViewCount * 2);
+			}
+			openViews[openViewCount++] = v; //versions only grow, so the array stays sorted
+			newestView = v;
+			oldestView = openViews[0];
+		}
+		return new StoreView(this, v, storeList, storeIndex, soldList, soldIndex, stockTotal, differentInStock,
+				soldTotal, soldValue);
+	}
+	
+	/*
+	 * Forgets a closed view, so the versions only it could see are dropped as records change
+	 */
+	void closeView(long v) {
+		synchronized (viewLock) {
+			for (int i = 0; i < openViewCount; i++) {
+				if (openViews[i] == v) {
+					System.arraycopy(openViews, i + 1, openViews, i, --openViewCount - i);
+					break;
+				}
+			}
+			newestView = openViewCount == 0 ? -1 : openViews[openViewCount - 1];
+			oldestView = openViewCount == 0 ? Long.MAX_VALUE : openViews[0];
+		}
+	}
+	
+	/*
+	 * Keeps the current state of a record that an open view can see, before it is changed
+	 */
+	private void touch(BeanBag b) {
+		if (b.getVersion() <= newestView) {
+			b.preserve(version);
+		}
+		if (b.hasOlder()) {
+			b.prune(oldestView);
+		}
+	}
+	
+	/*
+	 * Marks the start of a change to the lists or indexes, which open views read without locking
+	 */
+	private void beginChange() {
+		if (newestView >= 0) {
+			changes++; //odd: views retry lookups that overlap the change
+			VarHandle.storeStoreFence();
+		}
+	}
+	
+	/*
+	 * Marks the end of a change started by beginChange()
+	 */
+	private void endChange() {
+		if ((changes & 1) != 0) {
+			changes++;
+		}
+	}
+	
+	/*
+	 * Looks up a record as it was at version v, for a view holding the given
+	 * list and index. Runs on the view's thread while the store changes, so
+	 * like an optimistic read the lookup is retried if a change overlapped it.
+	 */
+	BeanBag find(int key, ObjectArrayList list, IDIndex index, boolean sold, long v) {
+		while (true) {
+			long c = changes;
+			if ((c & 1) == 0) {
+				BeanBag b;
+				try {
+					b = versionOf(key, index.get(key), list, v);
+					for (Rekey r = rekeys; b == null && r != null && r.version > v; r = r.next) {
+						if (r.key == key && r.sold == sold) { //the ID was replaced after the view was taken
+							b = versionOf(key, r.row, list, v);
+						}
+					}
+				} catch (RuntimeException e) {
+					b = null; //a racing read can see a list mid-change; the check below retries it
+				}
+				VarHandle.acquireFence();
+				if (changes == c) {
+					return b;
+				}
 			}
+			Thread.onSpinWait();
+		}
+	}
+	
+	/*
+	 * Returns the record at a row as it was at version v, or null if it did not have the key then
+	 */
+	private static BeanBag versionOf(int key, int row, ObjectArrayList list, long v) {
+		if (row == IDIndex.ABSENT) {
+			return null;
 		}
-		return null; //return null if no ID match found
+		BeanBag b = ((BeanBag)list.get(row)).asOf(v);
+		return b != null && b.getID() == key ? b : null;
+	}
+	
+	/*
+	 * Logs that a key was replaced, for the open views, dropping entries no open view needs
+	 */
+	private void logRekey(int key, int row, boolean sold) {
+		if (newestView < 0) {
+			rekeys = null;
+			return;
+		}
+		Rekey r = new Rekey(version, key, row, sold, rekeys);
+		long oldest = oldestView;
+		for (Rekey e = r; e.next != null; e = e.next) {
+			if (e.next.version <= oldest) {
+				e.next = null;
+				break;
+			}
+		}
+		rekeys = r;
 	}
 	
 	/**
@@ -34,229 +333,934 @@ public class CDStore implements CutDownStore {
 	 * @return <code>true</code> if ID is valid, <code>false</code> if ID is not valid
 	 */
 	public boolean idIsValid(String id) {
-		return id.matches("^[0-9a-fA-F]{8}$"); //regex test using hexadecimal characters and length check (8)
+		return BeanBagID.isValid(id);
+	}
+	
+	/*
+	 * Validates and parses an ID in one pass, throwing if it is illegal
+	 */
+	private int parseID(String id) throws IllegalIDException {
+		long parsed = BeanBagID.parse(id);
+		if (parsed == BeanBagID.INVALID) {
+			throw IllegalIDException.STACKLESS;
+		}
+		return (int)parsed;
 	}
 
 	@Override
 	public void addBeanBags(int num, String manufacturer, String name, String id, short year, byte month)
 			throws IllegalNumberOfBeanBagsAddedException, BeanBagMismatchException, IllegalIDException,
 			InvalidMonthException {
-		//input validation
-		if (num<1) {
-			throw new IllegalNumberOfBeanBagsAddedException();
-		}
-		if (month<1 || month>12) {
-			throw new InvalidMonthException();
-		}
-		if (!idIsValid(id)) {
-			throw new IllegalIDException();
-		}
-		BeanBag b = getBeanBagByID(id, storeList);
-		BeanBag newBeanBag = new BeanBag(num, manufacturer, name, id); //init new BeanBag object with given data
-		if (b == null) {
-			storeList.add(newBeanBag); //add new beanbag if ID doesn't exist
-		} else {
-			if (b.isMismatched(newBeanBag)) {
-				throw new BeanBagMismatchException();
-			}
-			b.setNum(b.getNum() + num); //increase existing stock levels if ID does exist
-		}
+		addBeanBags(num, manufacturer, name, id, year, month, ""); //no information given
 	}
 
 	@Override
 	public void addBeanBags(int num, String manufacturer, String name, String id, short year, byte month,
 			String information) throws IllegalNumberOfBeanBagsAddedException, BeanBagMismatchException,
 			IllegalIDException, InvalidMonthException {
+		StoreEvents.Add event = new StoreEvents.Add();
+		event.begin();
+		try {
+			add(num, manufacturer, name, id, year, month, information);
+		} catch (Exception e) {
+			event.outcome = StoreEvents.outcome(e);
+			throw e;
+		} finally {
+			if (event.shouldCommit()) {
+				event.id = id;
+				event.quantity = num;
+				event.commit();
+			}
+		}
+	}
+	
+	/*
+	 * Adds bean bags; see addBeanBags
+	 */
+	private void add(int num, String manufacturer, String name, String id, short year, byte month,
+			String information) throws IllegalNumberOfBeanBagsAddedException, BeanBagMismatchException,
+			IllegalIDException, InvalidMonthException {
 		//input validation
 		if (num<1) {
-			throw new IllegalNumberOfBeanBagsAddedException();
+			throw IllegalNumberOfBeanBagsAddedException.STACKLESS;
 		}
 		if (month<1 || month>12) {
-			throw new InvalidMonthException();
+			throw InvalidMonthException.STACKLESS;
 		}
-		if (!idIsValid(id)) {
-			throw new IllegalIDException();
-		}
-		BeanBag b = getBeanBagByID(id, storeList);
-		BeanBag newBeanBag = new BeanBag(num, manufacturer, name, id, information); //init new BeanBag object with given data
-		if (b == null) {
-			storeList.add(newBeanBag); //add new beanbag if ID doesn't exit
+		int key = parseID(id);
+		int row = storeIndex.get(key);
+		BeanBag b;
+		if (row == IDIndex.ABSENT) {
+			row = storeList.size();
+			b = new BeanBag(num, manufacturer, name, key, information);
+			addToList(b, storeList, storeIndex); //add new beanbag if ID doesn't exist
+			differentInStock++;
 		} else {
-			if (b.isMismatched(newBeanBag)) {
-				throw new BeanBagMismatchException();
+			b = (BeanBag)storeList.get(row);
+			if (b.isMismatched(manufacturer, name, information)) { //compares dictionary codes, not strings
+				throw BeanBagMismatchException.STACKLESS;
+			}
+			touch(b);
+			if (b.getNum() == 0) {
+				differentInStock++; //ID is back in stock
 			}
 			b.setNum(b.getNum() + num); //increase existing stock levels if ID does exist
 		}
+		stockTotal += num;
+		ledger.stocked(row, year, month); //only the first cohort of an ID is kept
+		publishAdd(b, num, year, month);
 	}
 
 	@Override
 	public void setBeanBagPrice(String id, int priceInPence)
 			throws InvalidPriceException, BeanBagIDNotRecognisedException, IllegalIDException {
+		StoreEvents.Price event = new StoreEvents.Price();
+		event.begin();
+		try {
+			price(id, priceInPence);
+		} catch (Exception e) {
+			event.outcome = StoreEvents.outcome(e);
+			throw e;
+		} finally {
+			if (event.shouldCommit()) {
+				event.id = id;
+				event.price = priceInPence;
+				event.commit();
+			}
+		}
+	}
+	
+	/*
+	 * Sets a price; see setBeanBagPrice
+	 */
+	private void price(String id, int priceInPence)
+			throws InvalidPriceException, BeanBagIDNotRecognisedException, IllegalIDException {
 		//input validation
 		if (priceInPence < 1) {
-			throw new InvalidPriceException();
+			throw InvalidPriceException.STACKLESS;
 		}
-		if (!idIsValid(id)) {
-			throw new IllegalIDException();
-		}
-		BeanBag b = getBeanBagByID(id, storeList);
+		int key = parseID(id);
+		BeanBag b = getBeanBagByID(key, storeList, storeIndex);
 		if (b == null) {
-			throw new BeanBagIDNotRecognisedException();
+			throw BeanBagIDNotRecognisedException.STACKLESS;
 		}
+		touch(b);
 		b.setPrice(priceInPence); //use setter method to edit price
+		if (feed != null) {
+			feed.publishPrice(key, priceInPence);
+		}
 	}
 
 	@Override
 	public void sellBeanBags(int num, String id)
 			throws BeanBagNotInStockException, InsufficientStockException, IllegalNumberOfBeanBagsSoldException,
 			PriceNotSetException, BeanBagIDNotRecognisedException, IllegalIDException {
-		//input validation
-		if (num < 1) {
-			throw new IllegalNumberOfBeanBagsSoldException();
+		StoreEvents.Sell event = new StoreEvents.Sell();
+		event.begin();
+		try {
+			sell(num, id);
+		} catch (Exception e) {
+			event.outcome = StoreEvents.outcome(e);
+			throw e;
+		} finally {
+			if (event.shouldCommit()) {
+				event.id = id;
+				event.quantity = num;
+				event.commit();
+			}
 		}
-		if (!idIsValid(id)) {
-			throw new IllegalIDException();
+	}
+	
+	/*
+	 * Sells bean bags; see sellBeanBags
+	 */
+	private void sell(int num, String id)
+			throws BeanBagNotInStockException, InsufficientStockException, IllegalNumberOfBeanBagsSoldException,
+			PriceNotSetException, BeanBagIDNotRecognisedException, IllegalIDException {
+		switch (sellStatus(num, id)) {
+			case StoreStatus.OK:
+				return;
+			case StoreStatus.ILLEGAL_NUMBER_SOLD:
+				throw IllegalNumberOfBeanBagsSoldException.STACKLESS;
+			case StoreStatus.ILLEGAL_ID:
+				throw IllegalIDException.STACKLESS;
+			case StoreStatus.ID_NOT_RECOGNISED:
+				throw BeanBagIDNotRecognisedException.STACKLESS;
+			case StoreStatus.NOT_IN_STOCK:
+				throw BeanBagNotInStockException.STACKLESS;
+			case StoreStatus.INSUFFICIENT_STOCK:
+				throw InsufficientStockException.STACKLESS;
+			default:
+				throw PriceNotSetException.STACKLESS;
 		}
-		BeanBag b = getBeanBagByID(id, storeList);
-		if (b == null) {
-			throw new BeanBagIDNotRecognisedException();
+	}
+	
+	/**
+	 * Method sells bean bags like {@link #sellBeanBags(int, String)}, but
+	 * returns the outcome as a {@link StoreStatus} code instead of throwing,
+	 * for callers that expect many sales to be rejected.
+	 * @param num number of bean bags to sell
+	 * @param id ID of bean bags
+	 * @return {@link StoreStatus#OK} if the bean bags were sold, otherwise the
+	 *         code of the exception sellBeanBags would have thrown
+	 */
+	public int trySell(int num, String id) {
+		StoreEvents.Sell event = new StoreEvents.Sell();
+		event.begin();
+		int status = sellStatus(num, id);
+		if (event.shouldCommit()) {
+			event.id = id;
+			event.quantity = num;
+			event.outcome = StoreEvents.outcome(status);
+			event.commit();
+		}
+		return status;
+	}
+	
+	/**
+	 * Method sells bean bags like {@link #trySell(int, String)}, given an ID
+	 * already parsed, e.g. from a {@link MutationEvent}.
+	 * @param num number of bean bags to sell
+	 * @param id ID of bean bags, as returned by {@link BeanBagID#parse}
+	 * @return {@link StoreStatus#OK} if the bean bags were sold, otherwise the
+	 *         code of the exception sellBeanBags would have thrown
+	 */
+	public int trySell(int num, int id) {
+		StoreEvents.Sell event = new StoreEvents.Sell();
+		event.begin();
+		int status = sellStatus(num, id);
+		if (event.shouldCommit()) {
+			event.id = BeanBagID.toString(id);
+			event.quantity = num;
+			event.outcome = StoreEvents.outcome(status);
+			event.commit();
+		}
+		return status;
+	}
+	
+	/*
+	 * Sells bean bags, returning the status of the sale
+	 */
+	private int sellStatus(int num, String id) {
+		long key = BeanBagID.parse(id);
+		if (key == BeanBagID.INVALID) {
+			return num < 1 ? StoreStatus.ILLEGAL_NUMBER_SOLD : StoreStatus.ILLEGAL_ID; //number is checked first
 		}
-		if (b.getNum() < num) {
-			throw new InsufficientStockException();
+		return sellStatus(num, (int)key);
+	}
+	
+	/*
+	 * Sells bean bags of a parsed ID, returning the status of the sale
+	 */
+	private int sellStatus(int num, int key) {
+		//input validation
+		if (num < 1) {
+			return StoreStatus.ILLEGAL_NUMBER_SOLD;
+		}
+		int row = storeIndex.get(key);
+		if (row == IDIndex.ABSENT) {
+			return StoreStatus.ID_NOT_RECOGNISED;
 		}
+		BeanBag b = (BeanBag)storeList.get(row);
 		int n = b.getNum();
 		if (n < 1) {
-			throw new BeanBagNotInStockException();
+			return StoreStatus.NOT_IN_STOCK;
 		}
-		if (n < 0) {
-			throw new PriceNotSetException();
+		reservations.expire(release);
+		if (n - b.getReserved() < num) { //only unreserved stock can be sold
+			return StoreStatus.INSUFFICIENT_STOCK;
 		}
+		if (b.getPrice() < 0) {
+			return StoreStatus.PRICE_NOT_SET;
+		}
+		takeStock(b, num);
+		recordSale(row, b, num, b.getPrice());
+		return StoreStatus.OK;
+	}
+	
+	/*
+	 * Removes num bean bags from stock record b
+	 */
+	private void takeStock(BeanBag b, int num) {
+		touch(b);
+		int n = b.getNum();
 		b.setNum(n - num); //reduce stock levels
-		BeanBag soldBeanBag = getBeanBagByID(id, soldList);
+		if (n == num) {
+			differentInStock--; //ID has sold out
+		}
+		stockTotal -= num;
+	}
+	
+	/*
+	 * Records the sale of num bean bags at a price that have already been taken from stock record b at a row
+	 */
+	private void recordSale(int row, BeanBag b, int num, int price) {
+		tallySale(row, b, num, price);
+		if (feed != null) {
+			feed.publishSell(b.getID(), num, price);
+		}
+	}
+	
+	/*
+	 * Adds a sale to the totals, sold record, ledger and rankings, without publishing it
+	 */
+	private void tallySale(int row, BeanBag b, int num, int price) {
+		long value = (long)num * price;
+		soldTotal += num;
+		soldValue += value;
+		ledger.sold(row, num, value);
+		BeanBag soldBeanBag = getBeanBagByID(b.getID(), soldList, soldIndex);
 		if (soldBeanBag == null) {
-			soldBeanBag = new BeanBag(num, b.getManufacturer(), b.getName(), id, b.getInfo()); //create new soldList object if none exists
+			soldBeanBag = new BeanBag(num, b.getManufacturer(), b.getName(), b.getID(), b.getInfo()); //create new soldList object if none exists
+			addToList(soldBeanBag, soldList, soldIndex);
 		} else {
+			touch(soldBeanBag);
 			soldBeanBag.setNum(soldBeanBag.getNum() + num); //edit soldList records if beanbag has already been sold in the past
 		}
+		soldBeanBag.setPrice(price);
+		soldBeanBag.setValue(soldBeanBag.getValue() + value);
+		byUnits.record(b.getID(), num, soldBeanBag.getNum());
+		byRevenue.record(b.getID(), value, soldBeanBag.getValue());
+	}
+	
+	@Override
+	public int reserveBeanBags(int num, String id) throws BeanBagNotInStockException, InsufficientStockException,
+			IllegalNumberOfBeanBagsReservedException, PriceNotSetException, BeanBagIDNotRecognisedException,
+			IllegalIDException {
+		return reserveBeanBags(num, id, holdMillis); //default hold time
+	}
+	
+	@Override
+	public int reserveBeanBags(int num, String id, long holdMillis) throws BeanBagNotInStockException,
+			InsufficientStockException, IllegalNumberOfBeanBagsReservedException, PriceNotSetException,
+			BeanBagIDNotRecognisedException, IllegalIDException {
+		//input validation
+		if (num < 1) {
+			throw IllegalNumberOfBeanBagsReservedException.STACKLESS;
+		}
+		if (holdMillis < 0) {
+			throw new IllegalArgumentException("Hold time must not be negative");
+		}
+		int key = parseID(id);
+		int row = storeIndex.get(key);
+		if (row == IDIndex.ABSENT) {
+			throw BeanBagIDNotRecognisedException.STACKLESS;
+		}
+		BeanBag b = (BeanBag)storeList.get(row);
+		if (b.getNum() < 1) {
+			throw BeanBagNotInStockException.STACKLESS;
+		}
+		reservations.expire(release);
+		if (b.getNum() - b.getReserved() < num) {
+			throw InsufficientStockException.STACKLESS;
+		}
+		if (b.getPrice() < 0) {
+			throw PriceNotSetException.STACKLESS;
+		}
+		b.setReserved(b.getReserved() + num);
+		return reservations.add(row, num, b.getPrice(), holdMillis); //held by row, so replace() carries it over
+	}
+	
+	/*
+	 * Returns the handle of a current reservation, throwing if there is none
+	 */
+	private int reservation(int reservationNumber) throws ReservationNumberNotRecognisedException {
+		reservations.expire(release);
+		int h = reservations.find(reservationNumber);
+		if (h == IDIndex.ABSENT) {
+			throw ReservationNumberNotRecognisedException.STACKLESS;
+		}
+		return h;
+	}
+	
+	/*
+	 * Ends a reservation, returning its bean bags to unreserved stock; also the expiry callback
+	 */
+	private void release(int h) {
+		BeanBag b = (BeanBag)storeList.get(reservations.row(h));
+		b.setReserved(b.getReserved() - reservations.num(h));
+		reservations.remove(h);
+	}
+	
+	@Override
+	public void unreserveBeanBags(int reservationNumber) throws ReservationNumberNotRecognisedException {
+		release(reservation(reservationNumber));
+	}
+	
+	@Override
+	public void sellBeanBags(int reservationNumber) throws ReservationNumberNotRecognisedException {
+		StoreEvents.Sell event = new StoreEvents.Sell();
+		event.begin();
+		int h;
+		try {
+			h = reservation(reservationNumber);
+		} catch (ReservationNumberNotRecognisedException e) {
+			event.outcome = StoreEvents.outcome(e);
+			event.commit(); //commit() itself checks the threshold
+			throw e;
+		}
+		int row = reservations.row(h);
+		BeanBag b = (BeanBag)storeList.get(row);
+		int num = reservations.num(h);
+		int price = Math.min(reservations.price(h), b.getPrice()); //the price may have changed since
+		release(h);
+		takeStock(b, num);
+		recordSale(row, b, num, price);
+		if (event.shouldCommit()) {
+			event.id = BeanBagID.toString(b.getID());
+			event.quantity = num;
+			event.commit();
+		}
+	}
+	
+	@Override
+	public int reservedBeanBagsInStock() {
+		reservations.expire(release);
+		return clamp(reservations.reservedTotal());
+	}
+	
+	@Override
+	public int reservedBeanBagsInStock(String id) throws BeanBagIDNotRecognisedException, IllegalIDException {
+		int key = parseID(id);
+		BeanBag b = getBeanBagByID(key, storeList, storeIndex);
+		if (b == null) {
+			throw BeanBagIDNotRecognisedException.STACKLESS;
+		}
+		reservations.expire(release);
+		return b.getReserved();
+	}
+
+	/*
+	 * Returns the scratch array, grown to hold at least the given number of lines
+	 */
+	private int[] batchScratch(int lines) {
+		if (batchScratch.length < lines) {
+			batchScratch = new int[lines];
+			batchRows = new int[lines];
+		}
+		return batchScratch;
+	}
+	
+	/*
+	 * Returns the per-row units, grown to cover the given number of rows
+	 */
+	private int[] batchUnits(int rows) {
+		if (batchUnits.length < rows) {
+			batchUnits = Arrays.copyOf(batchUnits, Math.max(rows, batchUnits.length * 2)); //only zeros beyond the old length
+		}
+		return batchUnits;
 	}
 
 	@Override
-	public int beanBagsInStock() {
-		int total = 0;
-		for (int i=0; i<storeList.size(); i++) { //loop over each BeanBag object and total num attribute
-			BeanBag b = (BeanBag)storeList.get(i);
-			total += b.getNum();
+	public int addBeanBagsBatch(int[] nums, String[] manufacturers, String[] names, String[] ids, short[] years,
+			byte[] months, String[] informations, int[] statuses) {
+		int lines = nums.length;
+		if (manufacturers.length != lines || names.length != lines || ids.length != lines || years.length != lines
+				|| months.length != lines || (informations != null && informations.length != lines)
+				|| statuses.length != lines) {
+			throw new IllegalArgumentException("Batch arrays differ in length");
+		}
+		int[] keys = batchScratch(lines);
+		int failures = 0;
+		//pass 1: input validation that needs no store state
+		for (int i=0; i<lines; i++) {
+			long key = BeanBagID.parse(ids[i]);
+			int status = StoreStatus.OK;
+			if (nums[i] < 1) {
+				status = StoreStatus.ILLEGAL_NUMBER_ADDED;
+			} else if (months[i] < 1 || months[i] > 12) {
+				status = StoreStatus.INVALID_MONTH;
+			} else if (key == BeanBagID.INVALID) {
+				status = StoreStatus.ILLEGAL_ID;
+			} else {
+				keys[i] = (int)key;
+			}
+			statuses[i] = status;
+			if (status != StoreStatus.OK) {
+				failures++;
+			}
+		}
+		//pass 2: apply valid lines in order, totalling the units added to each row; new IDs are appended
+		//after firstNew, and keys[i] becomes the row of line i
+		int firstNew = storeList.size();
+		int[] units = batchUnits(firstNew + lines);
+		int[] touched = batchRows;
+		int distinct = 0;
+		int added = 0;
+		int nowInStock = 0;
+		StringDictionary dictionary = StringDictionary.GLOBAL;
+		String manufacturer = null, name = null; //strings of the last line looked up, usually repeated
+		int manufacturerCode = StringDictionary.ABSENT, nameCode = StringDictionary.ABSENT;
+		for (int i=0; i<lines; i++) {
+			if (statuses[i] != StoreStatus.OK) {
+				continue;
+			}
+			String information = informations == null ? "" : informations[i];
+			int row = storeIndex.get(keys[i]);
+			if (row == IDIndex.ABSENT) {
+				row = storeList.size();
+				addToList(new BeanBag(nums[i], manufacturers[i], names[i], keys[i], information), storeList, storeIndex);
+				nowInStock++;
+			} else {
+				BeanBag b = (BeanBag)storeList.get(row);
+				if (manufacturers[i] != manufacturer || manufacturerCode == StringDictionary.ABSENT) {
+					manufacturer = manufacturers[i];
+					manufacturerCode = dictionary.find(manufacturer); //ABSENT until a line adds it, so not kept
+				}
+				if (names[i] != name || nameCode == StringDictionary.ABSENT) {
+					name = names[i];
+					nameCode = dictionary.find(name);
+				}
+				if (b.isMismatched(manufacturerCode, nameCode, information)) {
+					statuses[i] = StoreStatus.MISMATCH;
+					failures++;
+					continue;
+				}
+				if (units[row] == 0) {
+					touch(b);
+				}
+				if (b.getNum() == 0) {
+					nowInStock++; //ID is back in stock
+				}
+				b.setNum(b.getNum() + nums[i]);
+			}
+			if (units[row] == 0) {
+				touched[distinct++] = row;
+			}
+			units[row] += nums[i];
+			keys[i] = row;
+			added += nums[i];
+		}
+		if (failures > 0) {
+			//undo pass 2: restore existing stock, then drop the records this batch created
+			for (int d=0; d<distinct; d++) {
+				int row = touched[d];
+				if (row < firstNew) {
+					BeanBag b = (BeanBag)storeList.get(row);
+					b.setNum(b.getNum() - units[row]);
+				}
+				units[row] = 0;
+			}
+			for (int i=0; i<lines; i++) {
+				if (statuses[i] == StoreStatus.OK) {
+					statuses[i] = StoreStatus.NOT_APPLIED;
+				}
+			}
+			beginChange();
+			for (int row = storeList.size() - 1; row >= firstNew; row--) {
+				storeIndex.remove(((BeanBag)storeList.remove(row)).getID());
+			}
+			endChange();
+			return failures;
+		}
+		stockTotal += added;
+		differentInStock += nowInStock;
+		for (int i=0; i<lines; i++) {
+			int row = keys[i];
+			if (units[row] != 0) { //the first line of a row sets its cohort, if it has none yet
+				ledger.stocked(row, years[i], months[i]);
+				units[row] = 0;
+			}
+			if (feed != null) {
+				publishAdd((BeanBag)storeList.get(row), nums[i], years[i], months[i]);
+			}
+		}
+		return 0;
+	}
+
+	@Override
+	public int sellBeanBagsBatch(int[] nums, String[] ids, int[] statuses) {
+		int lines = nums.length;
+		if (ids.length != lines || statuses.length != lines) {
+			throw new IllegalArgumentException("Batch arrays differ in length");
+		}
+		int[] rows = batchScratch(lines);
+		int failures = 0;
+		//pass 1: input validation and lookup
+		for (int i=0; i<lines; i++) {
+			int status = StoreStatus.OK;
+			long key = BeanBagID.parse(ids[i]);
+			if (nums[i] < 1) {
+				status = StoreStatus.ILLEGAL_NUMBER_SOLD;
+			} else if (key == BeanBagID.INVALID) {
+				status = StoreStatus.ILLEGAL_ID;
+			} else if ((rows[i] = storeIndex.get((int)key)) == IDIndex.ABSENT) {
+				status = StoreStatus.ID_NOT_RECOGNISED;
+			}
+			statuses[i] = status;
+			if (status != StoreStatus.OK) {
+				failures++;
+			}
+		}
+		reservations.expire(release);
+		//pass 2: take stock tentatively, in line order, totalling the units taken from each row
+		int[] units = batchUnits(storeList.size());
+		int[] touched = batchRows;
+		int distinct = 0;
+		int soldOut = 0;
+		long taken = 0;
+		for (int i=0; i<lines; i++) {
+			if (statuses[i] != StoreStatus.OK) {
+				continue;
+			}
+			int row = rows[i];
+			BeanBag b = (BeanBag)storeList.get(row);
+			int n = b.getNum();
+			int status = StoreStatus.OK;
+			if (n < 1) {
+				status = StoreStatus.NOT_IN_STOCK;
+			} else if (n - b.getReserved() < nums[i]) { //only unreserved stock can be sold
+				status = StoreStatus.INSUFFICIENT_STOCK;
+			} else if (b.getPrice() < 0) {
+				status = StoreStatus.PRICE_NOT_SET;
+			}
+			if (status == StoreStatus.OK) {
+				if (units[row] == 0) {
+					touch(b); //keeps the state before the batch for open views
+					touched[distinct++] = row;
+				}
+				b.setNum(n - nums[i]);
+				units[row] += nums[i];
+				taken += nums[i];
+				if (n == nums[i]) {
+					soldOut++;
+				}
+			} else {
+				statuses[i] = status;
+				failures++;
+			}
 		}
-		return total;
+		if (failures > 0) {
+			for (int d=0; d<distinct; d++) { //put back the stock taken in pass 2
+				int row = touched[d];
+				BeanBag b = (BeanBag)storeList.get(row);
+				b.setNum(b.getNum() + units[row]);
+				units[row] = 0;
+			}
+			for (int i=0; i<lines; i++) {
+				if (statuses[i] == StoreStatus.OK) {
+					statuses[i] = StoreStatus.NOT_APPLIED;
+				}
+			}
+			return failures;
+		}
+		//pass 3: record the sales of each row as one, since the price cannot change within the batch
+		differentInStock -= soldOut;
+		stockTotal -= taken;
+		for (int d=0; d<distinct; d++) {
+			int row = touched[d];
+			BeanBag b = (BeanBag)storeList.get(row);
+			tallySale(row, b, units[row], b.getPrice());
+			units[row] = 0;
+		}
+		if (feed != null) {
+			for (int i=0; i<lines; i++) { //replicas see every line, in order
+				BeanBag b = (BeanBag)storeList.get(rows[i]);
+				feed.publishSell(b.getID(), nums[i], b.getPrice());
+			}
+		}
+		return 0;
+	}
+
+	/*
+	 * Narrows a running total to the int the interface returns, saturating rather than wrapping
+	 */
+	private static int clamp(long total) {
+		return (int)Math.min(total, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public int beanBagsInStock() {
+		StoreEvents.Aggregate event = new StoreEvents.Aggregate();
+		event.begin();
+		int result = clamp(stockTotal);
+		StoreEvents.commit(event, "beanBagsInStock", result, 0); //answered by a running total
+		return result;
 	}
 
 	@Override
 	public int beanBagsInStock(String id) throws BeanBagIDNotRecognisedException, IllegalIDException {
 		//input validation
-		if (!idIsValid(id)) {
-			throw new IllegalIDException();
-		}
-		BeanBag b = getBeanBagByID(id, storeList);
+		int key = parseID(id);
+		BeanBag b = getBeanBagByID(key, storeList, storeIndex);
 		if (b == null) { //check if ID exists
-			throw new BeanBagIDNotRecognisedException();
+			throw BeanBagIDNotRecognisedException.STACKLESS;
 		}
 		return b.getNum();
 	}
 
 	@Override
 	public int getNumberOfDifferentBeanBagsInStock() {
-		int total = 0;
-		for (int i=0; i<storeList.size(); i++) { //iterate over each beanbag object and check if they have stock
-			BeanBag b = (BeanBag)storeList.get(i);
-			if (b.getNum() > 0) {
-				total++; //increment total if beanbag has stock
-			}
-		}
-		return total;
+		StoreEvents.Aggregate event = new StoreEvents.Aggregate();
+		event.begin();
+		StoreEvents.commit(event, "getNumberOfDifferentBeanBagsInStock", differentInStock, 0);
+		return differentInStock;
 	}
 
 	@Override
 	public int getNumberOfSoldBeanBags() {
-		int total = 0;
-		for (int i=0; i<soldList.size(); i++) {
-			BeanBag b = (BeanBag)soldList.get(i);
-			total += b.getNum(); //iterate over soldList and find sum of num attributes of BeanBag objects
-		}
-		return total;
+		StoreEvents.Aggregate event = new StoreEvents.Aggregate();
+		event.begin();
+		int result = clamp(soldTotal);
+		StoreEvents.commit(event, "getNumberOfSoldBeanBags", result, 0); //answered by a running total
+		return result;
 	}
 
 	@Override
 	public int getNumberOfSoldBeanBags(String id) throws BeanBagIDNotRecognisedException, IllegalIDException {
 		//input validation
-		if (!idIsValid(id)) {
-			throw new IllegalIDException();
-		}
-		BeanBag b = getBeanBagByID(id, soldList);
+		int key = parseID(id);
+		BeanBag b = getBeanBagByID(key, soldList, soldIndex);
 		if (b == null) { //check ID exists 
-			throw new BeanBagIDNotRecognisedException();
+			throw BeanBagIDNotRecognisedException.STACKLESS;
 		}
 		return b.getNum();
 	}
 
 	@Override
 	public int getTotalPriceOfSoldBeanBags() {
-		int total = 0;
-		for (int i=0; i<soldList.size(); i++) {
-			BeanBag b = (BeanBag)soldList.get(i);
-			total += b.getNum() * b.getPrice(); //multiply number sold by price to find total value sold for
-		}
-		return total;
+		StoreEvents.Aggregate event = new StoreEvents.Aggregate();
+		event.begin();
+		int result = clamp(soldValue);
+		StoreEvents.commit(event, "getTotalPriceOfSoldBeanBags", result, 0); //answered by a running total
+		return result;
+	}
+
+	/*
+	 * Running totals before narrowing, for stores that sum several CDStores
+	 */
+	long getStockTotal() {
+		return stockTotal;
+	}
+	
+	long getSoldTotal() {
+		return soldTotal;
+	}
+	
+	/*
+	 * Returns true if a parsed ID is in the store
+	 */
+	boolean contains(int key) {
+		return storeIndex.contains(key);
+	}
+
+	/**
+	 * Method to return total price of bean bags sold by this store (in pence)
+	 * as a 64 bit value, which unlike {@link #getTotalPriceOfSoldBeanBags()}
+	 * cannot overflow.
+	 * @return total value of bean bags sold (in pence)
+	 */
+	public long getTotalValueOfSoldBeanBags() {
+		return soldValue;
 	}
 
 	@Override
 	public int getTotalPriceOfSoldBeanBags(String id) throws BeanBagIDNotRecognisedException, IllegalIDException {
-		if (!idIsValid(id)) {
-			throw new IllegalIDException();
-		}
-		BeanBag b = getBeanBagByID(id, soldList);
+		int key = parseID(id);
+		BeanBag b = getBeanBagByID(key, soldList, soldIndex);
 		if (b == null) {
-			throw new BeanBagIDNotRecognisedException();
+			throw BeanBagIDNotRecognisedException.STACKLESS;
 		}
-		return b.getNum() * b.getPrice(); //multiply number sold by price to find total value sold for
+		return clamp(b.getValue()); //value accumulated at the price of each sale
 	}
 
 	@Override
 	public String getBeanBagDetails(String id) throws BeanBagIDNotRecognisedException, IllegalIDException {
-		String i = getBeanBagByID(id, storeList).getInfo();
-		if (i.isEmpty() || i == null || i.isBlank()) { //return empty string if info is blank or is empty
+		//input validation
+		int key = parseID(id);
+		BeanBag b = getBeanBagByID(key, storeList, storeIndex);
+		if (b == null) {
+			throw BeanBagIDNotRecognisedException.STACKLESS;
+		}
+		String i = b.getInfo();
+		if (i == null || i.isBlank()) { //return empty string if info is blank or is empty
 			return "";
 		} else {
 			return i; //return information string
 		}
 	}
 
+	/*
+	 * Returns the number of stock records, for snapshots (see StoreSnapshot)
+	 */
+	int stockRecordCount() {
+		return storeList.size();
+	}
+
+	/*
+	 * Returns the stock record at a row, for snapshots
+	 */
+	BeanBag stockRecord(int row) {
+		return (BeanBag)storeList.get(row);
+	}
+
+	/*
+	 * Returns the sales record for an ID, or null if it has not been sold since the last reset
+	 */
+	BeanBag soldRecord(int id) {
+		return getBeanBagByID(id, soldList, soldIndex);
+	}
+
+	/*
+	 * Recreates one ID's stock and (if sold >= 0) sales records when loading a
+	 * snapshot. The ID must not already be in the store.
+	 */
+	void restore(int id, int num, int price, String manufacturer, String name, String information, int sold,
+			long value) {
+		BeanBag b = new BeanBag(num, manufacturer, name, id, information);
+		b.setPrice(price);
+		addToList(b, storeList, storeIndex);
+		stockTotal += num;
+		if (num > 0) {
+			differentInStock++;
+		}
+		if (sold >= 0) {
+			BeanBag soldBeanBag = new BeanBag(sold, manufacturer, name, id, information);
+			soldBeanBag.setPrice(price);
+			soldBeanBag.setValue(value);
+			addToList(soldBeanBag, soldList, soldIndex);
+			soldTotal += sold;
+			soldValue += value;
+			byUnits.record(id, sold, sold);
+			byRevenue.record(id, value, value);
+		}
+	}
+
+	/*
+	 * Removes an ID's stock and sales records, returning the stock record, so the ID can be restored into another
+	 * store. The last row of each list takes the removed row, so the store must have no open view, reservation
+	 * or feed, which know records by row or would miss the removal.
+	 */
+	BeanBag remove(int id) {
+		if (newestView >= 0 || reservations.size() > 0 || feed != null) {
+			throw new IllegalStateException("Records cannot be removed while viewed, reserved or fed");
+		}
+		int row = storeIndex.remove(id);
+		BeanBag b = (BeanBag)storeList.get(row);
+		int last = storeList.size() - 1;
+		if (row != last) {
+			BeanBag moved = (BeanBag)storeList.get(last);
+			storeList.replace(moved, row);
+			storeIndex.put(moved.getID(), row);
+		}
+		ledger.moved(last, row); //the removed row's own sales are forgotten
+		storeList.remove(last);
+		stockTotal -= b.getNum();
+		if (b.getNum() > 0) {
+			differentInStock--;
+		}
+		int soldRow = soldIndex.remove(id);
+		if (soldRow != IDIndex.ABSENT) {
+			BeanBag sold = (BeanBag)soldList.get(soldRow);
+			int lastSold = soldList.size() - 1;
+			if (soldRow != lastSold) {
+				BeanBag moved = (BeanBag)soldList.get(lastSold);
+				soldList.replace(moved, soldRow);
+				soldIndex.put(moved.getID(), soldRow);
+			}
+			soldList.remove(lastSold);
+			soldTotal -= sold.getNum();
+			soldValue -= sold.getValue();
+			boolean ranked = byUnits.remove(id);
+			ranked |= byRevenue.remove(id);
+			if (ranked) { //an unranked ID may now belong in the freed place
+				for (int i = 0; i < soldList.size(); i++) {
+					BeanBag s = (BeanBag)soldList.get(i);
+					byUnits.record(s.getID(), 0, s.getNum());
+					byRevenue.record(s.getID(), 0, s.getValue());
+				}
+			}
+		}
+		return b;
+	}
+
 	@Override
 	public void empty() {
-		//init new ObjectArrayLists to wipe old ones
+		//init new ObjectArrayLists and indexes to wipe old ones; open views keep reading the old ones
 		storeList = new ObjectArrayList();
 		soldList = new ObjectArrayList();
+		storeIndex = new IDIndex();
+		soldIndex = new IDIndex();
+		reservations.clear();
+		ledger.clear();
+		byUnits.clear();
+		byRevenue.clear();
+		stockTotal = 0;
+		differentInStock = 0;
+		soldTotal = 0;
+		soldValue = 0;
+		if (feed != null) {
+			feed.publishNoArgs(StoreMutations.EMPTY);
+		}
 	}
 
 	@Override
 	public void resetSaleAndCostTracking() {
-		//init new ObjectArrayList to wipe old one
+		//init new ObjectArrayList and index to wipe old ones; open views keep reading the old ones
 		soldList = new ObjectArrayList();
+		soldIndex = new IDIndex();
+		byUnits.clear();
+		byRevenue.clear();
+		soldTotal = 0;
+		soldValue = 0;
+		if (feed != null) {
+			feed.publishNoArgs(StoreMutations.RESET);
+		}
 	}
 
 	@Override
 	public void replace(String oldId, String replacementId) throws BeanBagIDNotRecognisedException, IllegalIDException {
+		StoreEvents.Replace event = new StoreEvents.Replace();
+		event.begin();
+		try {
+			rekey(oldId, replacementId);
+		} catch (Exception e) {
+			event.outcome = StoreEvents.outcome(e);
+			throw e;
+		} finally {
+			if (event.shouldCommit()) {
+				event.id = oldId;
+				event.replacementId = replacementId;
+				event.commit();
+			}
+		}
+	}
+	
+	/*
+	 * Replaces an ID; see replace
+	 */
+	private void rekey(String oldId, String replacementId) throws BeanBagIDNotRecognisedException, IllegalIDException {
 		//input validation
-		if (!idIsValid(replacementId)) {
-			throw new IllegalIDException();
+		int oldKey = parseID(oldId);
+		int newKey = parseID(replacementId);
+		int row = storeIndex.get(oldKey);
+		if (row == IDIndex.ABSENT) {
+			throw BeanBagIDNotRecognisedException.STACKLESS;
+		}
+		if (storeIndex.contains(newKey)) {
+			throw IllegalIDException.STACKLESS; //replacement ID already in use
 		}
-		BeanBag stockBeanBag = getBeanBagByID(oldId, storeList);
-		if (stockBeanBag == null) {
-			throw new BeanBagIDNotRecognisedException();
+		BeanBag stockBeanBag = (BeanBag)storeList.get(row);
+		touch(stockBeanBag);
+		beginChange();
+		stockBeanBag.setID(newKey); //update ID with setter method
+		storeIndex.remove(oldKey);
+		storeIndex.put(newKey, row); //the sales ledger is by row, so needs no update
+		logRekey(oldKey, row, false);
+		int soldRow = soldIndex.get(oldKey);
+		if (soldRow != IDIndex.ABSENT) { //check if ID exists in soldList and should be updated
+			BeanBag soldBeanBag = (BeanBag)soldList.get(soldRow);
+			touch(soldBeanBag);
+			soldBeanBag.setID(newKey);
+			soldIndex.remove(oldKey);
+			soldIndex.put(newKey, soldRow);
+			logRekey(oldKey, soldRow, true);
 		}
-		stockBeanBag.setID(replacementId); //update ID with setter method
-		BeanBag soldBeanBag = getBeanBagByID(oldId, soldList);
-		if (soldBeanBag != null) { //check if ID exists in soldList and should be updated
-			soldBeanBag.setID(replacementId);
+		endChange();
+		byUnits.rename(oldKey, newKey);
+		byRevenue.rename(oldKey, newKey);
+		if (feed != null) {
+			feed.publishReplace(oldKey, newKey);
 		}
 	}
 }
@@ -0,0 +1,312 @@
+package beanbags;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Implementation of CutDownStore that keeps its records in parallel
+ * primitive columns (struct of arrays) rather than as BeanBag objects.
+ * Each ID has one row holding its ID, stock, price and sales, codes for
+ * its manufacturer and name in the global dictionary (see
+ * {@link StringDictionary#GLOBAL}) and its information. BeanBag objects
+ * are only created on demand by {@link #getBeanBag(String)}.
+ * <p>
+ * Store-wide totals are computed by scanning the columns, which are plain
+ * loops over int and long arrays with no pointer chasing or casts. A row
+ * costs 37 bytes of columns plus its share of the ID index, against about
+ * 48 bytes for a BeanBag object alone (another 48 once the ID has sold) in
+ * {@link CDStore}, before counting the strings the dictionary shares.
+ * Each scan emits a {@link StoreEvents.Aggregate} event to JDK Flight
+ * Recorder.
+ *
+ * @author George Rogers
+ * @version 1.0
+ */
+public class ColumnarStore implements CutDownStore {
+
+	private final StringDictionary strings = StringDictionary.GLOBAL;
+	private final IDIndex index = new IDIndex(); //ID -> row
+	private int rows;
+
+	//stock columns
+	private int[] ids = new int[16];
+	private int[] nums = new int[16];
+	private int[] prices = new int[16];
+	private int[] manufacturers = new int[16]; //dictionary codes
+	private int[] names = new int[16];
+	private String[] informations = new String[16]; //free text, kept out of the dictionary
+
+	//sales columns, cleared by resetSaleAndCostTracking
+	private boolean[] recorded = new boolean[16]; //ID has been sold since the last reset
+	private int[] sold = new int[16];
+	private long[] values = new long[16]; //value sold (in pence)
+
+	/*
+	 * Validates and parses an ID in one pass, throwing if it is illegal
+	 */
+	private static int parseID(String id) throws IllegalIDException {
+		long parsed = BeanBagID.parse(id);
+		if (parsed == BeanBagID.INVALID) {
+			throw IllegalIDException.STACKLESS;
+		}
+		return (int)parsed;
+	}
+
+	/*
+	 * Returns the row of an ID, throwing if it is illegal or not in the store
+	 */
+	private int row(String id) throws BeanBagIDNotRecognisedException, IllegalIDException {
+		int row = index.get(parseID(id));
+		if (row == IDIndex.ABSENT) {
+			throw BeanBagIDNotRecognisedException.STACKLESS;
+		}
+		return row;
+	}
+
+	/*
+	 * Grows every column so one more row fits
+	 */
+	private void ensureCapacity() {
+		if (rows < ids.length) {
+			return;
+		}
+		int capacity = ids.length * 2;
+		ids = Arrays.copyOf(ids, capacity);
+		nums = Arrays.copyOf(nums, capacity);
+		prices = Arrays.copyOf(prices, capacity);
+		manufacturers = Arrays.copyOf(manufacturers, capacity);
+		names = Arrays.copyOf(names, capacity);
+		informations = Arrays.copyOf(informations, capacity);
+		recorded = Arrays.copyOf(recorded, capacity);
+		sold = Arrays.copyOf(sold, capacity);
+		values = Arrays.copyOf(values, capacity);
+	}
+
+	@Override
+	public void addBeanBags(int num, String manufacturer, String name, String id, short year, byte month)
+			throws IllegalNumberOfBeanBagsAddedException, BeanBagMismatchException, IllegalIDException,
+			InvalidMonthException {
+		addBeanBags(num, manufacturer, name, id, year, month, ""); //no information given
+	}
+
+	@Override
+	public void addBeanBags(int num, String manufacturer, String name, String id, short year, byte month,
+			String information) throws IllegalNumberOfBeanBagsAddedException, BeanBagMismatchException,
+			IllegalIDException, InvalidMonthException {
+		//input validation
+		if (num<1) {
+			throw IllegalNumberOfBeanBagsAddedException.STACKLESS;
+		}
+		if (month<1 || month>12) {
+			throw InvalidMonthException.STACKLESS;
+		}
+		int key = parseID(id);
+		int row = index.get(key);
+		if (row == IDIndex.ABSENT) {
+			ensureCapacity();
+			row = rows++;
+			index.put(key, row);
+			ids[row] = key;
+			nums[row] = num;
+			prices[row] = -1;
+			manufacturers[row] = strings.encode(manufacturer);
+			names[row] = strings.encode(name);
+			informations[row] = information;
+			return;
+		}
+		//strings with no code cannot match, so lookups never grow the dictionary here
+		if (manufacturers[row] != strings.find(manufacturer) || names[row] != strings.find(name)
+				|| !Objects.equals(informations[row], information)) {
+			throw BeanBagMismatchException.STACKLESS;
+		}
+		nums[row] += num; //increase existing stock levels
+	}
+
+	@Override
+	public void setBeanBagPrice(String id, int priceInPence)
+			throws InvalidPriceException, BeanBagIDNotRecognisedException, IllegalIDException {
+		//input validation
+		if (priceInPence < 1) {
+			throw InvalidPriceException.STACKLESS;
+		}
+		prices[row(id)] = priceInPence;
+	}
+
+	@Override
+	public void sellBeanBags(int num, String id)
+			throws BeanBagNotInStockException, InsufficientStockException, IllegalNumberOfBeanBagsSoldException,
+			PriceNotSetException, BeanBagIDNotRecognisedException, IllegalIDException {
+		//input validation
+		if (num < 1) {
+			throw IllegalNumberOfBeanBagsSoldException.STACKLESS;
+		}
+		int row = row(id);
+		int n = nums[row];
+		if (n < 1) {
+			throw BeanBagNotInStockException.STACKLESS;
+		}
+		if (n < num) {
+			throw InsufficientStockException.STACKLESS;
+		}
+		if (prices[row] < 0) {
+			throw PriceNotSetException.STACKLESS;
+		}
+		nums[row] = n - num;
+		recorded[row] = true;
+		sold[row] += num;
+		values[row] += (long)num * prices[row];
+	}
+
+	/*
+	 * Narrows a total to the int the interface returns, saturating rather than wrapping
+	 */
+	private static int clamp(long total) {
+		return (int)Math.min(total, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public int beanBagsInStock() {
+		StoreEvents.Aggregate event = new StoreEvents.Aggregate();
+		event.begin();
+		int[] column = nums;
+		long total = 0;
+		for (int i = 0; i < rows; i++) {
+			total += column[i];
+		}
+		StoreEvents.commit(event, "beanBagsInStock", total, rows);
+		return clamp(total);
+	}
+
+	@Override
+	public int beanBagsInStock(String id) throws BeanBagIDNotRecognisedException, IllegalIDException {
+		return nums[row(id)];
+	}
+
+	@Override
+	public int getNumberOfDifferentBeanBagsInStock() {
+		StoreEvents.Aggregate event = new StoreEvents.Aggregate();
+		event.begin();
+		int[] column = nums;
+		int count = 0;
+		for (int i = 0; i < rows; i++) {
+			count += -column[i] >>> 31; //1 when stock is positive, without a branch
+		}
+		StoreEvents.commit(event, "getNumberOfDifferentBeanBagsInStock", count, rows);
+		return count;
+	}
+
+	@Override
+	public int getNumberOfSoldBeanBags() {
+		StoreEvents.Aggregate event = new StoreEvents.Aggregate();
+		event.begin();
+		int[] column = sold;
+		long total = 0;
+		for (int i = 0; i < rows; i++) {
+			total += column[i];
+		}
+		StoreEvents.commit(event, "getNumberOfSoldBeanBags", total, rows);
+		return clamp(total);
+	}
+
+	@Override
+	public int getNumberOfSoldBeanBags(String id) throws BeanBagIDNotRecognisedException, IllegalIDException {
+		int row = soldRow(id);
+		return sold[row];
+	}
+
+	/*
+	 * Returns the row of an ID that has been sold since the last reset
+	 */
+	private int soldRow(String id) throws BeanBagIDNotRecognisedException, IllegalIDException {
+		int row = row(id);
+		if (!recorded[row]) {
+			throw BeanBagIDNotRecognisedException.STACKLESS;
+		}
+		return row;
+	}
+
+	@Override
+	public int getTotalPriceOfSoldBeanBags() {
+		return clamp(getTotalValueOfSoldBeanBags());
+	}
+
+	/**
+	 * Method to return total price of bean bags sold by this store (in pence)
+	 * as a 64 bit value, which unlike {@link #getTotalPriceOfSoldBeanBags()}
+	 * cannot overflow.
+	 * @return total value of bean bags sold (in pence)
+	 */
+	public long getTotalValueOfSoldBeanBags() {
+		StoreEvents.Aggregate event = new StoreEvents.Aggregate();
+		event.begin();
+		long[] column = values;
+		long total = 0;
+		for (int i = 0; i < rows; i++) {
+			total += column[i];
+		}
+		StoreEvents.commit(event, "getTotalValueOfSoldBeanBags", total, rows);
+		return total;
+	}
+
+	@Override
+	public int getTotalPriceOfSoldBeanBags(String id) throws BeanBagIDNotRecognisedException, IllegalIDException {
+		return clamp(values[soldRow(id)]);
+	}
+
+	@Override
+	public String getBeanBagDetails(String id) throws BeanBagIDNotRecognisedException, IllegalIDException {
+		String i = informations[row(id)];
+		if (i == null || i.isBlank()) { //return empty string if info is blank or is empty
+			return "";
+		}
+		return i;
+	}
+
+	/**
+	 * Method to return the stock record for an ID as a BeanBag object. The
+	 * object is a copy made for the caller; changing it does not change the store.
+	 * @param id ID of the bean bag
+	 * @return BeanBag holding the ID's stock, price and details
+	 * @throws BeanBagIDNotRecognisedException if the ID is not in the store
+	 * @throws IllegalIDException if the ID is not legal
+	 */
+	public BeanBag getBeanBag(String id) throws BeanBagIDNotRecognisedException, IllegalIDException {
+		int row = row(id);
+		BeanBag b = new BeanBag(nums[row], strings.get(manufacturers[row]), strings.get(names[row]), ids[row],
+				informations[row]);
+		b.setPrice(prices[row]);
+		return b;
+	}
+
+	@Override
+	public void empty() {
+		index.clear();
+		Arrays.fill(informations, 0, rows, null); //let the text go; other stale rows are overwritten as IDs are added
+		rows = 0;
+		resetSaleAndCostTracking();
+	}
+
+	@Override
+	public void resetSaleAndCostTracking() {
+		//clear the whole columns, so rows dropped by empty() come back clean
+		Arrays.fill(recorded, false);
+		Arrays.fill(sold, 0);
+		Arrays.fill(values, 0);
+	}
+
+	@Override
+	public void replace(String oldId, String replacementId) throws BeanBagIDNotRecognisedException, IllegalIDException {
+		//input validation
+		int oldKey = parseID(oldId);
+		int newKey = parseID(replacementId);
+		int row = index.get(oldKey);
+		if (row == IDIndex.ABSENT) {
+			throw BeanBagIDNotRecognisedException.STACKLESS;
+		}
+		if (index.contains(newKey)) {
+			throw IllegalIDException.STACKLESS; //replacement ID already in use
+		}
+		index.remove(oldKey);
+		index.put(newKey, row);
+		ids[row] = newKey; //sales stay with the row
+	}
+}
@@ -0,0 +1,516 @@
+package beanbags;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Thread-safe implementation of CutDownStore interface.
+ * <p>
+ * IDs are spread over a fixed number of stripes by hash. Each stripe owns
+ * its records and its {@link IDIndex}, guarded by its own {@link StampedLock},
+ * so structural changes (new IDs, replace) on different stripes never
+ * contend. Lookups use optimistic reads and only fall back to the (shared)
+ * read lock if a writer intervened.
+ * <p>
+ * Selling never takes a stripe's write lock: stock is taken from a record
+ * with a compare-and-set retry loop, so a flash sale on one ID does not
+ * queue callers behind a lock. Every check is made against the stock count
+ * that the compare-and-set then replaces, so a sale that loses a race
+ * re-checks and still reports {@link BeanBagNotInStockException},
+ * {@link InsufficientStockException} or {@link PriceNotSetException}
+ * correctly, and the state of the store is unchanged whenever an exception
+ * is thrown.
+ * <p>
+ * Store-wide totals are kept in {@link LongAdder}s, so they are cheap to
+ * update from many threads but are not a single point-in-time snapshot of
+ * the whole store while writers are active. Totals are grouped into
+ * generations: {@link #empty()} starts a new stock and sales generation and
+ * {@link #resetSaleAndCostTracking()} a new sales generation, and per-ID
+ * sales from an older generation read as none (the ID has not sold since
+ * the reset, as in {@link CDStore}). This makes a reset O(1) and
+ * lets a sale that races with it land wholly on one side of it.
+ *
+ * @author George Rogers
+ * @version 1.1
+ */
+public class ConcurrentCDStore implements CutDownStore {
+
+	/*
+	 * Store-wide stock totals for one generation (between calls to empty())
+	 */
+	private static final class StockTotals {
+		final LongAdder stock = new LongAdder(); //bean bags in stock
+		final LongAdder different = new LongAdder(); //IDs with stock
+	}
+
+	/*
+	 * Store-wide sales totals for one generation (between resets)
+	 */
+	private static final class SalesTotals {
+		final int generation;
+		final LongAdder sold = new LongAdder();
+		final LongAdder value = new LongAdder(); //in pence
+
+		SalesTotals(int generation) {
+			this.generation = generation;
+		}
+	}
+
+	/*
+	 * Sales of one ID within one sales generation
+	 */
+	private static final class RecordSales {
+		static final RecordSales NONE = new RecordSales(-1);
+		final int generation;
+		volatile long sold;
+		volatile long value;
+
+		RecordSales(int generation) {
+			this.generation = generation;
+		}
+	}
+
+	/*
+	 * Stock and sales record for one ID. The ID and row may only change under
+	 * the write lock of the stripe holding the record; num, price and sales
+	 * are updated atomically so sells need no lock.
+	 */
+	private static final class Record {
+		int id;
+		volatile int num; //number in stock
+		volatile int price = -1; //price not set
+		volatile RecordSales sales = RecordSales.NONE;
+		final StockTotals totals; //generation this record was stocked in
+		final int manufacturer, name; //codes in StringDictionary.GLOBAL
+		final String information;
+
+		Record(int id, String manufacturer, String name, String information, StockTotals totals) {
+			StringDictionary d = StringDictionary.GLOBAL;
+			this.id = id;
+			this.manufacturer = d.encode(manufacturer);
+			this.name = d.encode(name);
+			this.information = information;
+			this.totals = totals;
+		}
+	}
+
+	private static final VarHandle NUM;
+	private static final VarHandle SALES;
+	private static final VarHandle SOLD;
+	private static final VarHandle VALUE;
+	static {
+		try {
+			MethodHandles.Lookup l = MethodHandles.lookup();
+			NUM = l.findVarHandle(Record.class, "num", int.class);
+			SALES = l.findVarHandle(Record.class, "sales", RecordSales.class);
+			SOLD = l.findVarHandle(RecordSales.class, "sold", long.class);
+			VALUE = l.findVarHandle(RecordSales.class, "value", long.class);
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	/*
+	 * One partition of the store: records held in rows, indexed by ID
+	 */
+	private static final class Stripe {
+		final StampedLock lock = new StampedLock();
+		final IDIndex index = new IDIndex(); //ID -> row
+		Record[] rows = new Record[16];
+		int size;
+
+		/*
+		 * Finds the record for an ID. Safe to call under an optimistic read, in
+		 * which case the result must be validated before it is trusted.
+		 */
+		Record lookup(int key) {
+			int row = index.get(key);
+			Record[] r = rows;
+			if (row < 0 || row >= r.length) {
+				return null;
+			}
+			return r[row];
+		}
+
+		/*
+		 * Finds the record for an ID without taking the write lock.
+		 */
+		Record find(int key) {
+			long stamp = lock.tryOptimisticRead();
+			Record r = lookup(key);
+			if (!lock.validate(stamp)) {
+				stamp = lock.readLock();
+				try {
+					r = lookup(key);
+				} finally {
+					lock.unlockRead(stamp);
+				}
+			}
+			return r;
+		}
+
+		/*
+		 * Appends a record and indexes it. Caller holds the write lock.
+		 */
+		void insert(Record r) {
+			if (size == rows.length) {
+				Record[] bigger = new Record[rows.length * 2];
+				System.arraycopy(rows, 0, bigger, 0, size);
+				rows = bigger;
+			}
+			rows[size] = r;
+			index.put(r.id, size);
+			size++;
+		}
+
+		/*
+		 * Removes the record for an ID by moving the last row into its place.
+		 * Caller holds the write lock.
+		 */
+		Record delete(int key) {
+			int row = index.remove(key);
+			Record removed = rows[row];
+			size--;
+			if (row != size) {
+				Record last = rows[size];
+				rows[row] = last;
+				index.put(last.id, row);
+			}
+			rows[size] = null;
+			return removed;
+		}
+
+		/*
+		 * Drops every record. Caller holds the write lock.
+		 */
+		void clear() {
+			index.clear();
+			rows = new Record[16];
+			size = 0;
+		}
+	}
+
+	private final Stripe[] stripes;
+	private final int stripeShift;
+	private volatile StockTotals stockTotals = new StockTotals();
+	private volatile SalesTotals salesTotals = new SalesTotals(0);
+
+	/**
+	 * Creates an empty store with a stripe count suited to the number of processors.
+	 */
+	public ConcurrentCDStore() {
+		this(Runtime.getRuntime().availableProcessors() * 4);
+	}
+
+	/**
+	 * Creates an empty store with (at least) the given number of lock stripes.
+	 * @param concurrency expected number of concurrent callers; rounded up to a power of two
+	 */
+	public ConcurrentCDStore(int concurrency) {
+		int n = 2;
+		while (n < concurrency && n < (1 << 16)) {
+			n <<= 1;
+		}
+		stripes = new Stripe[n];
+		for (int i = 0; i < n; i++) {
+			stripes[i] = new Stripe();
+		}
+		stripeShift = 32 - Integer.numberOfTrailingZeros(n);
+	}
+
+	/*
+	 * Chooses a stripe from the top bits of a multiplicative hash, which are
+	 * independent of the bits IDIndex uses to pick a slot within the stripe
+	 */
+	private Stripe stripeFor(int key) {
+		return stripes[stripeIndex(key)];
+	}
+
+	private int stripeIndex(int key) {
+		return (key * 0x85EBCA6B) >>> stripeShift;
+	}
+
+	/*
+	 * Validates and parses an ID in one pass, throwing if it is illegal
+	 */
+	private static int parseID(String id) throws IllegalIDException {
+		long parsed = BeanBagID.parse(id);
+		if (parsed == BeanBagID.INVALID) {
+			throw IllegalIDException.STACKLESS;
+		}
+		return (int)parsed;
+	}
+
+	/*
+	 * Narrows a running total to the int the interface returns, saturating rather than wrapping
+	 */
+	private static int clamp(long total) {
+		return (int)Math.min(total, Integer.MAX_VALUE);
+	}
+
+	/*
+	 * Returns a record's sales for the current generation, or null if it has none
+	 */
+	private RecordSales currentSales(Record r) {
+		RecordSales rs = r.sales;
+		return rs.generation == salesTotals.generation ? rs : null;
+	}
+
+	@Override
+	public void addBeanBags(int num, String manufacturer, String name, String id, short year, byte month)
+			throws IllegalNumberOfBeanBagsAddedException, BeanBagMismatchException, IllegalIDException,
+			InvalidMonthException {
+		addBeanBags(num, manufacturer, name, id, year, month, ""); //no information given
+	}
+
+	@Override
+	public void addBeanBags(int num, String manufacturer, String name, String id, short year, byte month,
+			String information) throws IllegalNumberOfBeanBagsAddedException, BeanBagMismatchException,
+			IllegalIDException, InvalidMonthException {
+		//input validation
+		if (num<1) {
+			throw IllegalNumberOfBeanBagsAddedException.STACKLESS;
+		}
+		if (month<1 || month>12) {
+			throw InvalidMonthException.STACKLESS;
+		}
+		int key = parseID(id);
+		StringDictionary d = StringDictionary.GLOBAL;
+		Stripe s = stripeFor(key);
+		long stamp = s.lock.writeLock();
+		try {
+			Record r = s.lookup(key);
+			if (r == null) {
+				r = new Record(key, manufacturer, name, information, stockTotals);
+				s.insert(r);
+			} else if (r.manufacturer != d.find(manufacturer) || r.name != d.find(name)
+					|| !Objects.equals(r.information, information)) { //codes are equal exactly when the strings are
+				throw BeanBagMismatchException.STACKLESS;
+			}
+			//atomic add, as sells update num without the lock
+			if ((int)NUM.getAndAdd(r, num) == 0) {
+				r.totals.different.increment(); //ID is (back) in stock
+			}
+			r.totals.stock.add(num);
+		} finally {
+			s.lock.unlockWrite(stamp);
+		}
+	}
+
+	@Override
+	public void setBeanBagPrice(String id, int priceInPence)
+			throws InvalidPriceException, BeanBagIDNotRecognisedException, IllegalIDException {
+		//input validation
+		if (priceInPence < 1) {
+			throw InvalidPriceException.STACKLESS;
+		}
+		int key = parseID(id);
+		Record r = stripeFor(key).find(key);
+		if (r == null) {
+			throw BeanBagIDNotRecognisedException.STACKLESS;
+		}
+		r.price = priceInPence; //volatile write, seen by the next sell
+	}
+
+	@Override
+	public void sellBeanBags(int num, String id)
+			throws BeanBagNotInStockException, InsufficientStockException, IllegalNumberOfBeanBagsSoldException,
+			PriceNotSetException, BeanBagIDNotRecognisedException, IllegalIDException {
+		//input validation
+		if (num < 1) {
+			throw IllegalNumberOfBeanBagsSoldException.STACKLESS;
+		}
+		int key = parseID(id);
+		Record r = stripeFor(key).find(key);
+		if (r == null) {
+			throw BeanBagIDNotRecognisedException.STACKLESS;
+		}
+		int n;
+		int price;
+		do { //re-check against the latest stock count each time the CAS loses a race
+			n = r.num;
+			if (n < 1) {
+				throw BeanBagNotInStockException.STACKLESS;
+			}
+			if (n < num) {
+				throw InsufficientStockException.STACKLESS;
+			}
+			price = r.price;
+			if (price < 0) {
+				throw PriceNotSetException.STACKLESS;
+			}
+		} while (!NUM.compareAndSet(r, n, n - num));
+		StockTotals stock = r.totals;
+		if (n == num) {
+			stock.different.decrement(); //ID has sold out
+		}
+		stock.stock.add(-num);
+		recordSale(r, num, (long)num * price);
+	}
+
+	/*
+	 * Adds a completed sale to the record's and the store's sales totals for the
+	 * current generation. A sale on a record dropped by a concurrent empty()
+	 * happened before the empty, so it is not counted.
+	 */
+	private void recordSale(Record r, int num, long value) {
+		while (true) {
+			SalesTotals totals = salesTotals; //read before checking the stock generation
+			if (r.totals != stockTotals) {
+				return; //record was emptied out from under the sale
+			}
+			RecordSales rs = r.sales;
+			if (rs.generation == totals.generation) {
+				SOLD.getAndAdd(rs, (long)num);
+				VALUE.getAndAdd(rs, value);
+				totals.sold.add(num);
+				totals.value.add(value);
+				return;
+			}
+			if (rs.generation < totals.generation) {
+				SALES.compareAndSet(r, rs, new RecordSales(totals.generation)); //first sale since reset
+			}
+			//otherwise a reset has just happened; retry against the new generation
+		}
+	}
+
+	@Override
+	public int beanBagsInStock() {
+		return clamp(stockTotals.stock.sum());
+	}
+
+	@Override
+	public int beanBagsInStock(String id) throws BeanBagIDNotRecognisedException, IllegalIDException {
+		int key = parseID(id);
+		Record r = stripeFor(key).find(key);
+		if (r == null) {
+			throw BeanBagIDNotRecognisedException.STACKLESS;
+		}
+		return r.num;
+	}
+
+	@Override
+	public int getNumberOfDifferentBeanBagsInStock() {
+		return clamp(stockTotals.different.sum());
+	}
+
+	@Override
+	public int getNumberOfSoldBeanBags() {
+		return clamp(salesTotals.sold.sum());
+	}
+
+	@Override
+	public int getNumberOfSoldBeanBags(String id) throws BeanBagIDNotRecognisedException, IllegalIDException {
+		int key = parseID(id);
+		Record r = stripeFor(key).find(key);
+		RecordSales rs = r == null ? null : currentSales(r);
+		if (rs == null) { //not stocked, or not sold since the last reset, as in CDStore
+			throw BeanBagIDNotRecognisedException.STACKLESS;
+		}
+		return clamp(rs.sold);
+	}
+
+	@Override
+	public int getTotalPriceOfSoldBeanBags() {
+		return clamp(getTotalValueOfSoldBeanBags());
+	}
+
+	/**
+	 * Method to return total price of bean bags sold by this store (in pence)
+	 * as a 64 bit value, which unlike {@link #getTotalPriceOfSoldBeanBags()}
+	 * cannot overflow.
+	 * @return total value of bean bags sold (in pence)
+	 */
+	public long getTotalValueOfSoldBeanBags() {
+		return salesTotals.value.sum();
+	}
+
+	@Override
+	public int getTotalPriceOfSoldBeanBags(String id) throws BeanBagIDNotRecognisedException, IllegalIDException {
+		int key = parseID(id);
+		Record r = stripeFor(key).find(key);
+		RecordSales rs = r == null ? null : currentSales(r);
+		if (rs == null) { //not stocked, or not sold since the last reset, as in CDStore
+			throw BeanBagIDNotRecognisedException.STACKLESS;
+		}
+		return clamp(rs.value);
+	}
+
+	@Override
+	public String getBeanBagDetails(String id) throws BeanBagIDNotRecognisedException, IllegalIDException {
+		int key = parseID(id);
+		Record r = stripeFor(key).find(key);
+		if (r == null) {
+			throw BeanBagIDNotRecognisedException.STACKLESS;
+		}
+		String i = r.information;
+		if (i == null || i.isBlank()) { //return empty string if info is blank or is empty
+			return "";
+		}
+		return i;
+	}
+
+	@Override
+	public void empty() {
+		//take every stripe's write lock in stripe order, so this cannot deadlock with replace
+		long[] stamps = new long[stripes.length];
+		for (int i = 0; i < stripes.length; i++) {
+			stamps[i] = stripes[i].lock.writeLock();
+		}
+		try {
+			for (Stripe s : stripes) {
+				s.clear();
+			}
+			synchronized (this) { //generations are also bumped by resetSaleAndCostTracking
+				//stock generation first: recordSale reads sales then checks stock
+				stockTotals = new StockTotals();
+				salesTotals = new SalesTotals(salesTotals.generation + 1);
+			}
+		} finally {
+			for (int i = stripes.length - 1; i >= 0; i--) {
+				stripes[i].lock.unlockWrite(stamps[i]);
+			}
+		}
+	}
+
+	@Override
+	public synchronized void resetSaleAndCostTracking() {
+		//records pick up the new generation lazily, so no per-record work is needed
+		salesTotals = new SalesTotals(salesTotals.generation + 1);
+	}
+
+	@Override
+	public void replace(String oldId, String replacementId) throws BeanBagIDNotRecognisedException, IllegalIDException {
+		//input validation
+		int oldKey = parseID(oldId);
+		int newKey = parseID(replacementId);
+		int from = stripeIndex(oldKey);
+		int to = stripeIndex(newKey);
+		Stripe source = stripes[from];
+		Stripe target = stripes[to];
+		//lock in stripe order to avoid deadlock with a replace going the other way
+		Stripe first = from <= to ? source : target;
+		Stripe second = from <= to ? target : source;
+		long firstStamp = first.lock.writeLock();
+		long secondStamp = first == second ? 0 : second.lock.writeLock();
+		try {
+			if (source.lookup(oldKey) == null) {
+				throw BeanBagIDNotRecognisedException.STACKLESS;
+			}
+			if (target.lookup(newKey) != null) {
+				throw IllegalIDException.STACKLESS; //replacement ID already in use
+			}
+			//totals are store-wide, so moving the record is all that is needed
+			Record r = source.delete(oldKey);
+			r.id = newKey;
+			target.insert(r);
+		} finally {
+			if (first != second) {
+				second.lock.unlockWrite(secondStamp);
+			}
+			first.lock.unlockWrite(firstStamp);
+		}
+	}
+}
@@ -0,0 +1,201 @@
+package beanbags;
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash index mapping primitive <code>int</code> keys (parsed
+ * bean bag IDs) to non-negative <code>int</code> values, typically the row of
+ * a record in an {@link ObjectArrayList}. Lookups are O(1) on average and do
+ * not allocate.
+ * <p>
+ * Keys and values are interleaved in a single array, so {@link #get(int)}
+ * never fails or loops forever when it races with a writer. The result of
+ * such a racing read is meaningless, but callers that validate it afterwards
+ * (e.g. with a {@link java.util.concurrent.locks.StampedLock} optimistic read)
+ * can look up without locking.
+ *
+ * @author George Rogers
+ * @version 1.1
+ */
+public class IDIndex {
+
+	/** Value returned by {@link #get(int)} when a key is not present. */
+	public static final int ABSENT = -1;
+
+	private int[] table; //key at 2i, value at 2i+1; ABSENT value marks a free slot
+	private int size;
+
+	/**
+	 * Creates an empty index.
+	 */
+	public IDIndex() {
+		this(16);
+	}
+
+	/**
+	 * Creates an empty index sized to hold the given number of keys without resizing.
+	 * @param expected expected number of keys
+	 */
+	public IDIndex(int expected) {
+		int capacity = 16;
+		while (capacity < expected * 2) { //keep load factor at or below 0.5
+			capacity <<= 1;
+		}
+		allocate(capacity);
+	}
+
+	/*
+	 * Allocates an empty table with the given (power of two) number of slots
+	 */
+	private void allocate(int capacity) {
+		int[] t = new int[capacity * 2];
+		Arrays.fill(t, ABSENT);
+		table = t;
+		size = 0;
+	}
+
+	/*
+	 * Spreads the key bits so sequential IDs don't cluster
+	 */
+	private static int slot(int key, int mask) {
+		int h = key * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & mask;
+	}
+
+	/**
+	 * Method to look up the value stored against a key.
+	 * @param key key to search for
+	 * @return value for the key, or {@link #ABSENT} if the key is not present
+	 */
+	public int get(int key) {
+		int[] t = table; //read once so a concurrent resize can't mix two tables
+		int mask = (t.length >> 1) - 1;
+		int i = slot(key, mask);
+		for (int probes = 0; probes <= mask; probes++) {
+			int value = t[2 * i + 1];
+			if (value == ABSENT) {
+				return ABSENT;
+			}
+			if (t[2 * i] == key) {
+				return value;
+			}
+			i = (i + 1) & mask;
+		}
+		return ABSENT; //only reachable when racing with a writer
+	}
+
+	/**
+	 * Method to check whether a key is present.
+	 * @param key key to search for
+	 * @return <code>true</code> if the key is present
+	 */
+	public boolean contains(int key) {
+		return get(key) != ABSENT;
+	}
+
+	/**
+	 * Method to store a value against a key, replacing any existing value.
+	 * @param key key to store
+	 * @param value non-negative value to store
+	 */
+	public void put(int key, int value) {
+		if (value < 0) {
+			throw new IllegalArgumentException("Index values must be non-negative");
+		}
+		if ((size + 1) * 4 > table.length) { //2 ints per slot, load factor 0.5
+			grow();
+		}
+		int[] t = table;
+		int mask = (t.length >> 1) - 1;
+		int i = slot(key, mask);
+		while (t[2 * i + 1] != ABSENT) {
+			if (t[2 * i] == key) {
+				t[2 * i + 1] = value; //overwrite existing mapping
+				return;
+			}
+			i = (i + 1) & mask;
+		}
+		t[2 * i] = key; //key first, so a racing reader never pairs a value with a stale key
+		t[2 * i + 1] = value;
+		size++;
+	}
+
+	/**
+	 * Method to remove a key from the index.
+	 * @param key key to remove
+	 * @return value that was stored against the key, or {@link #ABSENT} if not present
+	 */
+	public int remove(int key) {
+		int[] t = table;
+		int mask = (t.length >> 1) - 1;
+		int i = slot(key, mask);
+		while (t[2 * i + 1] != ABSENT) {
+			if (t[2 * i] == key) {
+				int removed = t[2 * i + 1];
+				shiftBack(t, mask, i);
+				size--;
+				return removed;
+			}
+			i = (i + 1) & mask;
+		}
+		return ABSENT;
+	}
+
+	/*
+	 * Backward-shift deletion: moves later entries of the probe run into the
+	 * freed slot so lookups never need tombstones
+	 */
+	private static void shiftBack(int[] t, int mask, int free) {
+		int i = free;
+		while (true) {
+			i = (i + 1) & mask;
+			if (t[2 * i + 1] == ABSENT) {
+				break;
+			}
+			int home = slot(t[2 * i], mask);
+			//entry can move if its home slot is not cyclically within (free, i]
+			if (((i - home) & mask) >= ((i - free) & mask)) {
+				t[2 * free] = t[2 * i];
+				t[2 * free + 1] = t[2 * i + 1];
+				free = i;
+			}
+		}
+		t[2 * free + 1] = ABSENT;
+	}
+
+	/*
+	 * Doubles the capacity and re-inserts every entry into a fresh table
+	 */
+	private void grow() {
+		int[] old = table;
+		int[] t = new int[old.length * 2];
+		Arrays.fill(t, ABSENT);
+		int mask = (t.length >> 1) - 1;
+		for (int j = 0; j < old.length; j += 2) {
+			if (old[j + 1] != ABSENT) {
+				int i = slot(old[j], mask);
+				while (t[2 * i + 1] != ABSENT) {
+					i = (i + 1) & mask;
+				}
+				t[2 * i] = old[j];
+				t[2 * i + 1] = old[j + 1];
+			}
+		}
+		table = t; //publish only once fully built
+	}
+
+	/**
+	 * Method removes every key from the index.
+	 */
+	public void clear() {
+		Arrays.fill(table, ABSENT);
+		size = 0;
+	}
+
+	/**
+	 * Method returns the number of keys in the index.
+	 * @return number of keys
+	 */
+	public int size() {
+		return size;
+	}
+}
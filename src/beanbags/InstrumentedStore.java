@@ -0,0 +1,302 @@
+package beanbags;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Instrumenting decorator for any CutDownStore. Every call is counted as a
+ * success or as a failure of its exception class, sampled calls are timed
+ * into the latency histogram of their operation, and each operation's
+ * {@link OperationStats} can be {@link #registerMBeans(String) registered}
+ * as an MXBean for JMX consoles. Both addBeanBags overloads share one
+ * operation; the other overloads taking an ID are named with a
+ * <code>ById</code> suffix.
+ * <p>
+ * By default one call in {@link #DEFAULT_SAMPLE_EVERY}, picked at random,
+ * is timed, since the two {@link System#nanoTime()} reads a timing needs
+ * cost more than the rest of the recording. Recording does not allocate.
+ * The decorator adds no locking, so it is as thread-safe as the store it wraps.
+ *
+ * @author George Rogers
+ * @version 1.0
+ */
+public class InstrumentedStore implements CutDownStore {
+
+	/** Calls per call timed by default. */
+	public static final int DEFAULT_SAMPLE_EVERY = 16;
+
+	private final CutDownStore store;
+	private final OperationStats add, price, sell, stock, stockById, different, sold, soldById, soldPrice,
+			soldPriceById, details, empty, reset, replace;
+	private final OperationStats[] all;
+	private final List<ObjectName> registered = new ArrayList<>();
+
+	/**
+	 * Creates a decorator recording the calls made to a store, timing one
+	 * call in {@link #DEFAULT_SAMPLE_EVERY}.
+	 * @param store store to instrument
+	 */
+	public InstrumentedStore(CutDownStore store) {
+		this(store, DEFAULT_SAMPLE_EVERY);
+	}
+
+	/**
+	 * Creates a decorator recording the calls made to a store.
+	 * @param store store to instrument
+	 * @param sampleEvery one call in this many, at random, is timed; a power of two, 1 to time every call
+	 */
+	public InstrumentedStore(CutDownStore store, int sampleEvery) {
+		this.store = store;
+		add = new OperationStats("addBeanBags", sampleEvery);
+		price = new OperationStats("setBeanBagPrice", sampleEvery);
+		sell = new OperationStats("sellBeanBags", sampleEvery);
+		stock = new OperationStats("beanBagsInStock", sampleEvery);
+		stockById = new OperationStats("beanBagsInStockById", sampleEvery);
+		different = new OperationStats("getNumberOfDifferentBeanBagsInStock", sampleEvery);
+		sold = new OperationStats("getNumberOfSoldBeanBags", sampleEvery);
+		soldById = new OperationStats("getNumberOfSoldBeanBagsById", sampleEvery);
+		soldPrice = new OperationStats("getTotalPriceOfSoldBeanBags", sampleEvery);
+		soldPriceById = new OperationStats("getTotalPriceOfSoldBeanBagsById", sampleEvery);
+		details = new OperationStats("getBeanBagDetails", sampleEvery);
+		empty = new OperationStats("empty", sampleEvery);
+		reset = new OperationStats("resetSaleAndCostTracking", sampleEvery);
+		replace = new OperationStats("replace", sampleEvery);
+		all = new OperationStats[] {add, price, sell, stock, stockById, different, sold, soldById, soldPrice,
+				soldPriceById, details, empty, reset, replace};
+	}
+
+	/**
+	 * Method returns the statistics of every operation.
+	 * @return statistics, one per operation
+	 */
+	public OperationStats[] getOperationStats() {
+		return all.clone();
+	}
+
+	/**
+	 * Method registers the statistics of every operation with the platform
+	 * MBean server, named
+	 * <code>beanbags:type=CutDownStore,name=</code><i>name</i><code>,operation=</code><i>operation</i>.
+	 * @param name name distinguishing this store from others in the same JVM
+	 * @throws JMException if the names are malformed or already registered
+	 */
+	public synchronized void registerMBeans(String name) throws JMException {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		for (OperationStats s : all) {
+			ObjectName o = new ObjectName("beanbags:type=CutDownStore,name=" + ObjectName.quote(name) + ",operation="
+					+ s.getName());
+			server.registerMBean(s, o);
+			registered.add(o);
+		}
+	}
+
+	/**
+	 * Method unregisters the MBeans registered by {@link #registerMBeans(String)}.
+	 * @throws JMException if an MBean could not be unregistered
+	 */
+	public synchronized void unregisterMBeans() throws JMException {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		while (!registered.isEmpty()) {
+			server.unregisterMBean(registered.remove(registered.size() - 1));
+		}
+	}
+
+	@Override
+	public void addBeanBags(int num, String manufacturer, String name, String id, short year, byte month)
+			throws IllegalNumberOfBeanBagsAddedException, BeanBagMismatchException, IllegalIDException,
+			InvalidMonthException {
+		addBeanBags(num, manufacturer, name, id, year, month, ""); //no information given
+	}
+
+	@Override
+	public void addBeanBags(int num, String manufacturer, String name, String id, short year, byte month,
+			String information) throws IllegalNumberOfBeanBagsAddedException, BeanBagMismatchException,
+			IllegalIDException, InvalidMonthException {
+		long start = add.start();
+		try {
+			store.addBeanBags(num, manufacturer, name, id, year, month, information);
+		} catch (Exception e) {
+			add.failure(start, e);
+			throw e; //rethrown with its own type
+		}
+		add.success(start);
+	}
+
+	@Override
+	public void setBeanBagPrice(String id, int priceInPence)
+			throws InvalidPriceException, BeanBagIDNotRecognisedException, IllegalIDException {
+		long start = price.start();
+		try {
+			store.setBeanBagPrice(id, priceInPence);
+		} catch (Exception e) {
+			price.failure(start, e);
+			throw e;
+		}
+		price.success(start);
+	}
+
+	@Override
+	public void sellBeanBags(int num, String id)
+			throws BeanBagNotInStockException, InsufficientStockException, IllegalNumberOfBeanBagsSoldException,
+			PriceNotSetException, BeanBagIDNotRecognisedException, IllegalIDException {
+		long start = sell.start();
+		try {
+			store.sellBeanBags(num, id);
+		} catch (Exception e) {
+			sell.failure(start, e);
+			throw e;
+		}
+		sell.success(start);
+	}
+
+	@Override
+	public int beanBagsInStock() {
+		long start = stock.start();
+		int result;
+		try {
+			result = store.beanBagsInStock();
+		} catch (RuntimeException e) {
+			stock.failure(start, e);
+			throw e;
+		}
+		stock.success(start);
+		return result;
+	}
+
+	@Override
+	public int beanBagsInStock(String id) throws BeanBagIDNotRecognisedException, IllegalIDException {
+		long start = stockById.start();
+		int result;
+		try {
+			result = store.beanBagsInStock(id);
+		} catch (Exception e) {
+			stockById.failure(start, e);
+			throw e;
+		}
+		stockById.success(start);
+		return result;
+	}
+
+	@Override
+	public int getNumberOfDifferentBeanBagsInStock() {
+		long start = different.start();
+		int result;
+		try {
+			result = store.getNumberOfDifferentBeanBagsInStock();
+		} catch (RuntimeException e) {
+			different.failure(start, e);
+			throw e;
+		}
+		different.success(start);
+		return result;
+	}
+
+	@Override
+	public int getNumberOfSoldBeanBags() {
+		long start = sold.start();
+		int result;
+		try {
+			result = store.getNumberOfSoldBeanBags();
+		} catch (RuntimeException e) {
+			sold.failure(start, e);
+			throw e;
+		}
+		sold.success(start);
+		return result;
+	}
+
+	@Override
+	public int getNumberOfSoldBeanBags(String id) throws BeanBagIDNotRecognisedException, IllegalIDException {
+		long start = soldById.start();
+		int result;
+		try {
+			result = store.getNumberOfSoldBeanBags(id);
+		} catch (Exception e) {
+			soldById.failure(start, e);
+			throw e;
+		}
+		soldById.success(start);
+		return result;
+	}
+
+	@Override
+	public int getTotalPriceOfSoldBeanBags() {
+		long start = soldPrice.start();
+		int result;
+		try {
+			result = store.getTotalPriceOfSoldBeanBags();
+		} catch (RuntimeException e) {
+			soldPrice.failure(start, e);
+			throw e;
+		}
+		soldPrice.success(start);
+		return result;
+	}
+
+	@Override
+	public int getTotalPriceOfSoldBeanBags(String id) throws BeanBagIDNotRecognisedException, IllegalIDException {
+		long start = soldPriceById.start();
+		int result;
+		try {
+			result = store.getTotalPriceOfSoldBeanBags(id);
+		} catch (Exception e) {
+			soldPriceById.failure(start, e);
+			throw e;
+		}
+		soldPriceById.success(start);
+		return result;
+	}
+
+	@Override
+	public String getBeanBagDetails(String id) throws BeanBagIDNotRecognisedException, IllegalIDException {
+		long start = details.start();
+		String result;
+		try {
+			result = store.getBeanBagDetails(id);
+		} catch (Exception e) {
+			details.failure(start, e);
+			throw e;
+		}
+		details.success(start);
+		return result;
+	}
+
+	@Override
+	public void empty() {
+		long start = empty.start();
+		try {
+			store.empty();
+		} catch (RuntimeException e) {
+			empty.failure(start, e);
+			throw e;
+		}
+		empty.success(start);
+	}
+
+	@Override
+	public void resetSaleAndCostTracking() {
+		long start = reset.start();
+		try {
+			store.resetSaleAndCostTracking();
+		} catch (RuntimeException e) {
+			reset.failure(start, e);
+			throw e;
+		}
+		reset.success(start);
+	}
+
+	@Override
+	public void replace(String oldId, String replacementId) throws BeanBagIDNotRecognisedException, IllegalIDException {
+		long start = replace.start();
+		try {
+			store.replace(oldId, replacementId);
+		} catch (Exception e) {
+			replace.failure(start, e);
+			throw e;
+		}
+		replace.success(start);
+	}
+}
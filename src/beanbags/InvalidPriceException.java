@@ -22,4 +22,21 @@ public class InvalidPriceException extends Exception
     public InvalidPriceException(String message){ 
         super(message);
     }
+
+    /**
+     * Shared instance with no message and no stack trace, thrown by the
+     * stores so that a rejected call does not build a new exception
+     */
+    static final InvalidPriceException STACKLESS = new InvalidPriceException(null, false);
+
+    /**
+     * Constructs an instance of the exception containing the message
+     * argument, optionally without a stack trace
+     * 
+     * @param message   message containing details regarding the exception cause
+     * @param writableStackTrace   <code>false</code> to leave the stack trace empty
+     */
+    protected InvalidPriceException(String message, boolean writableStackTrace){
+        super(message, null, false, writableStackTrace);
+    }
 }
@@ -0,0 +1,232 @@
+package beanbags;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+/**
+ * Durable decorator for any CutDownStore. Every mutation that succeeds on
+ * the wrapped store is recorded in a {@link StoreJournal} and made durable
+ * before the call returns, and the journal is replayed into the wrapped
+ * store when this store is opened, so a restart loses nothing that was
+ * acknowledged.
+ * <p>
+ * A mutation and its journal append happen together under one short lock,
+ * so the journal order is exactly the order the mutations took effect in
+ * and replay reproduces the same state. Each record is encoded before its
+ * mutation is applied, so a mutation that cannot be recorded never changes
+ * the store, and the record is discarded if the store rejects the mutation.
+ * The fsync happens after that lock is released and is shared between
+ * concurrent callers (group commit).
+ * Reads go straight to the wrapped store.
+ * <p>
+ * If a mutation is applied but the journal cannot be written, an
+ * {@link UncheckedIOException} is thrown and the in-memory state may be
+ * ahead of the journal. Every later mutation is then refused with an
+ * UncheckedIOException before it is applied; the store should be closed
+ * and reopened.
+ *
+ * @author George Rogers
+ * @version 1.0
+ */
+public class JournaledStore implements CutDownStore, Closeable {
+
+	private final CutDownStore store;
+	private final StoreJournal journal;
+	private final Object order = new Object(); //keeps journal order equal to apply order
+	private ByteBuffer record = ByteBuffer.allocate(256); //next record, encoded before applying, guarded by order
+	private final long replayed;
+
+	/**
+	 * Opens a journaled store, replaying any existing journal into the given store.
+	 * @param store store to wrap, normally empty
+	 * @param file journal file, created if it does not exist
+	 * @throws IOException if the journal cannot be opened or replayed
+	 */
+	public JournaledStore(CutDownStore store, Path file) throws IOException {
+		this.store = store;
+		this.journal = new StoreJournal(file);
+		try {
+			this.replayed = journal.replay(store);
+		} catch (IOException e) {
+			journal.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Method returns the number of journal records replayed when this store was opened.
+	 * @return number of records replayed
+	 */
+	public long getReplayedRecords() {
+		return replayed;
+	}
+
+	/*
+	 * Returns the record buffer, cleared and able to hold maxSize bytes. Caller holds order.
+	 */
+	private ByteBuffer record(int maxSize) {
+		if (record.capacity() < maxSize) {
+			record = ByteBuffer.allocate(Math.max(maxSize, record.capacity() * 2));
+		}
+		record.clear();
+		return record;
+	}
+
+	/*
+	 * Refuses a mutation once the journal has failed, so the store gets no further ahead of it. Caller holds order.
+	 */
+	private void checkJournal() {
+		IOException failure = journal.getFailure();
+		if (failure != null) {
+			throw new UncheckedIOException("Journal failed; close and reopen the store", failure);
+		}
+	}
+
+	/*
+	 * Waits for a journal record to reach the disk
+	 */
+	private void sync(long sequence) {
+		try {
+			journal.sync(sequence);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public void addBeanBags(int num, String manufacturer, String name, String id, short year, byte month)
+			throws IllegalNumberOfBeanBagsAddedException, BeanBagMismatchException, IllegalIDException,
+			InvalidMonthException {
+		addBeanBags(num, manufacturer, name, id, year, month, ""); //no information given
+	}
+
+	@Override
+	public void addBeanBags(int num, String manufacturer, String name, String id, short year, byte month,
+			String information) throws IllegalNumberOfBeanBagsAddedException, BeanBagMismatchException,
+			IllegalIDException, InvalidMonthException {
+		long sequence;
+		synchronized (order) {
+			checkJournal();
+			StoreMutations.putAdd(record(StoreMutations.maxAddSize(manufacturer, name, information)), num,
+					manufacturer, name, (int)BeanBagID.parse(id), year, month, information);
+			store.addBeanBags(num, manufacturer, name, id, year, month, information);
+			sequence = journal.append(record.flip());
+		}
+		sync(sequence);
+	}
+
+	@Override
+	public void setBeanBagPrice(String id, int priceInPence)
+			throws InvalidPriceException, BeanBagIDNotRecognisedException, IllegalIDException {
+		long sequence;
+		synchronized (order) {
+			checkJournal();
+			StoreMutations.putPrice(record(StoreMutations.MAX_FIXED_SIZE), (int)BeanBagID.parse(id), priceInPence);
+			store.setBeanBagPrice(id, priceInPence);
+			sequence = journal.append(record.flip());
+		}
+		sync(sequence);
+	}
+
+	@Override
+	public void sellBeanBags(int num, String id)
+			throws BeanBagNotInStockException, InsufficientStockException, IllegalNumberOfBeanBagsSoldException,
+			PriceNotSetException, BeanBagIDNotRecognisedException, IllegalIDException {
+		long sequence;
+		synchronized (order) {
+			checkJournal();
+			StoreMutations.putSell(record(StoreMutations.MAX_FIXED_SIZE), num, (int)BeanBagID.parse(id));
+			store.sellBeanBags(num, id);
+			sequence = journal.append(record.flip());
+		}
+		sync(sequence);
+	}
+
+	@Override
+	public int beanBagsInStock() {
+		return store.beanBagsInStock();
+	}
+
+	@Override
+	public int beanBagsInStock(String id) throws BeanBagIDNotRecognisedException, IllegalIDException {
+		return store.beanBagsInStock(id);
+	}
+
+	@Override
+	public int getNumberOfDifferentBeanBagsInStock() {
+		return store.getNumberOfDifferentBeanBagsInStock();
+	}
+
+	@Override
+	public int getNumberOfSoldBeanBags() {
+		return store.getNumberOfSoldBeanBags();
+	}
+
+	@Override
+	public int getNumberOfSoldBeanBags(String id) throws BeanBagIDNotRecognisedException, IllegalIDException {
+		return store.getNumberOfSoldBeanBags(id);
+	}
+
+	@Override
+	public int getTotalPriceOfSoldBeanBags() {
+		return store.getTotalPriceOfSoldBeanBags();
+	}
+
+	@Override
+	public int getTotalPriceOfSoldBeanBags(String id) throws BeanBagIDNotRecognisedException, IllegalIDException {
+		return store.getTotalPriceOfSoldBeanBags(id);
+	}
+
+	@Override
+	public String getBeanBagDetails(String id) throws BeanBagIDNotRecognisedException, IllegalIDException {
+		return store.getBeanBagDetails(id);
+	}
+
+	@Override
+	public void empty() {
+		long sequence;
+		synchronized (order) {
+			checkJournal();
+			StoreMutations.putNoArgs(record(StoreMutations.MAX_FIXED_SIZE), StoreMutations.EMPTY);
+			store.empty();
+			sequence = journal.append(record.flip());
+		}
+		sync(sequence);
+	}
+
+	@Override
+	public void resetSaleAndCostTracking() {
+		long sequence;
+		synchronized (order) {
+			checkJournal();
+			StoreMutations.putNoArgs(record(StoreMutations.MAX_FIXED_SIZE), StoreMutations.RESET);
+			store.resetSaleAndCostTracking();
+			sequence = journal.append(record.flip());
+		}
+		sync(sequence);
+	}
+
+	@Override
+	public void replace(String oldId, String replacementId) throws BeanBagIDNotRecognisedException, IllegalIDException {
+		long sequence;
+		synchronized (order) {
+			checkJournal();
+			StoreMutations.putReplace(record(StoreMutations.MAX_FIXED_SIZE), (int)BeanBagID.parse(oldId),
+					(int)BeanBagID.parse(replacementId));
+			store.replace(oldId, replacementId);
+			sequence = journal.append(record.flip());
+		}
+		sync(sequence);
+	}
+
+	/**
+	 * Method makes every journaled mutation durable and closes the journal.
+	 * @throws IOException if the journal could not be written
+	 */
+	@Override
+	public void close() throws IOException {
+		journal.close();
+	}
+}
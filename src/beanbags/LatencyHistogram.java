@@ -0,0 +1,144 @@
+package beanbags;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Concurrent histogram of latencies in nanoseconds, bucketed in the style of
+ * HdrHistogram: values below 128 have a bucket each, and above that every
+ * power of two is split into 64 buckets, so any value is recorded to within
+ * about 1.6% over the whole range of <code>long</code>. Recording is one
+ * atomic add and never allocates; reading walks all 3712 buckets.
+ *
+ * @author George Rogers
+ * @version 1.0
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BITS = 7;
+	private static final int LINEAR = 1 << SUB_BITS; //values below this have a bucket each
+	private static final int HALF = LINEAR >> 1; //buckets per power of two above that
+	private static final int BUCKETS = (64 - SUB_BITS) * HALF + LINEAR - HALF;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+	/*
+	 * Returns the bucket of a value
+	 */
+	private static int bucket(long value) {
+		if (value < LINEAR) {
+			return value < 0 ? 0 : (int)value;
+		}
+		int shift = 64 - SUB_BITS - Long.numberOfLeadingZeros(value); //keep the top SUB_BITS bits
+		return shift * HALF + (int)(value >>> shift);
+	}
+
+	/*
+	 * Returns the lowest value recorded in a bucket
+	 */
+	private static long lowest(int bucket) {
+		if (bucket < LINEAR) {
+			return bucket;
+		}
+		int shift = bucket / HALF - 1;
+		return (long)(bucket % HALF + HALF) << shift;
+	}
+
+	/*
+	 * Returns a value representing a bucket: the middle of its range
+	 */
+	private static long middle(int bucket) {
+		if (bucket < LINEAR) {
+			return bucket;
+		}
+		return lowest(bucket) + ((1L << (bucket / HALF - 1)) >> 1);
+	}
+
+	/**
+	 * Method records one latency.
+	 * @param nanos latency in nanoseconds; negative values are recorded as 0
+	 */
+	public void record(long nanos) {
+		counts.getAndIncrement(bucket(nanos));
+	}
+
+	/**
+	 * Method returns the number of latencies recorded.
+	 * @return count
+	 */
+	public long getCount() {
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			total += counts.get(i);
+		}
+		return total;
+	}
+
+	/**
+	 * Method returns the latency at a percentile, to within the precision of the buckets.
+	 * @param percentile percentile between 0 and 100
+	 * @return latency in nanoseconds, or 0 if nothing has been recorded
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long[] c = snapshot();
+		long total = 0;
+		for (long n : c) {
+			total += n;
+		}
+		long rank = Math.max(1, (long)Math.ceil(Math.min(percentile, 100) / 100 * total));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += c[i];
+			if (seen >= rank) {
+				return middle(i);
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Method returns the mean latency, to within the precision of the buckets.
+	 * @return mean in nanoseconds, or 0 if nothing has been recorded
+	 */
+	public double getMean() {
+		long[] c = snapshot();
+		long total = 0;
+		double sum = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			total += c[i];
+			sum += (double)c[i] * middle(i);
+		}
+		return total == 0 ? 0 : sum / total;
+	}
+
+	/**
+	 * Method returns the highest latency recorded, to within the precision of the buckets.
+	 * @return maximum in nanoseconds, or 0 if nothing has been recorded
+	 */
+	public long getMax() {
+		for (int i = BUCKETS - 1; i >= 0; i--) {
+			if (counts.get(i) != 0) {
+				return middle(i);
+			}
+		}
+		return 0;
+	}
+
+	/*
+	 * Copies the counts, so a reading is consistent with itself while recording carries on
+	 */
+	private long[] snapshot() {
+		long[] c = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			c[i] = counts.get(i);
+		}
+		return c;
+	}
+
+	/**
+	 * Method clears the histogram. Latencies recorded while it is being cleared may be kept or lost.
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			counts.set(i, 0);
+		}
+	}
+}
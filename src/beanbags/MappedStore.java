@@ -0,0 +1,260 @@
+package beanbags;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Read-only CutDownStore served straight from a memory-mapped
+ * {@link StoreSnapshot} file. Opening only reads the header and maps the
+ * columns, so it takes about the same time for any catalogue size; pages
+ * are faulted in lazily as IDs are looked up. Per-ID lookups binary search
+ * the sorted ID column, and store-wide totals come from the header.
+ * <p>
+ * The mutating methods throw {@link UnsupportedOperationException}; to carry
+ * on trading, {@link #loadInto(CDStore) load} the snapshot into a CDStore.
+ * Each column is mapped separately, so a column (and the string bytes) may
+ * be up to 2GB.
+ *
+ * @author George Rogers
+ * @version 1.0
+ */
+public class MappedStore implements CutDownStore, Closeable {
+
+	private final FileChannel channel;
+	private final int rows;
+	private final long stockTotal;
+	private final int differentInStock;
+	private final long soldTotal;
+	private final long soldValue;
+	private final IntBuffer ids, nums, prices, sold, manufacturers, names, informations;
+	private final LongBuffer values, stringOffsets;
+	private final MappedByteBuffer stringBytes;
+
+	/**
+	 * Maps a snapshot file. See {@link StoreSnapshot#open(Path)}.
+	 * @param file snapshot file
+	 * @throws IOException if the file cannot be mapped or is not a snapshot
+	 */
+	MappedStore(Path file) throws IOException {
+		channel = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, StoreSnapshot.HEADER);
+			if (header.getInt(0) != StoreSnapshot.MAGIC || header.getInt(4) != StoreSnapshot.VERSION) {
+				throw new IOException("Not a store snapshot: " + file);
+			}
+			rows = header.getInt(8);
+			int strings = header.getInt(12);
+			stockTotal = header.getLong(16);
+			differentInStock = header.getInt(24);
+			soldTotal = header.getLong(32);
+			soldValue = header.getLong(40);
+			long offset = StoreSnapshot.HEADER;
+			ids = map(offset, 4L * rows).asIntBuffer();
+			offset += 4L * rows;
+			nums = map(offset, 4L * rows).asIntBuffer();
+			offset += 4L * rows;
+			prices = map(offset, 4L * rows).asIntBuffer();
+			offset += 4L * rows;
+			sold = map(offset, 4L * rows).asIntBuffer();
+			offset += 4L * rows;
+			values = map(offset, 8L * rows).asLongBuffer();
+			offset += 8L * rows;
+			manufacturers = map(offset, 4L * rows).asIntBuffer();
+			offset += 4L * rows;
+			names = map(offset, 4L * rows).asIntBuffer();
+			offset += 4L * rows;
+			informations = map(offset, 4L * rows).asIntBuffer();
+			offset += 4L * rows;
+			stringOffsets = map(offset, 8L * (strings + 1)).asLongBuffer();
+			offset += 8L * (strings + 1);
+			stringBytes = map(offset, stringOffsets.get(strings));
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/*
+	 * Maps one region of the file
+	 */
+	private MappedByteBuffer map(long offset, long length) throws IOException {
+		return channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+	}
+
+	/*
+	 * Binary searches the ID column, returning the row or -1 if absent
+	 */
+	private int find(int id) {
+		int low = 0, high = rows - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int midId = ids.get(mid);
+			if (midId < id) {
+				low = mid + 1;
+			} else if (midId > id) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	/*
+	 * Validates and parses an ID and finds its row, throwing if it is illegal or unknown
+	 */
+	private int row(String id) throws BeanBagIDNotRecognisedException, IllegalIDException {
+		long parsed = BeanBagID.parse(id);
+		if (parsed == BeanBagID.INVALID) {
+			throw IllegalIDException.STACKLESS;
+		}
+		int row = find((int)parsed);
+		if (row < 0) {
+			throw BeanBagIDNotRecognisedException.STACKLESS;
+		}
+		return row;
+	}
+
+	/*
+	 * Decodes an entry of the string table, or returns null for StoreSnapshot.NULL_STRING
+	 */
+	private String string(int code) {
+		if (code == StoreSnapshot.NULL_STRING) {
+			return null;
+		}
+		int start = (int)stringOffsets.get(code);
+		int length = (int)(stringOffsets.get(code + 1) - start);
+		byte[] bytes = new byte[length];
+		stringBytes.get(start, bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/*
+	 * Narrows a total to the int the interface returns, saturating rather than wrapping
+	 */
+	private static int clamp(long total) {
+		return (int)Math.min(total, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Method loads the whole snapshot into a store so that it can be modified.
+	 * @param store empty store to load into
+	 */
+	public void loadInto(CDStore store) {
+		for (int row = 0; row < rows; row++) {
+			int s = sold.get(row);
+			store.restore(ids.get(row), nums.get(row), prices.get(row), string(manufacturers.get(row)),
+					string(names.get(row)), string(informations.get(row)), s, values.get(row));
+		}
+	}
+
+	/*
+	 * Rejects a mutation
+	 */
+	private static UnsupportedOperationException readOnly() {
+		return new UnsupportedOperationException("Snapshot is read-only; load it into a CDStore to modify it");
+	}
+
+	@Override
+	public void addBeanBags(int num, String manufacturer, String name, String id, short year, byte month) {
+		throw readOnly();
+	}
+
+	@Override
+	public void addBeanBags(int num, String manufacturer, String name, String id, short year, byte month,
+			String information) {
+		throw readOnly();
+	}
+
+	@Override
+	public void setBeanBagPrice(String id, int priceInPence) {
+		throw readOnly();
+	}
+
+	@Override
+	public void sellBeanBags(int num, String id) {
+		throw readOnly();
+	}
+
+	@Override
+	public int beanBagsInStock() {
+		return clamp(stockTotal);
+	}
+
+	@Override
+	public int beanBagsInStock(String id) throws BeanBagIDNotRecognisedException, IllegalIDException {
+		return nums.get(row(id));
+	}
+
+	@Override
+	public int getNumberOfDifferentBeanBagsInStock() {
+		return differentInStock;
+	}
+
+	@Override
+	public int getNumberOfSoldBeanBags() {
+		return clamp(soldTotal);
+	}
+
+	@Override
+	public int getNumberOfSoldBeanBags(String id) throws BeanBagIDNotRecognisedException, IllegalIDException {
+		int s = sold.get(row(id));
+		if (s < 0) { //not sold since the last reset, as in CDStore
+			throw BeanBagIDNotRecognisedException.STACKLESS;
+		}
+		return s;
+	}
+
+	@Override
+	public int getTotalPriceOfSoldBeanBags() {
+		return clamp(soldValue);
+	}
+
+	@Override
+	public int getTotalPriceOfSoldBeanBags(String id) throws BeanBagIDNotRecognisedException, IllegalIDException {
+		int row = row(id);
+		if (sold.get(row) < 0) {
+			throw BeanBagIDNotRecognisedException.STACKLESS;
+		}
+		return clamp(values.get(row));
+	}
+
+	@Override
+	public String getBeanBagDetails(String id) throws BeanBagIDNotRecognisedException, IllegalIDException {
+		String i = string(informations.get(row(id)));
+		if (i == null || i.isBlank()) { //return empty string if info is blank or is empty
+			return "";
+		}
+		return i;
+	}
+
+	@Override
+	public void empty() {
+		throw readOnly();
+	}
+
+	@Override
+	public void resetSaleAndCostTracking() {
+		throw readOnly();
+	}
+
+	@Override
+	public void replace(String oldId, String replacementId) {
+		throw readOnly();
+	}
+
+	/**
+	 * Method closes the snapshot file. The mappings stay valid until they are garbage collected.
+	 * @throws IOException if the file cannot be closed
+	 */
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
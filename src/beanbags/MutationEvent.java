@@ -0,0 +1,202 @@
+package beanbags;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * One store mutation in a {@link MutationFeed}. Events are preallocated in
+ * the feed's ring and overwritten in place, and each consumer copies them
+ * into its own event, so publishing and consuming never allocate.
+ * <p>
+ * The type is one of the {@link StoreMutations} type bytes, and only the
+ * fields that type has are meaningful: e.g. {@link StoreMutations#SELL} has
+ * an ID, a number and the price per bean bag the sale was made at. The
+ * manufacturer and name are carried as their codes in
+ * {@link StringDictionary#GLOBAL}, and the information as its string.
+ *
+ * @author George Rogers
+ * @version 1.0
+ */
+public final class MutationEvent {
+
+	private static final VarHandle SEQUENCE;
+	static {
+		try {
+			SEQUENCE = MethodHandles.lookup().findVarHandle(MutationEvent.class, "sequence", long.class);
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	private volatile long sequence = -1; //sequence of the event held, -1 while it is being written
+	private byte type;
+	private int id, num, price, replacementId;
+	private short year;
+	private byte month;
+	private int manufacturer, name; //codes in StringDictionary.GLOBAL
+	private String information;
+
+	/**
+	 * Creates an empty event, for a consumer to copy events into.
+	 */
+	public MutationEvent() {
+	}
+
+	/*
+	 * Marks the event as being overwritten, so a consumer copying it sees the change
+	 */
+	void begin() {
+		SEQUENCE.setOpaque(this, -1L);
+		VarHandle.storeStoreFence();
+	}
+
+	/*
+	 * Publishes the event as the given sequence, once its fields are written
+	 */
+	void end(long seq) {
+		SEQUENCE.setRelease(this, seq);
+	}
+
+	/*
+	 * Sets every field; those the type does not have are zero
+	 */
+	void set(byte type, int id, int num, int price, int replacementId, short year, byte month, int manufacturer,
+			int name, String information) {
+		this.type = type;
+		this.id = id;
+		this.num = num;
+		this.price = price;
+		this.replacementId = replacementId;
+		this.year = year;
+		this.month = month;
+		this.manufacturer = manufacturer;
+		this.name = name;
+		this.information = information;
+	}
+
+	/*
+	 * Copies this event into another if it still holds the given sequence,
+	 * returning false if the producer has overwritten it
+	 */
+	boolean copyTo(MutationEvent e, long seq) {
+		if ((long)SEQUENCE.getAcquire(this) != seq) {
+			return false;
+		}
+		e.set(type, id, num, price, replacementId, year, month, manufacturer, name, information);
+		VarHandle.acquireFence(); //read the fields before checking they were not overwritten meanwhile
+		if ((long)SEQUENCE.getOpaque(this) != seq) {
+			return false;
+		}
+		SEQUENCE.set(e, seq); //the copy is only read by its consumer
+		return true;
+	}
+
+	/**
+	 * Getter method for the sequence of the event in its feed.
+	 * @return sequence, starting from 0
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * Getter method for the type of mutation.
+	 * @return one of the {@link StoreMutations} type bytes
+	 */
+	public byte getType() {
+		return type;
+	}
+
+	/**
+	 * Getter method for the ID of the bean bags (the old ID of a replace).
+	 * @return ID (see {@link BeanBagID})
+	 */
+	public int getID() {
+		return id;
+	}
+
+	/**
+	 * Getter method for the number of bean bags added or sold.
+	 * @return number of bean bags
+	 */
+	public int getNum() {
+		return num;
+	}
+
+	/**
+	 * Getter method for the price set, or the price per bean bag of a sale.
+	 * @return price in pence
+	 */
+	public int getPrice() {
+		return price;
+	}
+
+	/**
+	 * Getter method for the replacement ID of a replace.
+	 * @return replacement ID (see {@link BeanBagID})
+	 */
+	public int getReplacementID() {
+		return replacementId;
+	}
+
+	/**
+	 * Getter method for the year of manufacture of added bean bags.
+	 * @return year of manufacture
+	 */
+	public short getYear() {
+		return year;
+	}
+
+	/**
+	 * Getter method for the month of manufacture of added bean bags.
+	 * @return month of manufacture
+	 */
+	public byte getMonth() {
+		return month;
+	}
+
+	/**
+	 * Getter method for the dictionary code of the manufacturer of added bean bags.
+	 * @return code in {@link StringDictionary#GLOBAL}
+	 */
+	public int getManufacturerCode() {
+		return manufacturer;
+	}
+
+	/**
+	 * Getter method for the dictionary code of the name of added bean bags.
+	 * @return code in {@link StringDictionary#GLOBAL}
+	 */
+	public int getNameCode() {
+		return name;
+	}
+
+	/**
+	 * Getter method for the information of added bean bags.
+	 * @return information
+	 */
+	public String getInfo() {
+		return information;
+	}
+
+	@Override
+	public String toString() {
+		StringDictionary d = StringDictionary.GLOBAL;
+		switch (type) {
+			case StoreMutations.ADD:
+				return "add " + num + " " + BeanBagID.toString(id) + " " + d.get(manufacturer) + "/" + d.get(name)
+						+ " " + year + "-" + month;
+			case StoreMutations.PRICE:
+				return "price " + BeanBagID.toString(id) + " " + price;
+			case StoreMutations.SELL:
+				return "sell " + num + " " + BeanBagID.toString(id) + " at " + price;
+			case StoreMutations.REPLACE:
+				return "replace " + BeanBagID.toString(id) + " " + BeanBagID.toString(replacementId);
+			case StoreMutations.RESET:
+				return "reset";
+			case StoreMutations.EMPTY:
+				return "empty";
+			default:
+				return "none";
+		}
+	}
+}
@@ -0,0 +1,225 @@
+package beanbags;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Feed of store mutations for downstream systems, published through a
+ * preallocated ring of {@link MutationEvent}s in the style of the LMAX
+ * Disruptor. Attach it to a store with {@link CDStore#setMutationFeed}.
+ * <p>
+ * There is one producer (the thread using the store) and any number of
+ * {@link Consumer}s, each tracking its own sequence. The producer never
+ * waits for consumers: publishing overwrites the oldest event in place and
+ * advances the cursor, so a slow consumer cannot add latency to the store.
+ * A consumer that falls a whole ring behind is lapped; it skips to the
+ * oldest event still in the ring and counts the events it {@link
+ * Consumer#getLost() lost}, so size the ring for the longest stall a
+ * consumer must survive.
+ *
+ * @author George Rogers
+ * @version 1.0
+ */
+public class MutationFeed {
+
+	/**
+	 * Callback for events taken from the feed by {@link Consumer#poll}.
+	 */
+	public interface Handler {
+
+	    /**
+	     * Method called for each event, in sequence order.
+	     * @param event event, reused for the next call
+	     * @param sequence sequence of the event
+	     * @param endOfBatch <code>true</code> for the last event of this poll,
+	     *                   e.g. to flush work batched over the events
+	     */
+	    void onEvent(MutationEvent event, long sequence, boolean endOfBatch);
+	}
+
+	private static final VarHandle CURSOR;
+	static {
+		try {
+			CURSOR = MethodHandles.lookup().findVarHandle(MutationFeed.class, "cursor", long.class);
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	private final MutationEvent[] ring;
+	private final int mask;
+	//padding keeps the cursor, read by every consumer, off the cache lines of other fields
+	private long p1, p2, p3, p4, p5, p6, p7;
+	private volatile long cursor = -1; //sequence of the last published event
+	private long q1, q2, q3, q4, q5, q6, q7;
+	private long next; //sequence of the next event, only used by the producer
+
+	/**
+	 * Creates a feed holding the given number of events.
+	 * @param capacity number of events in the ring, a power of two
+	 */
+	public MutationFeed(int capacity) {
+		if (capacity < 1 || Integer.bitCount(capacity) != 1) {
+			throw new IllegalArgumentException("Capacity must be a power of two");
+		}
+		ring = new MutationEvent[capacity];
+		for (int i = 0; i < capacity; i++) {
+			ring[i] = new MutationEvent();
+		}
+		mask = capacity - 1;
+	}
+
+	/**
+	 * Method returns the number of events in the ring.
+	 * @return capacity
+	 */
+	public int getCapacity() {
+		return ring.length;
+	}
+
+	/**
+	 * Method returns the sequence of the last event published.
+	 * @return sequence, or -1 if none has been published
+	 */
+	public long getCursor() {
+		return (long)CURSOR.getAcquire(this);
+	}
+
+	/*
+	 * Writes the next event in place and publishes it
+	 */
+	private void publish(byte type, int id, int num, int price, int replacementId, short year, byte month,
+			int manufacturer, int name, String information) {
+		long seq = next++;
+		MutationEvent e = ring[(int)seq & mask];
+		e.begin();
+		e.set(type, id, num, price, replacementId, year, month, manufacturer, name, information);
+		e.end(seq);
+		CURSOR.setRelease(this, seq); //ordered, not volatile, so publishing costs no fence on x86
+	}
+
+	/**
+	 * Method publishes an addBeanBags mutation.
+	 * @param id ID of bean bags
+	 * @param num number of bean bags added
+	 * @param year year of manufacture
+	 * @param month month of manufacture
+	 * @param manufacturer code of the manufacturer in {@link StringDictionary#GLOBAL}
+	 * @param name code of the name
+	 * @param information information
+	 */
+	public void publishAdd(int id, int num, short year, byte month, int manufacturer, int name, String information) {
+		publish(StoreMutations.ADD, id, num, 0, 0, year, month, manufacturer, name, information);
+	}
+
+	/**
+	 * Method publishes a setBeanBagPrice mutation.
+	 * @param id ID of bean bags
+	 * @param priceInPence price set
+	 */
+	public void publishPrice(int id, int priceInPence) {
+		publish(StoreMutations.PRICE, id, 0, priceInPence, 0, (short)0, (byte)0, 0, 0, null);
+	}
+
+	/**
+	 * Method publishes a sale.
+	 * @param id ID of bean bags sold
+	 * @param num number of bean bags sold
+	 * @param priceInPence price per bean bag sold
+	 */
+	public void publishSell(int id, int num, int priceInPence) {
+		publish(StoreMutations.SELL, id, num, priceInPence, 0, (short)0, (byte)0, 0, 0, null);
+	}
+
+	/**
+	 * Method publishes a replace mutation.
+	 * @param oldId old ID of bean bags
+	 * @param replacementId replacement ID of bean bags
+	 */
+	public void publishReplace(int oldId, int replacementId) {
+		publish(StoreMutations.REPLACE, oldId, 0, 0, replacementId, (short)0, (byte)0, 0, 0, null);
+	}
+
+	/**
+	 * Method publishes a mutation that takes no arguments.
+	 * @param type {@link StoreMutations#RESET} or {@link StoreMutations#EMPTY}
+	 */
+	public void publishNoArgs(byte type) {
+		publish(type, 0, 0, 0, 0, (short)0, (byte)0, 0, 0, null);
+	}
+
+	/**
+	 * Method creates a consumer that starts with the next event published.
+	 * Each consumer must be polled by one thread at a time.
+	 * @return new consumer
+	 */
+	public Consumer consumer() {
+		return new Consumer(getCursor() + 1);
+	}
+
+	/**
+	 * Reader of a feed, tracking its own sequence. Consumers never hold the
+	 * producer back, and polling an empty feed does not block; consumers
+	 * choose how to wait between polls.
+	 */
+	public final class Consumer {
+
+		private final MutationEvent event = new MutationEvent(); //events are copied here for the handler
+		private long next; //sequence of the next event to take
+		private long lost;
+
+		/*
+		 * Creates a consumer starting at a sequence
+		 */
+		private Consumer(long next) {
+			this.next = next;
+		}
+
+		/**
+		 * Method passes the events published since the last poll to a handler, up to a limit.
+		 * @param handler callback for each event
+		 * @param max maximum number of events to take
+		 * @return number of events passed to the handler
+		 */
+		public int poll(Handler handler, int max) {
+			long available = getCursor();
+			long end = Math.min(available, next + max - 1);
+			int taken = 0;
+			while (next <= end) {
+				if (!ring[(int)next & mask].copyTo(event, next)) { //lapped by the producer
+					long oldest = Math.max(next, getCursor() - mask); //oldest event still in the ring
+					lost += oldest - next;
+					next = oldest;
+					return taken;
+				}
+				handler.onEvent(event, next, next == end);
+				next++;
+				taken++;
+			}
+			return taken;
+		}
+
+		/**
+		 * Method returns the sequence of the next event this consumer will take.
+		 * @return sequence
+		 */
+		public long getSequence() {
+			return next;
+		}
+
+		/**
+		 * Method returns the number of events published but not yet taken.
+		 * @return events behind the producer
+		 */
+		public long getLag() {
+			return getCursor() + 1 - next;
+		}
+
+		/**
+		 * Method returns the number of events skipped because the producer lapped this consumer.
+		 * @return events lost
+		 */
+		public long getLost() {
+			return lost;
+		}
+	}
+}
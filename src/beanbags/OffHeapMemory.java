@@ -0,0 +1,118 @@
+package beanbags;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/*
+ * Zero-filled, growable off-heap memory addressed by long byte offsets, built
+ * from direct ByteBuffers of 2^shift bytes (a single ByteBuffer cannot pass
+ * 2GB). The first chunk starts small and doubles until it reaches full size,
+ * so small stores stay small. Ints and longs must be naturally aligned, which
+ * guarantees they never straddle two chunks.
+ *
+ * Memory is released when the object becomes unreachable, or (as far as this
+ * object is concerned) by release().
+ */
+final class OffHeapMemory {
+
+	private static final int FIRST_CHUNK = 1 << 12;
+
+	private final int shift;
+	private final long mask;
+	private ByteBuffer[] chunks = new ByteBuffer[0];
+
+	OffHeapMemory(int shift) {
+		this.shift = shift;
+		this.mask = (1L << shift) - 1;
+	}
+
+	long capacity() {
+		if (chunks.length == 1) {
+			return chunks[0].capacity();
+		}
+		return (long)chunks.length << shift;
+	}
+
+	/*
+	 * Grows the memory so addresses below the given number of bytes are valid
+	 */
+	void ensure(long bytes) {
+		while (capacity() < bytes) {
+			int n = chunks.length;
+			if (n == 1 && chunks[0].capacity() < (1 << shift)) {
+				ByteBuffer grown = allocate(chunks[0].capacity() * 2);
+				grown.put(chunks[0].clear()).clear(); //copy the first chunk; the old one is freed by GC
+				chunks[0] = grown;
+			} else {
+				chunks = Arrays.copyOf(chunks, n + 1);
+				chunks[n] = allocate(n == 0 ? Math.min(FIRST_CHUNK, 1 << shift) : 1 << shift);
+			}
+		}
+	}
+
+	private static ByteBuffer allocate(int bytes) {
+		return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+	}
+
+	/*
+	 * Drops every chunk
+	 */
+	void release() {
+		chunks = new ByteBuffer[0];
+	}
+
+	int getInt(long a) {
+		return chunks[(int)(a >>> shift)].getInt((int)(a & mask));
+	}
+
+	void putInt(long a, int v) {
+		chunks[(int)(a >>> shift)].putInt((int)(a & mask), v);
+	}
+
+	long getLong(long a) {
+		return chunks[(int)(a >>> shift)].getLong((int)(a & mask));
+	}
+
+	void putLong(long a, long v) {
+		chunks[(int)(a >>> shift)].putLong((int)(a & mask), v);
+	}
+
+	/*
+	 * Copies len bytes starting at a into dst
+	 */
+	void get(long a, byte[] dst, int len) {
+		for (int i = 0; i < len;) {
+			ByteBuffer chunk = chunks[(int)((a + i) >>> shift)];
+			int off = (int)((a + i) & mask);
+			int n = Math.min(len - i, chunk.capacity() - off);
+			chunk.get(off, dst, i, n);
+			i += n;
+		}
+	}
+
+	/*
+	 * Copies len bytes of src to memory starting at a
+	 */
+	void put(long a, byte[] src, int len) {
+		for (int i = 0; i < len;) {
+			ByteBuffer chunk = chunks[(int)((a + i) >>> shift)];
+			int off = (int)((a + i) & mask);
+			int n = Math.min(len - i, chunk.capacity() - off);
+			chunk.put(off, src, i, n);
+			i += n;
+		}
+	}
+
+	/*
+	 * Checks whether the len bytes starting at a equal the start of b
+	 */
+	boolean equals(long a, byte[] b, int len) {
+		for (int i = 0; i < len; i++) {
+			long p = a + i;
+			if (chunks[(int)(p >>> shift)].get((int)(p & mask)) != b[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,537 @@
+package beanbags;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Implementation of CutDownStore that keeps its records, ID index and
+ * strings in off-heap memory (direct ByteBuffers), so a catalogue of any
+ * size leaves only a handful of objects on the heap for the garbage
+ * collector to trace.
+ * <p>
+ * Each ID has a fixed-width 40 byte record holding its ID, stock, price,
+ * sales and references to its strings. Strings are stored once each as
+ * UTF-8 in an append-only arena, found again through an off-heap hash table
+ * so repeated manufacturers and names are shared. The ID index is an
+ * open-addressing hash table of (ID, row) pairs, like {@link IDIndex}.
+ * Store-wide totals are kept as running counters, as in {@link CDStore}.
+ * <p>
+ * Like CDStore, this class is not thread safe. Off-heap memory is freed when
+ * the store becomes unreachable, or by {@link #empty()}.
+ *
+ * @author George Rogers
+ * @version 1.0
+ */
+public class OffHeapStore implements CutDownStore {
+
+	//record layout (byte offsets); sales are only current when GEN matches salesGeneration
+	private static final int ID = 0;
+	private static final int NUM = 4;
+	private static final int PRICE = 8;
+	private static final int GEN = 12;
+	private static final int SOLD = 16;
+	private static final int MANUFACTURER = 20; //string references, see intern()
+	private static final int NAME = 24;
+	private static final int INFORMATION = 28;
+	private static final int VALUE = 32;
+	private static final int RECORD = 40;
+
+	private static final int SHIFT = 26; //64MB chunks
+	private static final long ABSENT = -1;
+
+	private OffHeapMemory records;
+	private int rows;
+
+	private OffHeapMemory index; //8 byte slots of (ID, row + 1); row 0 marks a free slot
+	private int indexMask;
+	private int indexSize;
+
+	private OffHeapMemory arena; //entries of [int length][int hash][UTF-8 bytes], 4 byte aligned
+	private long arenaTop;
+	private OffHeapMemory strings; //8 byte slots holding arena addresses; 0 marks a free slot
+	private int stringsMask;
+	private int stringsSize;
+	private byte[] scratch = new byte[256]; //UTF-8 of the string being interned or decoded
+
+	private int salesGeneration;
+
+	//running store-wide totals, kept up to date by every mutation so reads are O(1)
+	private long stockTotal;
+	private int differentInStock;
+	private long soldTotal;
+	private long soldValue;
+
+	/**
+	 * Creates an empty store.
+	 */
+	public OffHeapStore() {
+		allocate();
+	}
+
+	/*
+	 * Allocates empty tables
+	 */
+	private void allocate() {
+		records = new OffHeapMemory(SHIFT);
+		rows = 0;
+		index = new OffHeapMemory(SHIFT);
+		indexMask = 15;
+		index.ensure(16 * 8);
+		indexSize = 0;
+		arena = new OffHeapMemory(SHIFT);
+		arenaTop = 4; //address 0 is the null reference
+		strings = new OffHeapMemory(SHIFT);
+		stringsMask = 15;
+		strings.ensure(16 * 8);
+		stringsSize = 0;
+		salesGeneration = 1; //new records start at generation 0, so have no sales
+		stockTotal = 0;
+		differentInStock = 0;
+		soldTotal = 0;
+		soldValue = 0;
+	}
+
+	/*
+	 * Validates and parses an ID in one pass, throwing if it is illegal
+	 */
+	private static int parseID(String id) throws IllegalIDException {
+		long parsed = BeanBagID.parse(id);
+		if (parsed == BeanBagID.INVALID) {
+			throw IllegalIDException.STACKLESS;
+		}
+		return (int)parsed;
+	}
+
+	/*
+	 * Spreads the key bits so sequential IDs and similar hashes don't cluster
+	 */
+	private static int spread(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	/*
+	 * Returns the address of the record for an ID, or ABSENT
+	 */
+	private long find(int key) {
+		int i = spread(key) & indexMask;
+		while (true) {
+			long slot = (long)i * 8;
+			int row = index.getInt(slot + 4) - 1;
+			if (row < 0) {
+				return ABSENT;
+			}
+			if (index.getInt(slot) == key) {
+				return (long)row * RECORD;
+			}
+			i = (i + 1) & indexMask;
+		}
+	}
+
+	/*
+	 * Returns the address of the record for an ID, throwing if it is illegal or not in the store
+	 */
+	private long record(String id) throws BeanBagIDNotRecognisedException, IllegalIDException {
+		long r = find(parseID(id));
+		if (r == ABSENT) {
+			throw BeanBagIDNotRecognisedException.STACKLESS;
+		}
+		return r;
+	}
+
+	/*
+	 * Stores a row against an ID, growing the index to keep its load factor at or below 0.5
+	 */
+	private void indexPut(int key, int row) {
+		if ((indexSize + 1) * 2 > indexMask + 1) {
+			OffHeapMemory old = index;
+			int oldMask = indexMask;
+			indexMask = oldMask * 2 + 1;
+			index = new OffHeapMemory(SHIFT);
+			index.ensure((indexMask + 1L) * 8);
+			for (long slot = 0; slot <= oldMask; slot++) {
+				int r = old.getInt(slot * 8 + 4);
+				if (r != 0) {
+					insert(old.getInt(slot * 8), r);
+				}
+			}
+		}
+		insert(key, row + 1);
+		indexSize++;
+	}
+
+	/*
+	 * Writes a slot into the first free position of the key's probe run
+	 */
+	private void insert(int key, int rowPlusOne) {
+		int i = spread(key) & indexMask;
+		while (index.getInt((long)i * 8 + 4) != 0) {
+			i = (i + 1) & indexMask;
+		}
+		index.putInt((long)i * 8, key);
+		index.putInt((long)i * 8 + 4, rowPlusOne);
+	}
+
+	/*
+	 * Removes an ID from the index using backward-shift deletion
+	 */
+	private void indexRemove(int key) {
+		int free = spread(key) & indexMask;
+		while (index.getInt((long)free * 8) != key) {
+			free = (free + 1) & indexMask;
+		}
+		int i = free;
+		while (true) {
+			i = (i + 1) & indexMask;
+			int r = index.getInt((long)i * 8 + 4);
+			if (r == 0) {
+				break;
+			}
+			int k = index.getInt((long)i * 8);
+			int home = spread(k) & indexMask;
+			//entry can move if its home slot is not cyclically within (free, i]
+			if (((i - home) & indexMask) >= ((i - free) & indexMask)) {
+				index.putInt((long)free * 8, k);
+				index.putInt((long)free * 8 + 4, r);
+				free = i;
+			}
+		}
+		index.putInt((long)free * 8 + 4, 0);
+		indexSize--;
+	}
+
+	/*
+	 * Encodes a string as UTF-8 into scratch, returning the number of bytes
+	 */
+	private int encode(String s) {
+		int length = s.length();
+		if (scratch.length < length * 3) {
+			scratch = new byte[length * 3]; //enough for any UTF-16 string
+		}
+		byte[] b = scratch;
+		int n = 0;
+		for (int i = 0; i < length; i++) {
+			char c = s.charAt(i);
+			if (c < 0x80) {
+				b[n++] = (byte)c;
+			} else if (c < 0x800) {
+				b[n++] = (byte)(0xC0 | (c >> 6));
+				b[n++] = (byte)(0x80 | (c & 0x3F));
+			} else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+				int cp = Character.toCodePoint(c, s.charAt(++i));
+				b[n++] = (byte)(0xF0 | (cp >> 18));
+				b[n++] = (byte)(0x80 | ((cp >> 12) & 0x3F));
+				b[n++] = (byte)(0x80 | ((cp >> 6) & 0x3F));
+				b[n++] = (byte)(0x80 | (cp & 0x3F));
+			} else {
+				b[n++] = (byte)(0xE0 | (c >> 12));
+				b[n++] = (byte)(0x80 | ((c >> 6) & 0x3F));
+				b[n++] = (byte)(0x80 | (c & 0x3F));
+			}
+		}
+		return n;
+	}
+
+	/*
+	 * Returns the reference of a string (its arena address / 4, or 0 for
+	 * null), adding it to the arena if add is true. Returns ABSENT if the
+	 * string is not in the arena and add is false.
+	 */
+	private long intern(String s, boolean add) {
+		if (s == null) {
+			return 0;
+		}
+		int len = encode(s);
+		int hash = s.hashCode();
+		int i = spread(hash) & stringsMask;
+		while (true) {
+			long a = strings.getLong((long)i * 8);
+			if (a == 0) {
+				break;
+			}
+			if (arena.getInt(a + 4) == hash && arena.getInt(a) == len && arena.equals(a + 8, scratch, len)) {
+				return a >>> 2;
+			}
+			i = (i + 1) & stringsMask;
+		}
+		if (!add) {
+			return ABSENT;
+		}
+		long a = arenaTop;
+		if ((a >>> 2) > 0xFFFFFFFFL) {
+			throw new IllegalStateException("Off-heap string arena is full");
+		}
+		arena.ensure(a + 8 + len);
+		arena.putInt(a, len);
+		arena.putInt(a + 4, hash);
+		arena.put(a + 8, scratch, len);
+		arenaTop = (a + 8 + len + 3) & ~3L;
+		strings.putLong((long)i * 8, a);
+		if (++stringsSize * 2 > stringsMask + 1) {
+			growStrings();
+		}
+		return a >>> 2;
+	}
+
+	/*
+	 * Doubles the string hash table
+	 */
+	private void growStrings() {
+		OffHeapMemory old = strings;
+		int oldMask = stringsMask;
+		stringsMask = oldMask * 2 + 1;
+		strings = new OffHeapMemory(SHIFT);
+		strings.ensure((stringsMask + 1L) * 8);
+		for (long slot = 0; slot <= oldMask; slot++) {
+			long a = old.getLong(slot * 8);
+			if (a != 0) {
+				int i = spread(arena.getInt(a + 4)) & stringsMask;
+				while (strings.getLong((long)i * 8) != 0) {
+					i = (i + 1) & stringsMask;
+				}
+				strings.putLong((long)i * 8, a);
+			}
+		}
+	}
+
+	/*
+	 * Decodes the string with a reference, allocating only the String
+	 */
+	private String string(int ref) {
+		if (ref == 0) {
+			return null;
+		}
+		long a = (ref & 0xFFFFFFFFL) << 2;
+		int len = arena.getInt(a);
+		if (scratch.length < len) {
+			scratch = new byte[len];
+		}
+		arena.get(a + 8, scratch, len);
+		return new String(scratch, 0, len, StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public void addBeanBags(int num, String manufacturer, String name, String id, short year, byte month)
+			throws IllegalNumberOfBeanBagsAddedException, BeanBagMismatchException, IllegalIDException,
+			InvalidMonthException {
+		addBeanBags(num, manufacturer, name, id, year, month, ""); //no information given
+	}
+
+	@Override
+	public void addBeanBags(int num, String manufacturer, String name, String id, short year, byte month,
+			String information) throws IllegalNumberOfBeanBagsAddedException, BeanBagMismatchException,
+			IllegalIDException, InvalidMonthException {
+		//input validation
+		if (num<1) {
+			throw IllegalNumberOfBeanBagsAddedException.STACKLESS;
+		}
+		if (month<1 || month>12) {
+			throw InvalidMonthException.STACKLESS;
+		}
+		int key = parseID(id);
+		long r = find(key);
+		if (r == ABSENT) {
+			r = (long)rows * RECORD;
+			records.ensure(r + RECORD);
+			records.putInt(r + ID, key);
+			records.putInt(r + NUM, num);
+			records.putInt(r + PRICE, -1);
+			records.putInt(r + GEN, 0);
+			records.putInt(r + SOLD, 0);
+			records.putInt(r + MANUFACTURER, (int)intern(manufacturer, true));
+			records.putInt(r + NAME, (int)intern(name, true));
+			records.putInt(r + INFORMATION, (int)intern(information, true));
+			records.putLong(r + VALUE, 0);
+			indexPut(key, rows++);
+			differentInStock++;
+		} else {
+			//strings not in the arena cannot match, so the check never grows it
+			if (intern(manufacturer, false) != (records.getInt(r + MANUFACTURER) & 0xFFFFFFFFL)
+					|| intern(name, false) != (records.getInt(r + NAME) & 0xFFFFFFFFL)
+					|| intern(information, false) != (records.getInt(r + INFORMATION) & 0xFFFFFFFFL)) {
+				throw BeanBagMismatchException.STACKLESS;
+			}
+			int n = records.getInt(r + NUM);
+			if (n == 0) {
+				differentInStock++; //ID is back in stock
+			}
+			records.putInt(r + NUM, n + num);
+		}
+		stockTotal += num;
+	}
+
+	@Override
+	public void setBeanBagPrice(String id, int priceInPence)
+			throws InvalidPriceException, BeanBagIDNotRecognisedException, IllegalIDException {
+		//input validation
+		if (priceInPence < 1) {
+			throw InvalidPriceException.STACKLESS;
+		}
+		records.putInt(record(id) + PRICE, priceInPence);
+	}
+
+	@Override
+	public void sellBeanBags(int num, String id)
+			throws BeanBagNotInStockException, InsufficientStockException, IllegalNumberOfBeanBagsSoldException,
+			PriceNotSetException, BeanBagIDNotRecognisedException, IllegalIDException {
+		//input validation
+		if (num < 1) {
+			throw IllegalNumberOfBeanBagsSoldException.STACKLESS;
+		}
+		long r = record(id);
+		int n = records.getInt(r + NUM);
+		if (n < 1) {
+			throw BeanBagNotInStockException.STACKLESS;
+		}
+		if (n < num) {
+			throw InsufficientStockException.STACKLESS;
+		}
+		int price = records.getInt(r + PRICE);
+		if (price < 0) {
+			throw PriceNotSetException.STACKLESS;
+		}
+		records.putInt(r + NUM, n - num);
+		if (n == num) {
+			differentInStock--; //ID has sold out
+		}
+		stockTotal -= num;
+		long value = (long)num * price;
+		if (records.getInt(r + GEN) != salesGeneration) { //first sale since the last reset
+			records.putInt(r + GEN, salesGeneration);
+			records.putInt(r + SOLD, 0);
+			records.putLong(r + VALUE, 0);
+		}
+		records.putInt(r + SOLD, records.getInt(r + SOLD) + num);
+		records.putLong(r + VALUE, records.getLong(r + VALUE) + value);
+		soldTotal += num;
+		soldValue += value;
+	}
+
+	/*
+	 * Returns the record for an ID that has been sold since the last reset
+	 */
+	private long soldRecord(String id) throws BeanBagIDNotRecognisedException, IllegalIDException {
+		long r = record(id);
+		if (records.getInt(r + GEN) != salesGeneration) {
+			throw BeanBagIDNotRecognisedException.STACKLESS;
+		}
+		return r;
+	}
+
+	/*
+	 * Narrows a running total to the int the interface returns, saturating rather than wrapping
+	 */
+	private static int clamp(long total) {
+		return (int)Math.min(total, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public int beanBagsInStock() {
+		return clamp(stockTotal);
+	}
+
+	@Override
+	public int beanBagsInStock(String id) throws BeanBagIDNotRecognisedException, IllegalIDException {
+		return records.getInt(record(id) + NUM);
+	}
+
+	@Override
+	public int getNumberOfDifferentBeanBagsInStock() {
+		return differentInStock;
+	}
+
+	@Override
+	public int getNumberOfSoldBeanBags() {
+		return clamp(soldTotal);
+	}
+
+	@Override
+	public int getNumberOfSoldBeanBags(String id) throws BeanBagIDNotRecognisedException, IllegalIDException {
+		return records.getInt(soldRecord(id) + SOLD);
+	}
+
+	@Override
+	public int getTotalPriceOfSoldBeanBags() {
+		return clamp(soldValue);
+	}
+
+	/**
+	 * Method to return total price of bean bags sold by this store (in pence)
+	 * as a 64 bit value, which unlike {@link #getTotalPriceOfSoldBeanBags()}
+	 * cannot overflow.
+	 * @return total value of bean bags sold (in pence)
+	 */
+	public long getTotalValueOfSoldBeanBags() {
+		return soldValue;
+	}
+
+	@Override
+	public int getTotalPriceOfSoldBeanBags(String id) throws BeanBagIDNotRecognisedException, IllegalIDException {
+		return clamp(records.getLong(soldRecord(id) + VALUE));
+	}
+
+	@Override
+	public String getBeanBagDetails(String id) throws BeanBagIDNotRecognisedException, IllegalIDException {
+		String i = string(records.getInt(record(id) + INFORMATION));
+		if (i == null || i.isBlank()) { //return empty string if info is blank or is empty
+			return "";
+		}
+		return i;
+	}
+
+	/**
+	 * Method to return the stock record for an ID as a BeanBag object. The
+	 * object is a copy made for the caller; changing it does not change the store.
+	 * @param id ID of the bean bag
+	 * @return BeanBag holding the ID's stock, price and details
+	 * @throws BeanBagIDNotRecognisedException if the ID is not in the store
+	 * @throws IllegalIDException if the ID is not legal
+	 */
+	public BeanBag getBeanBag(String id) throws BeanBagIDNotRecognisedException, IllegalIDException {
+		long r = record(id);
+		BeanBag b = new BeanBag(records.getInt(r + NUM), string(records.getInt(r + MANUFACTURER)),
+				string(records.getInt(r + NAME)), records.getInt(r + ID), string(records.getInt(r + INFORMATION)));
+		b.setPrice(records.getInt(r + PRICE));
+		return b;
+	}
+
+	/**
+	 * Method returns the off-heap memory in use by this store.
+	 * @return bytes of off-heap memory allocated
+	 */
+	public long offHeapBytes() {
+		return records.capacity() + index.capacity() + arena.capacity() + strings.capacity();
+	}
+
+	@Override
+	public void empty() {
+		//drop every table so the off-heap memory can be freed
+		records.release();
+		index.release();
+		arena.release();
+		strings.release();
+		allocate();
+	}
+
+	@Override
+	public void resetSaleAndCostTracking() {
+		salesGeneration++; //every record's sales are now out of date
+		soldTotal = 0;
+		soldValue = 0;
+	}
+
+	@Override
+	public void replace(String oldId, String replacementId) throws BeanBagIDNotRecognisedException, IllegalIDException {
+		//input validation
+		int oldKey = parseID(oldId);
+		int newKey = parseID(replacementId);
+		long r = find(oldKey);
+		if (r == ABSENT) {
+			throw BeanBagIDNotRecognisedException.STACKLESS;
+		}
+		if (find(newKey) != ABSENT) {
+			throw IllegalIDException.STACKLESS; //replacement ID already in use
+		}
+		indexRemove(oldKey);
+		indexPut(newKey, (int)(r / RECORD));
+		records.putInt(r + ID, newKey); //sales stay with the record
+	}
+}
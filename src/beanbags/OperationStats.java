@@ -0,0 +1,209 @@
+package beanbags;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram and outcome counters of one operation of an
+ * {@link InstrumentedStore}. Every call is counted, but only a random
+ * sample of calls is timed, because reading the clock twice costs more
+ * than the rest of the recording put together. Recording is allocation-free
+ * once each exception class has been seen; a failure finds its exception
+ * class's counter in a short copy-on-write list.
+ *
+ * @author George Rogers
+ * @version 1.0
+ */
+public class OperationStats implements OperationStatsMXBean {
+
+	/*
+	 * Counter of the failures with one exception class
+	 */
+	private static final class Failures {
+		final Class<?> type;
+		final LongAdder count = new LongAdder();
+
+		Failures(Class<?> type) {
+			this.type = type;
+		}
+	}
+
+	/** Value of {@link #start()} for a call that is not timed. */
+	public static final long NOT_TIMED = Long.MIN_VALUE;
+
+	private final String name;
+	private final int sampleMask; //a call is timed if random bits under the mask are 0
+	private final LongAdder calls = new LongAdder(); //adders, as concurrent stores are called from many threads
+	private final LatencyHistogram latencies = new LatencyHistogram();
+	private volatile Failures[] failures = new Failures[0]; //replaced, never changed, when a new class is seen
+
+	/**
+	 * Creates empty statistics for an operation that time every call.
+	 * @param name name of the operation, e.g. <code>sellBeanBags</code>
+	 */
+	public OperationStats(String name) {
+		this(name, 1);
+	}
+
+	/**
+	 * Creates empty statistics for an operation that time a sample of calls.
+	 * @param name name of the operation, e.g. <code>sellBeanBags</code>
+	 * @param sampleEvery one call in this many, at random, is timed; a power of two
+	 */
+	public OperationStats(String name, int sampleEvery) {
+		if (sampleEvery < 1 || Integer.bitCount(sampleEvery) != 1) {
+			throw new IllegalArgumentException("Sample rate must be a power of two");
+		}
+		this.name = name;
+		this.sampleMask = sampleEvery - 1;
+	}
+
+	/**
+	 * Method returns the name of the operation.
+	 * @return name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Method returns the latency histogram of the operation.
+	 * @return histogram of every call
+	 */
+	public LatencyHistogram getLatencies() {
+		return latencies;
+	}
+
+	/**
+	 * Method returns how many calls there are per call timed.
+	 * @return sample rate, 1 if every call is timed
+	 */
+	public int getSampleEvery() {
+		return sampleMask + 1;
+	}
+
+	/**
+	 * Method starts recording a call, deciding whether to time it.
+	 * @return {@link System#nanoTime()} now, or {@link #NOT_TIMED}
+	 */
+	public long start() {
+		if (sampleMask != 0 && (ThreadLocalRandom.current().nextInt() & sampleMask) != 0) {
+			return NOT_TIMED;
+		}
+		return System.nanoTime();
+	}
+
+	/**
+	 * Method records a call that returned normally.
+	 * @param start value returned by {@link #start()} when the call started
+	 */
+	public void success(long start) {
+		calls.increment();
+		if (start != NOT_TIMED) {
+			latencies.record(System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Method records a call that threw.
+	 * @param start value returned by {@link #start()} when the call started
+	 * @param e exception thrown
+	 */
+	public void failure(long start, Throwable e) {
+		success(start);
+		failures(e.getClass()).count.increment();
+	}
+
+	/*
+	 * Returns the counter of an exception class, adding one the first time it is seen
+	 */
+	private Failures failures(Class<?> type) {
+		for (Failures f : failures) {
+			if (f.type == type) {
+				return f;
+			}
+		}
+		synchronized (this) {
+			Failures[] current = failures;
+			for (Failures f : current) {
+				if (f.type == type) {
+					return f; //added by another thread meanwhile
+				}
+			}
+			Failures[] grown = new Failures[current.length + 1];
+			System.arraycopy(current, 0, grown, 0, current.length);
+			grown[current.length] = new Failures(type);
+			failures = grown;
+			return grown[current.length];
+		}
+	}
+
+	@Override
+	public long getCalls() {
+		return calls.sum();
+	}
+
+	@Override
+	public long getSuccesses() {
+		return Math.max(0, getCalls() - getFailures()); //read apart, so may briefly lag
+	}
+
+	@Override
+	public long getFailures() {
+		long total = 0;
+		for (Failures f : failures) {
+			total += f.count.sum();
+		}
+		return total;
+	}
+
+	@Override
+	public Map<String, Long> getFailuresByException() {
+		Map<String, Long> byType = new TreeMap<>();
+		for (Failures f : failures) {
+			byType.merge(f.type.getSimpleName(), f.count.sum(), Long::sum);
+		}
+		return byType;
+	}
+
+	@Override
+	public double getMeanNanos() {
+		return latencies.getMean();
+	}
+
+	@Override
+	public long getP50Nanos() {
+		return latencies.getValueAtPercentile(50);
+	}
+
+	@Override
+	public long getP99Nanos() {
+		return latencies.getValueAtPercentile(99);
+	}
+
+	@Override
+	public long getP999Nanos() {
+		return latencies.getValueAtPercentile(99.9);
+	}
+
+	@Override
+	public long getMaxNanos() {
+		return latencies.getMax();
+	}
+
+	@Override
+	public void reset() {
+		calls.reset();
+		latencies.reset();
+		for (Failures f : failures) {
+			f.count.reset();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return name + ": " + getCalls() + " calls, " + getFailuresByException() + " failed, p50 " + getP50Nanos()
+				+ "ns, p99 " + getP99Nanos() + "ns, max " + getMaxNanos() + "ns";
+	}
+}
@@ -0,0 +1,82 @@
+package beanbags;
+import java.util.Map;
+
+/**
+ * Management interface of the statistics {@link InstrumentedStore} keeps
+ * for one store operation, registered as an MXBean named
+ * <code>beanbags:type=CutDownStore,name=</code><i>store</i><code>,operation=</code><i>method</i>.
+ * Latencies are in nanoseconds and cover failed calls as well as successful
+ * ones. Calls are all counted, but the latencies may be from a random sample
+ * of them.
+ *
+ * @author George Rogers
+ * @version 1.0
+ */
+public interface OperationStatsMXBean
+{
+
+    /**
+     * Method returns the number of calls.
+     * @return calls that returned or threw
+     */
+    long getCalls();
+
+    /**
+     * Method returns the number of calls that returned normally.
+     * @return successful calls
+     */
+    long getSuccesses();
+
+    /**
+     * Method returns the number of calls that threw.
+     * @return failed calls
+     */
+    long getFailures();
+
+    /**
+     * Method returns the number of calls that threw, by exception class.
+     * @return map from simple class name (e.g. <code>InsufficientStockException</code>) to count
+     */
+    Map<String, Long> getFailuresByException();
+
+    /**
+     * Method returns how many calls there are per call timed.
+     * @return sample rate, 1 if every call is timed
+     */
+    int getSampleEvery();
+
+    /**
+     * Method returns the mean latency.
+     * @return mean in nanoseconds
+     */
+    double getMeanNanos();
+
+    /**
+     * Method returns the median latency.
+     * @return 50th percentile in nanoseconds
+     */
+    long getP50Nanos();
+
+    /**
+     * Method returns the 99th percentile latency.
+     * @return 99th percentile in nanoseconds
+     */
+    long getP99Nanos();
+
+    /**
+     * Method returns the 99.9th percentile latency.
+     * @return 99.9th percentile in nanoseconds
+     */
+    long getP999Nanos();
+
+    /**
+     * Method returns the highest latency.
+     * @return maximum in nanoseconds
+     */
+    long getMaxNanos();
+
+    /**
+     * Method clears the statistics.
+     */
+    void reset();
+}
@@ -0,0 +1,411 @@
+package beanbags;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import javax.management.JMException;
+
+/**
+ * Read replica of a {@link ReplicationLeader}: applies the leader's stream
+ * of mutations to a local store, in order, and serves the read-only
+ * methods from it. The mutating methods throw
+ * {@link UnsupportedOperationException}; make changes through the leader.
+ * <p>
+ * A receiver thread applies each batch from the leader as a whole under a
+ * write lock, so reads, which share a read lock, only ever see the state
+ * between two batches of the leader. It acknowledges the last batch applied
+ * whenever it has caught up with what the leader has sent, and at least
+ * every 16 batches while it is behind. If the connection fails it
+ * reconnects, with back-off, and resumes after the last mutation it
+ * applied; if the leader has restarted it empties the store and replays the
+ * leader's log from the start. If the leader has dropped the batches it
+ * needs, it loads an image of the leader's store instead, which needs the
+ * store to be a {@link CDStore}.
+ *
+ * @author George Rogers
+ * @version 1.0
+ */
+public class ReplicationFollower implements CutDownStore, Closeable {
+
+	private static final long MAX_BACKOFF_MILLIS = 1000;
+	private static final int ACK_EVERY = 16; //batches, at most, between acknowledgements
+
+	private final CutDownStore store;
+	private final InetSocketAddress leader;
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	private final ReplicationStats stats = new ReplicationStats("follower");
+	private final Object progress = new Object(); //notified when a batch is applied
+	private final Thread receiver;
+	private long epoch; //of the leader whose stream is applied, 0 if none, only used by the receiver
+	private volatile long applied; //sequence of the last mutation applied
+	private volatile Socket socket;
+	private volatile boolean closed;
+
+	/**
+	 * Creates a follower and starts connecting to its leader.
+	 * @param store store to apply the stream to; emptied when the stream starts
+	 * @param leader address of the leader
+	 */
+	public ReplicationFollower(CutDownStore store, InetSocketAddress leader) {
+		this.store = store;
+		this.leader = leader;
+		receiver = new Thread(this::run, "beanbags-replication-follower");
+		receiver.setDaemon(true);
+		receiver.start();
+	}
+
+	/**
+	 * Creates a follower and starts connecting to its leader.
+	 * @param store store to apply the stream to; emptied when the stream starts
+	 * @param host host of the leader
+	 * @param port port of the leader
+	 */
+	public ReplicationFollower(CutDownStore store, String host, int port) {
+		this(store, new InetSocketAddress(host, port));
+	}
+
+	/**
+	 * Method returns whether the follower is connected to its leader and streaming.
+	 * @return <code>true</code> if connected
+	 */
+	public boolean isConnected() {
+		return stats.getFollowers() == 1;
+	}
+
+	/**
+	 * Method returns the sequence of the last mutation applied, which is the
+	 * leader's {@link ReplicationLeader#getSequence()} when it was made.
+	 * @return sequence, or 0 if none has been applied
+	 */
+	public long getAppliedSequence() {
+		return applied;
+	}
+
+	/**
+	 * Method waits until a mutation has been applied, e.g. so a client can
+	 * read its own write from the replica.
+	 * @param sequence sequence of the mutation on the leader
+	 * @param timeoutMillis longest time to wait
+	 * @return <code>true</code> if the mutation has been applied
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public boolean awaitSequence(long sequence, long timeoutMillis) throws InterruptedException {
+		long deadline = System.nanoTime() + timeoutMillis * 1_000_000;
+		synchronized (progress) {
+			while (applied < sequence) {
+				long wait = (deadline - System.nanoTime()) / 1_000_000;
+				if (wait <= 0) {
+					return false;
+				}
+				progress.wait(wait);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Method returns the replication statistics: batches and throughput applied.
+	 * @return statistics, updated live
+	 */
+	public ReplicationStatsMXBean getStats() {
+		return stats;
+	}
+
+	/**
+	 * Method registers the statistics as an MXBean named
+	 * <code>beanbags:type=Replication,role=follower,name=</code><i>name</i>.
+	 * @param name name of the store
+	 * @throws JMException if the MXBean could not be registered
+	 */
+	public void registerMBean(String name) throws JMException {
+		stats.register(name);
+	}
+
+	/**
+	 * Method unregisters the MXBean registered by {@link #registerMBean(String)}.
+	 * @throws JMException if the MXBean could not be unregistered
+	 */
+	public void unregisterMBean() throws JMException {
+		stats.unregister();
+	}
+
+	/*
+	 * Receiver loop: connects, streams until the connection fails, and retries with back-off
+	 */
+	private void run() {
+		long backoff = 10;
+		while (!closed) {
+			try (Socket s = new Socket()) {
+				socket = s;
+				if (closed) {
+					break;
+				}
+				s.setTcpNoDelay(true);
+				s.connect(leader);
+				backoff = 10;
+				stream(s);
+			} catch (IOException e) {
+				//leader unreachable or gone; retry
+			} finally {
+				socket = null;
+				stats.setFollowers(0);
+			}
+			if (!closed) {
+				try {
+					Thread.sleep(backoff);
+				} catch (InterruptedException e) {
+					return;
+				}
+				backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+			}
+		}
+	}
+
+	/*
+	 * Handshakes with the leader and applies its frames until the connection fails
+	 */
+	private void stream(Socket s) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream(), 1 << 16));
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream(), 64));
+		if (in.readInt() != ReplicationLeader.MAGIC) {
+			throw new IOException("Not a replication leader: " + leader);
+		}
+		long leaderEpoch = in.readLong();
+		out.writeLong(leaderEpoch == epoch ? applied : -1);
+		out.flush();
+		byte mode = in.readByte();
+		if (mode == ReplicationLeader.FULL) {
+			lock.writeLock().lock();
+			try {
+				store.empty();
+			} finally {
+				lock.writeLock().unlock();
+			}
+			epoch = leaderEpoch;
+			applied = 0;
+		} else if (mode == ReplicationLeader.IMAGE) {
+			load(in, leaderEpoch);
+		}
+		stats.setFollowers(1);
+		byte[] frame = new byte[1 << 16];
+		int unacknowledged = 0;
+		while (!closed) {
+			int length = in.readInt();
+			if (length < ReplicationLeader.FRAME_HEADER - 4) {
+				throw new IOException("Corrupt replication frame");
+			}
+			if (length > frame.length) {
+				frame = new byte[Math.max(length, frame.length * 2)];
+			}
+			in.readFully(frame, 0, length);
+			ByteBuffer buf = ByteBuffer.wrap(frame, 0, length);
+			int count = buf.getInt();
+			long last = buf.getLong();
+			long stamp = buf.getLong();
+			lock.writeLock().lock();
+			try {
+				for (int i = 0; i < count; i++) {
+					StoreMutations.apply(buf, store);
+				}
+			} catch (IllegalStateException e) {
+				epoch = 0; //diverged from the leader, so replay its whole log on reconnecting
+				throw new IOException("Replicated mutation could not be applied", e);
+			} finally {
+				lock.writeLock().unlock();
+			}
+			applied = last;
+			stats.batch(last, count, length + 4);
+			synchronized (progress) {
+				progress.notifyAll();
+			}
+			if (in.available() == 0 || ++unacknowledged == ACK_EVERY) { //caught up, or a while since the last
+				out.writeLong(last);
+				out.writeLong(stamp);
+				out.flush();
+				unacknowledged = 0;
+			}
+		}
+	}
+
+	/*
+	 * Reads an image of the leader's store and loads it in place of the local one
+	 */
+	private void load(DataInputStream in, long leaderEpoch) throws IOException {
+		long at = in.readLong();
+		int length = in.readInt();
+		if (length < 0) {
+			throw new IOException("Corrupt replication image");
+		}
+		byte[] image = new byte[length];
+		in.readFully(image); //the decoder reads ahead, so not straight from the socket
+		if (!(store instanceof CDStore)) {
+			throw new IOException("Replica store cannot load an image: " + store.getClass().getName());
+		}
+		lock.writeLock().lock();
+		try {
+			epoch = 0; //until loaded whole
+			store.empty();
+			BeanBagCodec.readStore(Channels.newChannel(new ByteArrayInputStream(image)), (CDStore)store);
+		} finally {
+			lock.writeLock().unlock();
+		}
+		epoch = leaderEpoch;
+		applied = at;
+		stats.setSequence(at);
+		stats.image();
+		synchronized (progress) {
+			progress.notifyAll();
+		}
+	}
+
+	/*
+	 * Thrown by the mutating methods
+	 */
+	private static UnsupportedOperationException readOnly() {
+		return new UnsupportedOperationException("Replica is read-only; make changes through the leader");
+	}
+
+	@Override
+	public void addBeanBags(int num, String manufacturer, String name, String id, short year, byte month) {
+		throw readOnly();
+	}
+
+	@Override
+	public void addBeanBags(int num, String manufacturer, String name, String id, short year, byte month,
+			String information) {
+		throw readOnly();
+	}
+
+	@Override
+	public void setBeanBagPrice(String id, int priceInPence) {
+		throw readOnly();
+	}
+
+	@Override
+	public void sellBeanBags(int num, String id) {
+		throw readOnly();
+	}
+
+	@Override
+	public int beanBagsInStock() {
+		lock.readLock().lock();
+		try {
+			return store.beanBagsInStock();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public int beanBagsInStock(String id) throws BeanBagIDNotRecognisedException, IllegalIDException {
+		lock.readLock().lock();
+		try {
+			return store.beanBagsInStock(id);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public int getNumberOfDifferentBeanBagsInStock() {
+		lock.readLock().lock();
+		try {
+			return store.getNumberOfDifferentBeanBagsInStock();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public int getNumberOfSoldBeanBags() {
+		lock.readLock().lock();
+		try {
+			return store.getNumberOfSoldBeanBags();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public int getNumberOfSoldBeanBags(String id) throws BeanBagIDNotRecognisedException, IllegalIDException {
+		lock.readLock().lock();
+		try {
+			return store.getNumberOfSoldBeanBags(id);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public int getTotalPriceOfSoldBeanBags() {
+		lock.readLock().lock();
+		try {
+			return store.getTotalPriceOfSoldBeanBags();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public int getTotalPriceOfSoldBeanBags(String id) throws BeanBagIDNotRecognisedException, IllegalIDException {
+		lock.readLock().lock();
+		try {
+			return store.getTotalPriceOfSoldBeanBags(id);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public String getBeanBagDetails(String id) throws BeanBagIDNotRecognisedException, IllegalIDException {
+		lock.readLock().lock();
+		try {
+			return store.getBeanBagDetails(id);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public void empty() {
+		throw readOnly();
+	}
+
+	@Override
+	public void resetSaleAndCostTracking() {
+		throw readOnly();
+	}
+
+	@Override
+	public void replace(String oldId, String replacementId) {
+		throw readOnly();
+	}
+
+	/**
+	 * Method disconnects from the leader and stops applying its stream. The
+	 * local store is not closed, and keeps the state last applied.
+	 * @throws IOException if the connection could not be closed
+	 */
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		Socket s = socket;
+		if (s != null) {
+			s.close(); //unblocks the receiver
+		}
+		receiver.interrupt(); //ends a back-off sleep
+		try {
+			receiver.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
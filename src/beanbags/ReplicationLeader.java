@@ -0,0 +1,693 @@
+package beanbags;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import javax.management.JMException;
+
+/**
+ * Leader of a replicated store: a decorator for any CutDownStore that
+ * streams every mutation that succeeds on the wrapped store, encoded by
+ * {@link StoreMutations}, to {@link ReplicationFollower}s over TCP.
+ * <p>
+ * A mutation and its encoding happen together under one short lock, so the
+ * stream is in exactly the order the mutations took effect in. Each
+ * mutation is encoded before it is applied, so one that cannot be encoded
+ * never changes the store, and the encoding is discarded if the store
+ * rejects the mutation. The call
+ * then returns without waiting for followers: a sender thread takes every
+ * mutation made since its last pass as one batch and writes it to each
+ * follower without blocking, so batches grow with load and a slow follower
+ * holds back neither the store nor the other followers. Followers
+ * acknowledge batches as they apply them, which gives the replication lag
+ * reported by {@link #getStats()}.
+ * <p>
+ * The leader keeps the batches since the last {@link #empty()} (a sale
+ * takes 9 bytes), so a follower can join, or rejoin after a crash or
+ * disconnection, at any time: one that has followed this leader before
+ * resumes after the last mutation it applied, and any other replays the
+ * whole log into an emptied store. If the wrapped store is a
+ * {@link CDStore}, the log is capped (64 MiB unless given): past the cap
+ * the oldest batches are dropped down to half of it, and a follower that
+ * needs a dropped batch is sent a {@link BeanBagCodec} image of the store
+ * instead, then resumes from the log. Taking an image holds up mutations
+ * for a pass over the store, and the image carries stock and sales since
+ * the reset but not the monthly series, so such a follower must wrap a
+ * CDStore too. The log of any other store is kept whole; its size is
+ * reported by {@link #getStats()}. The wrapped store should be empty when
+ * the leader is created. Reads go straight to the wrapped store.
+ *
+ * @author George Rogers
+ * @version 1.0
+ */
+public class ReplicationLeader implements CutDownStore, Closeable {
+
+	//handshake: leader sends MAGIC and epoch, follower replies with the last sequence it applied
+	//from this epoch (or -1), and leader replies with FULL, RESUME or IMAGE before streaming frames
+	static final int MAGIC = 0x42425231; //"BBR1"
+	static final byte RESUME = 0; //frames continue after the follower's sequence
+	static final byte FULL = 1; //follower empties its store, then frames replay the whole log
+	//followed by long sequence and int length of a BeanBagCodec store, which the follower loads
+	//into its emptied store, then frames continue after the sequence
+	static final byte IMAGE = 2;
+	static final int IMAGE_HEADER = 1 + 8 + 4;
+	//frame: int length of the rest, int count, long sequence of the last mutation, long leader
+	//System.nanoTime() of the first, then the mutations; acknowledged with the last two
+	static final int FRAME_HEADER = 4 + 4 + 8 + 8;
+
+	/*
+	 * Mutations sent as one frame
+	 */
+	private static final class Batch {
+		final long lastSequence;
+		final byte[] frame;
+
+		Batch(long lastSequence, byte[] frame) {
+			this.lastSequence = lastSequence;
+			this.frame = frame;
+		}
+	}
+
+	/*
+	 * Connection to one follower, only used by the sender
+	 */
+	private static final class Follower {
+		final SocketChannel channel;
+		final ByteBuffer in = ByteBuffer.allocate(64); //hello, then acknowledgements
+		ByteBuffer out; //bytes being written
+		boolean streaming; //hello received
+		long next; //index among all batches of the next batch to send
+		long acked; //sequence acknowledged
+		int interest = SelectionKey.OP_READ;
+
+		Follower(SocketChannel channel) {
+			this.channel = channel;
+		}
+	}
+
+	private final CutDownStore store;
+	private final Object order = new Object(); //keeps stream order equal to apply order
+	private ByteBuffer pending = ByteBuffer.allocate(1 << 16); //mutations not yet taken, guarded by order
+	private int pendingCount; //guarded by order
+	private long pendingSince; //when the first pending mutation was made, guarded by order
+	private int emptyAt = -1; //position in pending of the last empty(), guarded by order
+	private int emptyCount; //pending mutations before it, guarded by order
+	private long sequence; //sequence of the last mutation, guarded by order
+	private ByteBuffer spare = ByteBuffer.allocate(1 << 16); //swapped with pending by the sender
+
+	private final long epoch = ThreadLocalRandom.current().nextLong() | 1; //identifies this leader's stream
+	private final ServerSocketChannel server;
+	private final Selector selector;
+	private final Thread sender;
+	private final List<Batch> log = new ArrayList<>(); //batches since the last empty(), only used by the sender
+	private long logBase; //index among all batches of log.get(0)
+	private long logBytes; //size of the frames in the log
+	private long retainedFrom; //sequence the log continues from, 0 if it reaches back to the last empty()
+	private long sent; //sequence of the last mutation in the log
+	private final CDStore imageable; //the store if images of it can be sent, else null
+	private final long maxLogBytes;
+	private final List<Follower> followers = new ArrayList<>(); //only used by the sender
+	private final ReplicationStats stats = new ReplicationStats("leader");
+	private volatile boolean closed;
+
+	/**
+	 * Creates a leader accepting followers on a port of every local address.
+	 * @param store store to wrap, normally empty
+	 * @param port port to listen on, or 0 for any free port (see {@link #getPort()})
+	 * @throws IOException if the port cannot be bound
+	 */
+	public ReplicationLeader(CutDownStore store, int port) throws IOException {
+		this(store, new InetSocketAddress(port));
+	}
+
+	/**
+	 * Creates a leader accepting followers on the given address.
+	 * @param store store to wrap, normally empty
+	 * @param address address to listen on
+	 * @throws IOException if the address cannot be bound
+	 */
+	public ReplicationLeader(CutDownStore store, InetSocketAddress address) throws IOException {
+		this(store, address, 64L << 20);
+	}
+
+	/**
+	 * Creates a leader accepting followers on the given address, capping
+	 * its log if the store is a {@link CDStore}.
+	 * @param store store to wrap, normally empty
+	 * @param address address to listen on
+	 * @param maxLogBytes size the log is kept under if the store is a CDStore
+	 * @throws IOException if the address cannot be bound
+	 * @throws IllegalArgumentException if maxLogBytes is not positive
+	 */
+	public ReplicationLeader(CutDownStore store, InetSocketAddress address, long maxLogBytes)
+			throws IOException {
+		if (maxLogBytes <= 0) {
+			throw new IllegalArgumentException("Log cap must be positive: " + maxLogBytes);
+		}
+		this.store = store;
+		this.maxLogBytes = maxLogBytes;
+		imageable = store instanceof CDStore ? (CDStore)store : null;
+		server = ServerSocketChannel.open();
+		Selector s = null;
+		try {
+			server.bind(address);
+			server.configureBlocking(false);
+			s = Selector.open();
+			server.register(s, SelectionKey.OP_ACCEPT);
+		} catch (IOException e) {
+			if (s != null) {
+				s.close();
+			}
+			server.close();
+			throw e;
+		}
+		selector = s;
+		sender = new Thread(this::run, "beanbags-replication-leader");
+		sender.setDaemon(true);
+		sender.start();
+	}
+
+	/**
+	 * Method returns the port followers connect to.
+	 * @return local port
+	 */
+	public int getPort() {
+		return server.socket().getLocalPort();
+	}
+
+	/**
+	 * Method returns the sequence of the last mutation made through this leader.
+	 * @return sequence, starting from 1, or 0 if there has been none
+	 */
+	public long getSequence() {
+		synchronized (order) {
+			return sequence;
+		}
+	}
+
+	/**
+	 * Method returns the replication statistics: batches, throughput and follower lag.
+	 * @return statistics, updated live
+	 */
+	public ReplicationStatsMXBean getStats() {
+		return stats;
+	}
+
+	/**
+	 * Method registers the statistics as an MXBean named
+	 * <code>beanbags:type=Replication,role=leader,name=</code><i>name</i>.
+	 * @param name name of the store
+	 * @throws JMException if the MXBean could not be registered
+	 */
+	public void registerMBean(String name) throws JMException {
+		stats.register(name);
+	}
+
+	/**
+	 * Method unregisters the MXBean registered by {@link #registerMBean(String)}.
+	 * @throws JMException if the MXBean could not be unregistered
+	 */
+	public void unregisterMBean() throws JMException {
+		stats.unregister();
+	}
+
+	/*
+	 * Makes room in the pending buffer for a mutation, returning where it starts. Caller holds order.
+	 */
+	private int begin(int maxSize) {
+		if (pending.remaining() < maxSize) {
+			ByteBuffer bigger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + maxSize));
+			pending.flip();
+			bigger.put(pending);
+			pending = bigger;
+		}
+		return pending.position();
+	}
+
+	/*
+	 * Counts the mutation just encoded, waking the sender if it starts a batch. Caller holds order.
+	 */
+	private void end() {
+		sequence++;
+		if (pendingCount++ == 0) {
+			pendingSince = System.nanoTime();
+			selector.wakeup();
+		}
+	}
+
+	@Override
+	public void addBeanBags(int num, String manufacturer, String name, String id, short year, byte month)
+			throws IllegalNumberOfBeanBagsAddedException, BeanBagMismatchException, IllegalIDException,
+			InvalidMonthException {
+		addBeanBags(num, manufacturer, name, id, year, month, ""); //no information given
+	}
+
+	@Override
+	public void addBeanBags(int num, String manufacturer, String name, String id, short year, byte month,
+			String information) throws IllegalNumberOfBeanBagsAddedException, BeanBagMismatchException,
+			IllegalIDException, InvalidMonthException {
+		synchronized (order) {
+			int start = begin(StoreMutations.maxAddSize(manufacturer, name, information));
+			StoreMutations.putAdd(pending, num, manufacturer, name, (int)BeanBagID.parse(id), year, month,
+					information);
+			try {
+				store.addBeanBags(num, manufacturer, name, id, year, month, information);
+			} catch (Exception e) {
+				pending.position(start); //rejected: discard the encoding
+				throw e;
+			}
+			end();
+		}
+	}
+
+	@Override
+	public void setBeanBagPrice(String id, int priceInPence)
+			throws InvalidPriceException, BeanBagIDNotRecognisedException, IllegalIDException {
+		synchronized (order) {
+			int start = begin(StoreMutations.MAX_FIXED_SIZE);
+			StoreMutations.putPrice(pending, (int)BeanBagID.parse(id), priceInPence);
+			try {
+				store.setBeanBagPrice(id, priceInPence);
+			} catch (Exception e) {
+				pending.position(start); //rejected: discard the encoding
+				throw e;
+			}
+			end();
+		}
+	}
+
+	@Override
+	public void sellBeanBags(int num, String id)
+			throws BeanBagNotInStockException, InsufficientStockException, IllegalNumberOfBeanBagsSoldException,
+			PriceNotSetException, BeanBagIDNotRecognisedException, IllegalIDException {
+		synchronized (order) {
+			int start = begin(StoreMutations.MAX_FIXED_SIZE);
+			StoreMutations.putSell(pending, num, (int)BeanBagID.parse(id));
+			try {
+				store.sellBeanBags(num, id);
+			} catch (Exception e) {
+				pending.position(start); //rejected: discard the encoding
+				throw e;
+			}
+			end();
+		}
+	}
+
+	@Override
+	public int beanBagsInStock() {
+		return store.beanBagsInStock();
+	}
+
+	@Override
+	public int beanBagsInStock(String id) throws BeanBagIDNotRecognisedException, IllegalIDException {
+		return store.beanBagsInStock(id);
+	}
+
+	@Override
+	public int getNumberOfDifferentBeanBagsInStock() {
+		return store.getNumberOfDifferentBeanBagsInStock();
+	}
+
+	@Override
+	public int getNumberOfSoldBeanBags() {
+		return store.getNumberOfSoldBeanBags();
+	}
+
+	@Override
+	public int getNumberOfSoldBeanBags(String id) throws BeanBagIDNotRecognisedException, IllegalIDException {
+		return store.getNumberOfSoldBeanBags(id);
+	}
+
+	@Override
+	public int getTotalPriceOfSoldBeanBags() {
+		return store.getTotalPriceOfSoldBeanBags();
+	}
+
+	@Override
+	public int getTotalPriceOfSoldBeanBags(String id) throws BeanBagIDNotRecognisedException, IllegalIDException {
+		return store.getTotalPriceOfSoldBeanBags(id);
+	}
+
+	@Override
+	public String getBeanBagDetails(String id) throws BeanBagIDNotRecognisedException, IllegalIDException {
+		return store.getBeanBagDetails(id);
+	}
+
+	@Override
+	public void empty() {
+		synchronized (order) {
+			int start = begin(StoreMutations.MAX_FIXED_SIZE);
+			StoreMutations.putNoArgs(pending, StoreMutations.EMPTY);
+			try {
+				store.empty();
+			} catch (RuntimeException e) {
+				pending.position(start); //failed: discard the encoding
+				throw e;
+			}
+			emptyAt = start; //the mutations before this no longer need replicating
+			emptyCount = pendingCount;
+			end();
+		}
+	}
+
+	@Override
+	public void resetSaleAndCostTracking() {
+		synchronized (order) {
+			int start = begin(StoreMutations.MAX_FIXED_SIZE);
+			StoreMutations.putNoArgs(pending, StoreMutations.RESET);
+			try {
+				store.resetSaleAndCostTracking();
+			} catch (Exception e) {
+				pending.position(start); //rejected: discard the encoding
+				throw e;
+			}
+			end();
+		}
+	}
+
+	@Override
+	public void replace(String oldId, String replacementId) throws BeanBagIDNotRecognisedException, IllegalIDException {
+		synchronized (order) {
+			int start = begin(StoreMutations.MAX_FIXED_SIZE);
+			StoreMutations.putReplace(pending, (int)BeanBagID.parse(oldId), (int)BeanBagID.parse(replacementId));
+			try {
+				store.replace(oldId, replacementId);
+			} catch (Exception e) {
+				pending.position(start); //rejected: discard the encoding
+				throw e;
+			}
+			end();
+		}
+	}
+
+	/*
+	 * Sender loop: batches pending mutations, accepts followers, reads acknowledgements and writes frames
+	 */
+	private void run() {
+		try {
+			while (!closed) {
+				selector.select();
+				takeBatch();
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					if (!key.isValid()) {
+						continue;
+					}
+					if (key.isAcceptable()) {
+						accept();
+					} else if (key.isReadable()) {
+						read((Follower)key.attachment());
+					}
+				}
+				flushAll();
+			}
+			takeBatch(); //a last pass for mutations made before close
+			flushAll();
+		} catch (IOException e) {
+			//the server socket or selector failed; followers reconnect to a new leader
+		} finally {
+			for (Follower f : followers) {
+				closeQuietly(f.channel);
+			}
+			followers.clear();
+			stats.setFollowers(0);
+		}
+	}
+
+	/*
+	 * Moves the pending mutations into the log as one batch
+	 */
+	private void takeBatch() {
+		ByteBuffer batch;
+		int count, from, skipped;
+		long last, since;
+		synchronized (order) {
+			if (pendingCount == 0) {
+				return;
+			}
+			batch = pending;
+			pending = spare;
+			count = pendingCount;
+			last = sequence;
+			since = pendingSince;
+			from = emptyAt;
+			skipped = emptyCount;
+			pendingCount = 0;
+			emptyAt = -1;
+		}
+		if (from < 0) {
+			from = 0;
+			skipped = 0;
+		} else { //the batch starts at an empty(), so no follower needs anything before it
+			logBase += log.size();
+			log.clear();
+			logBytes = 0;
+			retainedFrom = 0;
+		}
+		int body = batch.position() - from;
+		byte[] frame = new byte[FRAME_HEADER + body];
+		ByteBuffer.wrap(frame).putInt(FRAME_HEADER - 4 + body).putInt(count - skipped).putLong(last).putLong(since);
+		System.arraycopy(batch.array(), from, frame, FRAME_HEADER, body);
+		log.add(new Batch(last, frame));
+		logBytes += frame.length;
+		sent = last;
+		stats.batch(last, count - skipped, frame.length);
+		batch.clear();
+		spare = batch;
+		if (imageable != null && logBytes > maxLogBytes) {
+			trimLog();
+		}
+		stats.setLog(log.size(), logBytes);
+	}
+
+	/*
+	 * Drops the oldest batches until the log is at most half its cap, keeping the newest
+	 */
+	private void trimLog() {
+		int drop = 0;
+		while (drop < log.size() - 1 && logBytes > maxLogBytes / 2) {
+			logBytes -= log.get(drop++).frame.length;
+		}
+		retainedFrom = log.get(drop - 1).lastSequence;
+		log.subList(0, drop).clear();
+		logBase += drop;
+	}
+
+	/*
+	 * Returns the handshake reply that sends a follower an image of the store and everything after it
+	 */
+	private ByteBuffer image() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 << 16);
+		bytes.write(new byte[IMAGE_HEADER]); //filled in below
+		long at;
+		synchronized (order) { //no mutation can run while the image is taken
+			takeBatch(); //so the image is of exactly what the log holds
+			BeanBagCodec.writeStore(imageable, Channels.newChannel(bytes));
+			at = sent;
+		}
+		byte[] reply = bytes.toByteArray();
+		ByteBuffer.wrap(reply).put(IMAGE).putLong(at).putInt(reply.length - IMAGE_HEADER);
+		stats.image();
+		return ByteBuffer.wrap(reply);
+	}
+
+	/*
+	 * Accepts new followers and sends them the handshake
+	 */
+	private void accept() throws IOException {
+		SocketChannel c;
+		while ((c = server.accept()) != null) {
+			c.configureBlocking(false);
+			c.setOption(StandardSocketOptions.TCP_NODELAY, true);
+			Follower f = new Follower(c);
+			f.out = ByteBuffer.allocate(12).putInt(MAGIC).putLong(epoch).flip();
+			c.register(selector, f.interest, f);
+			followers.add(f);
+		}
+	}
+
+	/*
+	 * Reads a follower's hello or acknowledgements, dropping it if it disconnected
+	 */
+	private void read(Follower f) {
+		try {
+			if (f.channel.read(f.in) < 0) {
+				drop(f);
+				return;
+			}
+		} catch (IOException e) {
+			drop(f);
+			return;
+		}
+		f.in.flip();
+		if (!f.streaming && f.in.remaining() >= 8) {
+			try {
+				start(f, f.in.getLong());
+			} catch (IOException e) {
+				drop(f);
+				return;
+			}
+		}
+		if (f.streaming) {
+			while (f.in.remaining() >= 16) {
+				f.acked = f.in.getLong();
+				stats.lag(System.nanoTime() - f.in.getLong());
+			}
+		}
+		f.in.compact();
+	}
+
+	/*
+	 * Starts streaming to a follower that has applied the given sequence of this leader's stream, or -1
+	 */
+	private void start(Follower f, long applied) throws IOException {
+		f.streaming = true;
+		if (applied < 0 || applied > sent) { //a new follower, or one that followed another leader
+			applied = -1;
+		}
+		if (retainedFrom > 0 && applied < retainedFrom) { //needs batches dropped from the log
+			f.out = image();
+			f.next = logBase + log.size();
+			f.acked = sent;
+			stats.setFollowers(streaming());
+			return;
+		}
+		byte mode;
+		if (applied < 0) {
+			mode = FULL;
+			f.next = logBase;
+			f.acked = 0;
+		} else {
+			mode = RESUME;
+			int lo = 0, hi = log.size(); //first batch ending after applied; earlier ones are skipped
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				if (log.get(mid).lastSequence <= applied) {
+					lo = mid + 1;
+				} else {
+					hi = mid;
+				}
+			}
+			f.next = logBase + lo;
+			f.acked = applied;
+		}
+		f.out = ByteBuffer.allocate(1).put(mode).flip();
+		stats.setFollowers(streaming());
+	}
+
+	/*
+	 * Returns the number of followers past the handshake
+	 */
+	private int streaming() {
+		int n = 0;
+		for (Follower f : followers) {
+			if (f.streaming) {
+				n++;
+			}
+		}
+		return n;
+	}
+
+	/*
+	 * Writes what each follower is missing, as far as its socket accepts without blocking, and updates the lag
+	 */
+	private void flushAll() {
+		long minAcked = sent;
+		for (int i = followers.size() - 1; i >= 0; i--) {
+			Follower f = followers.get(i);
+			try {
+				flush(f);
+			} catch (IOException e) {
+				drop(f);
+				continue;
+			}
+			if (f.streaming) {
+				minAcked = Math.min(minAcked, f.acked);
+			}
+		}
+		stats.setLagMutations(sent - minAcked);
+	}
+
+	/*
+	 * Writes frames to a follower until it is up to date or its socket is full
+	 */
+	private void flush(Follower f) throws IOException {
+		int interest = SelectionKey.OP_READ;
+		while (true) {
+			if (f.out != null) {
+				f.channel.write(f.out);
+				if (f.out.hasRemaining()) {
+					interest |= SelectionKey.OP_WRITE; //wake when the socket drains
+					break;
+				}
+				f.out = null;
+			}
+			if (!f.streaming) {
+				break;
+			}
+			if (f.next < logBase) {
+				if (retainedFrom > 0) { //fell behind the log, so reconnects for an image
+					throw new IOException("Follower is behind the log");
+				}
+				f.next = logBase; //batches before an empty() were dropped
+			}
+			if (f.next == logBase + log.size()) {
+				break;
+			}
+			f.out = ByteBuffer.wrap(log.get((int)(f.next++ - logBase)).frame);
+		}
+		if (interest != f.interest) {
+			f.channel.keyFor(selector).interestOps(interest);
+			f.interest = interest;
+		}
+	}
+
+	/*
+	 * Disconnects a follower; it will reconnect and resume
+	 */
+	private void drop(Follower f) {
+		closeQuietly(f.channel);
+		followers.remove(f);
+		stats.setFollowers(streaming());
+	}
+
+	private static void closeQuietly(Closeable c) {
+		try {
+			c.close();
+		} catch (IOException e) {
+			//nothing more to do
+		}
+	}
+
+	/**
+	 * Method stops replicating: mutations not yet sent are sent if followers
+	 * can take them without blocking, then followers are disconnected. The
+	 * wrapped store is not closed.
+	 * @throws IOException if the listening socket could not be closed
+	 */
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		selector.wakeup();
+		try {
+			sender.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		selector.close();
+		server.close();
+	}
+}
@@ -0,0 +1,180 @@
+package beanbags;
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Statistics of one end of a replication stream, updated by its replication
+ * thread and readable from any thread (see {@link ReplicationStatsMXBean}).
+ *
+ * @author George Rogers
+ * @version 1.0
+ */
+public class ReplicationStats implements ReplicationStatsMXBean {
+
+	private final String role;
+	private final LatencyHistogram lag = new LatencyHistogram();
+	//written only by the replication thread, so volatile is enough
+	private volatile long sequence;
+	private volatile int followers;
+	private volatile long batches;
+	private volatile long mutations;
+	private volatile long bytes;
+	private volatile long lagMutations;
+	private volatile int logBatches;
+	private volatile long logBytes;
+	private volatile long images;
+	private volatile long since = System.nanoTime(); //when the counts were last reset
+	private ObjectName registered;
+
+	/*
+	 * Creates the statistics of a leader or follower
+	 */
+	ReplicationStats(String role) {
+		this.role = role;
+	}
+
+	/*
+	 * Counts a batch sent or applied, ending with the given sequence
+	 */
+	void batch(long lastSequence, int count, int size) {
+		sequence = lastSequence;
+		batches++;
+		mutations += count;
+		bytes += size;
+	}
+
+	void setSequence(long sequence) {
+		this.sequence = sequence;
+	}
+
+	void setFollowers(int followers) {
+		this.followers = followers;
+	}
+
+	void setLagMutations(long lagMutations) {
+		this.lagMutations = lagMutations;
+	}
+
+	void setLog(int logBatches, long logBytes) {
+		this.logBatches = logBatches;
+		this.logBytes = logBytes;
+	}
+
+	/*
+	 * Counts a store image sent or loaded
+	 */
+	void image() {
+		images++;
+	}
+
+	/*
+	 * Records the lag of a batch acknowledged by a follower
+	 */
+	void lag(long nanos) {
+		lag.record(nanos);
+	}
+
+	/*
+	 * Registers the statistics as an MXBean under the given store name
+	 */
+	synchronized void register(String name) throws JMException {
+		ObjectName o = new ObjectName("beanbags:type=Replication,role=" + role + ",name=" + ObjectName.quote(name));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, o);
+		registered = o;
+	}
+
+	/*
+	 * Unregisters the MXBean, if registered
+	 */
+	synchronized void unregister() throws JMException {
+		if (registered != null) {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			server.unregisterMBean(registered);
+			registered = null;
+		}
+	}
+
+	@Override
+	public long getSequence() {
+		return sequence;
+	}
+
+	@Override
+	public int getFollowers() {
+		return followers;
+	}
+
+	@Override
+	public long getBatches() {
+		return batches;
+	}
+
+	@Override
+	public long getMutations() {
+		return mutations;
+	}
+
+	@Override
+	public long getBytes() {
+		return bytes;
+	}
+
+	@Override
+	public double getMeanBatchSize() {
+		long b = batches;
+		return b == 0 ? 0 : (double)mutations / b;
+	}
+
+	@Override
+	public double getMutationsPerSecond() {
+		long elapsed = System.nanoTime() - since;
+		return elapsed <= 0 ? 0 : mutations * 1e9 / elapsed;
+	}
+
+	@Override
+	public long getLagMutations() {
+		return lagMutations;
+	}
+
+	@Override
+	public int getLogBatches() {
+		return logBatches;
+	}
+
+	@Override
+	public long getLogBytes() {
+		return logBytes;
+	}
+
+	@Override
+	public long getImages() {
+		return images;
+	}
+
+	@Override
+	public long getLagP50Nanos() {
+		return lag.getValueAtPercentile(50);
+	}
+
+	@Override
+	public long getLagP99Nanos() {
+		return lag.getValueAtPercentile(99);
+	}
+
+	@Override
+	public long getLagMaxNanos() {
+		return lag.getMax();
+	}
+
+	@Override
+	public void reset() {
+		batches = 0;
+		mutations = 0;
+		bytes = 0;
+		images = 0;
+		lag.reset();
+		since = System.nanoTime();
+	}
+}
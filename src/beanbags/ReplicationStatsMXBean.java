@@ -0,0 +1,112 @@
+package beanbags;
+
+/**
+ * Management interface of the statistics kept by a
+ * {@link ReplicationLeader} or {@link ReplicationFollower}, registered as
+ * an MXBean named
+ * <code>beanbags:type=Replication,role=</code><i>leader or follower</i><code>,name=</code><i>store</i>.
+ * Replication lag is measured on the leader, from the time the first
+ * mutation of a batch was applied there to the time a follower acknowledged
+ * applying the batch, so it includes the round trip back to the leader.
+ *
+ * @author George Rogers
+ * @version 1.0
+ */
+public interface ReplicationStatsMXBean
+{
+
+    /**
+     * Method returns the sequence of the last mutation published (leader)
+     * or applied (follower).
+     * @return sequence, starting from 1, or 0 if there has been none
+     */
+    long getSequence();
+
+    /**
+     * Method returns the number of followers streaming from the leader, or
+     * 1 if a follower is connected to its leader.
+     * @return connected followers
+     */
+    int getFollowers();
+
+    /**
+     * Method returns the number of batches sent (leader) or applied (follower).
+     * @return batches
+     */
+    long getBatches();
+
+    /**
+     * Method returns the number of mutations in the batches counted by {@link #getBatches()}.
+     * @return mutations
+     */
+    long getMutations();
+
+    /**
+     * Method returns the number of bytes in the batches counted by {@link #getBatches()}.
+     * @return bytes, including framing
+     */
+    long getBytes();
+
+    /**
+     * Method returns the mean number of mutations per batch.
+     * @return mean batch size, or 0 if there has been no batch
+     */
+    double getMeanBatchSize();
+
+    /**
+     * Method returns the mean rate mutations were replicated at since the statistics were reset.
+     * @return mutations per second
+     */
+    double getMutationsPerSecond();
+
+    /**
+     * Method returns how many mutations the furthest behind follower has
+     * yet to acknowledge. Followers report 0.
+     * @return mutations behind the leader
+     */
+    long getLagMutations();
+
+    /**
+     * Method returns the number of batches the leader keeps for followers
+     * to resume from. Followers report 0.
+     * @return batches in the log
+     */
+    int getLogBatches();
+
+    /**
+     * Method returns the size of the batches counted by {@link #getLogBatches()}.
+     * Followers report 0.
+     * @return bytes in the log, including framing
+     */
+    long getLogBytes();
+
+    /**
+     * Method returns the number of store images sent to followers too far
+     * behind to resume from the log (leader) or loaded (follower).
+     * @return images
+     */
+    long getImages();
+
+    /**
+     * Method returns the median replication lag. Followers report 0.
+     * @return median in nanoseconds
+     */
+    long getLagP50Nanos();
+
+    /**
+     * Method returns the 99th percentile of the replication lag. Followers report 0.
+     * @return 99th percentile in nanoseconds
+     */
+    long getLagP99Nanos();
+
+    /**
+     * Method returns the highest replication lag. Followers report 0.
+     * @return maximum in nanoseconds
+     */
+    long getLagMaxNanos();
+
+    /**
+     * Method clears the counts, rate and lag histogram, but not the sequence or log size.
+     */
+    void reset();
+}
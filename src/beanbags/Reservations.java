@@ -0,0 +1,127 @@
+package beanbags;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+import java.util.function.LongSupplier;
+
+/*
+ * Table of pending reservations for a store. Each reservation holds a number
+ * of bean bags of one stock row at a price, under a reservation number, and
+ * expires after a hold time tracked by a TimingWheel. Reservations live in
+ * parallel arrays indexed by a recycled handle; reservation numbers map to
+ * handles through an IDIndex.
+ *
+ * Expiry is lazy: the store calls expire() before any operation whose
+ * outcome depends on what is reserved, which hands every reservation past
+ * its deadline to the store's release callback.
+ */
+final class Reservations {
+
+	private final LongSupplier clock; //milliseconds
+	private final long tickMillis;
+	private final TimingWheel wheel;
+	private final IDIndex handles = new IDIndex(); //reservation number -> handle
+
+	private int[] numbers = new int[16];
+	private int[] rows = new int[16];
+	private int[] nums = new int[16];
+	private int[] prices = new int[16];
+	private int[] free = new int[16]; //stack of unused handles
+	private int freeCount;
+	private int used; //handles ever used; those at or above are free
+	private int nextNumber = 1;
+	private long reservedTotal;
+
+	Reservations(LongSupplier clock, long tickMillis) {
+		this.clock = clock;
+		this.tickMillis = tickMillis;
+		this.wheel = new TimingWheel(clock.getAsLong() / tickMillis);
+	}
+
+	/*
+	 * Adds a reservation expiring after holdMillis, returning its number
+	 */
+	int add(int row, int num, int price, long holdMillis) {
+		int h;
+		if (freeCount > 0) {
+			h = free[--freeCount];
+		} else {
+			h = used++;
+			if (h == numbers.length) {
+				int capacity = h * 2;
+				numbers = Arrays.copyOf(numbers, capacity);
+				rows = Arrays.copyOf(rows, capacity);
+				nums = Arrays.copyOf(nums, capacity);
+				prices = Arrays.copyOf(prices, capacity);
+				free = Arrays.copyOf(free, capacity);
+			}
+		}
+		int number = nextNumber;
+		nextNumber = number == Integer.MAX_VALUE ? 1 : number + 1; //numbers are positive
+		numbers[h] = number;
+		rows[h] = row;
+		nums[h] = num;
+		prices[h] = price;
+		handles.put(number, h);
+		long deadline = clock.getAsLong() + holdMillis;
+		wheel.schedule(h, (deadline + tickMillis - 1) / tickMillis); //round up: never expire early
+		reservedTotal += num;
+		return number;
+	}
+
+	/*
+	 * Returns the handle of a reservation number, or IDIndex.ABSENT
+	 */
+	int find(int number) {
+		return handles.get(number);
+	}
+
+	int row(int h) {
+		return rows[h];
+	}
+
+	int num(int h) {
+		return nums[h];
+	}
+
+	int price(int h) {
+		return prices[h];
+	}
+
+	/*
+	 * Removes a reservation (sold, cancelled or expired)
+	 */
+	void remove(int h) {
+		wheel.cancel(h);
+		handles.remove(numbers[h]);
+		reservedTotal -= nums[h];
+		free[freeCount++] = h;
+	}
+
+	/*
+	 * Hands each reservation past its deadline to release, which must remove it
+	 */
+	void expire(IntConsumer release) {
+		if (wheel.size() > 0) {
+			wheel.advance(clock.getAsLong() / tickMillis, release);
+		}
+	}
+
+	int size() {
+		return handles.size();
+	}
+
+	long reservedTotal() {
+		return reservedTotal;
+	}
+
+	/*
+	 * Removes every reservation
+	 */
+	void clear() {
+		wheel.clear();
+		handles.clear();
+		freeCount = 0;
+		used = 0;
+		reservedTotal = 0;
+	}
+}
@@ -0,0 +1,122 @@
+package beanbags;
+
+/**
+ * Extension of the CutDownStore interface for holding stock against
+ * reservations, e.g. while a customer checks out.
+ * <p>
+ * Reserved bean bags stay in stock (so they are counted by
+ * {@link CutDownStore#beanBagsInStock()} and the other stock methods) but
+ * cannot be sold by {@link CutDownStore#sellBeanBags(int, String)} or
+ * reserved again. A reservation ends when it is sold, unreserved, or when
+ * its hold time runs out, whereupon the bean bags are unreserved
+ * automatically. Replacing an ID carries its reservations over to the
+ * replacement ID, and emptying the store cancels every reservation.
+ *
+ * @author George Rogers
+ * @version 1.0
+ */
+public interface ReservingCutDownStore extends CutDownStore
+{
+
+    /**
+     * Method reserves bean bags with the corresponding ID in the store,
+     * using the store's default hold time.
+     * <p>
+     * The state of this BeanBagStore must be be unchanged if any exceptions are
+     * thrown.
+     *
+     * @param num           number of bean bags to be reserved
+     * @param id            ID of bean bags to be reserved
+     * @return              unique reservation number
+     * @throws BeanBagNotInStockException   if the bean bag has previously been in
+     *                      stock, but is now out of stock
+     * @throws InsufficientStockException   if the bean bag is in stock, but not
+     *                      enough are available (i.e. in stock and not reserved) 
+     *                      to meet the reservation
+     * @throws IllegalNumberOfBeanBagsReservedException if an attempt is being 
+     *                      made to reserve fewer than 1 bean bag
+     * @throws PriceNotSetException if the bag is in stock, and there is sufficient
+     *                      stock to meet demand, but the price has yet to be set
+     * @throws BeanBagIDNotRecognisedException  if the ID is legal, but does not 
+     *                          match any bag in (or previously in) stock
+     * @throws IllegalIDException   if the ID is not a positive eight character
+     *                           hexadecimal number
+     */
+    int reserveBeanBags(int num, String id) throws BeanBagNotInStockException,
+    InsufficientStockException, IllegalNumberOfBeanBagsReservedException,
+    PriceNotSetException, BeanBagIDNotRecognisedException, IllegalIDException;
+
+    /**
+     * Method reserves bean bags with the corresponding ID in the store for
+     * the given hold time, after which the reservation expires.
+     *
+     * @param num           number of bean bags to be reserved
+     * @param id            ID of bean bags to be reserved
+     * @param holdMillis    milliseconds before the reservation expires
+     * @return              unique reservation number
+     * @throws BeanBagNotInStockException   see {@link #reserveBeanBags(int, String)}
+     * @throws InsufficientStockException   see {@link #reserveBeanBags(int, String)}
+     * @throws IllegalNumberOfBeanBagsReservedException see 
+     *                      {@link #reserveBeanBags(int, String)}
+     * @throws PriceNotSetException see {@link #reserveBeanBags(int, String)}
+     * @throws BeanBagIDNotRecognisedException  see {@link #reserveBeanBags(int, String)}
+     * @throws IllegalIDException   see {@link #reserveBeanBags(int, String)}
+     */
+    int reserveBeanBags(int num, String id, long holdMillis) throws 
+    BeanBagNotInStockException, InsufficientStockException, 
+    IllegalNumberOfBeanBagsReservedException, PriceNotSetException, 
+    BeanBagIDNotRecognisedException, IllegalIDException;
+
+    /**
+     * Method removes a reservation, returning its bean bags to unreserved stock.
+     * <p>
+     * The state of this BeanBagStore must be be unchanged if any exceptions are
+     * thrown.
+     *
+     * @param reservationNumber     reservation number
+     * @throws ReservationNumberNotRecognisedException  if the reservation number
+     *                      does not match a current reservation (e.g. it has 
+     *                      been sold, unreserved or has expired)
+     */
+    void unreserveBeanBags(int reservationNumber) 
+    throws ReservationNumberNotRecognisedException;
+
+    /**
+     * Method sells the bean bags held by a reservation and removes them from
+     * stock. They are sold at the lower of their price when reserved and 
+     * their current price.
+     * <p>
+     * The state of this BeanBagStore must be be unchanged if any exceptions are
+     * thrown.
+     *
+     * @param reservationNumber     reservation number
+     * @throws ReservationNumberNotRecognisedException  if the reservation number
+     *                      does not match a current reservation (e.g. it has 
+     *                      been sold, unreserved or has expired)
+     */
+    void sellBeanBags(int reservationNumber) 
+    throws ReservationNumberNotRecognisedException;
+
+    /**
+     * Access method for the number of reserved bean bags in this store.
+     *
+     * @return                  number of reserved bean bags in this store
+     */
+    int reservedBeanBagsInStock();
+
+    /**
+     * Method returns the number of reserved bean bags with matching ID in stock.
+     * <p>
+     * The state of this BeanBagStore must be be unchanged if any exceptions are
+     * thrown.
+     *
+     * @param id            ID of bean bags
+     * @return              number of reserved bean bags matching ID in stock
+     * @throws BeanBagIDNotRecognisedException  if the ID is legal, but does not 
+     *                          match any bag in (or previously in) stock
+     * @throws IllegalIDException   if the ID is not a positive eight character
+     *                           hexadecimal number
+     */
+    int reservedBeanBagsInStock(String id) throws BeanBagIDNotRecognisedException,
+    IllegalIDException;
+}
@@ -0,0 +1,301 @@
+package beanbags;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
+import java.util.function.LongSupplier;
+
+/**
+ * Ledger of sales bucketed by calendar month (UTC), kept by a store as it
+ * sells. The store reports sales by the row of its stock record, which stays
+ * the same when the ID is replaced, so the ledger follows replacements
+ * without being told and indexes its rollups by plain array lookups. Every
+ * sale is added to three rollups: the whole store, the ID sold and the
+ * manufacture cohort of that ID. The cohort is the year and month of the
+ * first delivery of the ID: later deliveries are usually of newer stock, but
+ * an ID's stock is not tracked per delivery, so a sale cannot be told apart
+ * by delivery and every sale of the ID counts in the cohort of its first
+ * delivery. Each rollup is a series of monthly buckets holding cumulative
+ * units and revenue, so the units or revenue over any range of months is the
+ * difference of two prefix sums found by binary search, in O(log n) for n
+ * months with sales. Yearly figures are the range of that year's twelve
+ * months.
+ * <p>
+ * Months are identified by the index returned by {@link #month(int, int)}.
+ * Sales are taken to happen in time order; a sale timestamped in an earlier
+ * month than the latest bucket of a series (e.g. after the clock is set
+ * back) is counted in that latest bucket.
+ *
+ * @author George Rogers
+ * @version 1.0
+ */
+public class SalesLedger {
+
+	private static final long DAY_MILLIS = 86_400_000L;
+
+	private final LongSupplier clock; //milliseconds since the epoch
+	private long monthStart = Long.MAX_VALUE; //the month containing the last sale, cached
+	private long monthEnd = Long.MIN_VALUE;
+	private int currentMonth;
+
+	private final IntUnaryOperator rowOf; //ID -> stock row, or IDIndex.ABSENT
+
+	private long[] total;
+	private long[][] byRow = new long[16][]; //series of each stock row; null until it sells
+	private int[] cohortByRow = new int[16]; //index in cohorts + 1 of each stock row; 0 for none
+	private long[][] cohorts = new long[16][]; //series of each cohort
+	private final IDIndex byCohort = new IDIndex(); //cohort month -> index in cohorts
+
+	//a series of monthly buckets is a long[]: the number of buckets, then per bucket
+	//its month and the units and revenue up to and including it
+	private static final int MONTH = 0;
+	private static final int UNITS = 1;
+	private static final int REVENUE = 2;
+	private static final int BUCKET = 3;
+
+	/*
+	 * Adds a sale to a series (null when empty), returning the series, which may have been reallocated
+	 */
+	private static long[] add(long[] d, int month, long units, long revenue) {
+		if (d == null) {
+			d = new long[1 + 2 * BUCKET];
+		}
+		int size = (int)d[0];
+		int last = 1 + (size - 1) * BUCKET;
+		if (size > 0 && month <= d[last + MONTH]) {
+			d[last + UNITS] += units; //same (or, if the clock went back, earlier) month
+			d[last + REVENUE] += revenue;
+			return d;
+		}
+		int b = 1 + size * BUCKET;
+		if (b + BUCKET > d.length) {
+			d = Arrays.copyOf(d, 1 + size * 2 * BUCKET);
+		}
+		d[b + MONTH] = month;
+		d[b + UNITS] = (size > 0 ? d[last + UNITS] : 0) + units;
+		d[b + REVENUE] = (size > 0 ? d[last + REVENUE] : 0) + revenue;
+		d[0] = size + 1;
+		return d;
+	}
+
+	/*
+	 * Returns the number of buckets of a series for months up to and including month
+	 */
+	private static int countUpTo(long[] d, int month) {
+		int lo = 0;
+		int hi = (int)d[0];
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (d[1 + mid * BUCKET + MONTH] <= month) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/*
+	 * Returns the total of a field (UNITS or REVENUE) of a series over a range of months
+	 */
+	private static long range(long[] d, int field, int from, int to) {
+		if (d == null || from > to) {
+			return 0;
+		}
+		int hi = countUpTo(d, to);
+		int lo = from == Integer.MIN_VALUE ? 0 : countUpTo(d, from - 1);
+		return (hi > 0 ? d[1 + (hi - 1) * BUCKET + field] : 0) - (lo > 0 ? d[1 + (lo - 1) * BUCKET + field] : 0);
+	}
+
+	/*
+	 * Creates an empty ledger for a store that maps IDs to stock rows with rowOf
+	 */
+	SalesLedger(LongSupplier clock, IntUnaryOperator rowOf) {
+		this.clock = clock;
+		this.rowOf = rowOf;
+	}
+
+	/**
+	 * Method returns the index identifying a calendar month.
+	 * @param year year
+	 * @param month month of the year, 1 to 12
+	 * @return month index, increasing by one per month
+	 */
+	public static int month(int year, int month) {
+		return year * 12 + month - 1;
+	}
+
+	/*
+	 * Returns the month index of the current time, recomputing it only when the month changes
+	 */
+	private int currentMonth() {
+		long now = clock.getAsLong();
+		if (now < monthStart || now >= monthEnd) {
+			LocalDate first = LocalDate.ofEpochDay(Math.floorDiv(now, DAY_MILLIS)).withDayOfMonth(1);
+			monthStart = first.toEpochDay() * DAY_MILLIS;
+			monthEnd = first.plusMonths(1).toEpochDay() * DAY_MILLIS;
+			currentMonth = month(first.getYear(), first.getMonthValue());
+		}
+		return currentMonth;
+	}
+
+	/*
+	 * Grows the per-row arrays to hold a row
+	 */
+	private void ensureRow(int row) {
+		if (row >= byRow.length) {
+			int capacity = Math.max(row + 1, byRow.length * 2);
+			byRow = Arrays.copyOf(byRow, capacity);
+			cohortByRow = Arrays.copyOf(cohortByRow, capacity);
+		}
+	}
+
+	/*
+	 * Records the manufacture cohort of a stock row if it has none yet, so the first delivery sets it
+	 */
+	void stocked(int row, short year, byte month) {
+		ensureRow(row);
+		if (cohortByRow[row] == 0) {
+			int cohort = month(year, month);
+			int c = byCohort.get(cohort);
+			if (c == IDIndex.ABSENT) {
+				c = byCohort.size();
+				if (c == cohorts.length) {
+					cohorts = Arrays.copyOf(cohorts, c * 2);
+				}
+				byCohort.put(cohort, c);
+			}
+			cohortByRow[row] = c + 1;
+		}
+	}
+
+	/*
+	 * Records a sale of units from a stock row, worth revenue, at the current time
+	 */
+	void sold(int row, int units, long revenue) {
+		int m = currentMonth();
+		//only store a series back when it was reallocated, sparing the GC write barrier
+		long[] d = total;
+		if ((d = add(d, m, units, revenue)) != total) {
+			total = d;
+		}
+		ensureRow(row);
+		if ((d = add(byRow[row], m, units, revenue)) != byRow[row]) {
+			byRow[row] = d;
+		}
+		int c = cohortByRow[row] - 1;
+		if (c >= 0 && (d = add(cohorts[c], m, units, revenue)) != cohorts[c]) { //rows restored from a snapshot have no cohort
+			cohorts[c] = d;
+		}
+	}
+
+	/*
+	 * Moves the sales and cohort of stock row from to row to, whose own are forgotten; the store total and
+	 * cohorts keep every sale
+	 */
+	void moved(int from, int to) {
+		ensureRow(Math.max(from, to));
+		byRow[to] = byRow[from];
+		cohortByRow[to] = cohortByRow[from];
+		byRow[from] = null;
+		cohortByRow[from] = 0;
+	}
+
+	/*
+	 * Forgets every sale and cohort; rows are about to be reused
+	 */
+	void clear() {
+		total = null;
+		byRow = new long[16][];
+		cohortByRow = new int[16];
+		cohorts = new long[16][];
+		byCohort.clear();
+	}
+
+	/*
+	 * Returns the series for an ID, or null if it has no sales
+	 */
+	private long[] forID(String id) throws IllegalIDException {
+		long key = BeanBagID.parse(id);
+		if (key == BeanBagID.INVALID) {
+			throw IllegalIDException.STACKLESS;
+		}
+		int row = rowOf.applyAsInt((int)key);
+		return row == IDIndex.ABSENT || row >= byRow.length ? null : byRow[row];
+	}
+
+	/*
+	 * Returns the series for a cohort, or null if it has no IDs
+	 */
+	private long[] forCohort(int cohort) {
+		int c = byCohort.get(cohort);
+		return c == IDIndex.ABSENT ? null : cohorts[c];
+	}
+
+	/**
+	 * Method returns the number of bean bags sold in a range of months.
+	 * @param from first month of the range (see {@link #month(int, int)})
+	 * @param to last month of the range, inclusive
+	 * @return number of bean bags sold
+	 */
+	public long unitsSold(int from, int to) {
+		return range(total, UNITS, from, to);
+	}
+
+	/**
+	 * Method returns the value (in pence) of bean bags sold in a range of months.
+	 * @param from first month of the range (see {@link #month(int, int)})
+	 * @param to last month of the range, inclusive
+	 * @return value of bean bags sold
+	 */
+	public long revenue(int from, int to) {
+		return range(total, REVENUE, from, to);
+	}
+
+	/**
+	 * Method returns the number of bean bags of an ID sold in a range of months.
+	 * @param id ID of bean bags
+	 * @param from first month of the range (see {@link #month(int, int)})
+	 * @param to last month of the range, inclusive
+	 * @return number of bean bags sold, 0 if the ID is not in the store or has never been sold
+	 * @throws IllegalIDException if the ID is not legal
+	 */
+	public long unitsSold(String id, int from, int to) throws IllegalIDException {
+		return range(forID(id), UNITS, from, to);
+	}
+
+	/**
+	 * Method returns the value (in pence) of bean bags of an ID sold in a range of months.
+	 * @param id ID of bean bags
+	 * @param from first month of the range (see {@link #month(int, int)})
+	 * @param to last month of the range, inclusive
+	 * @return value of bean bags sold, 0 if the ID is not in the store or has never been sold
+	 * @throws IllegalIDException if the ID is not legal
+	 */
+	public long revenue(String id, int from, int to) throws IllegalIDException {
+		return range(forID(id), REVENUE, from, to);
+	}
+
+	/**
+	 * Method returns the number of bean bags sold in a range of months whose
+	 * IDs were first delivered with a month of manufacture.
+	 * @param cohort month of manufacture of the first delivery (see {@link #month(int, int)})
+	 * @param from first month of the range of sales
+	 * @param to last month of the range of sales, inclusive
+	 * @return number of bean bags sold
+	 */
+	public long cohortUnitsSold(int cohort, int from, int to) {
+		return range(forCohort(cohort), UNITS, from, to);
+	}
+
+	/**
+	 * Method returns the value (in pence) of bean bags sold in a range of
+	 * months whose IDs were first delivered with a month of manufacture.
+	 * @param cohort month of manufacture of the first delivery (see {@link #month(int, int)})
+	 * @param from first month of the range of sales
+	 * @param to last month of the range of sales, inclusive
+	 * @return value of bean bags sold
+	 */
+	public long cohortRevenue(int cohort, int from, int to) {
+		return range(forCohort(cohort), REVENUE, from, to);
+	}
+}
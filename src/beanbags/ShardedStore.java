@@ -0,0 +1,383 @@
+package beanbags;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToLongFunction;
+
+/**
+ * Thread-safe implementation of CutDownStore interface that partitions IDs
+ * by hash over a number of independent {@link CDStore} shards, each guarded
+ * by its own lock. Calls for one ID lock only the shard holding it, so calls
+ * for IDs on different shards run in parallel on different cores.
+ * <p>
+ * The store-wide queries fan out over a {@link ForkJoinPool}, reading each
+ * shard's running totals under its lock and summing the results. Shards are
+ * read one after another, so while writers are active a total is not a
+ * single point-in-time snapshot of the whole store.
+ * <p>
+ * {@link #replace} locks both shards involved, in shard order. When the
+ * replacement ID hashes to a different shard, the stock and sales records
+ * are moved to that shard under both locks, so every ID always lives on the
+ * shard it hashes to. A move keeps the stock, price and information and the
+ * sales since the last reset, which also rank the ID among the new shard's
+ * best sellers. It loses the ID's monthly sales series and cohort: the old
+ * shard's {@link SalesLedger} keeps its sales only in its store and cohort
+ * totals, and the new shard's ledger counts the ID in no cohort. If the ID
+ * was ranked among the old shard's best sellers, that shard re-ranks all of
+ * its sold IDs, in time proportional to their number. Either kind of
+ * replace emits a {@link StoreEvents.Replace} event.
+ *
+ * @author George Rogers
+ * @version 1.0
+ */
+public class ShardedStore implements CutDownStore {
+
+	/*
+	 * One partition of the store
+	 */
+	private static final class Shard {
+		final ReentrantLock lock = new ReentrantLock();
+		final CDStore store = new CDStore();
+	}
+
+	private final Shard[] shards;
+	private final ForkJoinPool pool;
+
+	/**
+	 * Creates a store with a shard per available processor, summing totals in the common pool.
+	 */
+	public ShardedStore() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Creates a store with the given number of shards, summing totals in the common pool.
+	 * @param shards number of shards
+	 */
+	public ShardedStore(int shards) {
+		this(shards, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Creates a store with the given number of shards.
+	 * @param shards number of shards
+	 * @param pool pool the store-wide queries fan out over
+	 */
+	public ShardedStore(int shards, ForkJoinPool pool) {
+		if (shards < 1) {
+			throw new IllegalArgumentException("A store needs at least one shard");
+		}
+		this.shards = new Shard[shards];
+		for (int i = 0; i < shards; i++) {
+			this.shards[i] = new Shard();
+		}
+		this.pool = pool;
+	}
+
+	/**
+	 * Method returns the number of shards.
+	 * @return shard count
+	 */
+	public int getShardCount() {
+		return shards.length;
+	}
+
+	/*
+	 * Returns the shard an ID hashes to
+	 */
+	private Shard home(int key) {
+		long hash = (key * 0x9E3779B9) & 0xFFFFFFFFL; //spreads sequential IDs
+		return shards[(int)((hash * shards.length) >>> 32)];
+	}
+
+	/*
+	 * Locks and returns the shard of an ID
+	 */
+	private Shard lock(String id) {
+		long key = BeanBagID.parse(id);
+		//an illegal ID goes to the first shard, which validates the call, reporting errors in its usual order
+		Shard s = key == BeanBagID.INVALID ? shards[0] : home((int)key);
+		s.lock.lock();
+		return s;
+	}
+
+	@Override
+	public void addBeanBags(int num, String manufacturer, String name, String id, short year, byte month)
+			throws IllegalNumberOfBeanBagsAddedException, BeanBagMismatchException, IllegalIDException,
+			InvalidMonthException {
+		addBeanBags(num, manufacturer, name, id, year, month, ""); //no information given
+	}
+
+	@Override
+	public void addBeanBags(int num, String manufacturer, String name, String id, short year, byte month,
+			String information) throws IllegalNumberOfBeanBagsAddedException, BeanBagMismatchException,
+			IllegalIDException, InvalidMonthException {
+		Shard s = lock(id);
+		try {
+			s.store.addBeanBags(num, manufacturer, name, id, year, month, information);
+		} finally {
+			s.lock.unlock();
+		}
+	}
+
+	@Override
+	public void setBeanBagPrice(String id, int priceInPence)
+			throws InvalidPriceException, BeanBagIDNotRecognisedException, IllegalIDException {
+		Shard s = lock(id);
+		try {
+			s.store.setBeanBagPrice(id, priceInPence);
+		} finally {
+			s.lock.unlock();
+		}
+	}
+
+	@Override
+	public void sellBeanBags(int num, String id)
+			throws BeanBagNotInStockException, InsufficientStockException, IllegalNumberOfBeanBagsSoldException,
+			PriceNotSetException, BeanBagIDNotRecognisedException, IllegalIDException {
+		Shard s = lock(id);
+		try {
+			s.store.sellBeanBags(num, id);
+		} finally {
+			s.lock.unlock();
+		}
+	}
+
+	/**
+	 * Method sells bean bags like {@link #sellBeanBags(int, String)}, but
+	 * returns the outcome as a {@link StoreStatus} code instead of throwing.
+	 * @param num number of bean bags to sell
+	 * @param id ID of bean bags
+	 * @return {@link StoreStatus#OK} if the bean bags were sold, otherwise the
+	 *         code of the exception sellBeanBags would have thrown
+	 */
+	public int trySell(int num, String id) {
+		Shard s = lock(id);
+		try {
+			return s.store.trySell(num, id);
+		} finally {
+			s.lock.unlock();
+		}
+	}
+
+	/*
+	 * Sums a total over every shard, in parallel
+	 */
+	private long sum(ToLongFunction<CDStore> total) {
+		return pool.invoke(new Sum(total, 0, shards.length));
+	}
+
+	/*
+	 * Sums a total over a range of shards, splitting the range in half until it is one shard
+	 */
+	private final class Sum extends RecursiveTask<Long> {
+		private static final long serialVersionUID = 1L;
+
+		private final transient ToLongFunction<CDStore> total; //tasks are never serialized
+		private final int from, to;
+
+		Sum(ToLongFunction<CDStore> total, int from, int to) {
+			this.total = total;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected Long compute() {
+			if (to - from == 1) {
+				Shard s = shards[from];
+				s.lock.lock();
+				try {
+					return total.applyAsLong(s.store);
+				} finally {
+					s.lock.unlock();
+				}
+			}
+			int mid = (from + to) >>> 1;
+			Sum left = new Sum(total, from, mid);
+			left.fork();
+			long right = new Sum(total, mid, to).compute();
+			return left.join() + right;
+		}
+	}
+
+	/*
+	 * Narrows a total to the int the interface returns, saturating rather than wrapping
+	 */
+	private static int clamp(long total) {
+		return (int)Math.min(total, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public int beanBagsInStock() {
+		return clamp(sum(CDStore::getStockTotal));
+	}
+
+	@Override
+	public int beanBagsInStock(String id) throws BeanBagIDNotRecognisedException, IllegalIDException {
+		Shard s = lock(id);
+		try {
+			return s.store.beanBagsInStock(id);
+		} finally {
+			s.lock.unlock();
+		}
+	}
+
+	@Override
+	public int getNumberOfDifferentBeanBagsInStock() {
+		return clamp(sum(CDStore::getNumberOfDifferentBeanBagsInStock));
+	}
+
+	@Override
+	public int getNumberOfSoldBeanBags() {
+		return clamp(sum(CDStore::getSoldTotal));
+	}
+
+	@Override
+	public int getNumberOfSoldBeanBags(String id) throws BeanBagIDNotRecognisedException, IllegalIDException {
+		Shard s = lock(id);
+		try {
+			return s.store.getNumberOfSoldBeanBags(id);
+		} finally {
+			s.lock.unlock();
+		}
+	}
+
+	@Override
+	public int getTotalPriceOfSoldBeanBags() {
+		return clamp(getTotalValueOfSoldBeanBags());
+	}
+
+	/**
+	 * Method to return total price of bean bags sold by this store (in pence)
+	 * as a 64 bit value, which unlike {@link #getTotalPriceOfSoldBeanBags()}
+	 * cannot overflow.
+	 * @return total value of bean bags sold (in pence)
+	 */
+	public long getTotalValueOfSoldBeanBags() {
+		return sum(CDStore::getTotalValueOfSoldBeanBags);
+	}
+
+	@Override
+	public int getTotalPriceOfSoldBeanBags(String id) throws BeanBagIDNotRecognisedException, IllegalIDException {
+		Shard s = lock(id);
+		try {
+			return s.store.getTotalPriceOfSoldBeanBags(id);
+		} finally {
+			s.lock.unlock();
+		}
+	}
+
+	@Override
+	public String getBeanBagDetails(String id) throws BeanBagIDNotRecognisedException, IllegalIDException {
+		Shard s = lock(id);
+		try {
+			return s.store.getBeanBagDetails(id);
+		} finally {
+			s.lock.unlock();
+		}
+	}
+
+	@Override
+	public void empty() {
+		for (Shard s : shards) { //in shard order, as replace locks them
+			s.lock.lock();
+		}
+		try {
+			for (Shard s : shards) {
+				s.store.empty();
+			}
+		} finally {
+			for (Shard s : shards) {
+				s.lock.unlock();
+			}
+		}
+	}
+
+	@Override
+	public void resetSaleAndCostTracking() {
+		for (Shard s : shards) {
+			s.lock.lock();
+		}
+		try {
+			for (Shard s : shards) {
+				s.store.resetSaleAndCostTracking();
+			}
+		} finally {
+			for (Shard s : shards) {
+				s.lock.unlock();
+			}
+		}
+	}
+
+	/*
+	 * Returns the position of a shard, the order shards are locked in
+	 */
+	private int indexOf(Shard s) {
+		for (int i = 0; ; i++) {
+			if (shards[i] == s) {
+				return i;
+			}
+		}
+	}
+
+	@Override
+	public void replace(String oldId, String replacementId) throws BeanBagIDNotRecognisedException, IllegalIDException {
+		long oldKey = BeanBagID.parse(oldId);
+		long newKey = BeanBagID.parse(replacementId);
+		//an illegal ID keeps the call on one shard, which rejects it as CDStore does
+		boolean illegal = oldKey == BeanBagID.INVALID || newKey == BeanBagID.INVALID;
+		Shard from = illegal ? shards[0] : home((int)oldKey);
+		Shard to = illegal ? from : home((int)newKey);
+		if (from == to) {
+			from.lock.lock();
+			try {
+				from.store.replace(oldId, replacementId); //validates the call and emits the event
+			} finally {
+				from.lock.unlock();
+			}
+			return;
+		}
+		StoreEvents.Replace event = new StoreEvents.Replace();
+		event.begin();
+		try {
+			move(from, to, (int)oldKey, (int)newKey);
+		} catch (Exception e) {
+			event.outcome = StoreEvents.outcome(e);
+			throw e;
+		} finally {
+			if (event.shouldCommit()) {
+				event.id = oldId;
+				event.replacementId = replacementId;
+				event.commit();
+			}
+		}
+	}
+
+	/*
+	 * Replaces an ID by moving its records from one shard to another, locking both in shard order
+	 */
+	private void move(Shard from, Shard to, int oldKey, int newKey)
+			throws BeanBagIDNotRecognisedException, IllegalIDException {
+		boolean fromFirst = indexOf(from) < indexOf(to);
+		Shard first = fromFirst ? from : to;
+		Shard second = fromFirst ? to : from;
+		first.lock.lock();
+		second.lock.lock();
+		try {
+			if (!from.store.contains(oldKey)) {
+				throw BeanBagIDNotRecognisedException.STACKLESS;
+			}
+			if (to.store.contains(newKey)) {
+				throw IllegalIDException.STACKLESS; //replacement ID already in use
+			}
+			BeanBag sold = from.store.soldRecord(oldKey);
+			BeanBag b = from.store.remove(oldKey);
+			to.store.restore(newKey, b.getNum(), b.getPrice(), b.getManufacturer(), b.getName(), b.getInfo(),
+					sold == null ? -1 : sold.getNum(), sold == null ? 0 : sold.getValue());
+		} finally {
+			second.lock.unlock();
+			first.lock.unlock();
+		}
+	}
+}
@@ -0,0 +1,176 @@
+package beanbags;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import jdk.jfr.Category;
+import jdk.jfr.Configuration;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JDK Flight Recorder events emitted by the stores, so store latency can be
+ * lined up with GC pauses and lock contention in the same recording. Each
+ * event times one call and records the outcome (<code>OK</code> or the
+ * simple name of the exception thrown); the events of calls for one ID
+ * record the ID and the number of bean bags, and those of aggregate
+ * queries the number of records the query examined.
+ * <p>
+ * The events carry no stack trace and are only committed when enabled and
+ * over their threshold, so they are cheap enough to leave on. The bundled
+ * profile, <code>beanbags.jfc</code>, enables them with thresholds suitable
+ * for production together with the GC and lock events needed to explain
+ * slow calls: start a recording with
+ * <code>-XX:StartFlightRecording:settings=path/to/beanbags.jfc</code>, or
+ * use {@link #configuration()} for a recording started in-process.
+ *
+ * @author George Rogers
+ * @version 1.0
+ */
+public final class StoreEvents {
+
+	/** Outcome of a call that succeeded. */
+	public static final String OK = "OK";
+
+	private StoreEvents() { }
+
+	/**
+	 * Method loads the bundled <code>beanbags.jfc</code> profile.
+	 * @return settings for a {@link jdk.jfr.Recording}
+	 * @throws IOException if the profile cannot be read
+	 * @throws ParseException if the profile is malformed
+	 */
+	public static Configuration configuration() throws IOException, ParseException {
+		try (Reader r = new InputStreamReader(StoreEvents.class.getResourceAsStream("beanbags.jfc"),
+				StandardCharsets.UTF_8)) {
+			return Configuration.create(r);
+		}
+	}
+
+	/*
+	 * Emits the event of an aggregate query, if it is enabled and over its threshold
+	 */
+	static void commit(Aggregate event, String query, long result, int recordsScanned) {
+		if (event.shouldCommit()) {
+			event.query = query;
+			event.result = result;
+			event.recordsScanned = recordsScanned;
+			event.commit();
+		}
+	}
+
+	//outcome of each StoreStatus code: the exception the throwing API would raise
+	private static final String[] OUTCOMES = {OK, IllegalIDException.class.getSimpleName(),
+			BeanBagIDNotRecognisedException.class.getSimpleName(),
+			IllegalNumberOfBeanBagsAddedException.class.getSimpleName(),
+			IllegalNumberOfBeanBagsSoldException.class.getSimpleName(), InvalidMonthException.class.getSimpleName(),
+			BeanBagMismatchException.class.getSimpleName(), BeanBagNotInStockException.class.getSimpleName(),
+			InsufficientStockException.class.getSimpleName(), PriceNotSetException.class.getSimpleName(),
+			InvalidPriceException.class.getSimpleName(), "NotApplied"};
+
+	/*
+	 * Returns the outcome recorded for a call that returned a StoreStatus code
+	 */
+	static String outcome(int status) {
+		return OUTCOMES[status];
+	}
+
+	/*
+	 * Returns the outcome recorded for a call that threw
+	 */
+	static String outcome(Exception e) {
+		return e.getClass().getSimpleName(); //cached by the class after the first call
+	}
+
+	/**
+	 * Fields shared by every store event.
+	 */
+	@Category({"Bean Bags", "Store"})
+	@StackTrace(false)
+	public abstract static class StoreEvent extends Event {
+
+		@Label("Outcome")
+		@Description("OK, or the simple name of the exception thrown")
+		public String outcome = OK;
+	}
+
+	/**
+	 * A call to sellBeanBags, including sales of reservations.
+	 */
+	@Name("beanbags.Sell")
+	@Label("Sell Bean Bags")
+	public static final class Sell extends StoreEvent {
+
+		@Label("ID")
+		public String id;
+
+		@Label("Quantity")
+		public int quantity;
+	}
+
+	/**
+	 * A call to addBeanBags.
+	 */
+	@Name("beanbags.Add")
+	@Label("Add Bean Bags")
+	public static final class Add extends StoreEvent {
+
+		@Label("ID")
+		public String id;
+
+		@Label("Quantity")
+		public int quantity;
+	}
+
+	/**
+	 * A call to setBeanBagPrice.
+	 */
+	@Name("beanbags.Price")
+	@Label("Set Bean Bag Price")
+	public static final class Price extends StoreEvent {
+
+		@Label("ID")
+		public String id;
+
+		@Label("Price")
+		@Description("Price set, in pence")
+		public int price;
+	}
+
+	/**
+	 * A call to replace.
+	 */
+	@Name("beanbags.Replace")
+	@Label("Replace ID")
+	public static final class Replace extends StoreEvent {
+
+		@Label("ID")
+		public String id;
+
+		@Label("Replacement ID")
+		public String replacementId;
+	}
+
+	/**
+	 * A call to one of the store-wide aggregate queries.
+	 */
+	@Name("beanbags.Aggregate")
+	@Label("Aggregate Query")
+	public static final class Aggregate extends StoreEvent {
+
+		@Label("Query")
+		@Description("Name of the method called")
+		public String query;
+
+		@Label("Result")
+		public long result;
+
+		@Label("Records Scanned")
+		@Description("Number of records the query examined; 0 if answered by a running total")
+		public int recordsScanned;
+	}
+}
@@ -0,0 +1,261 @@
+package beanbags;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only write-ahead journal of store mutations.
+ * <p>
+ * The file is a 4 byte magic number followed by records, each framed as an
+ * int body length, an int CRC-32C of the body and the body itself, a
+ * mutation encoded by {@link StoreMutations}. Appending only copies the
+ * record into an in-memory buffer and returns its sequence number; making it
+ * durable is a separate {@link #sync(long)} call. Syncs use group commit:
+ * while one caller writes and fsyncs the buffered records, others keep
+ * appending to a second buffer, and every caller whose record was covered by
+ * that fsync returns without issuing its own. One fsync therefore makes a
+ * whole group of concurrent mutations durable.
+ * <p>
+ * On replay, a torn or corrupt record at the end of the file (e.g. from a
+ * crash mid-write) ends the journal and is truncated away.
+ *
+ * @author George Rogers
+ * @version 1.0
+ */
+public class StoreJournal implements Closeable {
+
+	private static final int MAGIC = 0x42424A31; //"BBJ1"
+	private static final int HEADER = 8; //record length and CRC
+
+	private final FileChannel channel;
+	private final Object appendLock = new Object();
+	private final ReentrantLock flushLock = new ReentrantLock();
+	private final CRC32C crc = new CRC32C(); //guarded by appendLock
+	private ByteBuffer pending = ByteBuffer.allocate(1 << 16); //guarded by appendLock
+	private ByteBuffer spare = ByteBuffer.allocate(1 << 16); //guarded by flushLock
+	private long appended; //sequence number of the last appended record, guarded by appendLock
+	private volatile long durable; //sequence number of the last record known to be on disk
+	private volatile IOException failure; //first write that failed; the journal is unusable after it
+	private boolean replayed;
+
+	/**
+	 * Opens (creating if necessary) the journal at the given path. The
+	 * journal must be replayed before anything is appended.
+	 * @param file journal file
+	 * @throws IOException if the file cannot be opened or is not a journal
+	 */
+	public StoreJournal(Path file) throws IOException {
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		if (channel.size() == 0) {
+			ByteBuffer magic = ByteBuffer.allocate(4).putInt(0, MAGIC);
+			channel.write(magic, 0);
+			channel.force(true);
+		} else {
+			ByteBuffer magic = ByteBuffer.allocate(4);
+			channel.read(magic, 0);
+			if (magic.position() < 4 || magic.getInt(0) != MAGIC) {
+				channel.close();
+				throw new IOException("Not a store journal: " + file);
+			}
+		}
+	}
+
+	/**
+	 * Method applies every record in the journal to a store, in order, and
+	 * positions the journal for appending after the last good record.
+	 * @param store store to apply the records to, normally empty
+	 * @return number of records replayed
+	 * @throws IOException if the journal cannot be read, or a record is rejected by the store
+	 */
+	public long replay(CutDownStore store) throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(1 << 20);
+		long size = channel.size();
+		long filePosition = 4; //next byte of the file to read into buf
+		long good = 4; //end of the last intact record
+		long count = 0;
+		while (true) {
+			int read = filePosition < size ? channel.read(buf, filePosition) : -1;
+			if (read > 0) {
+				filePosition += read;
+			}
+			buf.flip();
+			boolean stop = false;
+			boolean grown = false;
+			while (buf.remaining() >= HEADER) {
+				int length = buf.getInt(buf.position());
+				if (length < 1 || HEADER + (long)length > size - good) {
+					stop = true; //corrupt length, or record runs past the end of the file
+					break;
+				}
+				if (buf.remaining() < HEADER + length) {
+					if (HEADER + length > buf.capacity()) { //record bigger than the buffer
+						ByteBuffer bigger = ByteBuffer.allocate(HEADER + length);
+						bigger.put(buf);
+						buf = bigger;
+						grown = true;
+					}
+					break;
+				}
+				crc.reset();
+				crc.update(buf.array(), buf.position() + HEADER, length);
+				if ((int)crc.getValue() != buf.getInt(buf.position() + 4)) {
+					stop = true; //torn or corrupt record
+					break;
+				}
+				int next = buf.position() + HEADER + length;
+				buf.position(buf.position() + HEADER);
+				try {
+					StoreMutations.apply(buf, store);
+				} catch (IllegalStateException e) {
+					throw new IOException("Journal record " + count + " could not be replayed", e);
+				}
+				buf.position(next);
+				good += HEADER + length;
+				count++;
+			}
+			if (stop || read < 0) {
+				break;
+			}
+			if (!grown) {
+				buf.compact(); //keep any partial record and read more after it
+			}
+		}
+		if (good < channel.size()) {
+			channel.truncate(good); //drop the torn tail so new records follow the last good one
+			channel.force(true);
+		}
+		channel.position(good);
+		synchronized (appendLock) {
+			replayed = true;
+		}
+		return count;
+	}
+
+	/*
+	 * Reserves room for a record in the pending buffer and skips its header.
+	 * Caller holds appendLock.
+	 */
+	private int begin(int maxBody) {
+		if (!replayed) {
+			throw new IllegalStateException("Journal must be replayed before appending");
+		}
+		if (pending.remaining() < HEADER + maxBody) {
+			ByteBuffer bigger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + HEADER + maxBody));
+			pending.flip();
+			bigger.put(pending);
+			pending = bigger;
+		}
+		int start = pending.position();
+		pending.position(start + HEADER);
+		return start;
+	}
+
+	/*
+	 * Fills in the header of the record begun at start. Caller holds appendLock.
+	 */
+	private long end(int start) {
+		int length = pending.position() - start - HEADER;
+		crc.reset();
+		crc.update(pending.array(), start + HEADER, length);
+		pending.putInt(start, length).putInt(start + 4, (int)crc.getValue());
+		return ++appended;
+	}
+
+	/**
+	 * Method appends a record of a mutation already encoded by {@link StoreMutations}.
+	 * @param mutation buffer holding one encoded mutation between its position and limit
+	 * @return sequence number of the record, to pass to {@link #sync(long)}
+	 */
+	public long append(ByteBuffer mutation) {
+		synchronized (appendLock) {
+			int start = begin(mutation.remaining());
+			pending.put(mutation);
+			return end(start);
+		}
+	}
+
+	/**
+	 * Method blocks until the record with the given sequence number (and so
+	 * every record before it) is on disk.
+	 * @param sequence sequence number returned by {@link #append(ByteBuffer)}
+	 * @throws IOException if the records could not be written, now or by an earlier sync
+	 */
+	public void sync(long sequence) throws IOException {
+		if (durable >= sequence) {
+			return; //already covered by another caller's fsync
+		}
+		flushLock.lock();
+		try {
+			if (durable >= sequence) {
+				return; //the previous flusher covered this record while we waited
+			}
+			if (failure != null) {
+				throw new IOException("Journal failed to write earlier records", failure);
+			}
+			ByteBuffer batch;
+			long upTo;
+			synchronized (appendLock) { //swap buffers so appends continue during the fsync
+				batch = pending;
+				pending = spare;
+				upTo = appended;
+			}
+			try {
+				batch.flip();
+				while (batch.hasRemaining()) {
+					channel.write(batch);
+				}
+				channel.force(false);
+			} catch (IOException e) {
+				failure = e; //part of the batch may be on disk, so it cannot simply be retried
+				throw e;
+			} finally {
+				batch.clear();
+				spare = batch;
+			}
+			durable = upTo;
+		} finally {
+			flushLock.unlock();
+		}
+	}
+
+	/**
+	 * Method returns the exception a write or fsync of the journal failed
+	 * with. Once one has failed, every later {@link #sync(long)} throws and
+	 * the records appended since the last successful sync are never written.
+	 * @return the failure, or <code>null</code> if the journal is healthy
+	 */
+	public IOException getFailure() {
+		return failure;
+	}
+
+	/**
+	 * Method returns the sequence number of the last record known to be on disk.
+	 * @return durable sequence number
+	 */
+	public long durableSequence() {
+		return durable;
+	}
+
+	/**
+	 * Method makes every appended record durable and closes the journal.
+	 * @throws IOException if the records could not be written
+	 */
+	@Override
+	public void close() throws IOException {
+		long last;
+		synchronized (appendLock) {
+			last = appended;
+		}
+		try {
+			sync(last);
+		} finally {
+			channel.close();
+		}
+	}
+}
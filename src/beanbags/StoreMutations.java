@@ -0,0 +1,199 @@
+package beanbags;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compact binary encoding of the mutating CutDownStore operations, shared by
+ * everything that records or ships store changes (e.g. {@link StoreJournal}).
+ * <p>
+ * Each mutation is a type byte followed by its arguments: IDs as their
+ * 32 bit int value (see {@link BeanBagID}), numbers as fixed width big-endian
+ * values and strings as an int byte length followed by UTF-8 bytes (a
+ * length of -1 for a null string, which the stores accept). Only
+ * mutations that succeeded are ever encoded, so decoding one and applying it
+ * to a store in the same state always succeeds.
+ *
+ * @author George Rogers
+ * @version 1.0
+ */
+public final class StoreMutations {
+
+	/** Type byte of an addBeanBags mutation. */
+	public static final byte ADD = 1;
+	/** Type byte of a setBeanBagPrice mutation. */
+	public static final byte PRICE = 2;
+	/** Type byte of a sellBeanBags mutation. */
+	public static final byte SELL = 3;
+	/** Type byte of a replace mutation. */
+	public static final byte REPLACE = 4;
+	/** Type byte of a resetSaleAndCostTracking mutation. */
+	public static final byte RESET = 5;
+	/** Type byte of an empty mutation. */
+	public static final byte EMPTY = 6;
+
+	private StoreMutations() { }
+
+	/**
+	 * Method to return an upper bound on the encoded size of an add mutation.
+	 * @param manufacturer bean bag manufacturer, may be null
+	 * @param name bean bag name, may be null
+	 * @param information free text detailing bean bag information, may be null
+	 * @return maximum number of bytes {@link #putAdd} will write
+	 */
+	public static int maxAddSize(String manufacturer, String name, String information) {
+		return 1 + 4 + 4 + 2 + 1 + 3 * 4
+				+ 3 * (length(manufacturer) + length(name) + length(information)); //UTF-8 is at most 3 bytes per char
+	}
+
+	/*
+	 * Returns the length of a string, counting null as empty
+	 */
+	private static int length(String s) {
+		return s == null ? 0 : s.length();
+	}
+
+	/** Maximum encoded size of any mutation other than add. */
+	public static final int MAX_FIXED_SIZE = 1 + 4 + 4;
+
+	/**
+	 * Method to encode an addBeanBags mutation.
+	 * @param buf buffer to write to
+	 * @param num number of bean bags added
+	 * @param manufacturer bean bag manufacturer, may be null
+	 * @param name bean bag name, may be null
+	 * @param id ID of bean bag
+	 * @param year year of manufacture
+	 * @param month month of manufacture
+	 * @param information free text detailing bean bag information, may be null
+	 */
+	public static void putAdd(ByteBuffer buf, int num, String manufacturer, String name, int id, short year,
+			byte month, String information) {
+		buf.put(ADD).putInt(num).putInt(id).putShort(year).put(month);
+		putString(buf, manufacturer);
+		putString(buf, name);
+		putString(buf, information);
+	}
+
+	/**
+	 * Method to encode a setBeanBagPrice mutation.
+	 * @param buf buffer to write to
+	 * @param id ID of bean bags
+	 * @param priceInPence bean bag price in pence
+	 */
+	public static void putPrice(ByteBuffer buf, int id, int priceInPence) {
+		buf.put(PRICE).putInt(id).putInt(priceInPence);
+	}
+
+	/**
+	 * Method to encode a sellBeanBags mutation.
+	 * @param buf buffer to write to
+	 * @param num number of bean bags sold
+	 * @param id ID of bean bags sold
+	 */
+	public static void putSell(ByteBuffer buf, int num, int id) {
+		buf.put(SELL).putInt(num).putInt(id);
+	}
+
+	/**
+	 * Method to encode a replace mutation.
+	 * @param buf buffer to write to
+	 * @param oldId old ID of bean bags
+	 * @param replacementId replacement ID of bean bags
+	 */
+	public static void putReplace(ByteBuffer buf, int oldId, int replacementId) {
+		buf.put(REPLACE).putInt(oldId).putInt(replacementId);
+	}
+
+	/**
+	 * Method to encode a mutation that takes no arguments ({@link #RESET} or {@link #EMPTY}).
+	 * @param buf buffer to write to
+	 * @param type type byte of the mutation
+	 */
+	public static void putNoArgs(ByteBuffer buf, byte type) {
+		buf.put(type);
+	}
+
+	/*
+	 * Writes a string as its UTF-8 byte length followed by the bytes, or null as length -1
+	 */
+	private static void putString(ByteBuffer buf, String s) {
+		if (s == null) {
+			buf.putInt(-1);
+			return;
+		}
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		buf.putInt(bytes.length).put(bytes);
+	}
+
+	/*
+	 * Reads a string written by putString
+	 */
+	private static String getString(ByteBuffer buf) {
+		int length = buf.getInt();
+		if (length == -1) {
+			return null;
+		}
+		if (length < 0 || length > buf.remaining()) {
+			throw new BufferUnderflowException();
+		}
+		String s = new String(buf.array(), buf.arrayOffset() + buf.position(), length, StandardCharsets.UTF_8);
+		buf.position(buf.position() + length);
+		return s;
+	}
+
+	/**
+	 * Method decodes one mutation from a (heap) buffer and applies it to a store.
+	 * @param buf buffer positioned at the start of a mutation; left positioned after it
+	 * @param store store to apply the mutation to
+	 * @throws IllegalStateException if the mutation is malformed or the store
+	 *         rejects it (i.e. the store is not in the state the mutation was recorded against)
+	 */
+	public static void apply(ByteBuffer buf, CutDownStore store) {
+		try {
+			byte type = buf.get();
+			switch (type) {
+				case ADD: {
+					int num = buf.getInt();
+					int id = buf.getInt();
+					short year = buf.getShort();
+					byte month = buf.get();
+					String manufacturer = getString(buf);
+					String name = getString(buf);
+					String information = getString(buf);
+					store.addBeanBags(num, manufacturer, name, BeanBagID.toString(id), year, month, information);
+					break;
+				}
+				case PRICE: {
+					int id = buf.getInt();
+					store.setBeanBagPrice(BeanBagID.toString(id), buf.getInt());
+					break;
+				}
+				case SELL: {
+					int num = buf.getInt();
+					store.sellBeanBags(num, BeanBagID.toString(buf.getInt()));
+					break;
+				}
+				case REPLACE: {
+					int oldId = buf.getInt();
+					store.replace(BeanBagID.toString(oldId), BeanBagID.toString(buf.getInt()));
+					break;
+				}
+				case RESET:
+					store.resetSaleAndCostTracking();
+					break;
+				case EMPTY:
+					store.empty();
+					break;
+				default:
+					throw new IllegalStateException("Unknown mutation type " + type);
+			}
+		} catch (IllegalStateException e) {
+			throw e;
+		} catch (BufferUnderflowException e) {
+			throw new IllegalStateException("Truncated mutation", e);
+		} catch (Exception e) {
+			throw new IllegalStateException("Mutation rejected by store", e);
+		}
+	}
+}
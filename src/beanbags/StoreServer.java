@@ -0,0 +1,401 @@
+package beanbags;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * HTTP front end for a store, built on the JDK's own
+ * <code>com.sun.net.httpserver</code> so it needs no other dependencies.
+ * Each request is handled on a virtual thread of its own when the JDK has
+ * them (Java 21+), and otherwise on a small pool of platform threads.
+ * Connections are kept alive between requests, so the store must be safe
+ * for many threads at once: e.g. a {@link ConcurrentCDStore},
+ * {@link ShardedStore}, or a {@link BlockingStore} over an {@link ActorStore}.
+ * <p>
+ * The wire format is plain text with one tab-separated line per call, in
+ * the argument order of the {@link CutDownStore} method:
+ * <pre>
+ * POST /add    num  manufacturer  name  id  year  month  [information]
+ * POST /price  id   priceInPence
+ * POST /sell   num  id
+ * GET  /stock[/id]   GET /sold[/id]   GET /value[/id]
+ * </pre>
+ * A <code>POST</code> body may hold many lines, which are applied in
+ * order, each on its own; the response holds the {@link StoreStatus} code
+ * of each line, one per line. Its HTTP status is 200 if every line
+ * succeeded, otherwise the status of the first line that failed: 400 for
+ * an argument the store rejects, 404 for an ID not recognised and 409 for
+ * a call the store's state does not allow (e.g. selling more than is in
+ * stock). A body that cannot be parsed is rejected whole with 400. If the
+ * store fails outright part way through a body (405 for a store that takes
+ * no mutations, 503 for one that is closed, otherwise 500), the line it
+ * failed on and those after it are reported as
+ * {@link StoreStatus#NOT_APPLIED}. A
+ * <code>GET</code> returns the number asked for, or a failure status with
+ * the StoreStatus code as the body.
+ * <p>
+ * The JDK server closes keep-alive connections beyond 200 idle ones and
+ * delays small responses with Nagle's algorithm. Both are set by system
+ * properties read when the first server starts, so for many connections
+ * launch with
+ * <pre>
+ * -Dsun.net.httpserver.maxIdleConnections=2147483647 -Dsun.net.httpserver.nodelay=true
+ * </pre>
+ *
+ * @author George Rogers
+ * @version 1.0
+ */
+public class StoreServer implements Closeable {
+
+	/** Largest request body accepted, in bytes. */
+	public static final int MAX_BODY = 1 << 20;
+	private static final int BACKLOG = 4096; //pending connections, before the kernel's own cap
+
+	//HTTP status of each StoreStatus code
+	private static final int[] HTTP_STATUS = {
+		200, //OK
+		400, //ILLEGAL_ID
+		404, //ID_NOT_RECOGNISED
+		400, //ILLEGAL_NUMBER_ADDED
+		400, //ILLEGAL_NUMBER_SOLD
+		400, //INVALID_MONTH
+		409, //MISMATCH
+		409, //NOT_IN_STOCK
+		409, //INSUFFICIENT_STOCK
+		409, //PRICE_NOT_SET
+		400, //INVALID_PRICE
+		409, //NOT_APPLIED
+	};
+
+	/*
+	 * One parsed line of a request body; only the fields of its call are set
+	 */
+	private static final class Line {
+		int num;
+		String id, manufacturer, name, information;
+		short year;
+		byte month;
+	}
+
+	private final CutDownStore store;
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final boolean virtualThreads;
+
+	/**
+	 * Creates a server for a store and starts it on a port of every local address.
+	 * @param store store to serve; must be safe for concurrent use
+	 * @param port port to listen on, or 0 for any free port (see {@link #getPort()})
+	 * @throws IOException if the port cannot be bound
+	 */
+	public StoreServer(CutDownStore store, int port) throws IOException {
+		this(store, new InetSocketAddress(port));
+	}
+
+	/**
+	 * Creates a server for a store and starts it on the given address.
+	 * @param store store to serve; must be safe for concurrent use
+	 * @param address address to listen on
+	 * @throws IOException if the address cannot be bound
+	 */
+	public StoreServer(CutDownStore store, InetSocketAddress address) throws IOException {
+		this.store = store;
+		ExecutorService virtual = virtualThreadExecutor();
+		virtualThreads = virtual != null;
+		executor = virtualThreads ? virtual : Executors.newFixedThreadPool(
+				Math.max(4, 2 * Runtime.getRuntime().availableProcessors()), r -> {
+					Thread t = new Thread(r, "beanbags-http");
+					t.setDaemon(true);
+					return t;
+				});
+		server = HttpServer.create(address, BACKLOG);
+		server.setExecutor(executor);
+		server.createContext("/", this::handle);
+		server.start();
+	}
+
+	/*
+	 * Returns an executor starting a virtual thread per task, or null if the JDK has no virtual threads
+	 */
+	private static ExecutorService virtualThreadExecutor() {
+		try {
+			return (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return null; //before Java 21
+		}
+	}
+
+	/**
+	 * Method returns the port the server is listening on.
+	 * @return port number
+	 */
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * Method returns whether requests are handled on virtual threads.
+	 * @return <code>true</code> if on virtual threads, <code>false</code> if on a thread pool
+	 */
+	public boolean usesVirtualThreads() {
+		return virtualThreads;
+	}
+
+	/*
+	 * Handles every request: routes on the first path segment
+	 */
+	private void handle(HttpExchange exchange) throws IOException {
+		try {
+			String path = exchange.getRequestURI().getRawPath();
+			int slash = path.indexOf('/', 1);
+			String resource = slash < 0 ? path.substring(1) : path.substring(1, slash);
+			String id = slash < 0 ? null : path.substring(slash + 1);
+			boolean post = exchange.getRequestMethod().equals("POST");
+			switch (resource) {
+				case "add":
+				case "price":
+				case "sell":
+					if (!post || id != null) {
+						send(exchange, id != null ? 404 : 405, "");
+					} else {
+						mutate(exchange, resource);
+					}
+					break;
+				case "stock":
+				case "sold":
+				case "value":
+					if (!exchange.getRequestMethod().equals("GET")) {
+						send(exchange, 405, "");
+					} else {
+						query(exchange, resource, id);
+					}
+					break;
+				default:
+					send(exchange, 404, "");
+			}
+		} catch (RuntimeException e) {
+			send(exchange, httpStatus(e), e instanceof UnsupportedOperationException
+					|| e instanceof IllegalStateException ? String.valueOf(e.getMessage()) : e.toString());
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/*
+	 * Parses a body of add, price or sell lines and applies each in turn
+	 */
+	private void mutate(HttpExchange exchange, String resource) throws IOException {
+		byte[] body = exchange.getRequestBody().readNBytes(MAX_BODY + 1);
+		if (body.length > MAX_BODY) {
+			send(exchange, 413, "");
+			return;
+		}
+		List<Line> lines;
+		try {
+			lines = parse(new String(body, StandardCharsets.UTF_8), resource);
+		} catch (IllegalArgumentException e) {
+			send(exchange, 400, e.getMessage());
+			return;
+		}
+		StringBuilder response = new StringBuilder(3 * lines.size());
+		int failed = StoreStatus.OK;
+		int handled = 0;
+		for (Line line : lines) {
+			int status = StoreStatus.OK;
+			try {
+				switch (resource) {
+					case "add":
+						if (line.information == null) {
+							store.addBeanBags(line.num, line.manufacturer, line.name, line.id, line.year, line.month);
+						} else {
+							store.addBeanBags(line.num, line.manufacturer, line.name, line.id, line.year, line.month,
+									line.information);
+						}
+						break;
+					case "price":
+						store.setBeanBagPrice(line.id, line.num);
+						break;
+					default:
+						store.sellBeanBags(line.num, line.id);
+				}
+			} catch (RuntimeException e) {
+				//the store failed outright: report the lines handled so far, and the rest as not applied
+				for (int i = handled; i < lines.size(); i++) {
+					response.append(StoreStatus.NOT_APPLIED).append('\n');
+				}
+				send(exchange, httpStatus(e), response.toString());
+				return;
+			} catch (Exception e) {
+				status = status(e);
+				if (failed == StoreStatus.OK) {
+					failed = status;
+				}
+			}
+			response.append(status).append('\n');
+			handled++;
+		}
+		send(exchange, HTTP_STATUS[failed], response.toString());
+	}
+
+	/*
+	 * Answers a stock, sold or value query, for the whole store or one ID
+	 */
+	private void query(HttpExchange exchange, String resource, String id) throws IOException {
+		exchange.getRequestBody().readAllBytes(); //so the connection can be reused
+		int value;
+		try {
+			switch (resource) {
+				case "stock":
+					value = id == null ? store.beanBagsInStock() : store.beanBagsInStock(id);
+					break;
+				case "sold":
+					value = id == null ? store.getNumberOfSoldBeanBags() : store.getNumberOfSoldBeanBags(id);
+					break;
+				default:
+					value = id == null ? store.getTotalPriceOfSoldBeanBags() : store.getTotalPriceOfSoldBeanBags(id);
+			}
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			int status = status(e);
+			send(exchange, HTTP_STATUS[status], String.valueOf(status));
+			return;
+		}
+		send(exchange, 200, String.valueOf(value));
+	}
+
+	/*
+	 * Splits a body into lines and tab-separated fields, checking the number of fields and parsing numbers
+	 */
+	private static List<Line> parse(String body, String resource) {
+		List<Line> lines = new ArrayList<>();
+		int start = 0;
+		while (start < body.length()) {
+			int end = body.indexOf('\n', start);
+			if (end < 0) {
+				end = body.length();
+			}
+			int next = end + 1;
+			if (end > start && body.charAt(end - 1) == '\r') {
+				end--;
+			}
+			if (end > start) { //blank lines are skipped
+				String[] fields = body.substring(start, end).split("\t", -1);
+				Line line = new Line();
+				try {
+					switch (resource) {
+						case "add":
+							if (fields.length != 6 && fields.length != 7) {
+								throw new IllegalArgumentException("Line " + (lines.size() + 1) + ": expected 6 or 7 fields");
+							}
+							line.num = Integer.parseInt(fields[0]);
+							line.manufacturer = fields[1];
+							line.name = fields[2];
+							line.id = fields[3];
+							line.year = Short.parseShort(fields[4]);
+							line.month = Byte.parseByte(fields[5]);
+							line.information = fields.length == 7 ? fields[6] : null;
+							break;
+						case "price":
+							if (fields.length != 2) {
+								throw new IllegalArgumentException("Line " + (lines.size() + 1) + ": expected 2 fields");
+							}
+							line.id = fields[0];
+							line.num = Integer.parseInt(fields[1]);
+							break;
+						default:
+							if (fields.length != 2) {
+								throw new IllegalArgumentException("Line " + (lines.size() + 1) + ": expected 2 fields");
+							}
+							line.num = Integer.parseInt(fields[0]);
+							line.id = fields[1];
+					}
+				} catch (NumberFormatException e) {
+					throw new IllegalArgumentException("Line " + (lines.size() + 1) + ": " + e.getMessage());
+				}
+				lines.add(line);
+			}
+			start = next;
+		}
+		return lines;
+	}
+
+	/*
+	 * Returns the HTTP status for a store that failed outright rather than rejecting a call
+	 */
+	private static int httpStatus(RuntimeException e) {
+		if (e instanceof UnsupportedOperationException) {
+			return 405; //e.g. a read-only replica
+		} else if (e instanceof IllegalStateException) {
+			return 503; //e.g. a closed ActorStore
+		}
+		return 500;
+	}
+
+	/*
+	 * Returns the StoreStatus code matching a store exception
+	 */
+	private static int status(Exception e) {
+		if (e instanceof IllegalIDException) {
+			return StoreStatus.ILLEGAL_ID;
+		} else if (e instanceof BeanBagIDNotRecognisedException) {
+			return StoreStatus.ID_NOT_RECOGNISED;
+		} else if (e instanceof IllegalNumberOfBeanBagsAddedException) {
+			return StoreStatus.ILLEGAL_NUMBER_ADDED;
+		} else if (e instanceof IllegalNumberOfBeanBagsSoldException) {
+			return StoreStatus.ILLEGAL_NUMBER_SOLD;
+		} else if (e instanceof InvalidMonthException) {
+			return StoreStatus.INVALID_MONTH;
+		} else if (e instanceof BeanBagMismatchException) {
+			return StoreStatus.MISMATCH;
+		} else if (e instanceof BeanBagNotInStockException) {
+			return StoreStatus.NOT_IN_STOCK;
+		} else if (e instanceof InsufficientStockException) {
+			return StoreStatus.INSUFFICIENT_STOCK;
+		} else if (e instanceof PriceNotSetException) {
+			return StoreStatus.PRICE_NOT_SET;
+		} else if (e instanceof InvalidPriceException) {
+			return StoreStatus.INVALID_PRICE;
+		}
+		throw new IllegalArgumentException("Not a store exception: " + e, e);
+	}
+
+	/*
+	 * Sends a complete plain text response; a known length keeps the connection open for the next request
+	 */
+	private static void send(HttpExchange exchange, int status, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+		exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+		if (bytes.length > 0) {
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(bytes);
+			}
+		}
+	}
+
+	/**
+	 * Method stops the server: it stops accepting connections, waits up to a
+	 * second for requests being handled, then closes every connection. The
+	 * store is not closed.
+	 */
+	@Override
+	public void close() {
+		server.stop(1);
+		executor.shutdown();
+		try {
+			executor.awaitTermination(1, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
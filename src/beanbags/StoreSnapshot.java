@@ -0,0 +1,182 @@
+package beanbags;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Columnar snapshot file of a store's stock and sales state, designed to be
+ * memory-mapped (see {@link MappedStore}) so a restarted store can serve
+ * reads without deserializing anything.
+ * <p>
+ * After a 64 byte header holding the row and string counts and the
+ * store-wide totals, the file holds fixed width columns with one entry per
+ * ID, all sorted by ID: <code>int id, int num, int price, int sold</code>
+ * (-1 if not sold since the last reset), <code>long value</code> (sold, in
+ * pence), and <code>int manufacturer, name, information</code> (indices into
+ * the string table, or -1 for null). The string table follows as <code>long</code> offsets
+ * (one more than the number of strings) and then the UTF-8 bytes. Each
+ * distinct string is stored once. All values are big-endian.
+ * <p>
+ * A snapshot makes a restart fast for serving reads only: the mapped store
+ * is read-only, so a store that is to carry on trading must still load the
+ * whole snapshot into a CDStore with {@link MappedStore#loadInto(CDStore)},
+ * which takes time in proportion to the number of IDs.
+ *
+ * @author George Rogers
+ * @version 1.0
+ */
+public final class StoreSnapshot {
+
+	static final int MAGIC = 0x42425331; //"BBS1"
+	static final int VERSION = 2; //2: null strings have their own code
+	static final int HEADER = 64;
+	static final int NULL_STRING = -1; //string table index of a null string, e.g. no information given
+
+	private StoreSnapshot() { }
+
+	/**
+	 * Method writes a snapshot of a store to a file, replacing any existing file.
+	 * @param store store to write
+	 * @param file snapshot file
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void write(CDStore store, Path file) throws IOException {
+		int rows = store.stockRecordCount();
+		//sort rows by ID without boxing: ID in the high half, row in the low half
+		long[] order = new long[rows];
+		for (int row = 0; row < rows; row++) {
+			order[row] = ((long)store.stockRecord(row).getID() << 32) | row;
+		}
+		Arrays.sort(order);
+		BeanBag[] stock = new BeanBag[rows];
+		BeanBag[] sold = new BeanBag[rows];
+		long stockTotal = 0, soldTotal = 0, soldValue = 0;
+		int different = 0;
+		for (int i = 0; i < rows; i++) {
+			stock[i] = store.stockRecord((int)order[i]);
+			sold[i] = store.soldRecord(stock[i].getID());
+			stockTotal += stock[i].getNum();
+			if (stock[i].getNum() > 0) {
+				different++;
+			}
+			if (sold[i] != null) {
+				soldTotal += sold[i].getNum();
+				soldValue += sold[i].getValue();
+			}
+		}
+		//string table, each distinct value once
+		HashMap<String, Integer> codes = new HashMap<>();
+		int[] manufacturer = new int[rows], name = new int[rows], information = new int[rows];
+		for (int i = 0; i < rows; i++) {
+			manufacturer[i] = code(codes, stock[i].getManufacturer());
+			name[i] = code(codes, stock[i].getName());
+			information[i] = code(codes, stock[i].getInfo());
+		}
+		byte[][] strings = new byte[codes.size()][];
+		for (Map.Entry<String, Integer> e : codes.entrySet()) {
+			strings[e.getValue()] = e.getKey().getBytes(StandardCharsets.UTF_8);
+		}
+		Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+		try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel),
+					1 << 16));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(rows);
+			out.writeInt(strings.length);
+			out.writeLong(stockTotal);
+			out.writeInt(different);
+			out.writeInt(0); //padding
+			out.writeLong(soldTotal);
+			out.writeLong(soldValue);
+			out.write(new byte[HEADER - 48]);
+			for (int i = 0; i < rows; i++) {
+				out.writeInt(stock[i].getID());
+			}
+			for (int i = 0; i < rows; i++) {
+				out.writeInt(stock[i].getNum());
+			}
+			for (int i = 0; i < rows; i++) {
+				out.writeInt(stock[i].getPrice());
+			}
+			for (int i = 0; i < rows; i++) {
+				out.writeInt(sold[i] == null ? -1 : sold[i].getNum());
+			}
+			for (int i = 0; i < rows; i++) {
+				out.writeLong(sold[i] == null ? 0 : sold[i].getValue());
+			}
+			for (int column : new int[] {0, 1, 2}) {
+				int[] codeColumn = column == 0 ? manufacturer : column == 1 ? name : information;
+				for (int i = 0; i < rows; i++) {
+					out.writeInt(codeColumn[i]);
+				}
+			}
+			long offset = 0;
+			for (byte[] s : strings) {
+				out.writeLong(offset);
+				offset += s.length;
+			}
+			out.writeLong(offset);
+			for (byte[] s : strings) {
+				out.write(s);
+			}
+			out.flush();
+			channel.force(true); //the data must be on disk before the rename can be
+		}
+		Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE); //readers never see a half-written snapshot
+		syncDirectory(file.toAbsolutePath().getParent());
+	}
+
+	/*
+	 * Makes a rename in a directory durable, on platforms that can open a directory for syncing
+	 */
+	private static void syncDirectory(Path dir) throws IOException {
+		FileChannel channel;
+		try {
+			channel = FileChannel.open(dir, StandardOpenOption.READ);
+		} catch (IOException e) {
+			return; //e.g. Windows, which cannot open a directory; the move is all that can be done
+		}
+		try (channel) {
+			channel.force(true);
+		}
+	}
+
+	/*
+	 * Returns the string table index of a string, adding it if it is new
+	 */
+	private static int code(HashMap<String, Integer> codes, String s) {
+		if (s == null) {
+			return NULL_STRING; //kept apart from "", which a re-add must match exactly
+		}
+		Integer c = codes.get(s);
+		if (c == null) {
+			c = codes.size();
+			codes.put(s, c);
+		}
+		return c;
+	}
+
+	/**
+	 * Method opens a snapshot file for reading. Only the header is read; the
+	 * columns are mapped and paged in as they are used.
+	 * @param file snapshot file
+	 * @return read-only store serving the snapshot
+	 * @throws IOException if the file cannot be mapped or is not a snapshot
+	 */
+	public static MappedStore open(Path file) throws IOException {
+		return new MappedStore(file);
+	}
+}
@@ -0,0 +1,40 @@
+package beanbags;
+
+/**
+ * Primitive status codes reported by store operations that do not throw,
+ * such as the batch methods of {@link BatchCutDownStore} and
+ * {@link CDStore#trySell(int, String)}. Each failure code corresponds to
+ * the checked exception the throwing API would raise.
+ *
+ * @author George Rogers
+ * @version 1.0
+ */
+public final class StoreStatus {
+
+	/** The operation succeeded. */
+	public static final int OK = 0;
+	/** See {@link IllegalIDException}. */
+	public static final int ILLEGAL_ID = 1;
+	/** See {@link BeanBagIDNotRecognisedException}. */
+	public static final int ID_NOT_RECOGNISED = 2;
+	/** See {@link IllegalNumberOfBeanBagsAddedException}. */
+	public static final int ILLEGAL_NUMBER_ADDED = 3;
+	/** See {@link IllegalNumberOfBeanBagsSoldException}. */
+	public static final int ILLEGAL_NUMBER_SOLD = 4;
+	/** See {@link InvalidMonthException}. */
+	public static final int INVALID_MONTH = 5;
+	/** See {@link BeanBagMismatchException}. */
+	public static final int MISMATCH = 6;
+	/** See {@link BeanBagNotInStockException}. */
+	public static final int NOT_IN_STOCK = 7;
+	/** See {@link InsufficientStockException}. */
+	public static final int INSUFFICIENT_STOCK = 8;
+	/** See {@link PriceNotSetException}. */
+	public static final int PRICE_NOT_SET = 9;
+	/** See {@link InvalidPriceException}. */
+	public static final int INVALID_PRICE = 10;
+	/** The line was valid, but was not applied because another line in its batch failed. */
+	public static final int NOT_APPLIED = 11;
+
+	private StoreStatus() { }
+}
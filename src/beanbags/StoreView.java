@@ -0,0 +1,195 @@
+package beanbags;
+import java.lang.ref.Cleaner;
+
+/**
+ * Read-only view of a {@link CDStore} at the point {@link CDStore#snapshot()}
+ * was called. Every method answers as the store was then, however the store
+ * has changed since: per-ID reads find the version of each record the view
+ * can see, and store-wide totals were copied when the view was taken. A view
+ * may be read from any thread while the store carries on trading, and
+ * reading never blocks the store.
+ * <p>
+ * The mutating methods throw {@link UnsupportedOperationException}. Close the
+ * view when done with it, so the store can drop the old record versions kept
+ * for it; a view that is garbage collected unclosed is closed then.
+ *
+ * @author George Rogers
+ * @version 1.0
+ */
+public class StoreView implements CutDownStore, AutoCloseable {
+
+	private static final Cleaner CLEANER = Cleaner.create();
+
+	private final CDStore store;
+	private final long version;
+	private final ObjectArrayList storeList, soldList;
+	private final IDIndex storeIndex, soldIndex;
+	private final long stockTotal;
+	private final int differentInStock;
+	private final long soldTotal;
+	private final long soldValue;
+	private final Cleaner.Cleanable closer;
+
+	/*
+	 * Creates a view of a store at a version, over the lists and indexes the store had then
+	 */
+	StoreView(CDStore store, long version, ObjectArrayList storeList, IDIndex storeIndex, ObjectArrayList soldList,
+			IDIndex soldIndex, long stockTotal, int differentInStock, long soldTotal, long soldValue) {
+		this.store = store;
+		this.version = version;
+		this.storeList = storeList;
+		this.storeIndex = storeIndex;
+		this.soldList = soldList;
+		this.soldIndex = soldIndex;
+		this.stockTotal = stockTotal;
+		this.differentInStock = differentInStock;
+		this.soldTotal = soldTotal;
+		this.soldValue = soldValue;
+		this.closer = CLEANER.register(this, () -> store.closeView(version)); //must not capture the view
+	}
+
+	/*
+	 * Validates and parses an ID, throwing if it is illegal
+	 */
+	private static int parseID(String id) throws IllegalIDException {
+		long parsed = BeanBagID.parse(id);
+		if (parsed == BeanBagID.INVALID) {
+			throw IllegalIDException.STACKLESS;
+		}
+		return (int)parsed;
+	}
+
+	/*
+	 * Returns the stock record of an ID as the view sees it, throwing if it is illegal or unknown
+	 */
+	private BeanBag stock(String id) throws BeanBagIDNotRecognisedException, IllegalIDException {
+		BeanBag b = store.find(parseID(id), storeList, storeIndex, false, version);
+		if (b == null) {
+			throw BeanBagIDNotRecognisedException.STACKLESS;
+		}
+		return b;
+	}
+
+	/*
+	 * Returns the sales record of an ID as the view sees it, throwing if it is illegal or unsold
+	 */
+	private BeanBag sold(String id) throws BeanBagIDNotRecognisedException, IllegalIDException {
+		BeanBag b = store.find(parseID(id), soldList, soldIndex, true, version);
+		if (b == null) { //not sold since the last reset, as in CDStore
+			throw BeanBagIDNotRecognisedException.STACKLESS;
+		}
+		return b;
+	}
+
+	/*
+	 * Narrows a total to the int the interface returns, saturating rather than wrapping
+	 */
+	private static int clamp(long total) {
+		return (int)Math.min(total, Integer.MAX_VALUE);
+	}
+
+	/*
+	 * Rejects a mutation
+	 */
+	private static UnsupportedOperationException readOnly() {
+		return new UnsupportedOperationException("View is read-only; change the store it was taken from");
+	}
+
+	@Override
+	public void addBeanBags(int num, String manufacturer, String name, String id, short year, byte month) {
+		throw readOnly();
+	}
+
+	@Override
+	public void addBeanBags(int num, String manufacturer, String name, String id, short year, byte month,
+			String information) {
+		throw readOnly();
+	}
+
+	@Override
+	public void setBeanBagPrice(String id, int priceInPence) {
+		throw readOnly();
+	}
+
+	@Override
+	public void sellBeanBags(int num, String id) {
+		throw readOnly();
+	}
+
+	@Override
+	public int beanBagsInStock() {
+		return clamp(stockTotal);
+	}
+
+	@Override
+	public int beanBagsInStock(String id) throws BeanBagIDNotRecognisedException, IllegalIDException {
+		return stock(id).getNum();
+	}
+
+	@Override
+	public int getNumberOfDifferentBeanBagsInStock() {
+		return differentInStock;
+	}
+
+	@Override
+	public int getNumberOfSoldBeanBags() {
+		return clamp(soldTotal);
+	}
+
+	@Override
+	public int getNumberOfSoldBeanBags(String id) throws BeanBagIDNotRecognisedException, IllegalIDException {
+		return sold(id).getNum();
+	}
+
+	@Override
+	public int getTotalPriceOfSoldBeanBags() {
+		return clamp(soldValue);
+	}
+
+	/**
+	 * Method to return total price of bean bags sold (in pence) as a 64 bit
+	 * value. See {@link CDStore#getTotalValueOfSoldBeanBags()}.
+	 * @return total value of bean bags sold (in pence)
+	 */
+	public long getTotalValueOfSoldBeanBags() {
+		return soldValue;
+	}
+
+	@Override
+	public int getTotalPriceOfSoldBeanBags(String id) throws BeanBagIDNotRecognisedException, IllegalIDException {
+		return clamp(sold(id).getValue());
+	}
+
+	@Override
+	public String getBeanBagDetails(String id) throws BeanBagIDNotRecognisedException, IllegalIDException {
+		String i = stock(id).getInfo();
+		if (i == null || i.isBlank()) { //return empty string if info is blank or is empty
+			return "";
+		}
+		return i;
+	}
+
+	@Override
+	public void empty() {
+		throw readOnly();
+	}
+
+	@Override
+	public void resetSaleAndCostTracking() {
+		throw readOnly();
+	}
+
+	@Override
+	public void replace(String oldId, String replacementId) {
+		throw readOnly();
+	}
+
+	/**
+	 * Method closes the view, letting the store drop the old record versions
+	 * kept for it. The view must not be read once closed.
+	 */
+	@Override
+	public void close() {
+		closer.clean(); //runs at most once
+	}
+}
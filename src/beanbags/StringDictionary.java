@@ -0,0 +1,143 @@
+package beanbags;
+import java.util.Arrays;
+
+/**
+ * Dictionary giving each distinct string an <code>int</code> code, so that
+ * repeated text fields are stored once and compared as ints. Codes are
+ * allocated densely from 0 and never reused; <code>null</code> always has
+ * code {@link #NULL}.
+ * <p>
+ * {@link #find(String)} and {@link #get(int)} do not lock, and
+ * {@link #encode(String)} only locks to add a new string: any thread that
+ * has been handed a code (through whatever happens-before edge handed it
+ * over) sees its string.
+ * <p>
+ * {@link #GLOBAL} is shared by the stores for the manufacturer and name of
+ * every ID, so equal strings have equal codes across all stores. Its codes
+ * are never freed, so it only holds those fields, which repeat across many
+ * IDs; free-text information is kept by the stores as plain strings.
+ *
+ * @author George Rogers
+ * @version 1.0
+ */
+public class StringDictionary {
+
+	/** Code of the <code>null</code> string. */
+	public static final int NULL = 0;
+
+	/** Dictionary shared by every BeanBag. */
+	public static final StringDictionary GLOBAL = new StringDictionary();
+
+	/** Value returned by {@link #find(String)} when a string has no code. */
+	public static final int ABSENT = -1;
+
+	private volatile String[] strings = new String[16]; //code -> string
+	private volatile int[] table = new int[32]; //open-addressing hash of code + 1; 0 marks a free slot
+	private int size = 1; //code 0 is null
+
+	/*
+	 * Spreads the string hash over the table
+	 */
+	private static int slot(String s, int mask) {
+		int h = s.hashCode() * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & mask;
+	}
+
+	/**
+	 * Method to look up the code of a string without adding it.
+	 * @param s string to look up
+	 * @return code of the string, or {@link #ABSENT} if it has none
+	 */
+	public int find(String s) {
+		if (s == null) {
+			return NULL;
+		}
+		String[] strs = strings; //read strings first: it is always at least as new as the table
+		int[] t = table;
+		int mask = t.length - 1;
+		int i = slot(s, mask);
+		for (int probes = 0; probes <= mask; probes++) {
+			int code = t[i] - 1;
+			if (code < 0) {
+				return ABSENT;
+			}
+			if (code < strs.length && s.equals(strs[code])) {
+				return code;
+			}
+			i = (i + 1) & mask;
+		}
+		return ABSENT; //only reachable when racing with a writer
+	}
+
+	/**
+	 * Method to return the code of a string, adding it if it has none.
+	 * @param s string to encode
+	 * @return code of the string
+	 */
+	public int encode(String s) {
+		int code = find(s);
+		return code != ABSENT ? code : add(s); //strings repeat, so most calls take no lock
+	}
+
+	/*
+	 * Adds a string, unless another thread has just added it
+	 */
+	private synchronized int add(String s) {
+		int code = find(s);
+		if (code != ABSENT) {
+			return code;
+		}
+		code = size;
+		String[] strs = strings;
+		if (code == strs.length) {
+			strs = Arrays.copyOf(strs, code * 2);
+		}
+		strs[code] = s;
+		strings = strs; //publish the string before its table slot
+		int[] t = table;
+		if ((size + 1) * 2 > t.length) { //load factor 0.5
+			t = rehash(t.length * 2);
+		}
+		int i = slot(s, t.length - 1);
+		while (t[i] != 0) {
+			i = (i + 1) & (t.length - 1);
+		}
+		t[i] = code + 1;
+		table = t;
+		size++;
+		return code;
+	}
+
+	/*
+	 * Builds a table of the given size holding every existing code
+	 */
+	private int[] rehash(int capacity) {
+		int[] t = new int[capacity];
+		String[] strs = strings;
+		for (int code = 1; code < size; code++) {
+			int i = slot(strs[code], capacity - 1);
+			while (t[i] != 0) {
+				i = (i + 1) & (capacity - 1);
+			}
+			t[i] = code + 1;
+		}
+		return t;
+	}
+
+	/**
+	 * Method to return the string with a code.
+	 * @param code code returned by {@link #encode(String)}
+	 * @return string with the code
+	 */
+	public String get(int code) {
+		return strings[code];
+	}
+
+	/**
+	 * Method returns the number of codes allocated, including {@link #NULL}.
+	 * @return number of codes
+	 */
+	public synchronized int size() {
+		return size;
+	}
+}
@@ -0,0 +1,172 @@
+package beanbags;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/*
+ * Hierarchical timing wheel of int handles (e.g. reservation slots), after
+ * Varghese and Lauck. Level 0 has one slot per tick; each higher level has
+ * one slot per 64 ticks of the level below, so four levels cover 64^4 ticks.
+ * Scheduling and cancelling are O(1), and advancing costs O(1) per tick plus
+ * O(1) per expired or cascaded entry, however many entries are pending.
+ *
+ * Entries are intrusive doubly linked lists held in int arrays indexed by
+ * handle, so the wheel allocates nothing per entry.
+ */
+final class TimingWheel {
+
+	private static final int BITS = 6;
+	private static final int SLOTS = 1 << BITS;
+	private static final int MASK = SLOTS - 1;
+	private static final int LEVELS = 4;
+	private static final long RANGE = 1L << (BITS * LEVELS); //ticks ahead a slot can be placed
+	private static final int NONE = -1;
+
+	private final int[] heads = new int[LEVELS * SLOTS]; //first handle in each slot
+	private int[] next = new int[0];
+	private int[] prev = new int[0];
+	private int[] slotOf = new int[0]; //slot holding each handle, or NONE
+	private long[] deadlines = new long[0];
+	private long tick; //next tick to process
+	private int size;
+
+	TimingWheel(long startTick) {
+		Arrays.fill(heads, NONE);
+		tick = startTick;
+	}
+
+	int size() {
+		return size;
+	}
+
+	/*
+	 * Grows the per-handle arrays to hold handles below the given capacity
+	 */
+	private void ensureCapacity(int handle) {
+		if (handle < next.length) {
+			return;
+		}
+		int capacity = Math.max(16, Math.max(handle + 1, next.length * 2));
+		int old = next.length;
+		next = Arrays.copyOf(next, capacity);
+		prev = Arrays.copyOf(prev, capacity);
+		deadlines = Arrays.copyOf(deadlines, capacity);
+		slotOf = Arrays.copyOf(slotOf, capacity);
+		Arrays.fill(slotOf, old, capacity, NONE);
+	}
+
+	/*
+	 * Schedules a handle that is not already scheduled to expire at a tick
+	 */
+	void schedule(int handle, long deadline) {
+		ensureCapacity(handle);
+		deadlines[handle] = deadline;
+		link(handle, deadline);
+		size++;
+	}
+
+	/*
+	 * Places a handle in the slot for its deadline, relative to the current tick
+	 */
+	private void link(int handle, long deadline) {
+		long t = Math.max(deadline, tick); //overdue entries expire on the next tick
+		long delta = Math.min(t - tick, RANGE - 1); //beyond range: park at the far end and re-place later
+		t = tick + delta;
+		int level = 0;
+		while (delta >= SLOTS) {
+			delta >>>= BITS;
+			level++;
+		}
+		int slot = level * SLOTS + (int)((t >>> (BITS * level)) & MASK);
+		int head = heads[slot];
+		next[handle] = head;
+		prev[handle] = NONE;
+		if (head != NONE) {
+			prev[head] = handle;
+		}
+		heads[slot] = handle;
+		slotOf[handle] = slot;
+	}
+
+	/*
+	 * Removes a handle from its slot
+	 */
+	private void unlink(int handle) {
+		int n = next[handle];
+		int p = prev[handle];
+		if (p == NONE) {
+			heads[slotOf[handle]] = n;
+		} else {
+			next[p] = n;
+		}
+		if (n != NONE) {
+			prev[n] = p;
+		}
+		slotOf[handle] = NONE;
+	}
+
+	/*
+	 * Cancels a scheduled handle; does nothing if it is not scheduled
+	 */
+	void cancel(int handle) {
+		if (handle < slotOf.length && slotOf[handle] != NONE) {
+			unlink(handle);
+			size--;
+		}
+	}
+
+	/*
+	 * Processes every tick up to and including now, passing each handle whose
+	 * deadline has been reached to expired (after removing it from the wheel)
+	 */
+	void advance(long now, IntConsumer expired) {
+		if (size == 0) {
+			tick = Math.max(tick, now + 1); //nothing pending, so skip straight to now
+			return;
+		}
+		for (; tick <= now && size > 0; tick++) {
+			//cascade higher levels whose slot starts at this tick, highest first
+			for (int level = LEVELS - 1; level > 0; level--) {
+				if ((tick & ((1L << (BITS * level)) - 1)) == 0) {
+					cascade(level * SLOTS + (int)((tick >>> (BITS * level)) & MASK));
+				}
+			}
+			int slot = (int)(tick & MASK);
+			int h = heads[slot];
+			while (h != NONE) {
+				int n = next[h];
+				unlink(h);
+				if (deadlines[h] > tick) {
+					link(h, deadlines[h]); //parked beyond the wheel's range
+				} else {
+					size--;
+					expired.accept(h);
+				}
+				h = n;
+			}
+		}
+		tick = Math.max(tick, now + 1);
+	}
+
+	/*
+	 * Re-places every handle of a higher-level slot relative to the current tick
+	 */
+	private void cascade(int slot) {
+		int h = heads[slot];
+		heads[slot] = NONE;
+		while (h != NONE) {
+			int n = next[h];
+			slotOf[h] = NONE;
+			link(h, deadlines[h]);
+			h = n;
+		}
+	}
+
+	/*
+	 * Removes every handle
+	 */
+	void clear() {
+		Arrays.fill(heads, NONE);
+		Arrays.fill(slotOf, NONE);
+		size = 0;
+	}
+}